@@ -0,0 +1,267 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.Constraint;
+import main.MersenneTwisterFast;
+import main.Parameter;
+import math.Interpreter;
+import math.Numeric;
+
+/**
+ * Base class for analyses that run the model many times.
+ * Engines don't use any GUI classes, progress and cancellation are handled by a ProgressListener.
+ */
+public abstract class AnalysisEngine{
+	AmuaModel myModel;
+	/**
+	 * Number of model replicas to run on. If 1 the analysis is run on the model itself.
+	 */
+	public int numWorkers=1;
+	public boolean cancelled;
+	public int numStrat, numDim, numSubgroups;
+
+	ProgressListener listener;
+	AtomicInteger numCompleted=new AtomicInteger();
+	int numReported; //highest count passed to the listener
+	int numTasks;
+
+	AnalysisEngine(AmuaModel myModel){
+		this.myModel=myModel;
+	}
+
+	/**
+	 * Gets model dimensions and resets progress
+	 */
+	void start(ProgressListener listener, int numTasks){
+		this.listener=listener;
+		this.numTasks=numTasks;
+		cancelled=false;
+		numCompleted.set(0);
+		numReported=0;
+		numStrat=myModel.getStrategies();
+		numDim=myModel.dimInfo.dimNames.length;
+		numSubgroups=0;
+		if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
+	}
+
+	boolean isCancelled(){
+		if(listener!=null && listener.isCancelled()){cancelled=true;}
+		return(cancelled);
+	}
+
+	/**
+	 * Counts a completed task.  Workers can finish out of order, so only increasing counts are passed to the listener.
+	 */
+	void completed(){
+		int count=numCompleted.incrementAndGet();
+		if(listener!=null){
+			synchronized(listener){
+				if(count>numReported){
+					numReported=count;
+					listener.progress(count, numTasks);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Number of model runs completed so far
+	 */
+	public int getNumCompleted(){
+		return(numCompleted.get());
+	}
+
+	/**
+	 * Checks the model with the given parameter values, then resets the parameters
+	 * @return Model errors
+	 */
+	ArrayList<String> testValues(int params[], double values[]){
+		Numeric origValues[]=new Numeric[params.length];
+		for(int p=0; p<params.length; p++){
+			Parameter curParam=myModel.parameters.get(params[p]);
+			origValues[p]=curParam.value;
+			curParam.value=new Numeric(values[p]);
+			curParam.locked=true;
+		}
+		ArrayList<String> errors=myModel.parseModel();
+		for(int p=0; p<params.length; p++){ //Reset
+			Parameter curParam=myModel.parameters.get(params[p]);
+			curParam.value=origValues[p];
+			curParam.locked=false;
+		}
+		myModel.validateModelObjects();
+		return(errors);
+	}
+
+	/**
+	 * Runs the model once for each set of parameter values, on model replicas if numWorkers>1.
+	 * Parameters that are not set are evaluated from their expressions.
+	 * @param params Parameter indices [Run][Parameter]
+	 * @param values Parameter values [Run][Parameter]
+	 * @return Outcomes by run, null for runs skipped after cancelling
+	 */
+	ModelOutcome[] runPoints(final int params[][], final double values[][]) throws Exception{
+		int numRuns=params.length;
+		final ModelOutcome outcomes[]=new ModelOutcome[numRuns];
+		ReplicaPool pool=new ReplicaPool(myModel, Math.min(numWorkers, numRuns));
+		try{
+			for(int i=0; i<numRuns; i++){
+				if(isCancelled()){break;}
+				final int run=i;
+				pool.submit(new ReplicaPool.Task(){
+					public void run(AmuaModel model) throws Exception{
+						if(isCancelled()){return;}
+						outcomes[run]=runPoint(model, params[run], values[run]);
+						completed();
+					}
+				});
+			}
+			pool.await();
+		}finally{
+			pool.shutdown();
+			myModel.unlockParams();
+			myModel.validateModelObjects();
+		}
+		isCancelled();
+		return(outcomes);
+	}
+
+	ModelOutcome runPoint(AmuaModel model, int params[], double values[]) throws Exception{
+		for(int p=0; p<params.length; p++){
+			Parameter curParam=model.parameters.get(params[p]);
+			curParam.value=new Numeric(values[p]);
+			curParam.locked=true;
+		}
+		model.parseModel();
+		RunReport report=model.runModel(null, false);
+		return(new ModelOutcome(model, report, numSubgroups));
+	}
+
+	/**
+	 * Sets up the parameter RNG and parses constraints
+	 * @return Original parameter values
+	 */
+	Numeric[] startSampling(boolean seedParams, int paramSeed){
+		int numParams=myModel.parameters.size();
+		Numeric origValues[]=new Numeric[numParams];
+		for(int v=0; v<numParams; v++){
+			origValues[v]=myModel.parameters.get(v).value.copy();
+		}
+
+		//Parse constraints
+		int numConstraints=myModel.constraints.size();
+		for(int c=0; c<numConstraints; c++){
+			myModel.constraints.get(c).parseConstraints();
+		}
+
+		myModel.sampleParam=true;
+		myModel.generatorParam=new MersenneTwisterFast();
+		if(myModel.curGenerator==null){
+			myModel.curGenerator=new MersenneTwisterFast[1];
+		}
+		if(seedParams){
+			myModel.generatorParam.setSeed(paramSeed);
+		}
+		return(origValues);
+	}
+
+	/**
+	 * Samples all parameters on the base model until constraints are met and the model is valid
+	 */
+	void sampleParameters(Numeric origValues[]) throws Exception{
+		int numParams=origValues.length;
+		int numConstraints=myModel.constraints.size();
+		myModel.curGenerator[0]=myModel.generatorParam;
+		boolean validParams=false;
+		while(validParams==false){
+			for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
+				Parameter curParam=myModel.parameters.get(v);
+				curParam.locked=false;
+				curParam.value=origValues[v];
+			}
+
+			for(int v=0; v<numParams; v++){ //sample all parameters
+				Parameter curParam=myModel.parameters.get(v);
+				if(curParam.locked==false) {
+					curParam.value=Interpreter.evaluateTokens(curParam.parse(myModel), 0, true);
+					curParam.locked=true;
+				}
+			}
+			//check constraints
+			validParams=true;
+			int c=0;
+			while(validParams==true && c<numConstraints){
+				Constraint curConst=myModel.constraints.get(c);
+				validParams=curConst.checkConstraints(myModel);
+				c++;
+			}
+			if(validParams){ //check model for valid params
+				ArrayList<String> errors=myModel.parseModel();
+				if(errors.size()!=0) {
+					validParams=false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Resets parameters to their original values after sampling
+	 */
+	void endSampling(Numeric origValues[]){
+		myModel.sampleParam=false;
+		for(int v=0; v<origValues.length; v++){ //Reset 'locked' for all parameter and orig values
+			Parameter curParam=myModel.parameters.get(v);
+			curParam.locked=false;
+			curParam.value=origValues[v];
+		}
+		myModel.validateModelObjects();
+	}
+
+	/**
+	 * Copies the current parameter values of the base model
+	 */
+	Numeric[] getParameters(){
+		int numParams=myModel.parameters.size();
+		Numeric values[]=new Numeric[numParams];
+		for(int v=0; v<numParams; v++){
+			values[v]=myModel.parameters.get(v).value.copy();
+		}
+		return(values);
+	}
+
+	/**
+	 * Sets parameter values on a model replica and re-parses it
+	 */
+	void setParameters(AmuaModel model, Numeric values[]){
+		for(int v=0; v<values.length; v++){
+			Parameter curParam=model.parameters.get(v);
+			curParam.value=values[v].copy();
+			curParam.locked=true;
+		}
+		model.sampleParam=myModel.sampleParam;
+		model.parseModel(); //already checked on base model
+		model.getStrategies();
+	}
+}
\ No newline at end of file
@@ -0,0 +1,152 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.ParameterSet;
+import math.Interpreter;
+import math.Numeric;
+
+/**
+ * Markov model calibration.  Parameter sets are sampled and scored by evaluating the score expression after
+ * running the model.  Random search keeps every sampled set, ABC keeps sets with a score at or below the threshold.
+ * Candidate sets are sampled on the calling thread in order and scored in batches on model replicas,
+ * so the sets kept only depend on the parameter seed.
+ */
+public class CalibrationEngine extends AnalysisEngine{
+	public static final int RANDOM=0, ABC=1;
+
+	public String scoreExpression;
+	public int numSets;
+	public int method=RANDOM;
+	/**
+	 * Score threshold for ABC
+	 */
+	public double threshold;
+	public boolean seedParams;
+	public int paramSeed;
+
+	//Results
+	/**
+	 * Calibrated parameter sets with scores
+	 */
+	public ParameterSet sets[];
+	/**
+	 * Number of parameter sets scored
+	 */
+	public int numSampled;
+
+	public CalibrationEngine(AmuaModel myModel, String scoreExpression, int numSets){
+		super(myModel);
+		this.scoreExpression=scoreExpression;
+		this.numSets=numSets;
+	}
+
+	/**
+	 * Checks the model and tries the score expression after an initial run to build the trace
+	 * @return Errors
+	 */
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.type!=1){
+			errors.add("Calibration requires a Markov model!");
+			return(errors);
+		}
+		try{
+			if(myModel.parseModel().size()>0){
+				errors.add("Errors in base case model!");
+			}
+			else{
+				RunReport curReport=new RunReport(myModel);
+				myModel.markov.runModel(false,curReport,false);
+			}
+			Interpreter.evaluate(scoreExpression, myModel, false);
+		}catch(Exception e){
+			errors.add("Error in score expression: "+e.toString());
+		}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		start(listener, numSets);
+		sets=new ParameterSet[numSets];
+		numSampled=0;
+		int numKept=0;
+
+		Numeric origValues[]=startSampling(seedParams, paramSeed);
+		ReplicaPool pool=null;
+		try{
+			pool=new ReplicaPool(myModel, Math.min(numWorkers, numSets));
+			final boolean replica=pool.isParallel();
+			int batchSize=replica ? numWorkers : 1;
+			while(numKept<numSets && !isCancelled()){
+				//Sample batch of candidates
+				int curBatch=batchSize;
+				if(method==RANDOM){curBatch=Math.min(batchSize, numSets-numKept);}
+				final ParameterSet candidates[]=new ParameterSet[curBatch];
+				for(int b=0; b<curBatch; b++){
+					sampleParameters(origValues);
+					final Numeric values[]=getParameters();
+					final int index=b;
+					pool.submit(new ReplicaPool.Task(){
+						public void run(AmuaModel model) throws Exception{
+							if(isCancelled()){return;}
+							if(replica){setParameters(model, values);}
+							candidates[index]=score(model);
+						}
+					});
+				}
+				pool.await();
+
+				//Keep candidates in sampled order
+				for(int b=0; b<curBatch && numKept<numSets; b++){
+					ParameterSet curSet=candidates[b];
+					if(curSet==null){break;} //cancelled
+					numSampled++;
+					if(method==RANDOM || !(curSet.score>threshold)){
+						curSet.id=(numKept+1)+"";
+						sets[numKept]=curSet;
+						numKept++;
+						completed();
+					}
+				}
+			}
+		}finally{
+			if(pool!=null){pool.shutdown();}
+			endSampling(origValues); //Reset all parameters
+		}
+
+		if(numKept<numSets){ //cancelled
+			ParameterSet kept[]=new ParameterSet[numKept];
+			for(int i=0; i<numKept; i++){kept[i]=sets[i];}
+			sets=kept;
+		}
+	}
+
+	private ParameterSet score(AmuaModel model) throws Exception{
+		RunReport curReport=new RunReport(model);
+		model.markov.runModel(false,curReport,false);
+		ParameterSet curSet=new ParameterSet(model);
+		curSet.score=Interpreter.evaluate(scoreExpression, model, false).getDouble();
+		return(curSet);
+	}
+}
\ No newline at end of file
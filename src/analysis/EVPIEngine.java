@@ -0,0 +1,219 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import base.AmuaModel;
+import main.DimInfo;
+
+/**
+ * Expected value of perfect information (EVPI), and of partial perfect information (EVPPI) for each parameter
+ * by binning PSA iterations on the parameter value.
+ * The outcome is the objective dimension for EV analyses and NMB for CEA/BCA.
+ */
+public class EVPIEngine extends AnalysisEngine{
+	public int numIterations;
+	public boolean seedParams;
+	public int paramSeed;
+	public int numBins;
+
+	//Results
+	public PSAEngine psa;
+	public int numParams;
+	/**
+	 * Outcome of interest [Strategy][Iteration]
+	 */
+	public double results[][];
+	/**
+	 * Sampled parameter values, NaN if not a real number [Parameter][Iteration]
+	 */
+	public double paramVals[][];
+	/**
+	 * -1 if the objective is to minimize the outcome, outcomes below are multiplied by sign so higher is better
+	 */
+	public int sign;
+	/**
+	 * E[max]
+	 */
+	public double bestOutcome;
+	/**
+	 * max E[]
+	 */
+	public double bestMean;
+	public int bestStrat;
+	public double evpi;
+	/**
+	 * [Strategy]
+	 */
+	public double meanOutcomes[];
+	/**
+	 * Number of iterations each strategy is best [Strategy]
+	 */
+	public int numBest[];
+	/**
+	 * [Parameter]
+	 */
+	public double evppi[];
+	/**
+	 * EVPPI by number of bins [Parameter][Bins/EVPPI][Bin size]
+	 */
+	public double evppiBins[][][];
+
+	public EVPIEngine(AmuaModel myModel, int numIterations, int numBins){
+		super(myModel);
+		this.numIterations=numIterations;
+		this.numBins=numBins;
+	}
+
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.parseModel().size()>0){errors.add("Errors in base case model!");}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		start(listener, numIterations);
+		psa=new PSAEngine(myModel, numIterations);
+		psa.seedParams=seedParams;
+		psa.paramSeed=paramSeed;
+		psa.numWorkers=numWorkers;
+		psa.run(listener);
+		cancelled=psa.cancelled;
+		if(cancelled){return;}
+
+		numParams=psa.numParams;
+		DimInfo info=myModel.dimInfo;
+		int analysisType=info.analysisType;
+		results=new double[numStrat][numIterations];
+		paramVals=new double[numParams][numIterations];
+		for(int n=0; n<numIterations; n++){
+			for(int v=0; v<numParams; v++){
+				try{
+					paramVals[v][n]=psa.paramValues[n][v].getDouble();
+				} catch(Exception e){
+					paramVals[v][n]=Double.NaN;
+				}
+			}
+			double ev[][]=psa.outcomes[n][0];
+			for(int s=0; s<numStrat; s++){
+				if(analysisType==0){results[s][n]=ev[info.objectiveDim][s];} //EV
+				else{results[s][n]=info.WTP*ev[info.effectDim][s]-ev[info.costDim][s];} //NMB
+			}
+		}
+
+		sign=1; //objective is to maximize outcome
+		if(analysisType==0 && info.objective==1) { //EV, minimize - change to maximize negative
+			sign=-1;
+		}
+
+		//EVPI: E[max] - max E[]
+		meanOutcomes=new double[numStrat];
+		numBest=new int[numStrat];
+		bestOutcome=0; //mean of max
+		for(int n=0; n<numIterations; n++) {
+			double curBest=Double.NEGATIVE_INFINITY;
+			int bestS=-1;
+			for(int s=0; s<numStrat; s++) {
+				double curRes=sign*results[s][n];
+				meanOutcomes[s]+=curRes;
+				if(curRes>curBest) {
+					curBest=curRes;
+					bestS=s;
+				}
+			}
+			bestOutcome+=curBest;
+			numBest[bestS]++;
+		}
+		bestOutcome/=(numIterations*1.0);
+		bestMean=Double.NEGATIVE_INFINITY;
+		bestStrat=-1;
+		for(int s=0; s<numStrat; s++) {
+			double curMean=meanOutcomes[s]/=(numIterations*1.0);
+			if(curMean>bestMean) {
+				bestMean=curMean;
+				bestStrat=s;
+			}
+		}
+		evpi=bestOutcome-bestMean;
+
+		//EVPPI for each parameter
+		ArrayList<Integer> binSizes=new ArrayList<Integer>();
+		for(int b=1; b<numIterations/2; b++) {
+			if(numIterations%b==0) { //divides evenly
+				binSizes.add(b);
+			}
+		}
+		evppi=new double[numParams];
+		evppiBins=new double[numParams][2][binSizes.size()];
+		for(int p=0; p<numParams; p++) {
+			Integer order[]=sortByParameter(p);
+			evppi[p]=getBinnedMax(order, numBins)-bestMean;
+			for(int b=0; b<binSizes.size(); b++) { //number of bins
+				int curBins=binSizes.get(b);
+				evppiBins[p][0][b]=curBins;
+				evppiBins[p][1][b]=getBinnedMax(order, curBins)-bestMean;
+			}
+		}
+	}
+
+	/**
+	 * Returns iteration indices sorted ascending by parameter value, ties are kept in iteration order
+	 */
+	private Integer[] sortByParameter(final int p){
+		Integer order[]=new Integer[numIterations];
+		for(int n=0; n<numIterations; n++){order[n]=n;}
+		Arrays.sort(order, new Comparator<Integer>(){ //stable
+			public int compare(Integer o1, Integer o2){
+				return(Double.compare(paramVals[p][o1], paramVals[p][o2]));
+			}
+		});
+		return(order);
+	}
+
+	/**
+	 * Mean across bins of the best strategy mean within each bin
+	 */
+	private double getBinnedMax(Integer order[], int curBins){
+		int numSamp=numIterations/curBins;
+		double avgMax=0;
+		for(int k=0; k<curBins; k++) {
+			int index0=k*numSamp;
+			int index1=index0+numSamp;
+			//calculate strategy mean within bin
+			double binMeans[]=new double[numStrat];
+			for(int i=index0; i<index1; i++) {
+				for(int s=0; s<numStrat; s++) {
+					binMeans[s]+=results[s][order[i]];
+				}
+			}
+			//get best strategy among bin means
+			double binMax=Double.NEGATIVE_INFINITY;
+			for(int s=0; s<numStrat; s++) {
+				binMeans[s]/=(numSamp*1.0);
+				binMax=Math.max(binMax, sign*binMeans[s]);
+			}
+			avgMax+=binMax;
+		}
+		avgMax/=(curBins*1.0);
+		return(avgMax);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,90 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.CEAHelper;
+
+/**
+ * Outcomes of a single model run, copied from the model so they can be kept after the model is run again
+ */
+public class ModelOutcome{
+	/**
+	 * Expected values [Group][Dimension][Strategy], group 0 is overall followed by subgroups
+	 */
+	public double ev[][][];
+	/**
+	 * CEA/BCA results (not rounded) [Group][Row][Col], null for EV analyses
+	 */
+	public Object tables[][][];
+	/**
+	 * ICER (CEA) or NMB (BCA) by original strategy index [Group][Strategy]
+	 */
+	public double cea[][];
+	/**
+	 * CEA notes (e.g. dominated) by original strategy index [Group][Strategy]
+	 */
+	public String notes[][];
+	public RunReport report;
+
+	public ModelOutcome(AmuaModel model, RunReport report, int numSubgroups){
+		this.report=report;
+		int numDim=model.dimInfo.dimNames.length;
+		int numStrat=model.strategyNames.length;
+		ev=new double[numSubgroups+1][numDim][numStrat];
+		for(int d=0; d<numDim; d++){
+			for(int s=0; s<numStrat; s++){
+				ev[0][d][s]=model.getStrategyEV(s, d);
+				for(int g=0; g<numSubgroups; g++){
+					ev[g+1][d][s]=model.getSubgroupEV(g, s, d);
+				}
+			}
+		}
+
+		int analysisType=model.dimInfo.analysisType;
+		if(analysisType==1 || analysisType==2){ //CEA or BCA
+			tables=new Object[numSubgroups+1][][];
+			cea=new double[numSubgroups+1][numStrat];
+			notes=new String[numSubgroups+1][numStrat];
+			for(int g=0; g<numSubgroups+1; g++){
+				if(analysisType==1){tables[g]=new CEAHelper().calculateICERs(model,g-1,true);}
+				else{tables[g]=new CEAHelper().calculateNMB(model,g-1,true);}
+				for(int s=0; s<numStrat; s++){cea[g][s]=Double.NaN;}
+				Object table[][]=tables[g];
+				for(int r=0; r<table.length; r++){
+					int origStrat=(int) table[r][0];
+					if(origStrat!=-1){
+						cea[g][origStrat]=(double) table[r][4];
+						if(analysisType==1){notes[g][origStrat]=(String) table[r][5];}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the outcome for the given strategy, where outcome numDim is the ICER (CEA) or NMB (BCA)
+	 * @param group -1: Overall, 0-n: Subgroup index
+	 */
+	public double getOutcome(int group, int outcome, int strat){
+		if(outcome<ev[0].length){return(ev[group+1][outcome][strat]);}
+		return(cea[group+1][strat]);
+	}
+}
\ No newline at end of file
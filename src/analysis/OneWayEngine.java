@@ -0,0 +1,80 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+
+/**
+ * One-way sensitivity analysis over evenly spaced values of a parameter
+ */
+public class OneWayEngine extends AnalysisEngine{
+	public int paramIndex;
+	public double min, max;
+	public int intervals;
+
+	//Results
+	/**
+	 * [Interval]
+	 */
+	public double paramValues[];
+	/**
+	 * [Interval]
+	 */
+	public ModelOutcome outcomes[];
+
+	public OneWayEngine(AmuaModel myModel, int paramIndex, double min, double max, int intervals){
+		super(myModel);
+		this.paramIndex=paramIndex;
+		this.min=min;
+		this.max=max;
+		this.intervals=intervals;
+	}
+
+	/**
+	 * Checks the model at the base case and at the min and max parameter values
+	 * @return Errors
+	 */
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.parseModel().size()>0){
+			errors.add("Errors in base case model!");
+			return(errors);
+		}
+		int params[]=new int[]{paramIndex};
+		if(testValues(params, new double[]{min}).size()>0){errors.add("Error: Min value");}
+		if(testValues(params, new double[]{max}).size()>0){errors.add("Error: Max value");}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		start(listener, intervals+1);
+		double step=(max-min)/(intervals*1.0);
+		paramValues=new double[intervals+1];
+		int params[][]=new int[intervals+1][];
+		double values[][]=new double[intervals+1][];
+		for(int i=0; i<=intervals; i++){
+			paramValues[i]=min+(step*i);
+			params[i]=new int[]{paramIndex};
+			values[i]=new double[]{paramValues[i]};
+		}
+		outcomes=runPoints(params, values);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.Arrays;
+
+import base.AmuaModel;
+import base.RunReport;
+import markov.MarkovCohortBatch;
+import math.Numeric;
+
+/**
+ * Probabilistic sensitivity analysis (PSA).
+ * Parameters are sampled on the calling thread in iteration order, so the sampled values only depend on the seed.
+ * Iterations are then run on model replicas by a pool of workers, each with its own parameter state and RNGs,
+ * and results are stored by iteration index so they match a single-threaded run.
+ * Cohort Markov models are run in batches of iterations where possible, see MarkovCohortBatch.
+ */
+public class PSAEngine extends AnalysisEngine{
+	public int numIterations;
+	public boolean seedParams;
+	public int paramSeed;
+	public boolean sampleParamSets;
+	public int numParams;
+
+	//Results
+	/**
+	 * [Iteration][Parameter]
+	 */
+	public Numeric paramValues[][];
+	/**
+	 * [Iteration]
+	 */
+	public RunReport reports[];
+	/**
+	 * [Iteration][Group][Dimension][Strategy], group 0 is overall followed by subgroups
+	 */
+	public double outcomes[][][][];
+	/**
+	 * CEA/BCA results (not rounded) [Iteration][Group][Row][Col]
+	 */
+	public Object tables[][][][];
+
+	public PSAEngine(AmuaModel myModel, int numIterations){
+		super(myModel);
+		this.numIterations=numIterations;
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		start(listener, numIterations);
+		myModel.simParamSets=false; //turn off use parameter sets (no looping through)
+		int numSets=-1;
+		if(sampleParamSets){numSets=myModel.parameterSets.length;}
+
+		numParams=myModel.parameters.size();
+		paramValues=new Numeric[numIterations][];
+		reports=new RunReport[numIterations];
+		outcomes=new double[numIterations][][][];
+		tables=new Object[numIterations][][][];
+
+		Numeric origValues[]=startSampling(seedParams, paramSeed);
+		boolean batch=MarkovCohortBatch.canRun(myModel);
+		int batchSize=batch ? MarkovCohortBatch.DEFAULT_LANES : 1;
+		ReplicaPool pool=null;
+		try{
+			pool=new ReplicaPool(myModel, numWorkers);
+			int start=0;
+			for(int n=0; n<numIterations; n++){
+				if(isCancelled()){break;}
+
+				sampleParameters(origValues);
+				if(sampleParamSets) {
+					int curSet=myModel.generatorParam.nextInt(numSets);
+					myModel.parameterSets[curSet].setParameters(myModel);
+				}
+				paramValues[n]=getParameters(); //Record values
+
+				if(batch==false){
+					final int iteration=n;
+					final boolean replica=pool.isParallel();
+					pool.submit(new ReplicaPool.Task(){
+						public void run(AmuaModel model) throws Exception{
+							if(isCancelled()){return;}
+							if(replica){setParameters(model, paramValues[iteration]);}
+							runIteration(model, iteration);
+							completed();
+						}
+					});
+				}
+				else if(n-start+1==batchSize || n==numIterations-1){ //batch is full
+					final int first=start, last=n;
+					pool.submit(new ReplicaPool.Task(){
+						public void run(AmuaModel model) throws Exception{
+							if(isCancelled()){return;}
+							runBatch(model, first, last);
+						}
+					});
+					start=n+1;
+				}
+			}
+			pool.await(); //Wait for workers
+			isCancelled();
+		}finally{
+			if(pool!=null){pool.shutdown();}
+			endSampling(origValues); //Reset all parameters
+		}
+	}
+
+	private void runIteration(AmuaModel model, int n) throws Exception{
+		model.curGenerator=model.generatorVar;
+		RunReport report=model.runModel(null, false);
+		storeResults(model, n, report);
+	}
+
+	/**
+	 * Runs iterations first to last (inclusive) as one cohort batch, or one at a time if the batch fails
+	 */
+	private void runBatch(AmuaModel model, int first, int last) throws Exception{
+		Numeric values[][]=Arrays.copyOfRange(paramValues, first, last+1);
+		setParameters(model, values[0]);
+		MarkovCohortBatch cohortBatch=new MarkovCohortBatch(model, values);
+		try{
+			cohortBatch.simulate();
+		}catch(Exception e){ //e.g. invalid probabilities, report errors as for single runs
+			for(int n=first; n<=last; n++){
+				if(isCancelled()){return;}
+				setParameters(model, paramValues[n]);
+				runIteration(model, n);
+				completed();
+			}
+			return;
+		}
+		for(int n=first; n<=last; n++){
+			RunReport report=cohortBatch.getReport(n-first);
+			storeResults(model, n, report);
+			completed();
+		}
+	}
+
+	private void storeResults(AmuaModel model, int n, RunReport report){
+		ModelOutcome outcome=new ModelOutcome(model, report, numSubgroups);
+		synchronized(this){
+			reports[n]=report;
+			outcomes[n]=outcome.ev;
+			tables[n]=outcome.tables;
+		}
+	}
+
+	/**
+	 * Returns true if results for the given iteration are available, can be called while the PSA is running
+	 */
+	public synchronized boolean isComplete(int n){
+		return(outcomes[n]!=null);
+	}
+}
\ No newline at end of file
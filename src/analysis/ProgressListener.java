@@ -1,6 +1,6 @@
 /**
  * Amua - An open source modeling framework.
- * Copyright (C) 2017 Zachary J. Ward
+ * Copyright (C) 2017-2019 Zachary J. Ward
  *
  * This file is part of Amua. Amua is free software: you can redistribute
  * it and/or modify it under the terms of the GNU General Public License
@@ -16,22 +16,23 @@
  * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-package tree;
+package analysis;
 
-import math.Numeric;
-
-public class TreePerson{
-	Numeric variableVals[];
-	double costs[];
-	double payoffs[];
-	boolean inSubgroup[];
-	int subgroupIndex[];
-	Numeric initVariableVals[];
-	
-	//Constructor
-	public TreePerson(){
-		
-	}
-	
+/**
+ * Receives progress updates from an analysis engine and lets the caller cancel it.
+ * Methods may be called from worker threads.
+ */
+public interface ProgressListener{
+	/**
+	 * Called each time a unit of work (e.g. an iteration) is completed, with increasing counts
+	 * @param completed Number of completed units
+	 * @param total Total number of units
+	 */
+	void progress(int completed, int total);
 	
+	/**
+	 * Polled between units of work
+	 * @return true to stop the analysis
+	 */
+	boolean isCancelled();
 }
\ No newline at end of file
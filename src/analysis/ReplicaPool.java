@@ -0,0 +1,99 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import base.AmuaModel;
+
+/**
+ * Runs model tasks on a pool of model replicas.  With a single worker tasks are run on the model itself
+ * in the calling thread, otherwise each task is run on the next free replica.
+ */
+final class ReplicaPool{
+	interface Task{
+		void run(AmuaModel model) throws Exception;
+	}
+
+	AmuaModel myModel;
+	ExecutorService pool;
+	ArrayBlockingQueue<AmuaModel> replicas;
+	ArrayList<Future<Void>> futures;
+
+	ReplicaPool(AmuaModel myModel, int numWorkers) throws Exception{
+		this.myModel=myModel;
+		if(numWorkers>1){
+			replicas=new ArrayBlockingQueue<AmuaModel>(numWorkers);
+			AmuaModel copies[]=myModel.replicate(numWorkers);
+			for(int i=0; i<numWorkers; i++){replicas.add(copies[i]);}
+			futures=new ArrayList<Future<Void>>();
+			pool=Executors.newFixedThreadPool(numWorkers);
+		}
+	}
+
+	boolean isParallel(){
+		return(pool!=null);
+	}
+
+	void submit(final Task task) throws Exception{
+		if(pool==null){ //run on this model
+			task.run(myModel);
+		}
+		else{ //run on next available replica
+			futures.add(pool.submit(new Callable<Void>(){
+				public Void call() throws Exception{
+					AmuaModel replica=replicas.take();
+					try{
+						task.run(replica);
+					}finally{
+						replicas.put(replica);
+					}
+					return(null);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * Waits for all submitted tasks to finish
+	 * @throws Exception First error thrown by a task
+	 */
+	void await() throws Exception{
+		if(pool==null){return;}
+		for(int i=0; i<futures.size(); i++){
+			try{
+				futures.get(i).get();
+			}catch(ExecutionException e){
+				if(e.getCause() instanceof Exception){throw (Exception)e.getCause();}
+				throw e;
+			}
+		}
+		futures.clear();
+	}
+
+	void shutdown(){
+		if(pool!=null){pool.shutdownNow();}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,312 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import base.AmuaModel;
+import base.RunReport;
+import base.RunReportSummary;
+import main.Scenario;
+import math.MathUtils;
+import math.Numeric;
+
+/**
+ * Runs a list of scenarios.  Each scenario applies its settings and object updates to the model and is run for
+ * its number of iterations, sampling parameters or looping over parameter sets if specified.
+ * Iterations of a scenario are run on model replicas if numWorkers>1.
+ */
+public class ScenarioEngine extends AnalysisEngine{
+	public ArrayList<Scenario> scenarios;
+
+	//Results
+	public int numScenarios, numOutcomes, maxIterations;
+	/**
+	 * Outcomes, where outcome numDim is ICER and numDim+1 is NMB [Scenario][Group][Outcome][Strategy][Iteration]
+	 */
+	public double results[][][][][];
+	/**
+	 * [Scenario][Group][Strategy][Iteration]
+	 */
+	public String CEAnotes[][][][];
+	/**
+	 * [Scenario][Group][Outcome][Strategy]
+	 */
+	public double meanResults[][][][], lbResults[][][][], ubResults[][][][];
+	/**
+	 * [Scenario][Iteration]
+	 */
+	public RunReport runReports[][];
+	public RunReportSummary runReportSummaries[];
+	/**
+	 * Errors found in scenarios, which are still run
+	 */
+	public ArrayList<String> errors;
+
+	//Original settings
+	Scenario origSettings;
+	String origParams[], origVars[];
+
+	public ScenarioEngine(AmuaModel myModel, ArrayList<Scenario> scenarios){
+		super(myModel);
+		this.scenarios=scenarios;
+	}
+
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.parseModel().size()>0){errors.add("Errors in base case model!");}
+		else if(scenarios.size()==0){errors.add("Please select at least one scenario to run!");}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		numScenarios=scenarios.size();
+		int totalIterations=0;
+		maxIterations=0;
+		for(int n=0; n<numScenarios; n++){
+			int curIterations=scenarios.get(n).numIterations;
+			maxIterations=Math.max(maxIterations, curIterations);
+			totalIterations+=curIterations;
+		}
+		start(listener, totalIterations);
+		numOutcomes=numDim+2; //Add ICER and NMB
+		errors=new ArrayList<String>();
+
+		results=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat][];
+		CEAnotes=new String[numScenarios][numSubgroups+1][numStrat][];
+		meanResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
+		lbResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
+		ubResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
+		runReports=new RunReport[numScenarios][];
+		runReportSummaries=new RunReportSummary[numScenarios];
+
+		//Get orig settings
+		origSettings=new Scenario(myModel);
+		int numParams=myModel.parameters.size();
+		origParams=new String[numParams];
+		for(int i=0; i<numParams; i++){
+			origParams[i]=myModel.parameters.get(i).expression;
+		}
+		int numVars=myModel.variables.size();
+		origVars=new String[numVars];
+		for(int i=0; i<numVars; i++){
+			origVars[i]=myModel.variables.get(i).expression;
+		}
+
+		try{
+			for(int n=0; n<numScenarios && !isCancelled(); n++){
+				runScenario(n);
+			}
+		}finally{
+			resetModel();
+			myModel.validateModelObjects();
+		}
+	}
+
+	private void runScenario(final int n) throws Exception{
+		//Reset orig object expressions
+		resetModel();
+		myModel.validateModelObjects();
+
+		//Apply updates
+		final Scenario curScenario=scenarios.get(n);
+		curScenario.parseUpdates(myModel);
+		curScenario.applyUpdates(myModel);
+
+		//Check for errors
+		if(myModel.parseModel().size()>0){
+			errors.add("Errors found in run: "+curScenario.name+"!");
+		}
+
+		int numIterations=curScenario.numIterations;
+		for(int g=0; g<numSubgroups+1; g++){
+			for(int s=0; s<numStrat; s++){
+				for(int d=0; d<numOutcomes; d++){results[n][g][d][s]=new double[numIterations];}
+				CEAnotes[n][g][s]=new String[numIterations];
+			}
+		}
+		runReports[n]=new RunReport[numIterations];
+
+		applySettings(curScenario);
+
+		Numeric origValues[]=null;
+		if(curScenario.sampleParams){
+			origValues=startSampling(curScenario.crn2, curScenario.seed2);
+		}
+		ReplicaPool pool=null;
+		try{
+			pool=new ReplicaPool(myModel, Math.min(numWorkers, numIterations));
+			final boolean replica=pool.isParallel();
+			for(int i=0; i<numIterations; i++){
+				if(isCancelled()){break;}
+				if(curScenario.sampleParams){
+					sampleParameters(origValues);
+				}
+				else if(curScenario.useParamSets && myModel.parameterSets!=null) {
+					int numSets=myModel.parameterSets.length;
+					int curSet=i%numSets; //keep looping over sets
+					myModel.parameterSets[curSet].setParameters(myModel);
+					curScenario.overwriteParams(myModel);
+				}
+				final Numeric values[]=replica ? getParameters() : null;
+				final int iteration=i;
+				pool.submit(new ReplicaPool.Task(){
+					public void run(AmuaModel model) throws Exception{
+						if(isCancelled()){return;}
+						if(replica){setParameters(model, values);}
+						RunReport curReport=model.runModel(null, false);
+						if(curReport.outcomeEVs==null){curReport.getResults(true);}
+						runReports[n][iteration]=curReport;
+						recordResults(n, iteration, curScenario, curReport);
+						completed();
+					}
+				});
+			}
+			pool.await();
+		}finally{
+			if(pool!=null){pool.shutdown();}
+			if(curScenario.sampleParams){endSampling(origValues);}
+		}
+
+		//Calculate results summary
+		if(isCancelled()==false){
+			int bounds[]=MathUtils.getBoundIndices(numIterations);
+			int indexLB=bounds[0], indexUB=bounds[1];
+			for(int d=0; d<numOutcomes; d++){
+				for(int s=0; s<numStrat; s++){
+					for(int g=0; g<numSubgroups+1; g++){ //overall + subgroups
+						double curResults[]=results[n][g][d][s];
+						double sum=0;
+						for(int i=0; i<numIterations; i++){sum+=curResults[i];}
+						meanResults[n][g][d][s]=sum/(numIterations*1.0);
+						double sorted[]=Arrays.copyOf(curResults, numIterations); //bounds
+						Arrays.sort(sorted);
+						lbResults[n][g][d][s]=sorted[indexLB];
+						ubResults[n][g][d][s]=sorted[indexUB];
+					}
+				}
+			}
+			runReportSummaries[n]=new RunReportSummary(runReports[n]);
+		}
+	}
+
+	private void recordResults(int n, int i, Scenario curScenario, RunReport curReport){
+		//Get EVs
+		for(int d=0; d<numDim; d++){
+			for(int s=0; s<numStrat; s++){
+				results[n][0][d][s][i]=curReport.outcomeEVs[d][s];
+				for(int g=0; g<numSubgroups; g++){
+					results[n][g+1][d][s][i]=curReport.outcomeEVsGroup[g][d][s];
+				}
+			}
+		}
+		if(curScenario.analysisType==1 || curScenario.analysisType==2){ //CEA or BCA
+			for(int g=0; g<numSubgroups+1; g++){
+				Object table[][]=curReport.table;
+				if(g>0){table=curReport.tableGroup[g-1];}
+				for(int s=0; s<table.length; s++){
+					int origStrat=(int) table[s][0];
+					if(origStrat!=-1){
+						if(curScenario.analysisType==1){ //CEA
+							double val=Double.NaN;
+							try{
+								val=Double.parseDouble(table[s][4]+""); //rounded, '---' if undefined
+							} catch(Exception err){
+								//do nothing
+							}
+							results[n][g][numDim][origStrat][i]=val;
+							CEAnotes[n][g][origStrat][i]=(String) table[s][5];
+						}
+						else{ //BCA
+							results[n][g][numDim+1][origStrat][i]=(double) table[s][4];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void applySettings(Scenario curScenario){
+		myModel.cohortSize=curScenario.cohortSize;
+		myModel.CRN=curScenario.crn1;
+		myModel.crnSeed=curScenario.seed1;
+
+		//analysis
+		myModel.dimInfo.analysisType=curScenario.analysisType;
+		myModel.dimInfo.objective=curScenario.objective;
+		myModel.dimInfo.objectiveDim=curScenario.objectiveDim;
+		myModel.dimInfo.costDim=curScenario.costDim;
+		myModel.dimInfo.effectDim=curScenario.effectDim;
+		myModel.dimInfo.WTP=curScenario.WTP;
+		myModel.dimInfo.baseScenario=curScenario.baseScenario;
+		myModel.dimInfo.extendedDim=curScenario.extendedDim;
+
+		//markov
+		if(myModel.type==1) {
+			myModel.markov.halfCycleCorrection=curScenario.halfCycleCorrection;
+			myModel.markov.discountRewards=curScenario.discountRewards;
+			if(curScenario.discountRewards) {
+				if(curScenario.discountRates==null || curScenario.discountRates.length!=numDim) {
+					errors.add("Error: Incorrect model dimensions in Scenario "+curScenario.name+" !");
+				}
+				else {
+					for(int d=0; d<numDim; d++) {
+						myModel.markov.discountRates[d]=curScenario.discountRates[d];
+					}
+				}
+				myModel.markov.discountStartCycle=curScenario.discountStartCycle;
+			}
+		}
+	}
+
+	private void resetModel(){
+		myModel.cohortSize=origSettings.cohortSize;
+		myModel.CRN=origSettings.crn1;
+		myModel.crnSeed=origSettings.seed1;
+
+		//analysis
+		myModel.dimInfo.analysisType=origSettings.analysisType;
+		myModel.dimInfo.objective=origSettings.objective;
+		myModel.dimInfo.objectiveDim=origSettings.objectiveDim;
+		myModel.dimInfo.costDim=origSettings.costDim;
+		myModel.dimInfo.effectDim=origSettings.effectDim;
+		myModel.dimInfo.WTP=origSettings.WTP;
+		myModel.dimInfo.baseScenario=origSettings.baseScenario;
+		myModel.dimInfo.extendedDim=origSettings.extendedDim;
+
+		//markov
+		if(myModel.type==1) {
+			myModel.markov.halfCycleCorrection=origSettings.halfCycleCorrection;
+			myModel.markov.discountRewards=origSettings.discountRewards;
+			for(int d=0; d<origSettings.discountRates.length; d++) {
+				myModel.markov.discountRates[d]=origSettings.discountRates[d];
+			}
+			myModel.markov.discountStartCycle=origSettings.discountStartCycle;
+		}
+
+		//objects
+		for(int i=0; i<origParams.length; i++){
+			myModel.parameters.get(i).expression=origParams[i];
+		}
+		for(int i=0; i<origVars.length; i++){
+			myModel.variables.get(i).expression=origVars[i];
+		}
+	}
+}
\ No newline at end of file
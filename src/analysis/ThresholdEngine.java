@@ -0,0 +1,190 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+
+/**
+ * One-way threshold analysis.  Finds the parameter value where the outcomes of two strategies are equal
+ * by running evenly spaced intervals, then searching the neighbourhood of the closest interval until the
+ * difference is within the tolerance.
+ */
+public class ThresholdEngine extends AnalysisEngine{
+	public int paramIndex;
+	public double min, max;
+	public int intervals;
+	public int strat1, strat2;
+	/**
+	 * Outcome to compare, where numDim is the ICER (CEA) or NMB (BCA)
+	 */
+	public int outcome;
+	/**
+	 * -1: Overall, 0-n: Subgroup index
+	 */
+	public int group=-1;
+	public double tolerance=0.001;
+	public int maxSearch=100;
+
+	//Results
+	/**
+	 * [Interval]
+	 */
+	public double paramValues[];
+	/**
+	 * [Interval]
+	 */
+	public ModelOutcome outcomes[];
+	/**
+	 * True if the strategy outcomes cross within the range
+	 */
+	public boolean cross;
+	/**
+	 * True while searching the neighbourhood of the closest interval
+	 */
+	public boolean searching;
+	/**
+	 * Parameter value where the outcomes are equal, NaN if not found
+	 */
+	public double threshold;
+	/**
+	 * Smallest absolute difference found
+	 */
+	public double distance;
+
+	public ThresholdEngine(AmuaModel myModel, int paramIndex, double min, double max, int intervals, int strat1, int strat2, int outcome){
+		super(myModel);
+		this.paramIndex=paramIndex;
+		this.min=min;
+		this.max=max;
+		this.intervals=intervals;
+		this.strat1=strat1;
+		this.strat2=strat2;
+		this.outcome=outcome;
+	}
+
+	/**
+	 * Checks the model at the base case and at the min and max parameter values
+	 * @return Errors
+	 */
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.parseModel().size()>0){
+			errors.add("Errors in base case model!");
+			return(errors);
+		}
+		if(strat1==strat2){
+			errors.add("Please select 2 different strategies!");
+			return(errors);
+		}
+		int params[]=new int[]{paramIndex};
+		if(testValues(params, new double[]{min}).size()>0){errors.add("Error: Min value");}
+		if(testValues(params, new double[]{max}).size()>0){errors.add("Error: Max value");}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		start(listener, intervals+1);
+		searching=false;
+		cross=false;
+		threshold=Double.NaN;
+
+		//Run intervals
+		double step=(max-min)/(intervals*1.0);
+		paramValues=new double[intervals+1];
+		int params[][]=new int[intervals+1][];
+		double values[][]=new double[intervals+1][];
+		for(int i=0; i<=intervals; i++){
+			paramValues[i]=min+(step*i);
+			params[i]=new int[]{paramIndex};
+			values[i]=new double[]{paramValues[i]};
+		}
+		outcomes=runPoints(params, values);
+		if(cancelled){return;}
+
+		double diffs[]=new double[intervals+1];
+		double minDist=Double.POSITIVE_INFINITY;
+		int minIndex=-1;
+		for(int i=0; i<=intervals; i++){
+			diffs[i]=getDifference(outcomes[i]);
+			double curDist=Math.abs(diffs[i]);
+			if(curDist<minDist){
+				minDist=curDist;
+				minIndex=i;
+			}
+		}
+		distance=minDist;
+
+		if(minDist==0){ //Intersection coincides with interval
+			cross=true;
+			threshold=paramValues[minIndex];
+			return;
+		}
+		//Check if lines cross
+		for(int i=1; i<=intervals; i++) {
+			if(Math.signum(diffs[i-1])!=Math.signum(diffs[i])) {
+				cross=true;
+			}
+		}
+		if(cross==false){return;}
+
+		//Binary search of neighbourhood until convergence
+		searching=true;
+		numTasks=maxSearch;
+		numCompleted.set(0);
+		numReported=0;
+		double minVal=paramValues[minIndex];
+		int param[]=new int[]{paramIndex};
+		try{
+			int i=0;
+			while(minDist>tolerance && i<maxSearch && isCancelled()==false){
+				double valL=Math.max(minVal-(step/2.0), min); //floor of min
+				double distL=Math.abs(getDifference(runPoint(myModel, param, new double[]{valL})));
+				double valR=Math.min(minVal+(step/2.0), max); //ceiling of max
+				double distR=Math.abs(getDifference(runPoint(myModel, param, new double[]{valR})));
+
+				//Move to lowest dist (or stay)
+				if(distL<minDist){
+					minVal=valL;
+					minDist=distL;
+				}
+				if(distR<minDist){
+					minVal=valR;
+					minDist=distR;
+				}
+				step/=2.0;
+				distance=minDist;
+				i++;
+				completed();
+			}
+		}finally{
+			searching=false;
+			myModel.unlockParams();
+			myModel.validateModelObjects();
+		}
+		if(minDist<tolerance){ //Convergence achieved
+			threshold=minVal;
+		}
+	}
+
+	private double getDifference(ModelOutcome curOutcome){
+		return(curOutcome.getOutcome(group, outcome, strat1)-curOutcome.getOutcome(group, outcome, strat2));
+	}
+}
\ No newline at end of file
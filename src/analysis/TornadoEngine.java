@@ -0,0 +1,87 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+
+/**
+ * Tornado diagram: runs the base case and each parameter at its min and max value
+ */
+public class TornadoEngine extends AnalysisEngine{
+	public int paramIndices[];
+	public double mins[], maxs[];
+
+	//Results
+	public ModelOutcome baseOutcome;
+	/**
+	 * [Parameter][Min/Max]
+	 */
+	public ModelOutcome outcomes[][];
+
+	public TornadoEngine(AmuaModel myModel, int paramIndices[], double mins[], double maxs[]){
+		super(myModel);
+		this.paramIndices=paramIndices;
+		this.mins=mins;
+		this.maxs=maxs;
+	}
+
+	/**
+	 * Checks the model at the base case and with each parameter at its min and max value
+	 * @return Errors
+	 */
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(myModel.parseModel().size()>0){
+			errors.add("Errors in base case model!");
+			return(errors);
+		}
+		for(int p=0; p<paramIndices.length; p++){
+			int params[]=new int[]{paramIndices[p]};
+			String name=myModel.parameters.get(paramIndices[p]).name;
+			if(testValues(params, new double[]{mins[p]}).size()>0){errors.add("Error: "+name+" - Min value");}
+			if(testValues(params, new double[]{maxs[p]}).size()>0){errors.add("Error: "+name+" - Max value");}
+		}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		int numParams=paramIndices.length;
+		int numRuns=1+numParams*2;
+		start(listener, numRuns);
+		int params[][]=new int[numRuns][];
+		double values[][]=new double[numRuns][];
+		params[0]=new int[0]; values[0]=new double[0]; //baseline
+		for(int p=0; p<numParams; p++){
+			params[1+p*2]=new int[]{paramIndices[p]};
+			values[1+p*2]=new double[]{mins[p]};
+			params[2+p*2]=new int[]{paramIndices[p]};
+			values[2+p*2]=new double[]{maxs[p]};
+		}
+		ModelOutcome results[]=runPoints(params, values);
+
+		baseOutcome=results[0];
+		outcomes=new ModelOutcome[numParams][2];
+		for(int p=0; p<numParams; p++){
+			outcomes[p][0]=results[1+p*2];
+			outcomes[p][1]=results[2+p*2];
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package analysis;
+
+import java.util.ArrayList;
+
+import base.AmuaModel;
+
+/**
+ * Two-way sensitivity analysis over a grid of parameter values
+ */
+public class TwoWayEngine extends AnalysisEngine{
+	public int paramIndex1, paramIndex2;
+	public double min1, max1, min2, max2;
+	public int intervals;
+
+	//Results
+	/**
+	 * [Interval]
+	 */
+	public double paramValues1[], paramValues2[];
+	/**
+	 * [Interval 1][Interval 2]
+	 */
+	public ModelOutcome outcomes[][];
+
+	public TwoWayEngine(AmuaModel myModel, int paramIndex1, double min1, double max1, int paramIndex2, double min2, double max2, int intervals){
+		super(myModel);
+		this.paramIndex1=paramIndex1;
+		this.min1=min1;
+		this.max1=max1;
+		this.paramIndex2=paramIndex2;
+		this.min2=min2;
+		this.max2=max2;
+		this.intervals=intervals;
+	}
+
+	/**
+	 * Checks the model at the base case and with both parameters at their min and max values
+	 * @return Errors
+	 */
+	public ArrayList<String> validate(){
+		ArrayList<String> errors=new ArrayList<String>();
+		if(paramIndex1==paramIndex2){
+			errors.add("Please select two different parameters!");
+			return(errors);
+		}
+		if(myModel.parseModel().size()>0){
+			errors.add("Errors in base case model!");
+			return(errors);
+		}
+		int params[]=new int[]{paramIndex1,paramIndex2};
+		if(testValues(params, new double[]{min1,min2}).size()>0){errors.add("Error: Min value");}
+		if(testValues(params, new double[]{max1,max2}).size()>0){errors.add("Error: Max value");}
+		return(errors);
+	}
+
+	public void run(ProgressListener listener) throws Exception{
+		int numValues=intervals+1;
+		start(listener, numValues*numValues);
+		double step1=(max1-min1)/(intervals*1.0);
+		double step2=(max2-min2)/(intervals*1.0);
+		paramValues1=new double[numValues];
+		paramValues2=new double[numValues];
+		for(int i=0; i<numValues; i++){
+			paramValues1[i]=min1+(step1*i);
+			paramValues2[i]=min2+(step2*i);
+		}
+
+		int params[][]=new int[numValues*numValues][];
+		double values[][]=new double[numValues*numValues][];
+		int count=0;
+		for(int i=0; i<numValues; i++){
+			for(int j=0; j<numValues; j++){
+				params[count]=new int[]{paramIndex1,paramIndex2};
+				values[count]=new double[]{paramValues1[i],paramValues2[j]};
+				count++;
+			}
+		}
+		ModelOutcome results[]=runPoints(params, values);
+
+		outcomes=new ModelOutcome[numValues][numValues];
+		count=0;
+		for(int i=0; i<numValues; i++){
+			for(int j=0; j<numValues; j++){
+				outcomes[i][j]=results[count];
+				count++;
+			}
+		}
+	}
+}
\ No newline at end of file
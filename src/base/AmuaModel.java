@@ -17,6 +17,8 @@
  */
 
 package base;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStreamWriter;
@@ -31,6 +33,7 @@ import javax.swing.ProgressMonitor;
 import javax.swing.table.DefaultTableModel;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
@@ -57,10 +60,11 @@ import markov.MarkovTrace;
 import markov.MarkovTraceSummary;
 import markov.MarkovTree;
 import markov.PanelMarkov;
+import math.CompiledExpression;
+import math.ExpressionOptimizer;
 import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
-import math.Token;
 import tree.DecisionTree;
 import tree.PanelTree;
 import tree.TreeNode;
@@ -89,6 +93,10 @@ public class AmuaModel{
 	@XmlElement public int crnSeed; //CRN seed
 	@XmlElement public boolean displayIndResults;
 	@XmlElement public int numThreads=1;
+	@XmlElement public int chunkSize=0; //Markov microsimulation: number of simulants to generate and simulate at a time, 0=all at once
+	@XmlElement public boolean spillIndResults; //store individual results on disk when simulating in chunks
+	@XmlElement public double quantileError; //approximate rank error of individual-level quantiles (streaming sketches), 0=exact
+	@XmlElement public boolean fastSampling; //sample distributions with direct methods instead of inverse CDFs, ignored if CRN
 	//Subgroup settings
 	@XmlElement public boolean reportSubgroups;
 	@XmlElement public ArrayList<String> subgroupNames, subgroupDefinitions;
@@ -104,7 +112,8 @@ public class AmuaModel{
 	@XmlTransient public boolean unsavedChanges;
 	@XmlTransient public int strategyIndices[];
 	@XmlTransient public String strategyNames[];
-	@XmlTransient public Token subgroupTokens[][];
+	@XmlTransient public CompiledExpression subgroupTokens[];
+	@XmlTransient public ExpressionOptimizer exprOptimizer;
 	//sampling
 	@XmlTransient public boolean sampleParam, sampleVar;
 	@XmlTransient public MersenneTwisterFast generatorParam, generatorVar[], curGenerator[]; //thread-specific
@@ -118,6 +127,7 @@ public class AmuaModel{
 	@XmlTransient public PanelMarkov panelMarkov;
 	
 	@XmlTransient public boolean cluster=false;
+	@XmlTransient public boolean quiet=false; //no console progress, e.g. model replicas run by an analysis
 
 
 	//Constructor
@@ -238,6 +248,117 @@ public class AmuaModel{
 		}
 	}
 
+	/**
+	 * Initializes an unmarshalled model without a GUI (cluster, headless, or replica runs)
+	 */
+	public void openModelHeadless(){
+		cluster=true;
+		
+		//initialize model objects
+		if(parameters==null) {parameters=new ArrayList<Parameter>();}
+		if(variables==null) {variables=new ArrayList<Variable>();}
+		if(tables==null) {tables=new ArrayList<Table>();}
+		if(constraints==null) {constraints=new ArrayList<Constraint>();}
+		innateVariables=new ArrayList<Variable>();
+		if(subgroupNames==null){
+			subgroupNames=new ArrayList<String>();
+			subgroupDefinitions=new ArrayList<String>();
+		}
+		//parameter sets
+		if(parameterNames!=null){
+			int numSets=parameterSets.length;
+			for(int i=0; i<numSets; i++){
+				parameterSets[i].parseXMLValues();
+			}
+		}
+		
+		if(type==0) { //Decision Tree
+			tree.myModel=this;
+			TreeNode root=tree.nodes.get(0);
+			root.myModel=this;
+			root.tree=tree;
+			root.cost=new String[dimInfo.dimNames.length];
+			root.numDimensions=dimInfo.dimNames.length;
+			int size=tree.nodes.size();
+			for(int i=1; i<size; i++){ //Skip root
+				TreeNode curNode=tree.nodes.get(i);
+				curNode.myModel=this;
+				curNode.numDimensions=dimInfo.dimNames.length;
+				curNode.tree=tree;
+			}
+		}
+		else if(type==1) { //Markov
+			markov.myModel=this;
+			addT();
+			
+			MarkovNode root=markov.nodes.get(0);
+			root.myModel=this;
+			root.tree=markov;
+			root.cost=new String[dimInfo.dimNames.length];
+			root.numDimensions=dimInfo.dimNames.length;
+			int numChildren=root.childIndices.size();
+			for(int i=0; i<numChildren; i++){ //Skip root
+				int index=root.childIndices.get(i);
+				MarkovNode node=markov.nodes.get(index);
+				openMarkovNode(node);
+			}
+		}
+		
+		//Construct splines if needed
+		for(int t=0; t<tables.size(); t++){
+			Table curTable=tables.get(t);
+			curTable.myModel=this;
+			if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
+				curTable.constructSplines();
+			}
+		}
+	}
+	
+	private void openMarkovNode(MarkovNode node){
+		if(node.type==1){ //chain
+			node.chain=node; //set chain
+			if(node.stateNames==null) { //no state names saved
+				node.stateNames=new ArrayList<String>();
+			}
+		} 
+		node.myModel=this;
+		node.numDimensions=dimInfo.dimNames.length;
+		node.tree=markov;
+		int numChildren=node.childIndices.size();
+		for(int i=0; i<numChildren; i++){
+			int index=node.childIndices.get(i);
+			MarkovNode child=markov.nodes.get(index);
+			child.chain=node.chain; //pass chain reference
+			openMarkovNode(child);
+		}
+	}
+	
+	/**
+	 * Creates independent headless copies of this model, e.g. to run PSA iterations in parallel.
+	 * Replicas are built from the saved (XML) form of the model, so parameter values, locks, RNGs, and
+	 * simulation state are not shared with this model or with each other.
+	 * @param numReplicas Number of copies
+	 * @return Replicas, opened with {@link #openModelHeadless()}
+	 */
+	public AmuaModel[] replicate(int numReplicas) throws Exception{
+		JAXBContext context=JAXBContext.newInstance(AmuaModel.class);
+		Marshaller m=context.createMarshaller();
+		m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		m.marshal(this, out);
+		byte xml[]=out.toByteArray();
+		
+		AmuaModel replicas[]=new AmuaModel[numReplicas];
+		Unmarshaller un=context.createUnmarshaller();
+		for(int i=0; i<numReplicas; i++){
+			replicas[i]=(AmuaModel) un.unmarshal(new ByteArrayInputStream(xml));
+			replicas[i].openModelHeadless();
+			replicas[i].quiet=true;
+			replicas[i].errorLog=errorLog;
+		}
+		return(replicas);
+	}
+
 	public void refreshParamTable(){
 		mainForm.modelParameters.setRowCount(0);
 		int numParams=parameters.size();
@@ -531,8 +652,8 @@ public class AmuaModel{
 			curParam.valid=true;
 			if(curParam.locked==false){
 				try{
-					curParam.parsedTokens=Interpreter.parse(curParam.expression,this);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, false);
+					curParam.parsedTokens=null; //model objects may have changed, re-parse
+					curParam.value=Interpreter.evaluateTokens(curParam.parse(this), 0, false);
 					
 				}catch(Exception e){
 					curParam.valid=false;
@@ -547,10 +668,11 @@ public class AmuaModel{
 		for(int i=0; i<numVars; i++){
 			Variable curVar=variables.get(i);
 			curVar.valid=true;
+			curVar.circular=false;
+			curVar.dependents=new ArrayList<Variable>();
 			try{
-				curVar.parsedTokens=Interpreter.parse(curVar.expression, this);
-				curVar.value[0]=Interpreter.evaluateTokens(curVar.parsedTokens, 0, false);
-				curVar.dependents=new ArrayList<Variable>();
+				curVar.parsedTokens=null; //model objects may have changed, re-parse
+				curVar.parse(this);
 			}catch(Exception e){
 				curVar.valid=false;
 				curVar.parsedTokens=null;
@@ -558,17 +680,35 @@ public class AmuaModel{
 			}
 		}
 		//get variable dependents
+		Variable curT=null;
 		if(type==1) { //Markov
 			int indexT=getInnateVariableIndex("t");
-			Variable curT=innateVariables.get(indexT);
+			curT=innateVariables.get(indexT);
 			curT.dependents=new ArrayList<Variable>();
 		}
 		for(int i=0; i<numVars; i++){
 			Variable curVar=variables.get(i);
 			if(curVar.valid==true){
-				curVar.getDependents(this);
+				try{
+					curVar.getDependents(this);
+				}catch(Exception e){
+					curVar.valid=false;
+				}
+			}
+		}
+		Variable.checkCircular(variables); //before evaluating
+		for(int i=0; i<numVars; i++){
+			Variable curVar=variables.get(i);
+			if(curVar.valid==false){continue;}
+			try{
+				curVar.value[0]=Interpreter.evaluateTokens(curVar.parse(this), 0, false);
+			}catch(Exception e){
+				curVar.valid=false;
+				curVar.parsedTokens=null;
+				curVar.value[0]=null;
 			}
 		}
+		Variable.compileUpdatePlans(variables, curT);
 		
 		//constraints
 		int numConst=constraints.size();
@@ -767,7 +907,8 @@ public class AmuaModel{
 		for(int v=0; v<variables.size(); v++){
 			if(variables.get(v).valid==false){
 				parse=false;
-				objectErrors.add("Variable: "+variables.get(v).name);
+				if(variables.get(v).circular){objectErrors.add("Variable: "+variables.get(v).name+" (circular reference)");}
+				else{objectErrors.add("Variable: "+variables.get(v).name);}
 			}
 		}
 		for(int c=0; c<constraints.size(); c++){
@@ -807,6 +948,7 @@ public class AmuaModel{
 	}
 	
 	public ArrayList<String> parseModel(){
+		exprOptimizer=new ExpressionOptimizer(this); //model objects may have changed
 		if(type==0){return(tree.parseTree());}
 		else if(type==1){ //markov model
 			if(cluster==true) {
@@ -831,6 +973,7 @@ public class AmuaModel{
 		
 		if(simType==0 && cohortSize>1){console.print("Cohort size:\t"+cohortSize+"\n");}
 		else if(simType==1){console.print("Monte Carlo simulations:\t"+cohortSize+"\n");}
+		if(exprOptimizer!=null && !exprOptimizer.isEmpty()){console.print(exprOptimizer.getReport()+"\n");}
 	}
 	
 	public String getSimInfoHTML() {
@@ -876,7 +1019,7 @@ public class AmuaModel{
 				panelTree.tree.showEV=true;
 			}
 			evaluateParameters(); //get parameters
-			panelTree.tree.runModel(display,runReport); //run model
+			tree.runModel(display,runReport); //run model
 			runReport.getResults(true);
 			unlockParams(); //unlock parameters
 			
@@ -1456,7 +1599,7 @@ public class AmuaModel{
 			Parameter curParam=parameters.get(p);
 			if(curParam.locked==false){
 				//curParam.value=Interpreter.evaluate(curParam.expression, this,sampleParam);
-				curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, sampleParam);
+				curParam.value=Interpreter.evaluateTokens(curParam.parse(this), 0, sampleParam);
 				curParam.locked=true;
 			}
 		}
@@ -1465,7 +1608,7 @@ public class AmuaModel{
 	
 	public void parseSubgroups() throws Exception{
 		int numSubgroups=subgroupDefinitions.size();
-		subgroupTokens=new Token[numSubgroups][];
+		subgroupTokens=new CompiledExpression[numSubgroups];
 		for(int g=0; g<numSubgroups; g++){
 			subgroupTokens[g]=Interpreter.parse(subgroupDefinitions.get(g), this);
 		}
@@ -19,14 +19,19 @@
 package base;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 
 import main.Console;
 import main.ConsoleTable;
 import main.DimInfo;
 import math.MathUtils;
+import math.QuantileSketch;
 
 /**
  * Individual-level stats
@@ -63,6 +68,29 @@ public class MicroStats{
 	public double outcomesMed[], varsMed[]; //50%
 	public double outcomesQ3[], varsQ3[]; //75% 3rd Qu
 	
+	//Streaming
+	/**
+	 * Rank error used for quantile sketches if not specified
+	 */
+	public static final double DEFAULT_RANK_ERROR=0.005;
+	/**
+	 * True if summaries are updated as individual results are added, instead of keeping all individual results in memory
+	 */
+	boolean streaming;
+	/**
+	 * Sum of squared differences from the running mean
+	 */
+	double outcomesM2[], varsM2[];
+	/**
+	 * Quantile sketches, or null if individual results are stored on disk
+	 */
+	QuantileSketch outcomesSketch[], varsSketch[];
+	double rankError;
+	/**
+	 * Individual results stored in a temporary memory-mapped file, or null if not stored [Column]
+	 */
+	DoubleBuffer spill[];
+	
 	//Constructor
 	public MicroStats(AmuaModel myModel, int numPeople1){
 		this.myModel=myModel;
@@ -73,6 +101,155 @@ public class MicroStats{
 		numVars=myModel.variables.size();
 		variables=new double[numVars][numPeople];
 	}
+	
+	/**
+	 * Summarizes individual results as they are added with {@link #add(double[], double[])} or {@link #merge(MicroStats)}.
+	 * Memory use does not depend on the number of individuals.
+	 * @param rankError Approximate rank error of quantiles, see {@link QuantileSketch}
+	 */
+	public MicroStats(AmuaModel myModel, double rankError){
+		initStreaming(myModel);
+		this.rankError=rankError;
+		outcomesSketch=new QuantileSketch[numDim];
+		for(int d=0; d<numDim; d++){outcomesSketch[d]=new QuantileSketch(rankError);}
+		varsSketch=new QuantileSketch[numVars];
+		for(int v=0; v<numVars; v++){varsSketch[v]=new QuantileSketch(rankError);}
+	}
+	
+	/**
+	 * Summarizes individual results added in chunks with {@link #addChunk(int)}.  Individual results are stored in
+	 * a temporary memory-mapped file so exact quantiles can be calculated.
+	 * @param maxPeople Maximum number of individuals that will be added
+	 * @param chunkSize Maximum number of individuals in each chunk
+	 */
+	public MicroStats(AmuaModel myModel, int maxPeople, int chunkSize) throws IOException{
+		initStreaming(myModel);
+		outcomes=new double[numDim][chunkSize];
+		variables=new double[numVars][chunkSize];
+		
+		if(maxPeople>Integer.MAX_VALUE/8){
+			throw new IOException("Too many individuals to store on disk: "+maxPeople);
+		}
+		File file=File.createTempFile("amua_ind", ".bin");
+		file.deleteOnExit();
+		RandomAccessFile raf=new RandomAccessFile(file,"rw");
+		FileChannel channel=raf.getChannel();
+		long colBytes=maxPeople*8L;
+		spill=new DoubleBuffer[numDim+numVars];
+		for(int c=0; c<spill.length; c++){
+			spill[c]=channel.map(FileChannel.MapMode.READ_WRITE, c*colBytes, colBytes).asDoubleBuffer();
+		}
+		raf.close(); //mapped buffers stay valid
+	}
+	
+	private void initStreaming(AmuaModel myModel){
+		this.myModel=myModel;
+		this.dimInfo=myModel.dimInfo;
+		numDim=dimInfo.dimNames.length;
+		numVars=myModel.variables.size();
+		streaming=true;
+		
+		outcomesMean=new double[numDim]; outcomesM2=new double[numDim];
+		outcomesMin=new double[numDim]; outcomesMax=new double[numDim];
+		Arrays.fill(outcomesMin, Double.POSITIVE_INFINITY); Arrays.fill(outcomesMax, Double.NEGATIVE_INFINITY);
+		varsMean=new double[numVars]; varsM2=new double[numVars];
+		varsMin=new double[numVars]; varsMax=new double[numVars];
+		Arrays.fill(varsMin, Double.POSITIVE_INFINITY); Arrays.fill(varsMax, Double.NEGATIVE_INFINITY);
+	}
+	
+	/**
+	 * Returns an empty summary with the same quantile accuracy, to be added to separately (e.g. by another thread) and then merged
+	 */
+	public MicroStats newPartial(){
+		return(new MicroStats(myModel, rankError));
+	}
+	
+	/**
+	 * Adds one individual's results
+	 * @param personOutcomes [Dimension]
+	 * @param personVars [Variable]
+	 */
+	public void add(double personOutcomes[], double personVars[]){
+		numPeople++;
+		for(int d=0; d<numDim; d++){
+			addValue(personOutcomes[d], numPeople, d, outcomesMean, outcomesM2, outcomesMin, outcomesMax, outcomesSketch);
+		}
+		for(int v=0; v<numVars; v++){
+			addValue(personVars[v], numPeople, v, varsMean, varsM2, varsMin, varsMax, varsSketch);
+		}
+	}
+	
+	/**
+	 * Adds the first n individuals in outcomes and variables to the summaries.  The arrays can then be re-used for the next chunk.
+	 */
+	public void addChunk(int n){
+		for(int d=0; d<numDim; d++){
+			double vals[]=outcomes[d];
+			for(int p=0; p<n; p++){
+				addValue(vals[p], numPeople+p+1, d, outcomesMean, outcomesM2, outcomesMin, outcomesMax, outcomesSketch);
+			}
+			spill(d, vals, n);
+		}
+		for(int v=0; v<numVars; v++){
+			double vals[]=variables[v];
+			for(int p=0; p<n; p++){
+				addValue(vals[p], numPeople+p+1, v, varsMean, varsM2, varsMin, varsMax, varsSketch);
+			}
+			spill(numDim+v, vals, n);
+		}
+		numPeople+=n;
+	}
+	
+	/**
+	 * Adds the results summarized by another streaming MicroStats (e.g. from another thread or chunk) to this one.
+	 * Only quantile sketches are merged, not individual results stored on disk.
+	 */
+	public void merge(MicroStats other){
+		if(other.numPeople==0){return;}
+		int total=numPeople+other.numPeople;
+		for(int d=0; d<numDim; d++){
+			mergeValues(other.outcomesMean[d], other.outcomesM2[d], other.numPeople, total, d, outcomesMean, outcomesM2);
+			outcomesMin[d]=Math.min(outcomesMin[d], other.outcomesMin[d]);
+			outcomesMax[d]=Math.max(outcomesMax[d], other.outcomesMax[d]);
+			outcomesSketch[d].merge(other.outcomesSketch[d]);
+		}
+		for(int v=0; v<numVars; v++){
+			mergeValues(other.varsMean[v], other.varsM2[v], other.numPeople, total, v, varsMean, varsM2);
+			varsMin[v]=Math.min(varsMin[v], other.varsMin[v]);
+			varsMax[v]=Math.max(varsMax[v], other.varsMax[v]);
+			varsSketch[v].merge(other.varsSketch[v]);
+		}
+		numPeople=total;
+	}
+	
+	/**
+	 * Updates the running mean and sum of squares (Welford)
+	 * @param count Number of values including this one
+	 */
+	private static void addValue(double value, int count, int i, double mean[], double m2[], double min[], double max[], QuantileSketch sketch[]){
+		double delta=value-mean[i];
+		mean[i]+=delta/count;
+		m2[i]+=delta*(value-mean[i]);
+		min[i]=Math.min(min[i], value);
+		max[i]=Math.max(max[i], value);
+		if(sketch!=null){sketch[i].add(value);}
+	}
+	
+	/**
+	 * Combines the running mean and sum of squares with those of another set of values (Chan et al.)
+	 */
+	private void mergeValues(double otherMean, double otherM2, int otherCount, int total, int i, double mean[], double m2[]){
+		double delta=otherMean-mean[i];
+		mean[i]+=delta*(otherCount/(total*1.0));
+		m2[i]+=otherM2+(delta*delta*numPeople*(otherCount/(total*1.0)));
+	}
+	
+	private void spill(int col, double vals[], int n){
+		if(spill==null){return;}
+		DoubleBuffer buffer=spill[col];
+		buffer.position(numPeople);
+		buffer.put(vals, 0, n);
+	}
 
 	public void printSummary(Console console){
 		calcSummary();
@@ -164,6 +341,11 @@ public class MicroStats{
 	
 	
 	public void calcSummary(){
+		if(streaming){
+			calcStreamingSummary();
+			return;
+		}
+		
 		//mean
 		outcomesMean=new double[numDim];
 		for(int d=0; d<numDim; d++){
@@ -231,4 +413,83 @@ public class MicroStats{
 		}
 	}
 	
+	/**
+	 * Gets the SD from the running summaries, and quantiles from the individual results stored on disk or the quantile sketches
+	 */
+	private void calcStreamingSummary(){
+		outcomesSD=new double[numDim]; varsSD=new double[numVars];
+		for(int d=0; d<numDim; d++){outcomesSD[d]=Math.sqrt(outcomesM2[d]/(numPeople*1.0));}
+		for(int v=0; v<numVars; v++){varsSD[v]=Math.sqrt(varsM2[v]/(numPeople*1.0));}
+		
+		outcomesQ1=new double[numDim]; varsQ1=new double[numVars];
+		outcomesMed=new double[numDim]; varsMed=new double[numVars];
+		outcomesQ3=new double[numDim]; varsQ3=new double[numVars];
+		if(numPeople==0){
+			Arrays.fill(outcomesQ1, Double.NaN); Arrays.fill(varsQ1, Double.NaN);
+			Arrays.fill(outcomesMed, Double.NaN); Arrays.fill(varsMed, Double.NaN);
+			Arrays.fill(outcomesQ3, Double.NaN); Arrays.fill(varsQ3, Double.NaN);
+			return;
+		}
+		
+		int indexQ1=MathUtils.getQuantileIndex(numPeople, 0.25);
+		int indexMed=MathUtils.getQuantileIndex(numPeople, 0.50);
+		int indexQ3=MathUtils.getQuantileIndex(numPeople, 0.75);
+		for(int d=0; d<numDim; d++){
+			if(spill!=null){
+				outcomesQ1[d]=select(spill[d], numPeople, indexQ1);
+				outcomesMed[d]=select(spill[d], numPeople, indexMed);
+				outcomesQ3[d]=select(spill[d], numPeople, indexQ3);
+			}
+			else{
+				outcomesQ1[d]=outcomesSketch[d].getValue(indexQ1);
+				outcomesMed[d]=outcomesSketch[d].getValue(indexMed);
+				outcomesQ3[d]=outcomesSketch[d].getValue(indexQ3);
+			}
+		}
+		for(int v=0; v<numVars; v++){
+			if(spill!=null){
+				varsQ1[v]=select(spill[numDim+v], numPeople, indexQ1);
+				varsMed[v]=select(spill[numDim+v], numPeople, indexMed);
+				varsQ3[v]=select(spill[numDim+v], numPeople, indexQ3);
+			}
+			else{
+				varsQ1[v]=varsSketch[v].getValue(indexQ1);
+				varsMed[v]=varsSketch[v].getValue(indexMed);
+				varsQ3[v]=varsSketch[v].getValue(indexQ3);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the kth smallest of the first n values (same ordering as Arrays.sort), partially reordering the values in place
+	 */
+	private static double select(DoubleBuffer vals, int n, int k){
+		int left=0, right=n-1;
+		while(right>left){
+			//median of 3 pivot
+			double a=vals.get(left), b=vals.get((left+right)>>>1), c=vals.get(right);
+			double lo=a, hi=b;
+			if(Double.compare(lo, hi)>0){lo=b; hi=a;}
+			double pivot=c;
+			if(Double.compare(c, lo)<0){pivot=lo;}
+			else if(Double.compare(c, hi)>0){pivot=hi;}
+			//partition
+			int i=left, j=right;
+			while(i<=j){
+				while(Double.compare(vals.get(i), pivot)<0){i++;}
+				while(Double.compare(vals.get(j), pivot)>0){j--;}
+				if(i<=j){
+					double temp=vals.get(i);
+					vals.put(i, vals.get(j));
+					vals.put(j, temp);
+					i++; j--;
+				}
+			}
+			if(k<=j){right=j;}
+			else if(k>=i){left=i;}
+			else{return(vals.get(k));}
+		}
+		return(vals.get(k));
+	}
+	
 }
\ No newline at end of file
@@ -54,6 +54,10 @@ public class ModelSnapshot{
 	public int crnSeed;
 	public boolean displayIndResults;
 	public int numThreads;
+	public int chunkSize;
+	public boolean spillIndResults;
+	public double quantileError;
+	public boolean fastSampling;
 	public boolean reportSubgroups;
 	public ArrayList<String> subgroupNames, subgroupDefinitions;
 	
@@ -120,6 +124,10 @@ public class ModelSnapshot{
 		crnSeed=model.crnSeed;
 		displayIndResults=model.displayIndResults;
 		numThreads=model.numThreads;
+		chunkSize=model.chunkSize;
+		spillIndResults=model.spillIndResults;
+		quantileError=model.quantileError;
+		fastSampling=model.fastSampling;
 		
 		//subgroup settings
 		reportSubgroups=model.reportSubgroups;
@@ -157,6 +165,10 @@ public class ModelSnapshot{
 		model.crnSeed=crnSeed;
 		model.displayIndResults=displayIndResults;
 		model.numThreads=numThreads;
+		model.chunkSize=chunkSize;
+		model.spillIndResults=spillIndResults;
+		model.quantileError=quantileError;
+		model.fastSampling=fastSampling;
 		
 		model.reportSubgroups=reportSubgroups;
 		model.subgroupNames=subgroupNames;
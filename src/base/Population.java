@@ -0,0 +1,224 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package base;
+
+import main.Variable;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Simulated population stored by column, with one primitive array per attribute instead of one object per person.
+ * Variable values are copied into thread-specific Numerics while a person is simulated.
+ */
+public class Population{
+	static final byte INTEGER=0, DOUBLE=1, BOOL=2, OBJECT=3;
+	
+	public int size;
+	int numVars;
+	int numSubgroups;
+	
+	//Variables [variable][person]
+	double initValues[][], curValues[][];
+	byte initFormats[][], curFormats[][];
+	/**
+	 * Non-scalar values (e.g. matrices), allocated if needed [variable][person]
+	 */
+	Numeric initObjects[][], curObjects[][];
+	/**
+	 * Thread-specific variable values [thread][variable]
+	 */
+	Numeric threadValues[][];
+	
+	//Subgroups
+	int subgroupWords;
+	/**
+	 * Subgroup membership bits [person*subgroupWords+word]
+	 */
+	long subgroupBits[];
+	/**
+	 * Index of each person within a subgroup [group][person]
+	 */
+	public int subgroupIndex[][];
+	
+	//Markov
+	/**
+	 * Current Markov state [person]
+	 */
+	public int curState[];
+	/**
+	 * Cumulative rewards, and cumulative rewards from last cycle for the last cycle half-cycle correction [dimension][person]
+	 */
+	public double rewards[][], rewardsDis[][], prevRewards[][], prevRewardsDis[][];
+	
+	public Population(int size, int numVars, int numSubgroups, int numThreads){
+		this.size=size;
+		this.numVars=numVars;
+		this.numSubgroups=numSubgroups;
+		initValues=new double[numVars][size]; initFormats=new byte[numVars][size];
+		initObjects=new Numeric[numVars][];
+		threadValues=new Numeric[numThreads][numVars];
+		for(int n=0; n<numThreads; n++){
+			for(int v=0; v<numVars; v++){threadValues[n][v]=new Numeric(0);}
+		}
+		subgroupWords=(numSubgroups+63)/64;
+		subgroupBits=new long[size*subgroupWords];
+	}
+	
+	/**
+	 * Allocates current variable values, states, and rewards for Markov models
+	 */
+	public void initMarkov(int numDim){
+		curValues=new double[numVars][size]; curFormats=new byte[numVars][size];
+		curObjects=new Numeric[numVars][];
+		curState=new int[size];
+		rewards=new double[numDim][size]; rewardsDis=new double[numDim][size];
+		prevRewards=new double[numDim][size]; prevRewardsDis=new double[numDim][size];
+	}
+	
+	//Variables
+	/**
+	 * Stores the current values of all variables as the person's initial values
+	 */
+	public void storeInitVariables(int p, Variable variables[], int curThread) throws NumericException{
+		for(int v=0; v<numVars; v++){
+			Numeric value=variables[v].value[curThread];
+			byte format=getFormat(value);
+			initFormats[v][p]=format;
+			if(format==OBJECT){getObjects(true,v)[p]=value;}
+			else{initValues[v][p]=value.getValue();}
+		}
+	}
+	
+	/**
+	 * Sets the person's current variable values to their initial values
+	 */
+	public void resetVariables(int p){
+		for(int v=0; v<numVars; v++){
+			byte format=initFormats[v][p];
+			curFormats[v][p]=format;
+			if(format==OBJECT){getObjects(false,v)[p]=(initObjects[v][p]==null) ? null : initObjects[v][p].copy();}
+			else{curValues[v][p]=initValues[v][p];}
+		}
+	}
+	
+	/**
+	 * Points variables to a copy of the person's initial values
+	 */
+	public void loadInitVariables(int p, Variable variables[], int curThread){
+		load(initValues, initFormats, initObjects, true, p, variables, curThread);
+	}
+	
+	/**
+	 * Points variables to the person's current values
+	 */
+	public void loadVariables(int p, Variable variables[], int curThread){
+		load(curValues, curFormats, curObjects, false, p, variables, curThread);
+	}
+	
+	/**
+	 * Stores the current values of all variables for the person
+	 */
+	public void storeVariables(int p, Variable variables[], int curThread) throws NumericException{
+		for(int v=0; v<numVars; v++){
+			Numeric value=variables[v].value[curThread];
+			byte format=getFormat(value);
+			curFormats[v][p]=format;
+			if(format==OBJECT){getObjects(false,v)[p]=value;}
+			else{curValues[v][p]=value.getValue();}
+		}
+	}
+	
+	/**
+	 * Returns the person's current variable value, cast to a double as in {@link Numeric#getValue()}
+	 */
+	public double getVariableValue(int v, int p){
+		if(curFormats[v][p]==OBJECT){return(curObjects[v][p].getValue());}
+		return(curValues[v][p]);
+	}
+	
+	private void load(double values[][], byte formats[][], Numeric objects[][], boolean copyObjects, int p, Variable variables[], int curThread){
+		Numeric curValues[]=threadValues[curThread];
+		for(int v=0; v<numVars; v++){
+			byte format=formats[v][p];
+			if(format==OBJECT){
+				if(copyObjects && objects[v][p]!=null){variables[v].value[curThread]=objects[v][p].copy();}
+				else{variables[v].value[curThread]=objects[v][p];}
+			}
+			else{
+				Numeric curValue=curValues[v];
+				if(format==INTEGER){curValue.setInt((int) values[v][p]);}
+				else if(format==DOUBLE){curValue.setDouble(values[v][p]);}
+				else{curValue.setBool(values[v][p]==1);}
+				variables[v].value[curThread]=curValue;
+			}
+		}
+	}
+	
+	private static byte getFormat(Numeric value){
+		if(value==null){return(OBJECT);} //not evaluated
+		if(value.isInteger()){return(INTEGER);}
+		if(value.isDouble()){return(DOUBLE);}
+		if(value.isBoolean()){return(BOOL);}
+		return(OBJECT);
+	}
+	
+	/**
+	 * Returns the object column for a variable, allocating it the first time a non-scalar value is stored
+	 */
+	private synchronized Numeric[] getObjects(boolean init, int v){
+		Numeric objects[][]=curObjects;
+		if(init){objects=initObjects;}
+		if(objects[v]==null){objects[v]=new Numeric[size];}
+		return(objects[v]);
+	}
+	
+	//Subgroups
+	public boolean inSubgroup(int p, int g){
+		return((subgroupBits[p*subgroupWords+(g>>6)] & (1L<<g))!=0);
+	}
+	
+	/**
+	 * Sets subgroup membership.  Each person's bits are only written by one thread.
+	 */
+	public void setSubgroup(int p, int g, boolean member){
+		int index=p*subgroupWords+(g>>6);
+		if(member){subgroupBits[index]|=(1L<<g);}
+		else{subgroupBits[index]&=~(1L<<g);}
+	}
+	
+	/**
+	 * Gets the index of each person within their subgroups
+	 * @param n Number of people to index, less than the size if only part of the population is in use
+	 * @return Subgroup sizes
+	 */
+	public int[] indexSubgroups(int n){
+		int subgroupSize[]=new int[numSubgroups];
+		if(subgroupIndex==null){subgroupIndex=new int[numSubgroups][size];}
+		for(int p=0; p<n; p++){
+			for(int g=0; g<numSubgroups; g++){
+				if(inSubgroup(p,g)){
+					subgroupIndex[g][p]=subgroupSize[g];
+					subgroupSize[g]++;
+				}
+			}
+		}
+		return(subgroupSize);
+	}
+}
\ No newline at end of file
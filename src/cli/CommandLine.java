@@ -0,0 +1,710 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package cli;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import analysis.AnalysisEngine;
+import analysis.CalibrationEngine;
+import analysis.EVPIEngine;
+import analysis.ModelOutcome;
+import analysis.OneWayEngine;
+import analysis.PSAEngine;
+import analysis.ProgressListener;
+import analysis.ScenarioEngine;
+import analysis.ThresholdEngine;
+import analysis.TornadoEngine;
+import analysis.TwoWayEngine;
+import base.AmuaModel;
+import base.RunReport;
+import main.DimInfo;
+import main.Parameter;
+import main.ParameterSet;
+import main.Scenario;
+
+/**
+ * Headless command line runner.  Loads a model once, runs an analysis in-process on a pool of model replicas,
+ * and writes the results to CSV files.  No GUI classes are used.
+ *
+ * Usage: Amua &lt;command&gt; &lt;model file&gt; [-option value ...]
+ */
+public class CommandLine{
+	public static final String commands[]=new String[]{"run","psa","oneway","twoway","threshold","tornado","scenarios","evpi","calibrate"};
+
+	String args[];
+	String version;
+	String command;
+	String modelFile;
+	HashMap<String,ArrayList<String>> options;
+	AmuaModel myModel;
+	String outpath;
+	int numWorkers, numSubgroups;
+
+	public static boolean isCommand(String arg){
+		for(int i=0; i<commands.length; i++){
+			if(commands[i].equals(arg)){return(true);}
+		}
+		return(false);
+	}
+
+	//Constructor
+	public CommandLine(String args[], String version){
+		this.args=args;
+		this.version=version;
+	}
+
+	/**
+	 * Parses options of the form -key value, or -key for flags.  Keys can be repeated.
+	 */
+	private void parseArguments(){
+		options=new HashMap<String,ArrayList<String>>();
+		if(args.length>0){command=args[0];}
+		if(args.length>1){modelFile=args[1];}
+		int i=2;
+		while(i<args.length){
+			String key=args[i];
+			if(!isOption(key)){
+				throw new IllegalArgumentException("Unexpected argument: "+key);
+			}
+			key=key.substring(1);
+			ArrayList<String> values=options.get(key);
+			if(values==null){
+				values=new ArrayList<String>();
+				options.put(key, values);
+			}
+			if(i+1<args.length && !isOption(args[i+1])){
+				values.add(args[i+1]);
+				i+=2;
+			}
+			else{ //flag
+				values.add("true");
+				i++;
+			}
+		}
+	}
+
+	private static boolean isOption(String arg){
+		return(arg.startsWith("-") && arg.length()>1 && !Character.isDigit(arg.charAt(1)) && arg.charAt(1)!='.');
+	}
+
+	/**
+	 * Runs the command
+	 * @return Exit status: 0 if successful, 1 if the model or analysis has errors, 2 if the arguments are invalid
+	 */
+	public int run(){
+		try{
+			parseArguments();
+		}catch(IllegalArgumentException e){
+			System.out.println("Error: "+e.getMessage());
+			printUsage();
+			return(2);
+		}
+		if(command==null || modelFile==null || !isCommand(command)){
+			printUsage();
+			return(2);
+		}
+		try{
+			System.out.println("===========================================");
+			System.out.println("Amua "+version);
+			System.out.println("===========================================");
+			System.out.println("Command: "+command);
+			System.out.println("Model: "+modelFile);
+
+			//open model
+			System.out.println("Opening model...");
+			JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
+			Unmarshaller un = context.createUnmarshaller();
+			myModel = (AmuaModel) un.unmarshal(new File(modelFile));
+			myModel.openModelHeadless();
+
+			//check model
+			ArrayList<String> errorsBase=myModel.parseModel();
+			if(errorsBase.size()>0){
+				printErrors(errorsBase);
+				return(1);
+			}
+			System.out.println("Model checked!");
+			myModel.getStrategies();
+			numSubgroups=0;
+			if(myModel.simType==1 && myModel.reportSubgroups){numSubgroups=myModel.subgroupNames.size();}
+
+			outpath=getString("out", "");
+			if(outpath.length()>0 && (outpath.endsWith("/") || outpath.endsWith(File.separator))){
+				new File(outpath).mkdirs();
+			}
+			int defaultWorkers=Runtime.getRuntime().availableProcessors()/Math.max(1, myModel.numThreads);
+			numWorkers=Math.max(1, getInt("threads", defaultWorkers));
+			System.out.println("Workers: "+numWorkers);
+			System.out.println("Threads per worker: "+myModel.numThreads);
+			myModel.chunkSize=Math.max(0, getInt("chunk", myModel.chunkSize));
+			if(getBoolean("spill")){myModel.spillIndResults=true;}
+			if(myModel.chunkSize>0){System.out.println("Chunk size: "+myModel.chunkSize);}
+			if(getString("qerror", null)!=null){myModel.quantileError=Math.max(0, getDouble("qerror", null, "Quantile error"));}
+			if(getBoolean("events") && myModel.type==1){myModel.markov.eventDriven=true;}
+			if(getBoolean("fast")){myModel.fastSampling=true;}
+			System.out.println("Output path: "+outpath);
+
+			long startTime=System.currentTimeMillis();
+			boolean ok=false;
+			if(command.equals("run")){ok=runModel();}
+			else if(command.equals("psa")){ok=runPSA();}
+			else if(command.equals("oneway")){ok=runOneWay();}
+			else if(command.equals("twoway")){ok=runTwoWay();}
+			else if(command.equals("threshold")){ok=runThreshold();}
+			else if(command.equals("tornado")){ok=runTornado();}
+			else if(command.equals("scenarios")){ok=runScenarios();}
+			else if(command.equals("evpi")){ok=runEVPI();}
+			else if(command.equals("calibrate")){ok=runCalibration();}
+			long endTime=System.currentTimeMillis();
+			System.out.println("Run time: "+((endTime-startTime)/1000.0)+" s");
+			if(ok){return(0);}
+			return(1);
+		}catch(IllegalArgumentException e){
+			System.out.println("Error: "+e.getMessage());
+			printUsage();
+			return(2);
+		}catch(Exception e){
+			e.printStackTrace();
+			return(1);
+		}
+	}
+
+	private boolean runModel() throws Exception{
+		System.out.println("Running model...");
+		RunReport report=myModel.runModel(null, false);
+		ModelOutcome outcome=new ModelOutcome(myModel, report, numSubgroups);
+		BufferedWriter out=open("Results.csv");
+		out.write("Run"+getOutcomeHeaders()); out.newLine();
+		out.write("Base"+getOutcomeRow(outcome.ev, outcome.cea)); out.newLine();
+		out.close();
+		return(true);
+	}
+
+	private boolean runPSA() throws Exception{
+		final PSAEngine psa=new PSAEngine(myModel, getInt("n", 1000));
+		setSeed(psa);
+		psa.sampleParamSets=getBoolean("paramsets");
+		if(psa.sampleParamSets && (myModel.parameterSets==null || myModel.parameterSets.length==0)){
+			throw new IllegalArgumentException("No parameter sets found in model");
+		}
+		psa.numWorkers=Math.min(numWorkers, psa.numIterations);
+		System.out.println("Iterations: "+psa.numIterations);
+
+		//Stream iterations to file in order as they complete
+		final int numParams=myModel.parameters.size();
+		final BufferedWriter out=open("PSA.csv");
+		out.write("Iteration");
+		for(int v=0; v<numParams; v++){out.write(","+csv(myModel.parameters.get(v).name));}
+		out.write(getOutcomeHeaders());
+		out.newLine();
+		ConsoleProgress writer=new ConsoleProgress("Running PSA..."){
+			int next=0;
+			public synchronized void progress(int completed, int total){
+				try{
+					while(next<psa.numIterations && psa.isComplete(next)){
+						out.write((next+1)+"");
+						for(int v=0; v<numParams; v++){out.write(","+psa.paramValues[next][v].saveAsCSVString());}
+						out.write(getOutcomeRow(psa.outcomes[next], getCEA(psa.tables[next])));
+						out.newLine();
+						next++;
+					}
+				}catch(IOException e){
+					error=e;
+				}
+				super.progress(completed, total);
+			}
+		};
+		try{
+			psa.run(writer);
+			writer.progress(psa.getNumCompleted(), psa.numIterations); //flush
+		}finally{
+			out.close();
+		}
+		if(writer.error!=null){throw writer.error;}
+		return(true);
+	}
+
+	private boolean runOneWay() throws Exception{
+		int paramIndex=getParameterIndex(getString("param", null));
+		Parameter curParam=myModel.parameters.get(paramIndex);
+		double min=getDouble("min", curParam.sensMin, "Min value");
+		double max=getDouble("max", curParam.sensMax, "Max value");
+		OneWayEngine engine=new OneWayEngine(myModel, paramIndex, min, max, getInt("intervals", 10));
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Running one-way sensitivity analysis..."));
+
+		BufferedWriter out=open("OneWay.csv");
+		out.write(csv(curParam.name)+getOutcomeHeaders()); out.newLine();
+		for(int i=0; i<engine.outcomes.length; i++){
+			out.write(engine.paramValues[i]+getOutcomeRow(engine.outcomes[i].ev, engine.outcomes[i].cea)); out.newLine();
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean runTwoWay() throws Exception{
+		int paramIndex1=getParameterIndex(getString("param", null));
+		int paramIndex2=getParameterIndex(getString("param2", null));
+		Parameter param1=myModel.parameters.get(paramIndex1);
+		Parameter param2=myModel.parameters.get(paramIndex2);
+		double min1=getDouble("min", param1.sensMin, "Min value 1");
+		double max1=getDouble("max", param1.sensMax, "Max value 1");
+		double min2=getDouble("min2", param2.sensMin, "Min value 2");
+		double max2=getDouble("max2", param2.sensMax, "Max value 2");
+		TwoWayEngine engine=new TwoWayEngine(myModel, paramIndex1, min1, max1, paramIndex2, min2, max2, getInt("intervals", 10));
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Running two-way sensitivity analysis..."));
+
+		BufferedWriter out=open("TwoWay.csv");
+		out.write(csv(param1.name)+","+csv(param2.name)+getOutcomeHeaders()); out.newLine();
+		for(int i=0; i<engine.paramValues1.length; i++){
+			for(int j=0; j<engine.paramValues2.length; j++){
+				ModelOutcome curOutcome=engine.outcomes[i][j];
+				out.write(engine.paramValues1[i]+","+engine.paramValues2[j]+getOutcomeRow(curOutcome.ev, curOutcome.cea)); out.newLine();
+			}
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean runThreshold() throws Exception{
+		int paramIndex=getParameterIndex(getString("param", null));
+		Parameter curParam=myModel.parameters.get(paramIndex);
+		double min=getDouble("min", curParam.sensMin, "Min value");
+		double max=getDouble("max", curParam.sensMax, "Max value");
+		int strat1=getStrategyIndex(getString("strat1", null));
+		int strat2=getStrategyIndex(getString("strat2", null));
+		int outcome=getOutcomeIndex(getString("outcome", myModel.dimInfo.dimNames[0]));
+		ThresholdEngine engine=new ThresholdEngine(myModel, paramIndex, min, max, getInt("intervals", 10), strat1, strat2, outcome);
+		engine.tolerance=getDouble("tol", "0.001", "Tolerance");
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Running threshold analysis..."));
+
+		BufferedWriter out=open("Threshold.csv");
+		out.write(csv(curParam.name)+getOutcomeHeaders()); out.newLine();
+		for(int i=0; i<engine.outcomes.length; i++){
+			out.write(engine.paramValues[i]+getOutcomeRow(engine.outcomes[i].ev, engine.outcomes[i].cea)); out.newLine();
+		}
+		out.close();
+		if(engine.cross==false){
+			System.out.println("No intersection found in current range!");
+		}
+		else if(Double.isNaN(engine.threshold)){
+			System.out.println("No intersection found! Try increasing tolerance.");
+		}
+		else{
+			System.out.println("Threshold: "+curParam.name+" = "+engine.threshold+" (distance: "+engine.distance+")");
+		}
+		return(true);
+	}
+
+	private boolean runTornado() throws Exception{
+		ArrayList<Integer> indices=new ArrayList<Integer>();
+		ArrayList<Double> mins=new ArrayList<Double>(), maxs=new ArrayList<Double>();
+		ArrayList<String> params=options.get("param");
+		if(params==null){ //all parameters with sensitivity ranges
+			for(int p=0; p<myModel.parameters.size(); p++){
+				Parameter curParam=myModel.parameters.get(p);
+				if(curParam.sensMin!=null && curParam.sensMin.length()>0 && curParam.sensMax!=null && curParam.sensMax.length()>0){
+					indices.add(p);
+					mins.add(parseDouble(curParam.sensMin, curParam.name+" min"));
+					maxs.add(parseDouble(curParam.sensMax, curParam.name+" max"));
+				}
+			}
+		}
+		else{ //name or name:min:max
+			for(int i=0; i<params.size(); i++){
+				String parts[]=params.get(i).split(":");
+				int p=getParameterIndex(parts[0]);
+				Parameter curParam=myModel.parameters.get(p);
+				indices.add(p);
+				if(parts.length==3){
+					mins.add(parseDouble(parts[1], curParam.name+" min"));
+					maxs.add(parseDouble(parts[2], curParam.name+" max"));
+				}
+				else{
+					mins.add(parseDouble(curParam.sensMin, curParam.name+" min"));
+					maxs.add(parseDouble(curParam.sensMax, curParam.name+" max"));
+				}
+			}
+		}
+		int numParams=indices.size();
+		if(numParams==0){
+			throw new IllegalArgumentException("No parameters with sensitivity ranges found, use -param name:min:max");
+		}
+		int paramIndices[]=new int[numParams];
+		double paramMins[]=new double[numParams], paramMaxs[]=new double[numParams];
+		for(int p=0; p<numParams; p++){
+			paramIndices[p]=indices.get(p);
+			paramMins[p]=mins.get(p);
+			paramMaxs[p]=maxs.get(p);
+		}
+		TornadoEngine engine=new TornadoEngine(myModel, paramIndices, paramMins, paramMaxs);
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Running tornado diagram..."));
+
+		BufferedWriter out=open("Tornado.csv");
+		out.write("Parameter,Bound,Value"+getOutcomeHeaders()); out.newLine();
+		out.write("Base case,,"+getOutcomeRow(engine.baseOutcome.ev, engine.baseOutcome.cea)); out.newLine();
+		for(int p=0; p<numParams; p++){
+			String name=csv(myModel.parameters.get(paramIndices[p]).name);
+			ModelOutcome curMin=engine.outcomes[p][0], curMax=engine.outcomes[p][1];
+			out.write(name+",Min,"+paramMins[p]+getOutcomeRow(curMin.ev, curMin.cea)); out.newLine();
+			out.write(name+",Max,"+paramMaxs[p]+getOutcomeRow(curMax.ev, curMax.cea)); out.newLine();
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean runScenarios() throws Exception{
+		ArrayList<Scenario> scenarios=new ArrayList<Scenario>();
+		ArrayList<String> names=options.get("scenario");
+		if(myModel.scenarios!=null){
+			for(int i=0; i<myModel.scenarios.size(); i++){
+				Scenario curScenario=myModel.scenarios.get(i);
+				if(names==null || names.contains(curScenario.name)){scenarios.add(curScenario);}
+			}
+		}
+		if(names!=null && scenarios.size()!=names.size()){
+			throw new IllegalArgumentException("Scenario not found");
+		}
+		ScenarioEngine engine=new ScenarioEngine(myModel, scenarios);
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Running scenarios..."));
+		if(engine.errors.size()>0){printErrors(engine.errors);}
+
+		DimInfo info=myModel.dimInfo;
+		int numStrat=engine.numStrat;
+		int numDim=engine.numDim;
+		String outcomeNames[]=new String[engine.numOutcomes];
+		for(int d=0; d<numDim; d++){outcomeNames[d]=info.dimNames[d];}
+		outcomeNames[numDim]="ICER";
+		outcomeNames[numDim+1]="NMB";
+
+		//iterations
+		BufferedWriter out=open("Scenarios.csv");
+		out.write("Scenario,Iteration,Group");
+		for(int d=0; d<engine.numOutcomes; d++){
+			for(int s=0; s<numStrat; s++){out.write(","+csv(outcomeNames[d]+" "+myModel.strategyNames[s]));}
+		}
+		out.newLine();
+		for(int n=0; n<engine.numScenarios; n++){
+			for(int i=0; i<scenarios.get(n).numIterations; i++){
+				for(int g=0; g<numSubgroups+1; g++){
+					out.write(csv(scenarios.get(n).name)+","+(i+1)+","+csv(getGroupName(g)));
+					for(int d=0; d<engine.numOutcomes; d++){
+						for(int s=0; s<numStrat; s++){out.write(","+engine.results[n][g][d][s][i]);}
+					}
+					out.newLine();
+				}
+			}
+		}
+		out.close();
+
+		//summary
+		out=open("Scenarios_Summary.csv");
+		out.write("Scenario,Group,Outcome,Strategy,Mean,95% LB,95% UB"); out.newLine();
+		for(int n=0; n<engine.numScenarios; n++){
+			for(int g=0; g<numSubgroups+1; g++){
+				for(int d=0; d<engine.numOutcomes; d++){
+					for(int s=0; s<numStrat; s++){
+						out.write(csv(scenarios.get(n).name)+","+csv(getGroupName(g))+","+csv(outcomeNames[d])+","+csv(myModel.strategyNames[s]));
+						out.write(","+engine.meanResults[n][g][d][s]+","+engine.lbResults[n][g][d][s]+","+engine.ubResults[n][g][d][s]);
+						out.newLine();
+					}
+				}
+			}
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean runEVPI() throws Exception{
+		EVPIEngine engine=new EVPIEngine(myModel, getInt("n", 1000), getInt("bins", 10));
+		engine.seedParams=options.containsKey("seed");
+		engine.paramSeed=getInt("seed", 0);
+		if(!validate(engine.validate(), engine)){return(false);}
+		System.out.println("Iterations: "+engine.numIterations);
+		engine.run(new ConsoleProgress("Running EVPI..."));
+
+		int sign=engine.sign; //flip back to original scale
+		BufferedWriter out=open("EVPI.csv");
+		out.write("Estimand,Value"); out.newLine();
+		out.write("E[best] (Perfect Information),"+(sign*engine.bestOutcome)); out.newLine();
+		out.write("best(E) ("+csv(myModel.strategyNames[engine.bestStrat])+"),"+(sign*engine.bestMean)); out.newLine();
+		out.write("EVPI,"+engine.evpi); out.newLine();
+		for(int s=0; s<engine.numStrat; s++){
+			out.write(csv("p(Best)|Perfect Information "+myModel.strategyNames[s])+","+(engine.numBest[s]/(engine.numIterations*1.0))); out.newLine();
+		}
+		for(int p=0; p<engine.numParams; p++){
+			out.write(csv("EVPPI "+myModel.parameters.get(p).name)+","+engine.evppi[p]); out.newLine();
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean runCalibration() throws Exception{
+		String score=getString("score", null);
+		if(score==null){throw new IllegalArgumentException("Missing -score expression");}
+		CalibrationEngine engine=new CalibrationEngine(myModel, score, getInt("sets", 100));
+		String method=getString("method", "random");
+		if(method.equalsIgnoreCase("abc")){
+			engine.method=CalibrationEngine.ABC;
+			engine.threshold=getDouble("thresh", null, "ABC threshold");
+		}
+		else if(!method.equalsIgnoreCase("random")){
+			throw new IllegalArgumentException("Unknown calibration method: "+method);
+		}
+		engine.seedParams=options.containsKey("seed");
+		engine.paramSeed=getInt("seed", 0);
+		if(!validate(engine.validate(), engine)){return(false);}
+		engine.run(new ConsoleProgress("Calibrating..."));
+		System.out.println("Parameter sets scored: "+engine.numSampled);
+
+		//same format as parameter set import
+		int numParams=myModel.parameters.size();
+		BufferedWriter out=open("Calibration.csv");
+		out.write("ID,Score");
+		for(int v=0; v<numParams; v++){out.write(","+csv(myModel.parameters.get(v).name));}
+		out.newLine();
+		for(int i=0; i<engine.sets.length; i++){
+			ParameterSet curSet=engine.sets[i];
+			out.write(curSet.id+","+curSet.score);
+			for(int v=0; v<numParams; v++){out.write(","+curSet.values[v].saveAsCSVString());}
+			out.newLine();
+		}
+		out.close();
+		return(true);
+	}
+
+	private boolean validate(ArrayList<String> errors, AnalysisEngine engine){
+		if(errors.size()>0){
+			printErrors(errors);
+			return(false);
+		}
+		engine.numWorkers=numWorkers;
+		return(true);
+	}
+
+	private void setSeed(PSAEngine psa){
+		psa.seedParams=options.containsKey("seed");
+		psa.paramSeed=getInt("seed", 0);
+	}
+
+	/**
+	 * Outcome columns: EVs by dimension and strategy, then ICERs (CEA) or NMBs (BCA), repeated for each subgroup
+	 */
+	private String getOutcomeHeaders(){
+		DimInfo info=myModel.dimInfo;
+		String headers="";
+		for(int g=0; g<numSubgroups+1; g++){
+			String prefix="";
+			if(g>0){prefix=getGroupName(g)+" ";}
+			for(int d=0; d<info.dimNames.length; d++){
+				for(int s=0; s<myModel.strategyNames.length; s++){
+					headers+=","+csv(prefix+info.dimNames[d]+" "+myModel.strategyNames[s]);
+				}
+			}
+			if(info.analysisType==1 || info.analysisType==2){
+				String label="ICER";
+				if(info.analysisType==2){label="NMB";}
+				for(int s=0; s<myModel.strategyNames.length; s++){
+					headers+=","+csv(prefix+label+" "+myModel.strategyNames[s]);
+				}
+			}
+		}
+		return(headers);
+	}
+
+	private String getOutcomeRow(double ev[][][], double cea[][]){
+		StringBuilder row=new StringBuilder();
+		for(int g=0; g<ev.length; g++){
+			for(int d=0; d<ev[g].length; d++){
+				for(int s=0; s<ev[g][d].length; s++){row.append(",").append(ev[g][d][s]);}
+			}
+			if(cea!=null){
+				for(int s=0; s<cea[g].length; s++){row.append(",").append(cea[g][s]);}
+			}
+		}
+		return(row.toString());
+	}
+
+	/**
+	 * ICER (CEA) or NMB (BCA) by original strategy index from CEA/BCA tables [Group][Strategy]
+	 */
+	private double[][] getCEA(Object tables[][][]){
+		if(tables==null){return(null);}
+		int numStrat=myModel.strategyNames.length;
+		double cea[][]=new double[tables.length][numStrat];
+		for(int g=0; g<tables.length; g++){
+			for(int s=0; s<numStrat; s++){cea[g][s]=Double.NaN;}
+			for(int r=0; r<tables[g].length; r++){
+				int origStrat=(int) tables[g][r][0];
+				if(origStrat!=-1){cea[g][origStrat]=(double) tables[g][r][4];}
+			}
+		}
+		return(cea);
+	}
+
+	private String getGroupName(int g){
+		if(g==0){return("Overall");}
+		return(myModel.subgroupNames.get(g-1));
+	}
+
+	private BufferedWriter open(String name) throws IOException{
+		String file=outpath+name;
+		System.out.println("Writing "+file);
+		return(new BufferedWriter(new FileWriter(file)));
+	}
+
+	private static String csv(String str){
+		if(str.contains(",") || str.contains("\"")){
+			return("\""+str.replaceAll("\"", "\"\"")+"\"");
+		}
+		return(str);
+	}
+
+	private int getParameterIndex(String name){
+		if(name==null){throw new IllegalArgumentException("Missing parameter name");}
+		int index=myModel.getParameterIndex(name);
+		if(index==-1){throw new IllegalArgumentException("Parameter not found: "+name);}
+		return(index);
+	}
+
+	private int getStrategyIndex(String name){
+		if(name==null){throw new IllegalArgumentException("Missing strategy name");}
+		for(int s=0; s<myModel.strategyNames.length; s++){
+			if(myModel.strategyNames[s].equals(name)){return(s);}
+		}
+		throw new IllegalArgumentException("Strategy not found: "+name);
+	}
+
+	/**
+	 * @return Dimension index, or numDim for the ICER (CEA) or NMB (BCA)
+	 */
+	private int getOutcomeIndex(String name){
+		DimInfo info=myModel.dimInfo;
+		for(int d=0; d<info.dimNames.length; d++){
+			if(info.dimNames[d].equals(name) || info.dimSymbols[d].equals(name)){return(d);}
+		}
+		if((info.analysisType==1 && name.equalsIgnoreCase("icer")) || (info.analysisType==2 && name.equalsIgnoreCase("nmb"))){
+			return(info.dimNames.length);
+		}
+		throw new IllegalArgumentException("Outcome not found: "+name);
+	}
+
+	private String getString(String key, String defaultValue){
+		ArrayList<String> values=options.get(key);
+		if(values==null){return(defaultValue);}
+		return(values.get(values.size()-1));
+	}
+
+	private boolean getBoolean(String key){
+		String value=getString(key, "false");
+		return(value.equalsIgnoreCase("true"));
+	}
+
+	private int getInt(String key, int defaultValue){
+		String value=getString(key, null);
+		if(value==null){return(defaultValue);}
+		try{
+			return(Integer.parseInt(value.replaceAll(",", "")));
+		}catch(NumberFormatException e){
+			throw new IllegalArgumentException("Invalid integer for -"+key+": "+value);
+		}
+	}
+
+	/**
+	 * @param defaultValue Value to use if the option is not given, e.g. parameter sensitivity range
+	 */
+	private double getDouble(String key, String defaultValue, String label){
+		return(parseDouble(getString(key, defaultValue), label));
+	}
+
+	private static double parseDouble(String value, String label){
+		if(value==null || value.isEmpty()){throw new IllegalArgumentException(label+" missing!");}
+		try{
+			return(Double.parseDouble(value.replaceAll(",", ""))); //Replace any commas
+		}catch(NumberFormatException e){
+			throw new IllegalArgumentException("Invalid entry: "+label+" ("+value+")");
+		}
+	}
+
+	private static void printErrors(ArrayList<String> errors){
+		System.out.println(errors.size()+" errors found!");
+		for(int i=0; i<errors.size(); i++){
+			System.out.println(errors.get(i));
+		}
+	}
+
+	private static void printUsage(){
+		System.out.println("Usage: Amua <command> <model file> [-option value ...]");
+		System.out.println("Commands:");
+		System.out.println("  run        Run the base case");
+		System.out.println("  psa        Probabilistic sensitivity analysis: -n iterations [-seed s] [-paramsets]");
+		System.out.println("  oneway     One-way sensitivity: -param name [-min x] [-max y] [-intervals k]");
+		System.out.println("  twoway     Two-way sensitivity: -param name [-min x] [-max y] -param2 name [-min2 x] [-max2 y] [-intervals k]");
+		System.out.println("  threshold  Threshold analysis: -param name [-min x] [-max y] [-intervals k] -strat1 name -strat2 name [-outcome dim|icer|nmb] [-tol x]");
+		System.out.println("  tornado    Tornado diagram: [-param name[:min:max] ...], default all parameters with sensitivity ranges");
+		System.out.println("  scenarios  Run scenarios: [-scenario name ...], default all scenarios");
+		System.out.println("  evpi       Expected value of perfect information: -n iterations [-seed s] [-bins b]");
+		System.out.println("  calibrate  Calibrate a Markov model: -score expression [-sets n] [-method random|abc] [-thresh x] [-seed s]");
+		System.out.println("Options:");
+		System.out.println("  -out path      Output path prefix (directory if it ends with '/')");
+		System.out.println("  -threads n     Number of model replicas to run in parallel");
+		System.out.println("  -chunk n       Markov microsimulation: generate and simulate n individuals at a time");
+		System.out.println("  -spill         Store individual results on disk when simulating in chunks (exact quantiles)");
+		System.out.println("  -qerror x      Approximate rank error of individual-level quantiles (e.g. 0.001), 0=exact");
+		System.out.println("  -events        Markov microsimulation: sample times to transitions if probabilities do not change over time");
+		System.out.println("  -fast          Sample distributions with direct methods instead of inverse CDFs (ignored if the RNG is seeded)");
+		System.out.println("Min and max values default to the parameter's saved sensitivity range.");
+	}
+
+	/**
+	 * Prints progress to the console every 10 percent
+	 */
+	static class ConsoleProgress implements ProgressListener{
+		int lastPercent=-1;
+		Exception error;
+
+		ConsoleProgress(String label){
+			System.out.println(label);
+		}
+
+		public synchronized void progress(int completed, int total){
+			int percent=(int)((completed*10L)/Math.max(1, total))*10;
+			if(percent>lastPercent){
+				lastPercent=percent;
+				System.out.println(percent+"% ("+completed+"/"+total+")");
+			}
+		}
+
+		public boolean isCancelled(){
+			return(error!=null);
+		}
+	}
+}
\ No newline at end of file
@@ -87,7 +87,7 @@ public class ClusterPSA{
 				for(int v=0; v<numParams; v++){ //sample all parameters
 					Parameter curParam=myModel.parameters.get(v);
 					if(curParam.locked==false) {
-						curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
+						curParam.value=Interpreter.evaluateTokens(curParam.parse(myModel), 0, true);
 						curParam.locked=true;
 					}
 				}
@@ -27,12 +27,6 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.Unmarshaller;
 
 import base.AmuaModel;
-import main.Constraint;
-import main.Parameter;
-import main.Table;
-import main.Variable;
-import markov.MarkovNode;
-import tree.TreeNode;
 
 public class ClusterRun{
 	
@@ -65,62 +59,8 @@ public class ClusterRun{
 			JAXBContext context = JAXBContext.newInstance(AmuaModel.class);
 			Unmarshaller un = context.createUnmarshaller();
 			AmuaModel myModel = (AmuaModel) un.unmarshal(new File(model));
-			myModel.cluster=true;
+			myModel.openModelHeadless();
 			
-			//initialize model objects
-			if(myModel.parameters==null) {myModel.parameters=new ArrayList<Parameter>();}
-			if(myModel.variables==null) {myModel.variables=new ArrayList<Variable>();}
-			if(myModel.tables==null) {myModel.tables=new ArrayList<Table>();}
-			if(myModel.constraints==null) {myModel.constraints=new ArrayList<Constraint>();}
-			myModel.innateVariables=new ArrayList<Variable>();
-			if(myModel.subgroupNames==null){
-				myModel.subgroupNames=new ArrayList<String>();
-				myModel.subgroupDefinitions=new ArrayList<String>();
-			}
-			//parameter sets
-			if(myModel.parameterNames!=null){
-				int numSets=myModel.parameterSets.length;
-				for(int i=0; i<numSets; i++){
-					myModel.parameterSets[i].parseXMLValues();
-				}
-			}
-			
-			if(myModel.type==0) { //Decision Tree
-				myModel.tree.myModel=myModel;
-				TreeNode root=myModel.tree.nodes.get(0);
-				root.cost=new String[myModel.dimInfo.dimNames.length];
-				root.numDimensions=myModel.dimInfo.dimNames.length;
-				int size=myModel.tree.nodes.size();
-				for(int i=1; i<size; i++){ //Skip root
-					TreeNode curNode=myModel.tree.nodes.get(i);
-					curNode.myModel=myModel;
-					curNode.numDimensions=myModel.dimInfo.dimNames.length;
-					curNode.tree=myModel.tree;
-				}
-			}
-			else if(myModel.type==1) { //Markov
-				myModel.markov.myModel=myModel;
-				myModel.addT();
-				
-				MarkovNode root=myModel.markov.nodes.get(0);
-				root.cost=new String[myModel.dimInfo.dimNames.length];
-				root.numDimensions=myModel.dimInfo.dimNames.length;
-				int numChildren=root.childIndices.size();
-				for(int i=0; i<numChildren; i++){ //Skip root
-					int index=root.childIndices.get(i);
-					MarkovNode node=myModel.markov.nodes.get(index);
-					openMarkovNode(node, myModel);
-				}
-			}
-			
-			//Construct splines if needed
-			for(int t=0; t<myModel.tables.size(); t++){
-				Table curTable=myModel.tables.get(t);
-				curTable.myModel=myModel;
-				if(curTable.interpolate!=null && curTable.interpolate.matches("Cubic Splines")){
-					curTable.constructSplines();
-				}
-			}
 			//check model
 			ArrayList<String> errorsBase=myModel.parseModel();
 			if(errorsBase.size()>0){
@@ -161,25 +101,6 @@ public class ClusterRun{
 
 	}
 	
-	private void openMarkovNode(MarkovNode node, AmuaModel myModel){
-		if(node.type==1){ //chain
-			node.chain=node; //set chain
-			if(node.stateNames==null) { //no state names saved
-				node.stateNames=new ArrayList<String>();
-			}
-		} 
-		node.myModel=myModel;
-		node.numDimensions=myModel.dimInfo.dimNames.length;
-		node.tree=myModel.markov;
-		int numChildren=node.childIndices.size();
-		for(int i=0; i<numChildren; i++){
-			int index=node.childIndices.get(i);
-			MarkovNode child=myModel.markov.nodes.get(index);
-			child.chain=node.chain; //pass chain reference
-			openMarkovNode(child, myModel);
-		}
-	}
-	
 	private void writeModelProperties(AmuaModel myModel, String outpath) {
 		try {
 			FileWriter fstream = new FileWriter(outpath+"Properties.csv"); //Create new file
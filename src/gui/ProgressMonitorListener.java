@@ -0,0 +1,77 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package gui;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+
+import analysis.ProgressListener;
+import base.AmuaModel;
+
+/**
+ * Shows analysis engine progress and time left in a ProgressMonitor, and cancels the engine if the monitor is cancelled.
+ * Progress can be called from worker threads, the monitor is updated on the event dispatch thread in the same order.
+ */
+public class ProgressMonitorListener implements ProgressListener{
+	ProgressMonitor progress;
+	long startTime;
+
+	public ProgressMonitorListener(ProgressMonitor progress){
+		this.progress=progress;
+		startTime=System.currentTimeMillis();
+	}
+
+	public void progress(final int completed, final int total){
+		SwingUtilities.invokeLater(new Runnable(){
+			public void run(){
+				update(completed, total);
+			}
+		});
+	}
+
+	private void update(int completed, int total){
+		//Update progress
+		double prog=(completed/(total*1.0))*100;
+		long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
+		remTime=(long) (remTime*(100-prog));
+		remTime=remTime/1000;
+		String seconds = Integer.toString((int)(remTime % 60));
+		String minutes = Integer.toString((int)(remTime/60));
+		if(seconds.length()<2){seconds="0"+seconds;}
+		if(minutes.length()<2){minutes="0"+minutes;}
+		progress.setMaximum(total);
+		progress.setProgress(completed);
+		progress.setNote("Time left: "+minutes+":"+seconds);
+	}
+
+	public boolean isCancelled(){
+		return(progress.isCanceled());
+	}
+
+	/**
+	 * Number of model replicas to run an analysis on, 1 if a single Markov chain is selected since replicas run all chains
+	 */
+	public static int getNumWorkers(AmuaModel myModel, int numTasks){
+		int numWorkers=Runtime.getRuntime().availableProcessors()/Math.max(1, myModel.numThreads);
+		if(myModel.type==1 && myModel.panelMarkov.curNode!=null && myModel.panelMarkov.curNode.type==1){
+			numWorkers=1; //single Markov chain selected, run on this model
+		}
+		return(Math.max(1, Math.min(numWorkers, numTasks)));
+	}
+}
\ No newline at end of file
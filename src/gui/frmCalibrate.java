@@ -58,19 +58,14 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.CalibrationEngine;
 import base.AmuaModel;
-import base.RunReport;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
-import main.Parameter;
 import main.ParameterSet;
 import main.ScaledIcon;
 import main.StyledTextPane;
 import markov.MarkovNode;
-import math.Interpreter;
 import math.KernelSmooth;
-import math.Numeric;
 
 /**
  *
@@ -80,8 +75,6 @@ public class frmCalibrate {
 	public JFrame frmCalibrate;
 	AmuaModel myModel;
 	int numParams;
-	int numConst;
-	Numeric origValues[];
 	StyledTextPane textPaneExpression;
 	ArrayList<MarkovNode> chainRoots;
 	
@@ -125,12 +118,9 @@ public class frmCalibrate {
 			frmCalibrate.getContentPane().setLayout(gridBagLayout);
 			
 			numParams=myModel.parameters.size();
-			numConst=myModel.constraints.size();
 			paramNames=new String[numParams];
-			origValues=new Numeric[numParams];
 			for(int i=0; i<numParams; i++){
 				paramNames[i]=myModel.parameters.get(i).name;
-				origValues[i]=myModel.parameters.get(i).value.copy();
 			}
 			
 			JToolBar toolBar = new JToolBar();
@@ -566,127 +556,41 @@ public class frmCalibrate {
 									myModel.markov.showTrace=false;
 								}
 								
-								ArrayList<String> errorsBase=myModel.parseModel();
-								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmCalibrate, "Errors in base case model!");
-								}
-								else{
-									//initial run to build trace
-									RunReport curReport=new RunReport(myModel);
-									myModel.markov.runModel(false,curReport,false);
-								}
-								
-								//try evaluate score expression
+								//initial run to build trace and try evaluate score expression
 								String strScore=textPaneExpression.getText();
-								boolean go=true;
-								try{
-									Interpreter.evaluate(strScore, myModel, false);
-								}
-								catch(Exception e){
-									go=false;
-									JOptionPane.showMessageDialog(frmCalibrate,"Error in score expression: "+e.toString());
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
+								CalibrationEngine engine=new CalibrationEngine(myModel, strScore, Integer.parseInt(textNumSets.getText()));
+								ArrayList<String> errors=engine.validate();
+								for(int i=0; i<errors.size(); i++){
+									JOptionPane.showMessageDialog(frmCalibrate, errors.get(i));
 								}
-								if(go){
-									
+								if(errors.size()==0){
 									int method=comboMethod.getSelectedIndex();
-									numSets=Integer.parseInt(textNumSets.getText());
-									progress.setMaximum(numSets+1);
-									params=new ParameterSet[numSets];
+									numSets=engine.numSets;
+									progress.setMaximum(numSets);
 									
 									modelParams.setRowCount(0);
-									
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){myModel.curGenerator=new MersenneTwisterFast[1];}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									
-									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
+									for(int v=0; v<numParams; v++){
 										modelParams.addRow(new Object[]{null});
 										modelParams.setValueAt(myModel.parameters.get(v).name, v, 0);
 										modelParams.setValueAt(myModel.parameters.get(v).expression, v, 1);
 									}
-									//Initialize constraint expressions
-									for(int c=0; c<numConst; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
-									long startTime=System.currentTimeMillis();
-									boolean wasCancelled=false;
 									
-									if(method==0){ //random
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											sampleAll();
-											RunReport curReport=new RunReport(myModel);
-											myModel.markov.runModel(false,curReport,false);
-											double curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-											params[i]=new ParameterSet(myModel);
-											params[i].id=(i+1)+"";
-											params[i].score=curScore;
-											if(progress.isCanceled()){ //listen for cancel
-												numSets=i; //end for loop
-												wasCancelled=true;
-											}
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
-										}
-									}
-									else if(method==1){ //ABC
-										double thresh=Double.parseDouble((String) tableCalibSettings.getValueAt(0,1));
+									if(method==1){ //ABC
+										engine.method=CalibrationEngine.ABC;
+										engine.threshold=Double.parseDouble((String) tableCalibSettings.getValueAt(0,1));
 										progress.setMillisToPopup(0);
 										progress.setMillisToDecideToPopup(0);
-										progress.setProgress(0);
-										progress.setProgress(1);
-										progress.setNote("Sampling...");
-										
-										for(int i=0; i<numSets; i++){
-											progress.setProgress(i+1);
-											double curScore=thresh+1;
-											while(curScore>thresh){
-												sampleAll();
-												RunReport curReport=new RunReport(myModel);
-												myModel.markov.runModel(false,curReport,false);
-												curScore=Interpreter.evaluate(strScore, myModel, false).getDouble();
-												if(progress.isCanceled()){ //listen for cancel
-													curScore=thresh-1; //end while loop
-													numSets=i; //end for loop
-													wasCancelled=true;
-												}
-											}
-											if(wasCancelled==false){
-												params[i]=new ParameterSet(myModel);
-												params[i].id=(i+1)+"";
-												params[i].score=curScore;
-											}
-											
-											//Update progress bar
-											String remTime=estimateTime(startTime,i,numSets);
-											progress.setNote("Time left: "+remTime);
-											
-										}
 									}
 									
+									engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, numSets);
+									engine.run(new ProgressMonitorListener(progress));
+									params=engine.sets;
+									numSets=params.length; //kept sets if cancelled
+									
 									if(myModel.type==1){
 										myModel.markov.showTrace=origShowTrace;
 									}
 									
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
-									}
-									myModel.validateModelObjects();
-									
 									//Get parameter values
 									paramVals=new double[numParams][numSets];
 									double scores[]=new double[numSets];
@@ -706,7 +610,7 @@ public class frmCalibrate {
 												val=Double.NaN;
 											}
 											modelParamSets.setValueAt(val,i,2+j);
-											
+										
 											paramVals[j][i]=val;
 										}
 									}
@@ -733,15 +637,10 @@ public class frmCalibrate {
 									
 									btnSave.setEnabled(true);
 								}
-							} catch (Exception e) {
-								//Reset all parameters
-								myModel.sampleParam=false;
-								for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-									Parameter curParam=myModel.parameters.get(v);
-									curParam.locked=false;
-									curParam.value=origValues[v];
+								else if(myModel.type==1){
+									myModel.markov.showTrace=origShowTrace;
 								}
-								myModel.validateModelObjects();
+							} catch (Exception e) {
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmCalibrate, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -757,53 +656,4 @@ public class frmCalibrate {
 			myModel.errorLog.recordError(ex);
 		}
 	}
-	
-	private String estimateTime(long startTime,int i, int numSets){
-		double prog=((i+1)/(numSets*1.0))*100;
-    	long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-    	remTime=(long) (remTime*(100-prog));
-    	remTime=remTime/1000;
-    	String seconds = Integer.toString((int)(remTime % 60));
-    	String minutes = Integer.toString((int)(remTime/60));
-    	if(seconds.length()<2){seconds="0"+seconds;}
-    	if(minutes.length()<2){minutes="0"+minutes;}
-    	return(minutes+":"+seconds);
-    }
-	
-	private void sampleAll(){
-		try{
-		//Sample parameters
-		boolean validParams=false;
-		while(validParams==false){
-			for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-				Parameter curParam=myModel.parameters.get(v);
-				curParam.locked=false;
-				curParam.value=origValues[v];
-			}
-			
-			for(int v=0; v<numParams; v++){ //sample all parameters
-				Parameter curParam=myModel.parameters.get(v);
-				if(curParam.locked==false) {
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-					curParam.locked=true;
-				}
-			}
-			//check constraints
-			validParams=true;
-			int c=0;
-			while(validParams==true && c<numConst){
-				Constraint curConst=myModel.constraints.get(c);
-				validParams=curConst.checkConstraints(myModel);
-				c++;
-			}
-			if(validParams){ //check model for valid params
-				if(myModel.parseModel().size()!=0){validParams=false;}
-			}
-		}
-		}catch(Exception e){
-			e.printStackTrace();
-			JOptionPane.showMessageDialog(frmCalibrate, e.getMessage());
-			myModel.errorLog.recordError(e);
-		}
-	}
 }
@@ -34,8 +34,6 @@ import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.DefaultListModel;
@@ -73,19 +71,16 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.EVPIEngine;
+import analysis.PSAEngine;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
-import main.Constraint;
 import main.DimInfo;
 import main.HtmlSelection;
-import main.MersenneTwisterFast;
 import main.Parameter;
 import main.ScaledIcon;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 import javax.swing.JTextPane;
 import java.awt.Font;
 import javax.swing.JToolBar;
@@ -98,7 +93,6 @@ public class frmEVPI {
 	public JFrame frmEVPI;
 	AmuaModel myModel;
 	int numParams;
-	int numConstraints;
 	DefaultTableModel modelParams;
 	private JTable tableParams;
 
@@ -133,7 +127,6 @@ public class frmEVPI {
 	 */
 	double results[][];
 	
-	ArrayList<SortedResult> sortedResults;
 	
 	double evppiBins[][][];
 	boolean exportReady=false;
@@ -198,7 +191,6 @@ public class frmEVPI {
 			};
 
 			numParams=myModel.parameters.size();
-			numConstraints=myModel.constraints.size();
 			paramNames=new String[numParams];
 			for(int i=0; i<numParams; i++){
 				modelParams.addRow(new Object[]{null});
@@ -662,21 +654,9 @@ public class frmEVPI {
 									JOptionPane.showMessageDialog(frmEVPI, "Errors in base case model!");
 								}
 								else{
-									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
-									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
-									}
-																		
 									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
 									progress.setMaximum(numIterations);
+									int numBins=Integer.parseInt(textNumBins.getText());
 
 									numStrat=myModel.getStrategies();
 									int numOutcomes=comboDimensions.getItemCount();
@@ -696,195 +676,61 @@ public class frmEVPI {
 									dataParamsVal=new double[numParams][2][numIterations];
 									dataParamsCumDens=new double[numParams][2][numIterations];
 									
-									results=new double[numStrat][numIterations];
-									sortedResults=new ArrayList<SortedResult>();
-									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-									}
-									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
 									boolean origShowTrace=true;
 									if(myModel.type==1){
 										origShowTrace=myModel.markov.showTrace;
 										myModel.markov.showTrace=false;
 									}
 									
-									long startTime=System.currentTimeMillis();
-									
-									//reports=new RunReport[numIterations];
+									//Run PSA and calculate EVPI
+									EVPIEngine engine=new EVPIEngine(myModel, numIterations, numBins);
+									if(chckbxSeed.isSelected()){
+										engine.seedParams=true;
+										engine.paramSeed=Integer.parseInt(textSeed.getText());
+									}
+									engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, numIterations);
+									engine.run(new ProgressMonitorListener(progress));
+									boolean cancelled=engine.cancelled;
 									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
+									if(myModel.type==1){
+										myModel.markov.showTrace=origShowTrace;
+									}
 									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
-												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												if(myModel.parseModel().size()!=0){validParams=false;}
-											}
-										}
-
-										for(int v=0; v<numParams; v++){ //Record value
-											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
-											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
-											} catch(Exception e){
-												dataParamsIter[v][1][n]=Double.NaN;
+									if(cancelled==false){
+										PSAEngine psa=engine.psa;
+										for(int n=0; n<numIterations; n++){
+											for(int v=0; v<numParams; v++){ //Record value
+												dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
+												dataParamsIter[v][1][n]=engine.paramVals[v][n];
+												dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
 											}
-											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
-										} 
-
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										//reports[n]=myModel.runModel(null, false);
-										myModel.runModel(null, false);
-													
-										//Get EVs
-										for(int d=0; d<numDim; d++){
-											for(int s=0; s<numStrat; s++){
-												//overall
-												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
-												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
-												//subgroups
-												for(int g=0; g<numSubgroups; g++){
-													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
-													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
+											
+											//Get EVs
+											for(int d=0; d<numDim; d++){
+												for(int s=0; s<numStrat; s++){
+													for(int g=0; g<numSubgroups+1; g++){ //overall + subgroups
+														dataResultsIter[g][d][s][0][n]=n; dataResultsVal[g][d][s][0][n]=n;
+														double curOutcome=psa.outcomes[n][g][d][s];
+														dataResultsIter[g][d][s][1][n]=curOutcome; dataResultsVal[g][d][s][1][n]=curOutcome;
+													}
 												}
 											}
-										}
-										if(analysisType>0){ //CEA or BCA
-											if(analysisType==1){ //CEA
+											if(analysisType>0){ //CEA or BCA
 												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
-													//get baseline row
-													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-
+													Object table[][]=psa.tables[n][g];
 													for(int s=0; s<table.length; s++){	
 														int origStrat=(int) table[s][0];
 														if(origStrat!=-1){
 															dataResultsIter[g][numDim][origStrat][0][n]=n; dataResultsVal[g][numDim][origStrat][0][n]=n;
 															double curOutcome=(double) table[s][4];
 															dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-															CEAnotes[g][origStrat][n]=(String) table[s][5];
+															if(analysisType==1){CEAnotes[g][origStrat][n]=(String) table[s][5];}
 														}
 													}
 												}
 											}
-											else if(analysisType==2){ //BCA
-												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
-													//use first row as baseline
-													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
-													int baseIndex=0;
-													int baseRow=-1,curRow=0;
-													while(baseRow==-1 && curRow<table.length){
-														if((int)table[curRow][0]==baseIndex){
-															baseRow=curRow;
-														}
-														curRow++;
-													}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														dataResultsIter[g][numDim][origStrat][0][n]=n;	dataResultsVal[g][numDim][origStrat][0][n]=n;
-														double curOutcome=(double) table[s][4];
-														dataResultsIter[g][numDim][origStrat][1][n]=curOutcome; dataResultsVal[g][numDim][origStrat][1][n]=curOutcome;
-													}
-												}
-											}
-										}
-										
-										
-										//Get EVPI results
-										SortedResult curResult=new SortedResult(n,numStrat,numParams);
-										for(int p=0; p<numParams; p++){ //Record parameter value
-											curResult.paramVals[p]=dataParamsIter[p][1][n];
-										} 
-										if(analysisType==0) { //EV
-											for(int s=0; s<numStrat; s++) {
-												results[s][n]=myModel.getStrategyEV(s, myModel.dimInfo.objectiveDim);
-												curResult.outcomes[s]=results[s][n];
-											}
-										}
-										else { //CEA or BCA
-											for(int s=0; s<numStrat; s++) {
-												double cost=myModel.getStrategyEV(s, myModel.dimInfo.costDim);
-												double effect=myModel.getStrategyEV(s, myModel.dimInfo.effectDim);
-												double NMB=myModel.dimInfo.WTP*effect-cost;
-												results[s][n]=NMB;
-												curResult.outcomes[s]=results[s][n];
-											}
 										}
 										
-										sortedResults.add(curResult);
-																		
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
-										}
-									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
-									}
-									myModel.validateModelObjects();
-									
-									if(myModel.type==1){
-										myModel.markov.showTrace=origShowTrace;
-									}
-									
-									if(cancelled==false){
 										double meanResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
 										double lbResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
 										double ubResults[][][]=new double[numSubgroups+1][numOutcomes][numStrat];
@@ -917,125 +763,19 @@ public class frmEVPI {
 											}
 										}
 
-										//Calculate EVPI
-										int sign=1; //objective is to maximize outcome
-										if(analysisType==0 && myModel.dimInfo.objective==1) { //EV, minimize - change to maximize negative
-											sign=-1;
-										}
-										
-										double meanOutcomes[]=new double[numStrat];
-										int numBest[]=new int[numStrat];
-										double bestOutcome=0; //mean of max
-										for(int n=0; n<numIterations; n++) {
-											double curBest=Double.NEGATIVE_INFINITY;
-											int bestS=-1;
-											for(int s=0; s<numStrat; s++) {
-												double curRes=sign*results[s][n];
-												meanOutcomes[s]+=curRes;
-												if(curRes>curBest) {
-													curBest=curRes;
-													bestS=s;
-												}
-											}
-											bestOutcome+=curBest;
-											numBest[bestS]++;
-										}
-										bestOutcome/=(numIterations*1.0);
-										double bestMean=Double.NEGATIVE_INFINITY;
-										int bestStrat=-1;
-										for(int s=0; s<numStrat; s++) {
-											double curMean=meanOutcomes[s]/=(numIterations*1.0);
-											if(curMean>bestMean) {
-												bestMean=curMean;
-												bestStrat=s;
-											}
-										}
-										
 										//EVPI: E[max] - max E[]
-										double evpi=bestOutcome-bestMean;
-																				
-										//Calculate EVPPI (for each parameter)
-										double bestPPI[]=new double[numParams];
-										double evppi[]=new double[numParams];
-										
-										int numBins=Integer.parseInt(textNumBins.getText());
+										int sign=engine.sign;
+										double meanOutcomes[]=engine.meanOutcomes;
+										int numBest[]=engine.numBest;
+										double bestOutcome=engine.bestOutcome;
+										double bestMean=engine.bestMean;
+										int bestStrat=engine.bestStrat;
+										double evpi=engine.evpi;
+										double evppi[]=engine.evppi;
+										evppiBins=engine.evppiBins;
+										results=engine.results;
 										int reportNumBins=numBins;
 										
-										int numSamp=numIterations/numBins;
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-											double curMax[]=new double[numBins];
-											double avgMax=0;
-											for(int k=0; k<numBins; k++) {
-												int index0=k*numSamp;
-												int index1=index0+numSamp;
-												//calculate strategy mean within bin
-												double binMeans[]=new double[numStrat];
-												for(int i=index0; i<index1; i++) {
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]+=sortedResults.get(i).outcomes[s];
-													}
-												}
-												//get best strategy among bin means
-												double binMax=Double.NEGATIVE_INFINITY;
-												for(int s=0; s<numStrat; s++) {
-													binMeans[s]/=(numSamp*1.0);
-													binMax=Math.max(binMax, sign*binMeans[s]);
-												}
-												curMax[k]=binMax;
-												avgMax+=binMax;
-											}
-											avgMax/=(numBins*1.0);
-											bestPPI[p]=avgMax;
-											evppi[p]=avgMax-bestMean;
-										}
-										
-										//Calculate EVPPI for varying bin sizes
-										ArrayList<Integer> binSizes=new ArrayList<Integer>();
-										for(int b=1; b<numIterations/2; b++) {
-											if(numIterations%b==0) { //divides evenly
-												binSizes.add(b);
-											}
-										}
-										
-										evppiBins=new double[numParams][2][binSizes.size()];
-										
-										for(int p=0; p<numParams; p++) {
-											Collections.sort(sortedResults, new ResultComparator(-1)); //order by iteration (reset previous ordering)
-											Collections.sort(sortedResults, new ResultComparator(p)); //re-sort ascending by parameter
-										
-											for(int b=0; b<binSizes.size(); b++) { //number of bins
-												numBins=binSizes.get(b);
-												evppiBins[p][0][b]=numBins;
-												numSamp=numIterations/numBins;
-												double curMax[]=new double[numBins];
-												double avgMax=0;
-												for(int k=0; k<numBins; k++) {
-													int index0=k*numSamp;
-													int index1=index0+numSamp;
-													//calculate strategy mean within bin
-													double binMeans[]=new double[numStrat];
-													for(int i=index0; i<index1; i++) {
-														for(int s=0; s<numStrat; s++) {
-															binMeans[s]+=sortedResults.get(i).outcomes[s];
-														}
-													}
-													//get best strategy among bin means
-													double binMax=Double.NEGATIVE_INFINITY;
-													for(int s=0; s<numStrat; s++) {
-														binMeans[s]/=(numSamp*1.0);
-														binMax=Math.max(binMax, sign*binMeans[s]);
-													}
-													curMax[k]=binMax;
-													avgMax+=binMax;
-												}
-												avgMax/=(numBins*1.0);
-												evppiBins[p][1][b]=avgMax-bestMean;
-											}
-										}
-										
-										
 										//Update EVPPI chart
 										updateEVPPIChart();
 										
@@ -1352,32 +1092,3 @@ public class frmEVPI {
 		}
 	}
 }
-
-class SortedResult{
-	int iteration;
-	double outcomes[]; //strategy outcome of interest (e.g. NMB)
-	double paramVals[];
-	
-	SortedResult(int i, int numStrat, int numParams){ //constructor
-		iteration=i;
-		outcomes=new double[numStrat];
-		paramVals=new double[numParams];
-	}
-}
-
-class ResultComparator implements Comparator<SortedResult> {
-	int pIndex; //parameter index to sort by
-	
-	ResultComparator(int p){ //Constructor
-		this.pIndex=p;
-	}
-	
-	@Override public int compare(SortedResult o1, SortedResult o2) {
-		if(pIndex==-1) { //sort by iteration
-			return(Double.compare(o1.iteration, o2.iteration));
-		}
-		else { //sort by parameter value
-			return(Double.compare(o1.paramVals[pIndex], o2.paramVals[pIndex]));
-		}
-	}
-}
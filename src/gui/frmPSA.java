@@ -68,6 +68,7 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.PSAEngine;
 import base.AmuaModel;
 import base.RunReport;
 import base.RunReportSummary;
@@ -75,17 +76,12 @@ import filters.CSVFilter;
 import main.CEAHelper;
 import main.Console;
 import main.ConsoleTable;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
-import main.Parameter;
 import markov.MarkovNode;
 import markov.MarkovTrace;
 import markov.MarkovTraceSummary;
-import math.Interpreter;
 import math.KernelSmooth;
 import math.MathUtils;
-import math.Numeric;
 
 /**
  *
@@ -744,24 +740,7 @@ public class frmPSA {
 								}
 								else{
 									boolean cancelled=false;
-
-									myModel.sampleParam=true;
-									myModel.generatorParam=new MersenneTwisterFast();
-									if(myModel.curGenerator==null){
-										myModel.curGenerator=new MersenneTwisterFast[1];
-									}
-									myModel.curGenerator[0]=myModel.generatorParam;
-									if(chckbxSeed.isSelected()){
-										int seed=Integer.parseInt(textSeed.getText());
-										myModel.generatorParam.setSeed(seed);
-									}
-									myModel.simParamSets=false; //turn off use parameter sets (no looping through)
-									boolean sampleParamSets=chckbxSampleParameterSets.isSelected();
-									int numSets=-1;
-									if(sampleParamSets) {
-										numSets=myModel.parameterSets.length;
-									}
-																		
+									
 									numIterations=Integer.parseInt(textIterations.getText().replaceAll(",", ""));
 									progress.setMaximum(numIterations);
 
@@ -788,17 +767,6 @@ public class frmPSA {
 									
 									dataCEAC=new double[numStrat][][];
 									
-									//Get orig values for all parameters
-									Numeric origValues[]=new Numeric[numParams];
-									for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters
-										origValues[v]=myModel.parameters.get(v).value.copy();
-									}
-									
-									//Parse constraints
-									for(int c=0; c<numConstraints; c++){
-										myModel.constraints.get(c).parseConstraints();
-									}
-									
 									MarkovTrace traces[][][]=null;
 									ArrayList<MarkovNode> chainRoots=null;
 									int numChains = 0;
@@ -816,75 +784,30 @@ public class frmPSA {
 										myModel.markov.showTrace=false;
 									}
 									
-									long startTime=System.currentTimeMillis();
-									
-									reports=new RunReport[numIterations];
-									
-									for(int n=0; n<numIterations; n++){
-										//Update progress
-										double prog=((n+1)/(numIterations*1.0))*100;
-										long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-										remTime=(long) (remTime*(100-prog));
-										remTime=remTime/1000;
-										String seconds = Integer.toString((int)(remTime % 60));
-										String minutes = Integer.toString((int)(remTime/60));
-										if(seconds.length()<2){seconds="0"+seconds;}
-										if(minutes.length()<2){minutes="0"+minutes;}
-										progress.setProgress(n+1);
-										progress.setNote("Time left: "+minutes+":"+seconds);
-										
-										//Sample parameters
-										myModel.curGenerator[0]=myModel.generatorParam;
-										boolean validParams=false;
-										while(validParams==false){
-											for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-												Parameter curParam=myModel.parameters.get(v);
-												curParam.locked=false;
-												curParam.value=origValues[v];
-											}
+									//Run PSA
+									final PSAEngine psa=new PSAEngine(myModel,numIterations);
+									if(chckbxSeed.isSelected()){
+										psa.seedParams=true;
+										psa.paramSeed=Integer.parseInt(textSeed.getText());
+									}
+									psa.sampleParamSets=chckbxSampleParameterSets.isSelected();
+									psa.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, numIterations);
+									psa.run(new ProgressMonitorListener(progress));
+									cancelled=psa.cancelled;
+									reports=psa.reports;
 									
-											for(int v=0; v<numParams; v++){ //sample all parameters
-												Parameter curParam=myModel.parameters.get(v);
-												if(curParam.locked==false) {
-													curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-													curParam.locked=true;
-												}
-											}
-											//check constraints
-											validParams=true;
-											int c=0;
-											while(validParams==true && c<numConstraints){
-												Constraint curConst=myModel.constraints.get(c);
-												validParams=curConst.checkConstraints(myModel);
-												c++;
-											}
-											if(validParams){ //check model for valid params
-												ArrayList<String> errors=myModel.parseModel();
-												if(errors.size()!=0) {
-													validParams=false;
-												}
-											}
-										} //end sample params
-										if(sampleParamSets) {
-											int curSet=myModel.generatorParam.nextInt(numSets);
-											myModel.parameterSets[curSet].setParameters(myModel);
-										}
-										
-										
+									//Get results in iteration order
+									for(int n=0; n<numIterations && cancelled==false; n++){
 										for(int v=0; v<numParams; v++){ //Record value
 											dataParamsIter[v][0][n]=n; dataParamsVal[v][0][n]=n;
 											try{
-												dataParamsIter[v][1][n]=myModel.parameters.get(v).value.getDouble();
+												dataParamsIter[v][1][n]=psa.paramValues[n][v].getDouble();
 											} catch(Exception e){
 												dataParamsIter[v][1][n]=Double.NaN;
 											}
 											dataParamsVal[v][1][n]=dataParamsIter[v][1][n];
 										} 
 
-										//Run model
-										myModel.curGenerator=myModel.generatorVar;
-										reports[n]=myModel.runModel(null, false);
-										
 										if(myModel.type==1){ //Markov model
 											for(int c=0; c<numChains; c++){
 												traces[c][0][n]=reports[n].markovTraces.get(c); //overall
@@ -899,12 +822,12 @@ public class frmPSA {
 											for(int s=0; s<numStrat; s++){
 												//overall
 												dataResultsIter[0][d][s][0][n]=n; dataResultsVal[0][d][s][0][n]=n;
-												double curOutcome=myModel.getStrategyEV(s, d);
+												double curOutcome=psa.outcomes[n][0][d][s];
 												dataResultsIter[0][d][s][1][n]=curOutcome; dataResultsVal[0][d][s][1][n]=curOutcome;
 												//subgroups
 												for(int g=0; g<numSubgroups; g++){
 													dataResultsIter[g+1][d][s][0][n]=n; dataResultsVal[g+1][d][s][0][n]=n;
-													curOutcome=myModel.getSubgroupEV(g, s, d);
+													curOutcome=psa.outcomes[n][g+1][d][s];
 													dataResultsIter[g+1][d][s][1][n]=curOutcome; dataResultsVal[g+1][d][s][1][n]=curOutcome;
 												}
 											}
@@ -912,7 +835,7 @@ public class frmPSA {
 										if(analysisType>0){ //CEA or BCA
 											if(analysisType==1){ //CEA
 												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateICERs(myModel,g-1,true);
+													Object table[][]=psa.tables[n][g];
 													//get baseline row
 													int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
 													int baseRow=-1,curRow=0;
@@ -944,7 +867,7 @@ public class frmPSA {
 											}
 											else if(analysisType==2){ //BCA
 												for(int g=0; g<numSubgroups+1; g++){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,g-1,true);
+													Object table[][]=psa.tables[n][g];
 													//use first row as baseline
 													//int baseIndex=myModel.getStrategyIndex(myModel.dimInfo.baseScenario);
 													int baseIndex=0;
@@ -974,20 +897,7 @@ public class frmPSA {
 											}
 										}
 								
-										if(progress.isCanceled()){  //End loop
-											n=numIterations;
-											cancelled=true;
-										}
-									}
-
-									//Reset all parameters
-									myModel.sampleParam=false;
-									for(int v=0; v<numParams; v++){ //Reset 'locked' for all parameter and orig values
-										Parameter curParam=myModel.parameters.get(v);
-										curParam.locked=false;
-										curParam.value=origValues[v];
 									}
-									myModel.validateModelObjects();
 									
 									if(myModel.type==1){
 										myModel.markov.showTrace=origShowTrace;
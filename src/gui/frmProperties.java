@@ -114,6 +114,11 @@ public class frmProperties {
 	private JTextField textNumThreads;
 	JLabel lblThreads;
 	JButton btnSetToMax;
+	JCheckBox chckbxChunks;
+	private JTextField textChunkSize;
+	JCheckBox chckbxSpill;
+	JCheckBox chckbxFastSampling;
+	private JTextField textQuantileError;
 	
 	//Markov
 	private JTextField textMarkovMaxCycles;
@@ -127,6 +132,7 @@ public class frmProperties {
 	private JTextField textCyclesPerYear;
 	JCheckBox chckbxShowMarkovTrace;
 	JCheckBox chckbxCompileTraces;
+	JCheckBox chckbxEventDriven;
 	private JTextField textMarkovStateDecimals;
 	
 	//Subgroups
@@ -464,6 +470,10 @@ public class frmProperties {
 						chckbxCRN.setEnabled(false);
 						textCRNSeed.setEnabled(false);
 						chckbxDisplayIndResults.setEnabled(false);
+						chckbxChunks.setEnabled(false);
+						textChunkSize.setEnabled(false);
+						chckbxSpill.setEnabled(false);
+						textQuantileError.setEnabled(false);
 						tabbedPane.setEnabledAt(4, false); //no subgroups
 					}
 					else if(selected==1){ //Monte Carlo
@@ -472,6 +482,10 @@ public class frmProperties {
 						if(chckbxCRN.isSelected()){textCRNSeed.setEnabled(true);}
 						else{textCRNSeed.setEnabled(false);}
 						chckbxDisplayIndResults.setEnabled(true);
+						chckbxChunks.setEnabled(true);
+						textChunkSize.setEnabled(chckbxChunks.isSelected());
+						chckbxSpill.setEnabled(chckbxChunks.isSelected());
+						textQuantileError.setEnabled(true);
 						tabbedPane.setEnabledAt(4, true);
 					}
 				}
@@ -564,6 +578,52 @@ public class frmProperties {
 			panelSimulation.add(textNumThreads);
 			textNumThreads.setColumns(10);
 			
+			chckbxChunks = new JCheckBox("Simulate in chunks of");
+			chckbxChunks.setToolTipText("Markov models: Generate and simulate individuals in chunks to limit memory use");
+			chckbxChunks.setEnabled(false);
+			chckbxChunks.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent e) {
+					textChunkSize.setEnabled(chckbxChunks.isSelected());
+					chckbxSpill.setEnabled(chckbxChunks.isSelected());
+				}
+			});
+			chckbxChunks.setBounds(235, 45, 150, 18);
+			panelSimulation.add(chckbxChunks);
+			
+			textChunkSize = new JTextField();
+			textChunkSize.setEnabled(false);
+			textChunkSize.setText("1000000");
+			textChunkSize.setBounds(255, 67, 90, 28);
+			panelSimulation.add(textChunkSize);
+			textChunkSize.setColumns(10);
+			
+			JLabel lblSimulants = new JLabel("simulants");
+			lblSimulants.setBounds(350, 73, 60, 16);
+			panelSimulation.add(lblSimulants);
+			
+			chckbxSpill = new JCheckBox("Individual results on disk");
+			chckbxSpill.setEnabled(false);
+			chckbxSpill.setToolTipText("Store individual-level results in a temporary file to calculate exact quantiles");
+			chckbxSpill.setBounds(235, 105, 190, 18);
+			panelSimulation.add(chckbxSpill);
+			
+			JLabel lblQuantileError = new JLabel("Quantile error:");
+			lblQuantileError.setBounds(235, 135, 90, 16);
+			panelSimulation.add(lblQuantileError);
+			
+			textQuantileError = new JTextField();
+			textQuantileError.setEnabled(false);
+			textQuantileError.setToolTipText("Approximate rank error of individual-level quantiles (e.g. 0.001) to summarize results in constant memory, 0=exact");
+			textQuantileError.setText("0");
+			textQuantileError.setBounds(330, 129, 60, 28);
+			panelSimulation.add(textQuantileError);
+			textQuantileError.setColumns(10);
+			
+			chckbxFastSampling = new JCheckBox("Fast sampling");
+			chckbxFastSampling.setToolTipText("Sample distributions with direct methods instead of inverse CDFs (not used when the RNG is seeded)");
+			chckbxFastSampling.setBounds(235, 165, 190, 18);
+			panelSimulation.add(chckbxFastSampling);
+			
 			
 			
 			//Markov #######################################################################
@@ -670,6 +730,11 @@ public class frmProperties {
 			textCyclesPerYear.setBounds(361, 142, 57, 28);
 			panelMarkov.add(textCyclesPerYear);
 			
+			chckbxEventDriven = new JCheckBox("Time-to-event microsim");
+			chckbxEventDriven.setToolTipText("Monte Carlo: Sample the number of cycles until each transition if probabilities, costs, and rewards do not change over time");
+			chckbxEventDriven.setBounds(251, 176, 180, 18);
+			panelMarkov.add(chckbxEventDriven);
+			
 			
 			//Subgroups ###########################################################################
 			
@@ -838,6 +903,18 @@ public class frmProperties {
 			lblThreads.setEnabled(true);
 			btnSetToMax.setEnabled(true);
 		}
+		if(myModel.chunkSize>0){
+			chckbxChunks.setSelected(true);
+			textChunkSize.setText(myModel.chunkSize+"");
+			if(myModel.simType==1){
+				textChunkSize.setEnabled(true);
+				chckbxSpill.setEnabled(true);
+			}
+		}
+		chckbxSpill.setSelected(myModel.spillIndResults);
+		textQuantileError.setText(myModel.quantileError+"");
+		if(myModel.simType==1){textQuantileError.setEnabled(true);}
+		chckbxFastSampling.setSelected(myModel.fastSampling);
 	}
 	
 	private void displayMarkovSettings(){
@@ -845,6 +922,7 @@ public class frmProperties {
 		textMarkovMaxCycles.setText(myModel.markov.maxCycles+"");
 		chckbxShowMarkovTrace.setSelected(myModel.markov.showTrace);
 		chckbxCompileTraces.setSelected(myModel.markov.compileTraces);
+		chckbxEventDriven.setSelected(myModel.markov.eventDriven);
 		textMarkovStateDecimals.setText(myModel.markov.stateDecimals+"");
 		chckbxHalfcycleCorrection.setSelected(myModel.markov.halfCycleCorrection);
 		chckbxDiscount.setSelected(myModel.markov.discountRewards);
@@ -1075,6 +1153,9 @@ public class frmProperties {
 		int crnSeed=-1;
 		boolean displayIndResults=false;
 		int numThreads=1;
+		int chunkSize=0;
+		boolean spillIndResults=false;
+		double quantileError=0;
 		if(simType==0){ //Cohort
 			try{
 				String text=textCohortSize.getText().replaceAll(",",""); //remove commas
@@ -1103,6 +1184,28 @@ public class frmProperties {
 			
 			CRN=chckbxCRN.isSelected(); //CRN
 			displayIndResults=chckbxDisplayIndResults.isSelected();
+			if(chckbxChunks.isSelected()){ //get chunk size
+				try{
+					String text=textChunkSize.getText().replaceAll(",",""); //remove commas
+					chunkSize=Integer.parseInt(text);
+				} catch(Exception er){
+					chunkSize=-1;
+				}
+				if(chunkSize<=0){
+					valid=false;
+					JOptionPane.showMessageDialog(frmProperties, "Please enter a valid chunk size!");
+				}
+				spillIndResults=chckbxSpill.isSelected();
+			}
+			try{
+				quantileError=Double.parseDouble(textQuantileError.getText());
+			} catch(Exception er){
+				quantileError=-1;
+			}
+			if(quantileError<0 || quantileError>=1){
+				valid=false;
+				JOptionPane.showMessageDialog(frmProperties, "Please enter a valid quantile error!");
+			}
 			if(CRN){ //get seed
 				try{
 					String text=textCRNSeed.getText().replaceAll(",",""); //remove commas
@@ -1244,12 +1347,17 @@ public class frmProperties {
 			myModel.crnSeed=crnSeed;
 			myModel.displayIndResults=displayIndResults;
 			myModel.numThreads=numThreads;
+			myModel.chunkSize=chunkSize;
+			myModel.spillIndResults=spillIndResults;
+			myModel.quantileError=quantileError;
+			myModel.fastSampling=chckbxFastSampling.isSelected();
 			
 			//markov settings
 			if(myModel.type==1){
 				myModel.markov.maxCycles=maxCycles;
 				myModel.markov.showTrace=showTrace;
 				myModel.markov.compileTraces=compileTraces;
+				myModel.markov.eventDriven=chckbxEventDriven.isSelected();
 				myModel.markov.stateDecimals=statePrevDecimals;
 				myModel.markov.halfCycleCorrection=halfCycleCorrection;
 				
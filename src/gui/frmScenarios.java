@@ -32,7 +32,6 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.awt.event.ActionEvent;
 
 import javax.swing.DefaultListModel;
@@ -44,19 +43,15 @@ import java.awt.Toolkit;
 
 import javax.swing.JTable;
 import javax.swing.table.DefaultTableModel;
+import analysis.ScenarioEngine;
 import base.AmuaModel;
 import base.MicroStatsSummary;
 import base.RunReport;
 import base.RunReportSummary;
-import main.Constraint;
 import main.DimInfo;
-import main.MersenneTwisterFast;
-import main.Parameter;
 import main.ScaledIcon;
 import main.Scenario;
-import math.Interpreter;
 import math.MathUtils;
-import math.Numeric;
 
 import javax.swing.JFileChooser;
 import javax.swing.ListSelectionModel;
@@ -98,7 +93,6 @@ public class frmScenarios {
 	double meanResults[][][][];
 	double lbResults[][][][];
 	double ubResults[][][][];
-	double curResults[][][][];
 	
 	RunReport runReports[][];
 	RunReportSummary runReportSummaries[];
@@ -106,26 +100,9 @@ public class frmScenarios {
 	String CEAnotes[][][][];
 	ArrayList<Scenario> scenarios;
 
-	int numParams, numVars, numConstraints;
-	//original model settings
-	boolean origCRN;
-	int origSeed, origCohortSize;
-	
-	//analysis
-	int origAnalysisType, origObjective, origObjectiveDim, origCostDim, origEffectDim;
-	double origWTP;
-	String origBaseScenario;
-	int origExtendedDim;
-	
-	//markov
-	boolean origHalfCycleCorrection, origDiscountRewards;
-	double origDiscountRates[];
-	int origDiscountStartCycle;
+	int numVars;
 	boolean origShowTrace;
 	
-	//objects
-	String origParams[], origVars[];
-	
 	JTabbedPane tabbedPane;
 	DefaultTableModel modelResults[], modelIndResults[];
 	private JTable tableResults, tableIndResults;
@@ -543,7 +520,7 @@ public class frmScenarios {
 										out.write((i+1)+""); //Iteration
 										for(int d=0; d<numDim; d++){ //EVs
 											out.write(",");
-											for(int s=0; s<numStrat; s++){out.write(","+results[r][d][s][i]);}
+											for(int s=0; s<numStrat; s++){out.write(","+results[r][group][d][s][i]);}
 										}
 										if(analysisType>0){
 											out.write(",");
@@ -555,7 +532,7 @@ public class frmScenarios {
 												}
 											}
 											else if(analysisType==2){ //BCA
-												for(int s=0; s<numStrat; s++){out.write(","+results[r][group][numDim][s][i]);}
+												for(int s=0; s<numStrat; s++){out.write(","+results[r][group][numDim+1][s][i]);}
 											}
 										}
 										out.newLine();
@@ -624,74 +601,32 @@ public class frmScenarios {
 								scenarioIndices=listSchedule.getSelectedIndices();
 								numScenarios=scenarioIndices.length;
 								scenarioNames=new String[numScenarios];
+								ArrayList<Scenario> curScenarios=new ArrayList<Scenario>();
+								for(int n=0; n<numScenarios; n++){
+									curScenarios.add(scenarios.get(scenarioIndices[n]));
+									scenarioNames[n]=curScenarios.get(n).name;
+								}
 								
 								//Check model first
-								ArrayList<String> errorsBase=myModel.parseModel();
+								ScenarioEngine engine=new ScenarioEngine(myModel, curScenarios);
+								ArrayList<String> errorsBase=engine.validate();
 								if(errorsBase.size()>0){
-									JOptionPane.showMessageDialog(frmScenarios, "Errors in base case model!");
-								}
-								else if(numScenarios==0){
-									JOptionPane.showMessageDialog(frmScenarios, "Please select at least one scenario to run!");
+									JOptionPane.showMessageDialog(frmScenarios, errorsBase.get(0));
 								}
 								else{
-									boolean cancelled=false;
-									
 									//Run scenarios
 									numStrat=myModel.getStrategies();
 
 									DimInfo info=myModel.dimInfo;
 									int numDim=myModel.dimInfo.dimNames.length;
-									int numOutcomes=numDim+2; //Add ICER and NMB
-									
-									progress.setMaximum(numScenarios+1);
-
-									//Get orig settings
-									origCohortSize=myModel.cohortSize;
-									origCRN=myModel.CRN;
-									origSeed=myModel.crnSeed;
-									
-									//analysis
-									origAnalysisType=myModel.dimInfo.analysisType;
-									origObjective=myModel.dimInfo.objective;
-									origObjectiveDim=myModel.dimInfo.objectiveDim;
-									origCostDim=myModel.dimInfo.costDim;
-									origEffectDim=myModel.dimInfo.effectDim;
-									origWTP=myModel.dimInfo.WTP;
-									origBaseScenario=myModel.dimInfo.baseScenario;
-									origExtendedDim=myModel.dimInfo.extendedDim;
-									
-									//markov
-									if(myModel.type==1) {
-										origHalfCycleCorrection=myModel.markov.halfCycleCorrection;
-										origDiscountRewards=myModel.markov.discountRewards;
-										origDiscountRates=new double[numDim];
-										for(int d=0; d<numDim; d++) {
-											origDiscountRates[d]=myModel.markov.discountRates[d];
-										}
-										origDiscountStartCycle=myModel.markov.discountStartCycle;
-										
-										origShowTrace=myModel.markov.showTrace;
-										myModel.markov.showTrace=false; //don't show trace
-									}
-									
-									//objects
-									numParams=myModel.parameters.size();
-									origParams=new String[numParams];
-									for(int i=0; i<numParams; i++){
-										origParams[i]=myModel.parameters.get(i).expression;
-									}
 									numVars=myModel.variables.size();
-									origVars=new String[numVars];
-									for(int i=0; i<numVars; i++){
-										origVars[i]=myModel.variables.get(i).expression;
-									}
 									
 									//Get total number of iterations
 									int totalIterations=0, maxIterations=0;
 									for(int s=0; s<numScenarios; s++){
-										int curIterations=scenarios.get(scenarioIndices[s]).numIterations;
+										int curIterations=curScenarios.get(s).numIterations;
 										maxIterations=Math.max(maxIterations, curIterations);
-										totalIterations+=maxIterations;
+										totalIterations+=curIterations;
 									}
 									progress.setMaximum(totalIterations);
 									
@@ -764,295 +699,82 @@ public class frmScenarios {
 										}
 									}
 																		
-									results=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat][maxIterations];
-									CEAnotes=new String[numScenarios][numSubgroups+1][numStrat][maxIterations];
+									if(myModel.type==1) {
+										origShowTrace=myModel.markov.showTrace;
+										myModel.markov.showTrace=false; //don't show trace
+									}
+									
+									engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, maxIterations);
+									engine.run(new ProgressMonitorListener(progress));
 									
-									meanResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
-									lbResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
-									ubResults=new double[numScenarios][numSubgroups+1][numOutcomes][numStrat];
+									if(myModel.type==1) {
+										myModel.markov.showTrace=origShowTrace;
+									}
+									for(int e=0; e<engine.errors.size(); e++){
+										JOptionPane.showMessageDialog(frmScenarios, engine.errors.get(e));
+									}
 									
-									runReports=new RunReport[numScenarios][];
-									runReportSummaries=new RunReportSummary[numScenarios];
+									boolean cancelled=engine.cancelled;
+									results=engine.results;
+									CEAnotes=engine.CEAnotes;
+									meanResults=engine.meanResults;
+									lbResults=engine.lbResults;
+									ubResults=engine.ubResults;
+									runReports=engine.runReports;
+									runReportSummaries=engine.runReportSummaries;
 									
-									long startTime=System.currentTimeMillis();
-
-									int curProg=0;
-									for(int n=0; n<numScenarios; n++){
-										//Reset orig object expressions
-										resetModel();
-										myModel.validateModelObjects();
-
-										//Apply updates
-										Scenario curScenario=scenarios.get(scenarioIndices[n]);
-										scenarioNames[n]=curScenario.name;
-										curScenario.parseUpdates(myModel);
-										curScenario.applyUpdates(myModel);
-
-										//Check for errors
-										ArrayList<String> errors=myModel.parseModel();
-										if(errors.size()>0){
-											JOptionPane.showMessageDialog(frmScenarios, "Errors found in run: "+curScenario.name+"!");
-										}
-
-										//Run model
-										curResults=new double[numSubgroups+1][numOutcomes][numStrat][curScenario.numIterations];
-										runReports[n]=new RunReport[curScenario.numIterations];
-										
-										myModel.cohortSize=curScenario.cohortSize;
-										myModel.CRN=curScenario.crn1;
-										myModel.crnSeed=curScenario.seed1;
-										
-										//analysis
-										myModel.dimInfo.analysisType=curScenario.analysisType;
-										myModel.dimInfo.objective=curScenario.objective;
-										myModel.dimInfo.objectiveDim=curScenario.objectiveDim;
-										myModel.dimInfo.costDim=curScenario.costDim;
-										myModel.dimInfo.effectDim=curScenario.effectDim;
-										myModel.dimInfo.WTP=curScenario.WTP;
-										myModel.dimInfo.baseScenario=curScenario.baseScenario;
-										myModel.dimInfo.extendedDim=curScenario.extendedDim;
-										
-										//markov
-										if(myModel.type==1) {
-											myModel.markov.halfCycleCorrection=curScenario.halfCycleCorrection;
-											myModel.markov.discountRewards=curScenario.discountRewards;
-											if(curScenario.discountRewards) {
-												if(curScenario.discountRates==null || curScenario.discountRates.length!=numDim) {
-													JOptionPane.showMessageDialog(frmScenarios, "Error: Incorrect model dimensions in Scenario "+curScenario.name+" !");
-												}
-												else {
-													for(int d=0; d<numDim; d++) {
-														myModel.markov.discountRates[d]=curScenario.discountRates[d];
-													}
-												}
-												myModel.markov.discountStartCycle=curScenario.discountStartCycle;
-											}
-										}
-										
-										Numeric origValues[] = null;
-										if(curScenario.sampleParams){
-											myModel.sampleParam=true;
-											myModel.generatorParam=new MersenneTwisterFast();
-											if(curScenario.crn2){
-												myModel.generatorParam.setSeed(curScenario.seed2);
-											}
-											//Parse constraints
-											numConstraints=myModel.constraints.size();
-											for(int c=0; c<numConstraints; c++){
-												myModel.constraints.get(c).parseConstraints();
-											}
-											//Get orig values for all parameters
-											origValues=new Numeric[numParams];
-											for(int v=0; v<numParams; v++){
-												origValues[v]=myModel.parameters.get(v).value.copy();
-											}
-										}
-										
+									for(int n=0; n<numScenarios && cancelled==false; n++){
+										Scenario curScenario=curScenarios.get(n);
 										
-										for(int i=0; i<curScenario.numIterations; i++){
-											//Update progress
-											curProg++;
-											double prog=(curProg/(totalIterations*1.0))*100;
-											long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-											remTime=(long) (remTime*(100-prog));
-											remTime=remTime/1000;
-											String seconds = Integer.toString((int)(remTime % 60));
-											String minutes = Integer.toString((int)(remTime/60));
-											if(seconds.length()<2){seconds="0"+seconds;}
-											if(minutes.length()<2){minutes="0"+minutes;}
-											progress.setProgress(curProg);
-											progress.setNote("Time left: "+minutes+":"+seconds);
-
-											if(curScenario.sampleParams){
-												myModel.curGenerator[0]=myModel.generatorParam;
-												boolean validParams=false;
-												while(validParams==false){
-													for(int v=0; v<numParams; v++){ //Reset 'fixed' for all parameters and orig values
-														Parameter curParam=myModel.parameters.get(v);
-														curParam.locked=false;
-														curParam.value=origValues[v];
-													}
-													for(int v=0; v<numParams; v++){ //sample all parameters
-														Parameter curParam=myModel.parameters.get(v);
-														if(curParam.locked==false) {
-															curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens, 0, true);
-															curParam.locked=true;
-														}
-													}
-													//check constraints
-													validParams=true;
-													int c=0;
-													while(validParams==true && c<numConstraints){
-														Constraint curConst=myModel.constraints.get(c);
-														validParams=curConst.checkConstraints(myModel);
-														c++;
-													}
-													if(validParams){ //check model for valid params
-														if(myModel.parseModel().size()!=0){validParams=false;}
-													}
-												}
-											}
-											else if(curScenario.useParamSets && myModel.parameterSets!=null) {
-												int numSets=myModel.parameterSets.length;
-												int curSet=i%numSets; //keep looping over sets
-												myModel.parameterSets[curSet].setParameters(myModel);
-												curScenario.overwriteParams(myModel);
-											}
-											
-											
-											RunReport curReport=myModel.runModel(null, false);
-											runReports[n][i]=curReport;
-
-											//Get EVs
-											for(int d=0; d<numDim; d++){
-												for(int s=0; s<numStrat; s++){
-													//overall
-													results[n][0][d][s][i]=curReport.outcomeEVs[d][s];
-													curResults[0][d][s][i]=results[n][0][d][s][i];
-													meanResults[n][0][d][s]+=results[n][0][d][s][i];
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														results[n][g+1][d][s][i]=curReport.outcomeEVsGroup[g][d][s];
-														curResults[g+1][d][s][i]=results[n][g+1][d][s][i];
-														meanResults[n][g+1][d][s]+=results[n][g+1][d][s][i];
+										//Append results to table
+										for(int g=0; g<numSubgroups+1; g++){
+											modelResults[g].addRow(new Object[]{null});
+											modelResults[g].setValueAt(curScenario.name, n, 0);
+											int curCol=1;
+											if(maxIterations==1){ //no uncertainty
+												for(int d=0; d<numDim; d++){
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
 													}
 												}
-											}
-											if(curScenario.analysisType>0){ //CEA or BCA
-												if(curScenario.analysisType==1){ //CEA
-													//overall
-													for(int s=0; s<curReport.table.length; s++){	
-														int origStrat=(int) curReport.table[s][0];
-														if(origStrat!=-1){
-															double val=Double.NaN;
-															try{
-																//val=Double.parseDouble((String) curReport.table[s][4]);
-																val=Double.parseDouble(curReport.table[s][4]+"");
-															} catch(Exception err){
-																//err.printStackTrace();
-																//do nothing
-															}
-															results[n][0][numDim][origStrat][i]=val;
-															curResults[0][numDim][origStrat][i]=val;
-															meanResults[n][0][numDim][origStrat]+=val;
-															CEAnotes[n][0][origStrat][i]=(String) curReport.table[s][5];
-														}
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														for(int s=0; s<curReport.tableGroup[g].length; s++){	
-															int origStrat=(int) curReport.tableGroup[g][s][0];
-															if(origStrat!=-1){
-																double val=Double.NaN;
-																try{
-																	val=Double.parseDouble((String) curReport.tableGroup[g][s][4]);
-																} catch(Exception err){
-																	//do nothing
-																}
-																results[n][g+1][numDim][origStrat][i]=val;
-																curResults[g+1][numDim][origStrat][i]=val;
-																meanResults[n][g+1][numDim][origStrat]+=val;
-																CEAnotes[n][g+1][origStrat][i]=(String) curReport.tableGroup[g][s][5];
-															}
-														}
+												if(curScenario.analysisType==1) { //cea
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
 													}
-													
 												}
-												else if(curScenario.analysisType==2){
-													//overall
-													for(int s=0; s<curReport.table.length; s++){	
-														int origStrat=(int) curReport.table[s][0];
-														results[n][0][numDim+1][origStrat][i]=(double) curReport.table[s][4];
-														curResults[0][numDim+1][origStrat][i]=(double) curReport.table[s][4];
-														meanResults[n][0][numDim+1][origStrat]+=(double) curReport.table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														for(int s=0; s<curReport.tableGroup[g].length; s++){	
-															int origStrat=(int) curReport.tableGroup[g][s][0];
-															results[n][g+1][numDim+1][origStrat][i]=(double) curReport.tableGroup[g][s][4];
-															curResults[g+1][numDim+1][origStrat][i]=(double) curReport.tableGroup[g][s][4];
-															meanResults[n][g+1][numDim+1][origStrat]+=(double) curReport.tableGroup[g][s][4];
-														}
+												else if(curScenario.analysisType==2) { //bca
+													curCol+=numStrat; //skip icers
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
 													}
 												}
 											}
-
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=curScenario.numIterations;
-												n=numScenarios;
-											}
-										} //end iterations loop
-										
-										//Calculate results summary
-										if(cancelled==false){
-											int bounds[]=MathUtils.getBoundIndices(curScenario.numIterations);
-											int indexLB=bounds[0], indexUB=bounds[1];
-											for(int d=0; d<numOutcomes; d++){
-												for(int s=0; s<numStrat; s++){
-													for(int g=0; g<numSubgroups+1; g++){ //overall + subgroups
-														meanResults[n][g][d][s]/=(curScenario.numIterations*1.0);
-														Arrays.sort(curResults[g][d][s]);//bounds
-														lbResults[n][g][d][s]=curResults[g][d][s][indexLB];
-														ubResults[n][g][d][s]=curResults[g][d][s][indexUB];
+											else{ //mean and bounds
+												for(int d=0; d<numDim; d++){
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
 													}
 												}
-											}
-
-											//Append results to table
-											for(int g=0; g<numSubgroups+1; g++){
-												modelResults[g].addRow(new Object[]{null});
-												modelResults[g].setValueAt(curScenario.name, n, 0);
-												int curCol=1;
-												if(maxIterations==1){ //no uncertainty
-													for(int d=0; d<numDim; d++){
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
-														}
-													}
-													if(curScenario.analysisType==1) { //cea
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
-														}
-													}
-													else if(curScenario.analysisType==2) { //bca
-														curCol+=numStrat; //skip icers
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
-														}
+												if(curScenario.analysisType==1) { //cea
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
 													}
 												}
-												else{ //mean and bounds
-													for(int d=0; d<numDim; d++){
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][d][s],info.decimals[d]), n, curCol); curCol++;
-														}
-													}
-													if(curScenario.analysisType==1) { //cea
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][numDim][s],info.decimals[info.costDim]), n, curCol); curCol++;
-														}
-													}
-													else if(curScenario.analysisType==2) { //bca
-														curCol+=(numStrat*3); //skip icers
-														for(int s=0; s<numStrat; s++){
-															modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
-															modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
-														}
+												else if(curScenario.analysisType==2) { //bca
+													curCol+=(numStrat*3); //skip icers
+													for(int s=0; s<numStrat; s++){
+														modelResults[g].setValueAt(MathUtils.round(meanResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(lbResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
+														modelResults[g].setValueAt(MathUtils.round(ubResults[n][g][numDim+1][s],info.decimals[info.costDim]), n, curCol); curCol++;
 													}
 												}
 											}
 										}
 										
-										//Get reports summary
-										runReportSummaries[n]=new RunReportSummary(runReports[n]);
-											
 										//Get ind results summary
 										if(cancelled==false && myModel.simType==1 && myModel.displayIndResults==true){
 											for(int s=0; s<numStrat; s++){
@@ -1119,12 +841,7 @@ public class frmScenarios {
 											}
 										}
 										
-									} //end scenarios loop
-									if(myModel.type==1) {
-										myModel.markov.showTrace=origShowTrace;
 									}
-									resetModel();
-									myModel.validateModelObjects();
 									progress.close();
 									if(cancelled==false){
 										btnExport.setEnabled(true);
@@ -1132,12 +849,9 @@ public class frmScenarios {
 									
 								}
 							} catch (Exception e) {
-								//Reset orig model expressions
 								if(myModel.type==1) {
 									myModel.markov.showTrace=origShowTrace;
 								}
-								resetModel();
-								myModel.validateModelObjects();
 								e.printStackTrace();
 								JOptionPane.showMessageDialog(frmScenarios, e.getMessage());
 								myModel.errorLog.recordError(e);
@@ -1156,41 +870,6 @@ public class frmScenarios {
 		}
 	}
 
-	private void resetModel(){
-		myModel.cohortSize=origCohortSize;
-		myModel.CRN=origCRN;
-		myModel.crnSeed=origSeed;
-		
-		//analysis
-		myModel.dimInfo.analysisType=origAnalysisType;
-		myModel.dimInfo.objective=origObjective;
-		myModel.dimInfo.objectiveDim=origObjectiveDim;
-		myModel.dimInfo.costDim=origCostDim;
-		myModel.dimInfo.effectDim=origEffectDim;
-		myModel.dimInfo.WTP=origWTP;
-		myModel.dimInfo.baseScenario=origBaseScenario;
-		myModel.dimInfo.extendedDim=origExtendedDim;
-		
-		//markov
-		if(myModel.type==1) {
-			myModel.markov.halfCycleCorrection=origHalfCycleCorrection;
-			myModel.markov.discountRewards=origDiscountRewards;
-			int numDim=myModel.dimInfo.dimNames.length;
-			for(int d=0; d<numDim; d++) {
-				myModel.markov.discountRates[d]=origDiscountRates[d];
-			}
-			myModel.markov.discountStartCycle=origDiscountStartCycle;
-		}
-		
-		//objects
-		for(int i=0; i<numParams; i++){
-			myModel.parameters.get(i).expression=origParams[i];
-		}
-		for(int i=0; i<numVars; i++){
-			myModel.variables.get(i).expression=origVars[i];
-		}
-	}
-
 	public void updateScenarios(){
 		int numScenarios=scenarios.size();
 		modelSchedule.setRowCount(0);
@@ -51,12 +51,12 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.ModelOutcome;
+import analysis.OneWayEngine;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
-import math.Numeric;
 
 import javax.swing.border.LineBorder;
 
@@ -375,34 +375,17 @@ public class frmSensOneWay {
 									strMax=strMax.replaceAll(",", "");
 									double min=Double.parseDouble(strMin);
 									double max=Double.parseDouble(strMax);
-									double step=(max-min)/(intervals*1.0);
 									curParam=myModel.parameters.get(row);
-									curParam.locked=true;
-									Numeric origValue=curParam.value.copy();
-									baselineParamValue=origValue.getValue();
+									baselineParamValue=curParam.value.getValue();
 									
 									//Test parameter at min and max...
-									boolean error=false;
-									curParam.value.setDouble(min);
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam.value.setDouble(max);
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam.value=origValue; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensOneWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensOneWay, "Error: Max value");
+									OneWayEngine engine=new OneWayEngine(myModel, row, min, max, intervals);
+									ArrayList<String> errors=engine.validate();
+									for(int e=0; e<errors.size(); e++){
+										JOptionPane.showMessageDialog(frmSensOneWay, errors.get(e));
 									}
 
-									if(error==false){
-										boolean cancelled=false;
+									if(errors.size()==0){
 										//Run model...
 										numStrat=myModel.getStrategies();
 										int numOutcomes=comboDimensions.getItemCount();
@@ -422,105 +405,50 @@ public class frmSensOneWay {
 										curParam.sensMin=strMin;
 										curParam.sensMax=strMax;
 										
-										long startTime=System.currentTimeMillis();
-										
 										boolean origShowTrace=false;
 										if(myModel.type==1) {
 											origShowTrace=myModel.markov.showTrace;
 											myModel.markov.showTrace=false;
 										}
 										
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
-											
-											//Get EVs
-											for(int d=0; d<numDim; d++){
-												for(int s=0; s<numStrat; s++){
-													results[d][s][0][i]=curVal;
-													results[d][s][1][i]=myModel.getStrategyEV(s, d);
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														resultsGroup[g][d][s][0][i]=curVal;
-														resultsGroup[g][d][s][1][i]=myModel.getSubgroupEV(g,s,d);
-													}
-												}
-											}
-											if(analysisType>0){ //CEA or BCA
-												if(analysisType==1){ //CEA
-													//overall
-													Object table[][]=new CEAHelper().calculateICERs(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														if(origStrat!=-1){
-															results[numDim][origStrat][0][i]=curVal;
-															results[numDim][origStrat][1][i]=(double) table[s][4];
-															CEAnotes[origStrat][i]=(String) table[s][5];
-														}
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateICERs(myModel, g, true);
-														for(int s=0; s<table.length; s++){
-															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
-																resultsGroup[g][numDim][origStrat][0][i]=curVal;
-																resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
-																CEAnotesGroup[g][origStrat][i]=(String) table[s][5];
-															}
+										engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, intervals+1);
+										engine.run(new ProgressMonitorListener(progress));
+										
+										if(myModel.type==1) {
+											myModel.markov.showTrace=origShowTrace;
+										}
+										
+										if(engine.cancelled==false){
+											for(int i=0; i<=intervals; i++){
+												double curVal=engine.paramValues[i];
+												ModelOutcome curOutcome=engine.outcomes[i];
+												//Get EVs
+												for(int d=0; d<numDim; d++){
+													for(int s=0; s<numStrat; s++){
+														results[d][s][0][i]=curVal;
+														results[d][s][1][i]=curOutcome.ev[0][d][s];
+														//subgroups
+														for(int g=0; g<numSubgroups; g++){
+															resultsGroup[g][d][s][0][i]=curVal;
+															resultsGroup[g][d][s][1][i]=curOutcome.ev[g+1][d][s];
 														}
 													}
 												}
-												else if(analysisType==2){
-													Object table[][]=new CEAHelper().calculateNMB(myModel,-1,true);
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[numDim][origStrat][0][i]=curVal;
-														results[numDim][origStrat][1][i]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++){
-														table=new CEAHelper().calculateNMB(myModel, g, true);
-														for(int s=0; s<table.length; s++){
-															int origStrat=(int) table[s][0];
-															resultsGroup[g][numDim][origStrat][0][i]=curVal;
-															resultsGroup[g][numDim][origStrat][1][i]=(double) table[s][4];
+												if(analysisType>0){ //CEA or BCA
+													for(int s=0; s<numStrat; s++){
+														results[numDim][s][0][i]=curVal;
+														results[numDim][s][1][i]=curOutcome.cea[0][s];
+														if(analysisType==1){CEAnotes[s][i]=curOutcome.notes[0][s];}
+														//subgroups
+														for(int g=0; g<numSubgroups; g++){
+															resultsGroup[g][numDim][s][0][i]=curVal;
+															resultsGroup[g][numDim][s][1][i]=curOutcome.cea[g+1][s];
+															if(analysisType==1){CEAnotesGroup[g][s][i]=curOutcome.notes[g+1][s];}
 														}
 													}
 												}
 											}
 											
-											//Update progress
-											double prog=(i/(intervals*1.0))*100;
-											long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-											remTime=(long) (remTime*(100-prog));
-											remTime=remTime/1000;
-											String seconds = Integer.toString((int)(remTime % 60));
-											String minutes = Integer.toString((int)(remTime/60));
-											if(seconds.length()<2){seconds="0"+seconds;}
-											if(minutes.length()<2){minutes="0"+minutes;}
-											progress.setProgress(i);
-											progress.setNote("Time left: "+minutes+":"+seconds);
-											
-											
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
-										}
-										//Reset param value
-										curParam.value=origValue;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-										
-										if(cancelled==false){
 											updateChart();
 											if(numOutcomes>1){
 												comboDimensions.setEnabled(true);
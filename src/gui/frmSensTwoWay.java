@@ -74,12 +74,12 @@ import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.Range;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.ModelOutcome;
+import analysis.TwoWayEngine;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
-import math.Numeric;
 import surface.SurfaceModel;
 import surface.SurfacePanel;
 
@@ -409,7 +409,6 @@ public class frmSensTwoWay {
 								}
 
 								if(proceed==true) {
-									boolean error=false;
 									//Get parameters
 									int intervals=Integer.parseInt(textIntervals.getText());
 
@@ -435,16 +434,13 @@ public class frmSensTwoWay {
 									curParam2.sensMin=strMin2;
 									curParam2.sensMax=strMax2;
 
-									Numeric origValue1=curParam1.value.copy();
-									Numeric origValue2=curParam2.value.copy();
-									baselineParamValue1=origValue1.getValue();
-									baselineParamValue2=origValue2.getValue();
+									baselineParamValue1=curParam1.value.getValue();
+									baselineParamValue2=curParam2.value.getValue();
 
 									int dim=comboDimensions.getSelectedIndex();
 									DimInfo info=myModel.dimInfo;
 									int analysisType=0; //Analysis type for current 2-way, default EV
 
-									double ceThresh=0;
 									String lblOutcome="";
 									if(info.analysisType==0){ //EV
 										lblOutcome = info.dimNames[dim];
@@ -453,7 +449,6 @@ public class frmSensTwoWay {
 										if(dim==comboDimensions.getItemCount()-1){ //ICER or NMB selected
 											if(info.analysisType==1){
 												lblOutcome="ICER ("+info.dimSymbols[info.costDim]+"/"+info.dimSymbols[info.effectDim]+")";
-												ceThresh=Double.parseDouble(textCEThresh.getText().replaceAll(",", ""));
 												analysisType=1;
 											}
 											else if(info.analysisType==2){
@@ -470,28 +465,13 @@ public class frmSensTwoWay {
 									if(comboMinMax.getSelectedIndex()==0){max=false;}
 
 									//Test parameters at min and max...
-									curParam1.value.setDouble(min1); curParam2.value.setDouble(min2);
-									curParam1.locked=true; curParam2.locked=true;
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam1.value.setDouble(max1); curParam2.value.setDouble(max2);
-									curParam1.locked=true; curParam2.locked=true;
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam1.value=origValue1; curParam2.value=origValue2; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensTwoWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmSensTwoWay, "Error: Max value");
+									TwoWayEngine engine=new TwoWayEngine(myModel, row1, min1, max1, row2, min2, max2, intervals);
+									ArrayList<String> errors=engine.validate();
+									for(int e=0; e<errors.size(); e++){
+										JOptionPane.showMessageDialog(frmSensTwoWay, errors.get(e));
 									}
 
-									if(error==false){
-										boolean cancelled=false;
+									if(errors.size()==0){
 										//Run model...
 
 										boolean origShowTrace=false;
@@ -504,7 +484,6 @@ public class frmSensTwoWay {
 										if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex()-1;}
 
 										int numStrat=myModel.strategyNames.length;
-										//dataEV=new double[numStrat][2][(intervals+1)*(intervals+1)];
 										dataSurface=new double[numStrat][intervals+1][intervals+1];
 										bestStrategy=new int[intervals+1][intervals+1];
 										param1Vals=new double[intervals+1][intervals+1];
@@ -512,42 +491,30 @@ public class frmSensTwoWay {
 										int numRuns=(intervals+1)*(intervals+1);
 										progress.setMaximum(numRuns);
 
-										long startTime=System.currentTimeMillis();
+										engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, numRuns);
+										engine.run(new ProgressMonitorListener(progress));
+										boolean cancelled=engine.cancelled;
 
-										int count=0;
-										for(int i=0; i<=intervals; i++){
-											double curVal1=min1+(step1*i);
-											curParam1.value.setDouble(curVal1);
+										for(int i=0; i<=intervals && cancelled==false; i++){
 											for(int j=0; j<=intervals; j++){
-												double curVal2=min2+(step2*j);
-												param1Vals[i][j]=curVal1;
-												param2Vals[i][j]=curVal2;
-												
-												curParam2.value.setDouble(curVal2);
-												curParam1.locked=true; curParam2.locked=true;
-												myModel.parseModel();
-												myModel.runModel(null, false);
+												param1Vals[i][j]=engine.paramValues1[i];
+												param2Vals[i][j]=engine.paramValues2[j];
+												ModelOutcome curOutcome=engine.outcomes[i][j];
 
 												if(analysisType==0){ //EV
 													double maxEV=Double.NEGATIVE_INFINITY;
 													double minEV=Double.POSITIVE_INFINITY;
 													int maxStrat=-1, minStrat=-1;
 													for(int s=0; s<numStrat; s++){
-														//dataEV[s][0][count]=curVal1;
-														//dataEV[s][1][count]=Double.NaN;
-														double curOutcome;
-														if(group==-1){curOutcome=myModel.getStrategyEV(s, dim);}
-														else{curOutcome=myModel.getSubgroupEV(group, s, dim);}
-														if(curOutcome>maxEV){maxEV=curOutcome; maxStrat=s;}
-														if(curOutcome<minEV){minEV=curOutcome; minStrat=s;}
-														dataSurface[s][i][j]=curOutcome;
+														double curOutcomeEV=curOutcome.getOutcome(group, dim, s);
+														if(curOutcomeEV>maxEV){maxEV=curOutcomeEV; maxStrat=s;}
+														if(curOutcomeEV<minEV){minEV=curOutcomeEV; minStrat=s;}
+														dataSurface[s][i][j]=curOutcomeEV;
 													}
 													if(max){
-														//dataEV[maxStrat][1][count]=curVal2;
 														bestStrategy[i][j]=maxStrat;
 													}
 													else{
-														//dataEV[minStrat][1][count]=curVal2;
 														bestStrategy[i][j]=minStrat;
 													}
 												}
@@ -560,15 +527,8 @@ public class frmSensTwoWay {
 													int bestStrat=-1;
 
 													for(int s=0; s<numStrat; s++) {
-														double cost=0, effect=0;
-														if(group==-1){
-															cost=myModel.getStrategyEV(s, costDim);
-															effect=myModel.getStrategyEV(s, effectDim);
-														}
-														else{
-															cost=myModel.getSubgroupEV(group, s, costDim);
-															effect=myModel.getSubgroupEV(group, s, effectDim);
-														}
+														double cost=curOutcome.getOutcome(group, costDim, s);
+														double effect=curOutcome.getOutcome(group, effectDim, s);
 														double curNMB=(effect*wtp)-cost;
 														if(curNMB>maxNMB) {
 															maxNMB=curNMB;
@@ -578,70 +538,12 @@ public class frmSensTwoWay {
 													bestStrategy[i][j]=bestStrat;
 
 													//get ICERs or NMBs
-													if(analysisType==1){ //CEA
-														Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-														double bestICER=Double.NEGATIVE_INFINITY;
-														bestStrat=-1;
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															if(origStrat!=-1){
-																//dataEV[origStrat][0][count]=curVal1;
-																//dataEV[origStrat][1][count]=Double.NaN;
-																double curICER=(double)table[s][4];
-																if(curICER>bestICER && curICER<=ceThresh){
-																	bestICER=curICER;
-																	bestStrat=origStrat;
-																}
-																dataSurface[origStrat][i][j]=curICER;
-															}
-														}
-														if(bestStrat!=-1){
-															//dataEV[bestStrat][1][count]=curVal2;
-														}
-													}
-													else if(analysisType==2){ //BCA
-														Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-														maxNMB=Double.NEGATIVE_INFINITY;
-														int maxStrat=-1;
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															//dataEV[origStrat][0][count]=curVal1;
-															//dataEV[origStrat][1][count]=Double.NaN;
-															double curNMB=(double)table[s][4];
-															if(curNMB>maxNMB){
-																maxNMB=curNMB;
-																maxStrat=origStrat;
-															}
-															dataSurface[origStrat][i][j]=curNMB;
-														}
-														//dataEV[maxStrat][1][count]=curVal2;
+													for(int s=0; s<numStrat; s++){
+														dataSurface[s][i][j]=curOutcome.cea[group+1][s];
 													}
 												}
-
-												count++;
-												//Update progress
-												double prog=(count/(numRuns*1.0))*100;
-												long remTime=(long) ((System.currentTimeMillis()-startTime)/prog); //Number of miliseconds per percent
-												remTime=(long) (remTime*(100-prog));
-												remTime=remTime/1000;
-												String seconds = Integer.toString((int)(remTime % 60));
-												String minutes = Integer.toString((int)(remTime/60));
-												if(seconds.length()<2){seconds="0"+seconds;}
-												if(minutes.length()<2){minutes="0"+minutes;}
-												progress.setProgress(count);
-												progress.setNote("Time left: "+minutes+":"+seconds);
-
-												if(progress.isCanceled()){ //End loop
-													cancelled=true;
-													j=intervals+1;
-													i=intervals+1;
-												}
 											}
 										}
-										//Reset parameter values
-										curParam1.value=origValue1; curParam2.value=origValue2;
-										curParam1.locked=false; curParam2.locked=false;
-										myModel.validateModelObjects();
 
 										if(myModel.type==1) {
 											myModel.markov.showTrace=origShowTrace;
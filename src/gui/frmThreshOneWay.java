@@ -36,6 +36,7 @@ import java.awt.Stroke;
 import java.awt.Toolkit;
 
 import javax.swing.JTable;
+import javax.swing.SwingUtilities;
 import javax.swing.table.DefaultTableModel;
 
 import org.jfree.chart.ChartFactory;
@@ -48,12 +49,12 @@ import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.data.xy.DefaultXYDataset;
 
+import analysis.ModelOutcome;
+import analysis.ThresholdEngine;
 import base.AmuaModel;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
 import math.MathUtils;
-import math.Numeric;
 
 import javax.swing.border.LineBorder;
 
@@ -356,12 +357,10 @@ public class frmThreshOneWay {
 									strMax=strMax.replaceAll(",", ""); 
 									double min=Double.parseDouble(strMin);
 									double max=Double.parseDouble(strMax);
-									double step=(max-min)/(intervals*1.0);
 									curParam=myModel.parameters.get(row);
 									curParam.sensMin=strMin; //record min/max
 									curParam.sensMax=strMax;
-									Numeric origValue=curParam.value.copy();
-									baselineParamValue=origValue.getValue();
+									baselineParamValue=curParam.value.getValue();
 									
 									int dim=comboDimensions.getSelectedIndex();
 									int decimalDim=dim;
@@ -376,35 +375,18 @@ public class frmThreshOneWay {
 									int group=-1;
 									if(comboGroup.isEnabled()){group=comboGroup.getSelectedIndex()-1;}
 									
-									boolean error=false;
 									//Test parameter at min and max...
-									curParam.value.setDouble(min);
-									curParam.locked=true;
-									ArrayList<String> errorsMin=myModel.parseModel();
-									curParam.value.setDouble(max);
-									curParam.locked=true;
-									ArrayList<String> errorsMax=myModel.parseModel();
-									curParam.value=origValue; //Reset
-									if(errorsMin.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmThreshOneWay, "Error: Min value");
-									}
-									if(errorsMax.size()>0){
-										error=true;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										JOptionPane.showMessageDialog(frmThreshOneWay, "Error: Max value");
+									final ThresholdEngine engine=new ThresholdEngine(myModel, row, min, max, intervals, strat1, strat2, dim);
+									engine.group=group;
+									engine.tolerance=tol;
+									ArrayList<String> errors=engine.validate();
+									for(int e=0; e<errors.size(); e++){
+										JOptionPane.showMessageDialog(frmThreshOneWay, errors.get(e));
 									}
 
-									if(error==false){
-										boolean cancelled=false;
+									if(errors.size()==0){
 										//Run model...
 										int numStrat=myModel.strategyNames.length;
-										double minDist=Double.POSITIVE_INFINITY;
-										int minIndex=-1;
-
 										dataEV=new double[numStrat][2][intervals+1];
 										progress.setMaximum(intervals+1);
 										if(analysisType==1){CEAnotes=new String[numStrat][intervals+1];} //CEA
@@ -416,186 +398,41 @@ public class frmThreshOneWay {
 											myModel.markov.showTrace=false;
 										}
 										
-										double diffs[]=new double[intervals+1];
-										for(int i=0; i<=intervals; i++){
-											double curVal=min+(step*i);
-											curParam.value.setDouble(curVal);
-											curParam.locked=true;
-											myModel.parseModel();
-											myModel.runModel(null, false);
-											
-											if(analysisType==0){ //EV
-												for(int s=0; s<numStrat; s++){
-													dataEV[s][0][i]=curVal;
-													if(group==-1){dataEV[s][1][i]=myModel.getStrategyEV(s, dim);}
-													else{dataEV[s][1][i]=myModel.getSubgroupEV(group, s, dim);}
+										final int dec=myModel.dimInfo.decimals[decimalDim]+1;
+										engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, intervals+1);
+										engine.run(new ProgressMonitorListener(progress){
+											public void progress(int completed, int total){
+												super.progress(completed, total);
+												if(engine.searching){
+													final String note="Distance: "+MathUtils.round(engine.distance, dec);
+													SwingUtilities.invokeLater(new Runnable(){
+														public void run(){progress.setNote(note);}
+													});
 												}
 											}
-											else if(analysisType==1){ //CEA
-												Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													if(origStrat!=-1){
-														dataEV[origStrat][0][i]=curVal;
-														dataEV[origStrat][1][i]=(double) table[s][4];
-														CEAnotes[origStrat][i]=(String) table[s][5];
-													}
-												}
-											}
-											else if(analysisType==2){ //BCA
-												Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													dataEV[origStrat][0][i]=curVal;
-													dataEV[origStrat][1][i]=(double) table[s][4];
+										});
+										
+										if(myModel.type==1) {
+											myModel.markov.showTrace=origShowTrace;
+										}
+
+										if(engine.cancelled==false){
+											for(int i=0; i<=intervals; i++){
+												ModelOutcome curOutcome=engine.outcomes[i];
+												for(int s=0; s<numStrat; s++){
+													dataEV[s][0][i]=engine.paramValues[i];
+													dataEV[s][1][i]=curOutcome.getOutcome(group, dim, s);
+													if(analysisType==1){CEAnotes[s][i]=curOutcome.notes[group+1][s];}
 												}
 											}
 											
-											
-											diffs[i]=dataEV[strat1][1][i]-dataEV[strat2][1][i];
-											double curDist=Math.abs(diffs[i]);
-											if(curDist<minDist){
-												minDist=curDist;
-												minIndex=i;
-											}
-											progress.setProgress(i);
-											if(progress.isCanceled()){ //End loop
-												cancelled=true;
-												i=intervals+1;
-											}
-										}
-
-										if(cancelled==false){
 											//Find intersection
-											double intersection=Double.NaN;
-											if(minDist==0){ //Intersection coincides with interval
-												intersection=dataEV[0][0][minIndex];
+											double intersection=engine.threshold;
+											if(engine.cross==false) {
+												JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
 											}
-											else{ //No exact intersection found
-												//Check if lines cross
-												boolean cross=false;
-												for(int i=1; i<=intervals; i++) {
-													if(Math.signum(diffs[i-1])!=Math.signum(diffs[i])) {
-														cross=true;
-													}
-												}
-												if(cross==false) {
-													JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found in current range!");
-												}
-												else{ //Search neighbourhood for intersection
-													frmThreshOneWay.setCursor(new Cursor(Cursor.WAIT_CURSOR));
-													
-													double minVal=dataEV[0][0][minIndex];
-													//if min dist is at either extreme move to the midpoint of the interval
-													//if(minIndex==0) {minVal+=(step/2.0);}
-													//else if(minIndex==intervals) {minVal-=(step/2.0);}
-													
-													int dec=myModel.dimInfo.decimals[decimalDim]+1;
-													int i=0;
-													progress.setMaximum(100);
-													while(minDist>tol && i<100){ //Binary search of neighbourhood until convergence
-														progress.setProgress(i);
-														progress.setNote("Distance: "+MathUtils.round(minDist, dec));
-														
-														//Left
-														double valL=minVal-(step/2.0);
-														valL=Math.max(valL, min); //floor of min
-														curParam.value.setDouble(valL);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1L=0, result2L=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1L=myModel.getStrategyEV(strat1, dim);
-																result2L=myModel.getStrategyEV(strat2, dim);
-															}
-															else{
-																result1L=myModel.getSubgroupEV(group,strat1, dim);
-																result2L=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
-															}
-														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1L=(double) table[s][4];}
-																if(origStrat==strat2){result2L=(double) table[s][4];}
-															}
-														}
-														double distL=Math.abs(result1L-result2L);
-														
-														//Right
-														double valR=minVal+(step/2.0);
-														valR=Math.min(valR, max); //ceiling of max
-														curParam.value.setDouble(valR);
-														curParam.locked=true;
-														myModel.parseModel();
-														myModel.runModel(null, false);
-														
-														double result1R=0, result2R=0;
-														if(analysisType==0){ //EV
-															if(group==-1){
-																result1R=myModel.getStrategyEV(strat1, dim);
-																result2R=myModel.getStrategyEV(strat2, dim);
-															}
-															else{
-																result1R=myModel.getSubgroupEV(group,strat1, dim);
-																result2R=myModel.getSubgroupEV(group,strat2, dim);
-															}
-														}
-														else if(analysisType==1){ //CEA
-															Object table[][]=new CEAHelper().calculateICERs(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
-															}
-														}
-														else if(analysisType==2){ //BCA
-															Object table[][]=new CEAHelper().calculateNMB(myModel,group,true);
-															for(int s=0; s<table.length; s++){	
-																int origStrat=(int) table[s][0];
-																if(origStrat==strat1){result1R=(double) table[s][4];}
-																if(origStrat==strat2){result2R=(double) table[s][4];}
-															}
-														}
-														double distR=Math.abs(result1R-result2R);
-														
-														//Move to lowest dist (or stay)
-														if(distL<minDist){
-															minVal=valL;
-															minDist=distL;
-														}
-														if(distR<minDist){
-															minVal=valR;
-															minDist=distR;
-														}
-														step/=2.0;
-														
-														i++;
-														if(progress.isCanceled()){ //End loop
-															cancelled=true;
-															i=1000; //end
-														}
-													}
-													if(minDist<tol){ //Convergence achieved
-														intersection=minVal;
-													}
-													else{
-														JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
-													}
-													frmThreshOneWay.setCursor(new Cursor(Cursor.DEFAULT_CURSOR));
-												}
+											else if(Double.isNaN(intersection)){
+												JOptionPane.showMessageDialog(frmThreshOneWay, "No intersection found! Try increasing tolerance.");
 											}
 											textThresh.setText(MathUtils.round(intersection,myModel.dimInfo.decimals[decimalDim])+"");
 
@@ -629,15 +466,6 @@ public class frmThreshOneWay {
 											plot.addDomainMarker(new ValueMarker(baselineParamValue, Color.BLACK, fill));
 										}
 
-										//Reset param value
-										curParam.value=origValue;
-										curParam.locked=false;
-										myModel.validateModelObjects();
-										
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
-										}
-										
 										progress.close();
 									}
 								}
@@ -61,12 +61,11 @@ import org.jfree.chart.renderer.category.IntervalBarRenderer;
 import org.jfree.chart.renderer.category.StandardBarPainter;
 import org.jfree.data.category.DefaultIntervalCategoryDataset;
 
+import analysis.TornadoEngine;
 import base.AmuaModel;
 import filters.CSVFilter;
-import main.CEAHelper;
 import main.DimInfo;
 import main.Parameter;
-import math.Numeric;
 
 import javax.swing.border.LineBorder;
 
@@ -475,55 +474,10 @@ public class frmTornadoDiagram {
 									}
 									
 									if(proceed==true) {
-
-										boolean origShowTrace=false;
-										if(myModel.type==1) {
-											origShowTrace=myModel.markov.showTrace;
-											myModel.markov.showTrace=false;
-										}
-										progress.setMaximum(numRuns+1);
-										int curProg=1;
-										progress.setProgress(curProg);
-
-										//Get baseline
-										myModel.runModel(null, false);
-										curProg++; progress.setProgress(curProg);
-
-										baseOutcomes=new double[1+numSubgroups][numStrategies][numOutcomes];
-
-										int numDim=myModel.dimInfo.dimNames.length;
-										for(int s=0; s<numStrategies; s++) {
-											for(int d=0; d<numDim; d++) {
-												baseOutcomes[0][s][d]=myModel.getStrategyEV(s, d); //overall
-												//subgroups
-												for(int g=0; g<numSubgroups; g++) {
-													baseOutcomes[g+1][s][d]=myModel.getSubgroupEV(g, s, d);
-												}
-											}
-										}
-										if(myModel.dimInfo.analysisType>0) { // CEA/BCA
-											//overall
-											Object table[][]=null;
-											if(myModel.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(myModel,-1,true);}
-											else if(myModel.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(myModel,-1,true);}
-											for(int s=0; s<table.length; s++){	
-												int origStrat=(int) table[s][0];
-												baseOutcomes[0][origStrat][numDim]=(double) table[s][4];
-											}
-											//subgroups
-											for(int g=0; g<numSubgroups; g++) {
-												table=new CEAHelper().calculateICERs(myModel,g,true);
-												for(int s=0; s<table.length; s++){	
-													int origStrat=(int) table[s][0];
-													baseOutcomes[g+1][origStrat][numDim]=(double) table[s][4];
-												}
-											}
-										}
-										
 										numParams=paramIndices.size();
-										results=new double[1+numSubgroups][numStrategies][numOutcomes][numParams][2];
 										paramNames=new String[numParams];
-										
+										int indices[]=new int[numParams];
+										double mins[]=new double[numParams], maxs[]=new double[numParams];
 										for(int p=0; p<numParams; p++){
 											int pIndex=paramIndices.get(p);
 											paramNames[p]=(String)tableParams.getValueAt(pIndex, 0);
@@ -531,120 +485,53 @@ public class frmTornadoDiagram {
 											String strMax=(String)tableParams.getValueAt(pIndex, 3);
 											strMin=strMin.replaceAll(",",""); //Replace any commas
 											strMax=strMax.replaceAll(",",""); //Replace any commas
-											double min=Double.parseDouble(strMin);
-											double max=Double.parseDouble(strMax);
+											indices[p]=pIndex;
+											mins[p]=Double.parseDouble(strMin);
+											maxs[p]=Double.parseDouble(strMax);
 											curParam=myModel.parameters.get(pIndex);
 											curParam.sensMin=strMin;
 											curParam.sensMax=strMax;
+										}
 
-											Numeric origValue=curParam.value.copy();
-
-											//Min
-											curParam.value.setDouble(min);
-											curParam.locked=true;
-											ArrayList<String> errorsMin=myModel.parseModel();
-											if(errorsMin.size()>0){
-												curParam.value=origValue;
-												curParam.locked=false;
-												myModel.validateModelObjects();
-												JOptionPane.showMessageDialog(frmTornadoDiagram, "Error: "+paramNames[p]+" - Min value");
-												break;
-											}
-											else{
-												myModel.parseModel();
-												myModel.runModel(null, false);
-												curProg++; progress.setProgress(curProg);
-
-												//get results
-												for(int s=0; s<numStrategies; s++) {
-													for(int d=0; d<numDim; d++) {
-														results[0][s][d][p][0]=myModel.getStrategyEV(s, d); //overall
-														//subgroups
-														for(int g=0; g<numSubgroups; g++) {
-															results[g+1][s][d][p][0]=myModel.getSubgroupEV(g, s, d);
-														}
-													}
-												}
-												if(myModel.dimInfo.analysisType>0) { // CEA/BCA
-													//overall
-													Object table[][]=null;
-													if(myModel.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(myModel,-1,true);}
-													else if(myModel.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(myModel,-1,true);}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[0][origStrat][numDim][p][0]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++) {
-														table=new CEAHelper().calculateICERs(myModel,g,true);
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															results[g+1][origStrat][numDim][p][0]=(double) table[s][4];
-														}
-													}
-												}
+										TornadoEngine engine=new TornadoEngine(myModel, indices, mins, maxs);
+										ArrayList<String> errors=engine.validate();
+										if(errors.size()>0){
+											JOptionPane.showMessageDialog(frmTornadoDiagram, errors.get(0));
+										}
+										else{
+											boolean origShowTrace=false;
+											if(myModel.type==1) {
+												origShowTrace=myModel.markov.showTrace;
+												myModel.markov.showTrace=false;
 											}
+											progress.setMaximum(numRuns);
+
+											engine.numWorkers=ProgressMonitorListener.getNumWorkers(myModel, numRuns);
+											engine.run(new ProgressMonitorListener(progress));
 
-											//Max
-											curParam.value.setDouble(max);
-											curParam.locked=true;
-											ArrayList<String> errorsMax=myModel.parseModel();
-											if(errorsMax.size()>0){
-												curParam.value=origValue;
-												curParam.locked=false;
-												myModel.validateModelObjects();
-												JOptionPane.showMessageDialog(frmTornadoDiagram, "Error: "+paramNames[p]+" - Max value");
-												break;
+											if(myModel.type==1) {
+												myModel.markov.showTrace=origShowTrace;
 											}
-											else{
-												myModel.parseModel();
-												myModel.runModel(null, false);
-												curProg++; progress.setProgress(curProg);
-
-												//get results
-												for(int s=0; s<numStrategies; s++) {
-													for(int d=0; d<numDim; d++) {
-														results[0][s][d][p][1]=myModel.getStrategyEV(s, d); //overall
-														//subgroups
-														for(int g=0; g<numSubgroups; g++) {
-															results[g+1][s][d][p][1]=myModel.getSubgroupEV(g, s, d);
-														}
-													}
-												}
-												if(myModel.dimInfo.analysisType>0) { // CEA/BCA
-													//overall
-													Object table[][]=null;
-													if(myModel.dimInfo.analysisType==1) {table=new CEAHelper().calculateICERs(myModel,-1,true);}
-													else if(myModel.dimInfo.analysisType==2) {table=new CEAHelper().calculateNMB(myModel,-1,true);}
-													for(int s=0; s<table.length; s++){	
-														int origStrat=(int) table[s][0];
-														results[0][origStrat][numDim][p][1]=(double) table[s][4];
-													}
-													//subgroups
-													for(int g=0; g<numSubgroups; g++) {
-														table=new CEAHelper().calculateICERs(myModel,g,true);
-														for(int s=0; s<table.length; s++){	
-															int origStrat=(int) table[s][0];
-															results[g+1][origStrat][numDim][p][1]=(double) table[s][4];
+
+											if(engine.cancelled==false){
+												baseOutcomes=new double[1+numSubgroups][numStrategies][numOutcomes];
+												results=new double[1+numSubgroups][numStrategies][numOutcomes][numParams][2];
+												for(int g=0; g<numSubgroups+1; g++){ //overall + subgroups
+													for(int s=0; s<numStrategies; s++) {
+														for(int d=0; d<numOutcomes; d++) {
+															baseOutcomes[g][s][d]=engine.baseOutcome.getOutcome(g-1, d, s);
+															for(int p=0; p<numParams; p++){
+																results[g][s][d][p][0]=engine.outcomes[p][0].getOutcome(g-1, d, s); //min
+																results[g][s][d][p][1]=engine.outcomes[p][1].getOutcome(g-1, d, s); //max
+															}
 														}
 													}
 												}
-
-												curParam.value=origValue;
-												curParam.locked=false;
+												enablePlot(true);
+												btnExport.setEnabled(true);
 											}
-
-										} //end param loop
-										progress.close();
-
-										myModel.validateModelObjects();
-
-										enablePlot(true);
-										btnExport.setEnabled(true);
-
-										if(myModel.type==1) {
-											myModel.markov.showTrace=origShowTrace;
 										}
+										progress.close();
 
 									} //end proceed check
 								}
@@ -23,6 +23,7 @@ import java.awt.EventQueue;
 import javax.swing.UIManager;
 import javax.swing.UIManager.LookAndFeelInfo;
 
+import cli.CommandLine;
 import cluster.ClusterRun;
 import gui.frmMain;
 
@@ -71,6 +72,9 @@ public class Amua {
 				}
 			});
 		}
+		else if(CommandLine.isCommand(args[0])) { //headless analysis
+			System.exit(new CommandLine(args,version).run());
+		}
 		else { //process arguments for cluster run
 			new ClusterRun(args,version);
 		}
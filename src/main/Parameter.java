@@ -21,8 +21,10 @@ import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
+import base.AmuaModel;
+import math.CompiledExpression;
+import math.Interpreter;
 import math.Numeric;
-import math.Token;
 
 @XmlRootElement(name="Parameter")
 public class Parameter{
@@ -34,7 +36,8 @@ public class Parameter{
 	@XmlTransient public boolean locked=false;
 	@XmlTransient public boolean valid=true;
 	@XmlTransient public Numeric value;
-	@XmlTransient public Token parsedTokens[];
+	@XmlTransient public CompiledExpression parsedTokens;
+	@XmlTransient String parsedExpression; //expression text that parsedTokens was parsed from
 	
 	//Constructor
 	public Parameter(){
@@ -47,11 +50,22 @@ public class Parameter{
 		copyParam.expression=expression;
 		copyParam.notes=notes;
 		copyParam.value=value;
-		copyParam.parsedTokens=parsedTokens;
 		copyParam.sensMin=sensMin;
 		copyParam.sensMax=sensMax;
 		return(copyParam);
 	}
 	
+	/**
+	 * Returns the parsed expression, re-parsing only if the expression text has changed since it was last parsed
+	 */
+	public CompiledExpression parse(AmuaModel myModel) throws Exception{
+		String curExpression=expression;
+		if(parsedTokens==null || !curExpression.equals(parsedExpression)){
+			parsedTokens=Interpreter.parse(curExpression, myModel);
+			parsedExpression=curExpression;
+		}
+		return(parsedTokens);
+	}
+	
 	
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reproducible random number streams for Monte Carlo simulations.  Simulants are split into a fixed number of segments
+ * that does not depend on the number of threads.  A segment's generator is seeded from the run seed and a key
+ * (purpose, chain, chunk, cycle, segment), and each segment is simulated by a single thread, so every simulant gets the
+ * same random numbers however many threads are used.  Totals are kept by segment and summed in segment order so
+ * results are bit-identical.
+ */
+public class RandomStreams{
+	/**
+	 * Maximum number of segments.  More threads than this are not used.
+	 */
+	public static final int MAX_SEGMENTS=64;
+	
+	//Purpose of random numbers
+	public static final int INIT=1; //independent variables and subgroups
+	public static final int START=2; //starting state
+	public static final int SIMULATE=3; //simulation
+	
+	/**
+	 * Process-wide counter for run seeds, so runs started at the same time (e.g. on model replicas) get different streams
+	 */
+	private static final AtomicLong seedCounter=new AtomicLong(System.nanoTime());
+	
+	long seed;
+	int numPeople;
+	int numSegments;
+	
+	public RandomStreams(long seed, int numPeople){
+		this.seed=seed;
+		setNumPeople(numPeople);
+	}
+	
+	/**
+	 * Returns a new run seed that is unique within the process, for runs without common random numbers
+	 */
+	public static long newSeed(){
+		return(mix(seedCounter.addAndGet(0x9E3779B97F4A7C15L)^System.nanoTime()));
+	}
+	
+	public void setNumPeople(int numPeople){
+		this.numPeople=numPeople;
+		numSegments=Math.max(1, Math.min(MAX_SEGMENTS, numPeople));
+	}
+	
+	public int getNumSegments(){
+		return(numSegments);
+	}
+	
+	/**
+	 * Index of the first person in a segment.  getStart(numSegments) is the number of people.
+	 */
+	public int getStart(int segment){
+		return((int) ((segment*(long)numPeople)/numSegments));
+	}
+	
+	/**
+	 * Seeds a generator with the stream for the given key
+	 */
+	public void seed(MersenneTwisterFast generator, long... key){
+		long h1=mix(seed), h2=mix(~seed);
+		for(int i=0; i<key.length; i++){
+			h1=mix(h1^key[i]);
+			h2=mix(h2+key[i]);
+		}
+		generator.setSeed(new int[]{(int) h1, (int) (h1>>>32), (int) h2, (int) (h2>>>32)});
+	}
+	
+	/**
+	 * SplitMix64 finalizer
+	 */
+	private static long mix(long z){
+		z+=0x9E3779B97F4A7C15L;
+		z=(z^(z>>>30))*0xBF58476D1CE4E5B9L;
+		z=(z^(z>>>27))*0x94D049BB133111EBL;
+		return(z^(z>>>31));
+	}
+}
\ No newline at end of file
@@ -43,9 +43,12 @@ public class Table{
 	@XmlElement public double data[][];
 	@XmlElement public String notes;
 	
-	@XmlTransient double value;
 	@XmlTransient public CubicSpline splines[];
 	@XmlTransient public AmuaModel myModel;
+	/**
+	 * Compiled lookup/sampling structure, rebuilt when the table data or lookup settings change
+	 */
+	@XmlTransient TableLookup lookup;
 
 	//Constructor
 	public Table(){
@@ -82,10 +85,11 @@ public class Table{
 			colText=colText.replace("\"","");
 			colText=colText.replace("\'","");
 			boolean found=false;
-			while(found==false && col<numCols){
+			while(found==false && col<numCols-1){
 				col++;
 				if(colText.equals(headers[col])){found=true;}
 			}
+			if(found==false){col=-1;}
 		}
 		else{ //Try evaluate as integer
 			try{
@@ -101,64 +105,28 @@ public class Table{
 	public double getLookupValue(double index, String colText){
 		//Get column index
 		int col=getColumnIndex(colText);
-		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
-
-		double val=Double.NaN;
-		if(lookupMethod.matches("Exact")){
-			int row=-1;
-			boolean found=false;
-			while(found==false && row<numRows){
-				row++;
-				if(index==data[row][0]){found=true;}
-			}
-			if(found){val=data[row][col];}
-		}
-		else if(lookupMethod.matches("Truncate")){
-			if(index<data[0][0]){val=Double.NaN;} //Below first value - error
-			else if(index>=data[numRows-1][0]){val=data[numRows-1][col];} //Above last value
-			else{
-				int row=0;
-				while(data[row][0]<index){row++;}
-				if(index==data[row][0]){val=data[row][col];}
-				else{val=data[row-1][col];}
-			}
-		}
-		else if(lookupMethod.matches("Interpolate")){
-			if(interpolate.matches("Linear")){
-				if(index<=data[0][0]){ //Below or at first index
-					double slope=(data[1][col]-data[0][col])/(data[1][0]-data[0][0]);
-					val=data[0][col]-(data[0][0]-index)*slope;
-				}
-				else if(index>data[numRows-1][0]){ //Above last index
-					double slope=(data[numRows-1][col]-data[numRows-2][col])/(data[numRows-1][0]-data[numRows-2][0]);
-					val=data[numRows-1][col]+(index-data[numRows-1][0])*slope;
-				}
-				else{ //Between
-					int row=0;
-					while(data[row][0]<index){row++;}
-					double slope=(data[row][col]-data[row-1][col])/(data[row][0]-data[row-1][0]);
-					val=data[row-1][col]+(index-data[row-1][0])*slope;
-				}
-			}
-			else if(interpolate.matches("Cubic Splines")){
-				val=splines[col-1].evaluate(index);
-			}
+		return(getLookupValue(index,col));
+	}
 
-			//Check extrapolation conditions
-			if(extrapolate.matches("No")){
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
-				else if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Left only")){ //truncate right
-				if(index>data[numRows-1][0]){val=data[numRows-1][col];} //Above last index
-			}
-			else if(extrapolate.matches("Right only")){ //truncate left
-				if(index<=data[0][0]){val=data[0][col];} //Below or at first index
-			}
+	/**
+	 * Looks up a value using a column index resolved by the caller
+	 * @param index Index value
+	 * @param col Column index
+	 * @return Lookup value, or NaN if the column or row is invalid
+	 */
+	public double getLookupValue(double index, int col){
+		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
+		TableLookup curLookup=getLookup();
+		return(curLookup.getValue(index,col,this));
+	}
 
+	private TableLookup getLookup(){
+		TableLookup curLookup=lookup;
+		if(curLookup==null || !curLookup.isCurrent(this)){ //table has been edited
+			curLookup=new TableLookup(this);
+			lookup=curLookup;
 		}
-
-		return(val);
+		return(curLookup);
 	}
 
 	public void constructSplines(){
@@ -248,21 +216,21 @@ public class Table{
 
 	public double sample(String params[],double rand) throws Exception{
 		int col=getColumnIndex(params[0]);
-			if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
-			else{ //Valid column
-				int row=0;
-				double cdf=data[row][0]; //First entry
-				while(rand>cdf){
-					row++;
-					cdf+=data[row][0];
-				}
-				value=data[row][col];
-			}
-		
-		
-		return(value);
+		return(sample(col,rand));
 	}
-	
+
+	/**
+	 * Samples a value from a Distribution table using a column index resolved by the caller
+	 * @param col Column index
+	 * @param rand Random number in [0,1)
+	 * @return Sampled value, or NaN if the column is invalid
+	 */
+	public double sample(int col, double rand){
+		if(col<1 || col>(numCols-1)){return(Double.NaN);} //Throw error
+		TableLookup curLookup=getLookup();
+		return(curLookup.columns[col][curLookup.sampleRow(rand)]);
+	}
+
 	public void writeCSV(String filepath, ErrorLog errorLog){
 		try{
 			FileWriter fstream;
@@ -0,0 +1,212 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package main;
+
+/**
+ * Immutable structure compiled from a Lookup or Distribution table.
+ * Lookup settings are resolved to enums once, index values are searched by binary search,
+ * and tables indexed by consecutive integers (e.g. ages) are indexed directly.
+ * For Distribution tables the first column holds probabilities, and rows are sampled by binary search
+ * over the cumulative probabilities.
+ */
+final class TableLookup{
+	enum Method{EXACT,TRUNCATE,LINEAR,CUBIC_SPLINES};
+	enum Extrapolate{YES,NO,LEFT_ONLY,RIGHT_ONLY};
+
+	//source table settings, used to check if the lookup is out of date
+	final double data[][];
+	final String lookupMethod, interpolate, extrapolate;
+
+	final Method method;
+	final Extrapolate extrap;
+	final int numRows;
+	/**
+	 * Index column (first column)
+	 */
+	final double index[];
+	/**
+	 * [Column][Row]
+	 */
+	final double columns[][];
+	/**
+	 * True if index values are sorted in ascending order, otherwise rows are scanned in order
+	 */
+	final boolean sorted;
+	/**
+	 * True if index values are consecutive integers starting at index[0]
+	 */
+	final boolean consecutive;
+	/**
+	 * Cumulative sum of the first column (probabilities for Distribution tables)
+	 */
+	final double cumProb[];
+
+	TableLookup(Table table){
+		data=table.data;
+		lookupMethod=table.lookupMethod;
+		interpolate=table.interpolate;
+		extrapolate=table.extrapolate;
+
+		if(lookupMethod==null){method=Method.LINEAR;} //not a Lookup table
+		else if(lookupMethod.matches("Exact")){method=Method.EXACT;}
+		else if(lookupMethod.matches("Truncate")){method=Method.TRUNCATE;}
+		else if(interpolate!=null && interpolate.matches("Cubic Splines")){method=Method.CUBIC_SPLINES;}
+		else{method=Method.LINEAR;}
+
+		if(extrapolate==null || extrapolate.matches("Yes")){extrap=Extrapolate.YES;}
+		else if(extrapolate.matches("No")){extrap=Extrapolate.NO;}
+		else if(extrapolate.matches("Left only")){extrap=Extrapolate.LEFT_ONLY;}
+		else if(extrapolate.matches("Right only")){extrap=Extrapolate.RIGHT_ONLY;}
+		else{extrap=Extrapolate.YES;}
+
+		numRows=table.numRows;
+		int numCols=table.numCols;
+		index=new double[numRows];
+		columns=new double[numCols][numRows];
+		for(int r=0; r<numRows; r++){
+			index[r]=data[r][0];
+			for(int c=0; c<numCols; c++){
+				columns[c][r]=data[r][c];
+			}
+		}
+
+		boolean isSorted=true, isConsecutive=(numRows>0 && index[0]==Math.rint(index[0]));
+		for(int r=1; r<numRows; r++){
+			if(index[r]<=index[r-1]){isSorted=false;}
+			if(index[r]!=index[0]+r){isConsecutive=false;}
+		}
+		sorted=isSorted;
+		consecutive=isSorted && isConsecutive;
+
+		cumProb=new double[numRows];
+		double cdf=0;
+		for(int r=0; r<numRows; r++){
+			cdf+=index[r];
+			cumProb[r]=cdf;
+		}
+	}
+
+	boolean isCurrent(Table table){
+		return(data==table.data && lookupMethod==table.lookupMethod && interpolate==table.interpolate && extrapolate==table.extrapolate);
+	}
+
+	/**
+	 * Returns the first row with an index value >= x, or numRows if there is none
+	 */
+	int lowerBound(double x){
+		if(consecutive){
+			double offset=Math.ceil(x-index[0]);
+			if(offset<=0){return(0);}
+			if(offset>=numRows){return(numRows);}
+			int row=(int)offset;
+			//guard against rounding in x-index[0]
+			while(row>0 && index[row-1]>=x){row--;}
+			while(row<numRows && index[row]<x){row++;}
+			return(row);
+		}
+		else if(sorted){
+			int low=0, high=numRows;
+			while(low<high){
+				int mid=(low+high)>>>1;
+				if(index[mid]<x){low=mid+1;}
+				else{high=mid;}
+			}
+			return(low);
+		}
+		else{ //scan rows in order
+			int row=0;
+			while(row<numRows && index[row]<x){row++;}
+			return(row);
+		}
+	}
+
+	/**
+	 * Returns the first row with a cumulative probability >= rand
+	 */
+	int sampleRow(double rand){
+		int low=0, high=numRows-1; //probabilities may sum to slightly less than 1, so the last row is the upper bound
+		while(low<high){
+			int mid=(low+high)>>>1;
+			if(cumProb[mid]<rand){low=mid+1;}
+			else{high=mid;}
+		}
+		return(low);
+	}
+
+	double getValue(double x, int col, Table table){
+		double col_[]=columns[col];
+		double val=Double.NaN;
+		switch(method){
+		case EXACT:{
+			if(sorted){
+				int row=lowerBound(x);
+				if(row<numRows && index[row]==x){val=col_[row];}
+			}
+			else{
+				for(int row=0; row<numRows; row++){
+					if(index[row]==x){return(col_[row]);}
+				}
+			}
+			return(val);
+		}
+		case TRUNCATE:{
+			if(x<index[0]){val=Double.NaN;} //Below first value - error
+			else if(x>=index[numRows-1]){val=col_[numRows-1];} //Above last value
+			else{
+				int row=lowerBound(x);
+				if(x==index[row]){val=col_[row];}
+				else{val=col_[row-1];}
+			}
+			return(val);
+		}
+		case LINEAR:{
+			if(x<=index[0]){ //Below or at first index
+				double slope=(col_[1]-col_[0])/(index[1]-index[0]);
+				val=col_[0]-(index[0]-x)*slope;
+			}
+			else if(x>index[numRows-1]){ //Above last index
+				double slope=(col_[numRows-1]-col_[numRows-2])/(index[numRows-1]-index[numRows-2]);
+				val=col_[numRows-1]+(x-index[numRows-1])*slope;
+			}
+			else{ //Between
+				int row=lowerBound(x);
+				double slope=(col_[row]-col_[row-1])/(index[row]-index[row-1]);
+				val=col_[row-1]+(x-index[row-1])*slope;
+			}
+			break;
+		}
+		case CUBIC_SPLINES:
+			val=table.splines[col-1].evaluate(x);
+			break;
+		}
+
+		//Check extrapolation conditions
+		if(extrap==Extrapolate.NO){
+			if(x<=index[0]){val=col_[0];} //Below or at first index
+			else if(x>index[numRows-1]){val=col_[numRows-1];} //Above last index
+		}
+		else if(extrap==Extrapolate.LEFT_ONLY){ //truncate right
+			if(x>index[numRows-1]){val=col_[numRows-1];} //Above last index
+		}
+		else if(extrap==Extrapolate.RIGHT_ONLY){ //truncate left
+			if(x<=index[0]){val=col_[0];} //Below or at first index
+		}
+		return(val);
+	}
+}
\ No newline at end of file
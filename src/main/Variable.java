@@ -18,15 +18,17 @@
 
 package main;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.XmlTransient;
 
 import base.AmuaModel;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.Numeric;
-import math.Token;
+import math.NumericException;
 
 @XmlRootElement(name="Variable")
 public class Variable{
@@ -36,11 +38,14 @@ public class Variable{
 	
 	@XmlTransient public boolean valid=true;
 	@XmlTransient public ArrayList<Variable> dependents; //variables that depend on me
+	@XmlTransient public Variable updatePlan[]; //variables that depend on me directly or indirectly, in update order
+	@XmlTransient public boolean circular; //refers to itself directly or indirectly
 	@XmlTransient public boolean independent;
 		
 	@XmlTransient public Numeric value[]; //thread-specific
 	@XmlTransient public boolean locked[]; //thread-specific
-	@XmlTransient public Token parsedTokens[];
+	@XmlTransient public CompiledExpression parsedTokens;
+	@XmlTransient String parsedExpression; //expression text that parsedTokens was parsed from
 	
 	//Constructor
 	public Variable(){
@@ -53,60 +58,140 @@ public class Variable{
 		copyVar.name=name;
 		copyVar.expression=expression;
 		copyVar.notes=notes;
-		copyVar.parsedTokens=parsedTokens;
 		copyVar.value=value;
 		return(copyVar);
 	}
 	
-	public void getDependents(AmuaModel myModel){
+	/**
+	 * Returns the parsed expression, re-parsing only if the expression text has changed since it was last parsed
+	 */
+	public CompiledExpression parse(AmuaModel myModel) throws Exception{
+		if(circular){throw new NumericException("Circular reference ("+name+")","Variable");}
+		String curExpression=expression;
+		if(parsedTokens==null || !curExpression.equals(parsedExpression)){
+			parsedTokens=Interpreter.parse(curExpression, myModel);
+			parsedExpression=curExpression;
+		}
+		return(parsedTokens);
+	}
+	
+	/**
+	 * Adds this variable as a dependent of the variables (and 't') it refers to, found from the parsed expression
+	 */
+	public void getDependents(AmuaModel myModel) throws Exception{
 		independent=true;
-		//Parse word by word
-		String text=expression;
-		int len=text.length();
-		while(len>0){
-			int index=Interpreter.getNextBreakIndex(text);
-			String word=text.substring(0, index);
-			int varIndex=myModel.getVariableIndex(word);
-			if(varIndex!=-1){ //is variable
+		ArrayList<Variable> refs=new ArrayList<Variable>();
+		parse(myModel).getVariables(myModel, refs);
+		for(int i=0; i<refs.size(); i++){
+			Variable dep=refs.get(i);
+			if(myModel.variables.contains(dep)){ //is variable
 				independent=false;
-				Variable dep=myModel.variables.get(varIndex);
 				if(!dep.dependents.contains(this)){
 					dep.dependents.add(this); //add myself as dependent
 				}
 			}
-			else if(word.equals("t")) { //time dependent
-				Variable t=myModel.innateVariables.get(myModel.getInnateVariableIndex("t"));
-				if(!t.dependents.contains(this)) {
-					t.dependents.add(this); //add myself as dependent
+			else if(dep.name.equals("t") && dep.dependents!=null){ //time dependent
+				if(!dep.dependents.contains(this)) {
+					dep.dependents.add(this); //add myself as dependent
 				}
 			}
-			
-			if(index==len){len=0;} //End of word
-			else{
-				text=text.substring(index+1);
-				len=text.length();
-			}
 		}
 	}
 	
+	/**
+	 * Flags variables that refer to themselves directly or indirectly as circular.  They and their dependents are
+	 * made invalid since they cannot be evaluated.
+	 */
+	public static void checkCircular(ArrayList<Variable> variables){
+		int numVars=variables.size();
+		for(int v=0; v<numVars; v++){
+			Variable curVar=variables.get(v);
+			IdentityHashMap<Variable,Boolean> visited=new IdentityHashMap<Variable,Boolean>();
+			curVar.circular=reaches(curVar, curVar, visited);
+		}
+		for(int v=0; v<numVars; v++){
+			Variable curVar=variables.get(v);
+			if(curVar.circular){invalidate(curVar);}
+		}
+	}
+	
+	/**
+	 * @return True if target depends on curVar
+	 */
+	private static boolean reaches(Variable curVar, Variable target, IdentityHashMap<Variable,Boolean> visited){
+		for(int d=0; curVar.dependents!=null && d<curVar.dependents.size(); d++){
+			Variable curDep=curVar.dependents.get(d);
+			if(curDep==target){return(true);}
+			if(visited.put(curDep, true)==null && reaches(curDep, target, visited)){return(true);}
+		}
+		return(false);
+	}
+	
+	/**
+	 * Gets the update plan of each variable and 't': all valid variables that depend on it directly or indirectly,
+	 * in an order where each variable comes after the variables it depends on
+	 * @param curT Innate variable 't', null if not used
+	 */
+	public static void compileUpdatePlans(ArrayList<Variable> variables, Variable curT){
+		int numVars=variables.size();
+		for(int v=0; v<numVars; v++){
+			variables.get(v).compileUpdatePlan();
+		}
+		if(curT!=null && curT.dependents!=null){curT.compileUpdatePlan();}
+	}
+	
+	private static void invalidate(Variable curVar){
+		if(curVar.valid==false){return;} //already done
+		curVar.valid=false;
+		curVar.parsedTokens=null;
+		curVar.value[0]=null;
+		for(int d=0; curVar.dependents!=null && d<curVar.dependents.size(); d++){
+			invalidate(curVar.dependents.get(d));
+		}
+	}
+	
+	private void compileUpdatePlan(){
+		ArrayList<Variable> order=new ArrayList<Variable>();
+		IdentityHashMap<Variable,Boolean> visited=new IdentityHashMap<Variable,Boolean>();
+		visited.put(this, true);
+		for(int d=0; dependents!=null && d<dependents.size(); d++){
+			addPostOrder(dependents.get(d), visited, order);
+		}
+		int size=order.size();
+		updatePlan=new Variable[size];
+		for(int i=0; i<size; i++){
+			updatePlan[i]=order.get(size-1-i); //reverse post-order
+		}
+	}
+	
+	private static void addPostOrder(Variable curVar, IdentityHashMap<Variable,Boolean> visited, ArrayList<Variable> order){
+		if(visited.containsKey(curVar) || curVar.valid==false){return;}
+		visited.put(curVar, true);
+		for(int d=0; curVar.dependents!=null && d<curVar.dependents.size(); d++){
+			addPostOrder(curVar.dependents.get(d), visited, order);
+		}
+		order.add(curVar);
+	}
+	
+	/**
+	 * Re-evaluates dependents that are not locked, in the order of the update plan
+	 */
 	public void updateDependents(AmuaModel myModel, int curThread) throws Exception{
-		for(int d=0; d<dependents.size(); d++){
-			Variable curDep=dependents.get(d);
+		for(int d=0; d<updatePlan.length; d++){
+			Variable curDep=updatePlan[d];
 			if(curDep.locked[curThread]==false){
 				curDep.locked[curThread]=true;
-				curDep.value[curThread]=Interpreter.evaluateTokens(curDep.parsedTokens, curThread, false);
-				curDep.updateDependents(myModel, curThread);
+				curDep.value[curThread]=Interpreter.evaluateTokens(curDep.parse(myModel), curThread, false);
 			}
 		}
 	}
 	
+	/**
+	 * Unlocks all dependents so they are re-evaluated
+	 */
 	public void unlockDependents(int curThread) {
-		for(int d=0; d<dependents.size(); d++) {
-			Variable curDep=dependents.get(d);
-			if(curDep.locked[curThread]==true) {
-				curDep.locked[curThread]=false;
-				curDep.unlockDependents(curThread);
-			}
+		for(int d=0; d<updatePlan.length; d++) {
+			updatePlan[d].locked[curThread]=false;
 		}
 	}
 }
\ No newline at end of file
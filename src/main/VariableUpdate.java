@@ -19,16 +19,16 @@
 package main;
 
 import base.AmuaModel;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.Numeric;
 import math.NumericException;
-import math.Token;
 
 
 public class VariableUpdate{
 	public Variable variable;
 	String exprUpdate; //expression to evaluate when updating
-	Token exprTokens[];
+	CompiledExpression exprTokens;
 	
 	/**
 	 * 0:=, 1:++, 2:--, 3:+=, 4:-=, 5:*=, 6:/=
@@ -0,0 +1,83 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package markov;
+
+/**
+ * Cycle totals for one Monte Carlo thread.  Each thread only writes to its own accumulator and the totals are
+ * summed across threads once per cycle.  Arrays are padded so that accumulators of different threads never
+ * share a cache line.
+ */
+class MarkovAccumulator{
+	/**
+	 * Padding after each array (64 bytes)
+	 */
+	static final int PAD_DOUBLES=8, PAD_INTS=16;
+	
+	double initPrev[]; //cumulative [state]
+	double curPrev[], newPrev[]; //[state]
+	double rewards[]; //[dim]
+	double variables[]; int variablesDenom[]; //[var]
+	double curPrevGroup[][], newPrevGroup[][]; //[group][state]
+	double rewardsGroup[][]; //[group][dim]
+	double variablesGroup[][]; int variablesDenomGroup[][]; //[group][var]
+	
+	MarkovAccumulator(int numStates, int numDim, int numVars, int numSubgroups){
+		initPrev=newDoubles(numStates);
+		curPrev=newDoubles(numStates); newPrev=newDoubles(numStates);
+		rewards=newDoubles(numDim);
+		variables=newDoubles(numVars); variablesDenom=newInts(numVars);
+		curPrevGroup=new double[numSubgroups][]; newPrevGroup=new double[numSubgroups][];
+		rewardsGroup=new double[numSubgroups][];
+		variablesGroup=new double[numSubgroups][]; variablesDenomGroup=new int[numSubgroups][];
+		for(int g=0; g<numSubgroups; g++){
+			curPrevGroup[g]=newDoubles(numStates); newPrevGroup[g]=newDoubles(numStates);
+			rewardsGroup[g]=newDoubles(numDim);
+			variablesGroup[g]=newDoubles(numVars); variablesDenomGroup[g]=newInts(numVars);
+		}
+	}
+	
+	/**
+	 * Adds the totals of another accumulator.  Used to sum the cycle differences recorded by time-to-event simulation.
+	 */
+	void add(MarkovAccumulator other){
+		add(curPrev, other.curPrev);
+		add(rewards, other.rewards);
+		add(variables, other.variables);
+		for(int v=0; v<variablesDenom.length; v++){variablesDenom[v]+=other.variablesDenom[v];}
+		for(int g=0; g<curPrevGroup.length; g++){
+			add(curPrevGroup[g], other.curPrevGroup[g]);
+			add(rewardsGroup[g], other.rewardsGroup[g]);
+			add(variablesGroup[g], other.variablesGroup[g]);
+			for(int v=0; v<variablesDenomGroup[g].length; v++){variablesDenomGroup[g][v]+=other.variablesDenomGroup[g][v];}
+		}
+	}
+	
+	private static void add(double values[], double other[]){
+		for(int i=0; i<values.length; i++){values[i]+=other[i];}
+	}
+	
+	private static double[] newDoubles(int length){
+		return(new double[length+PAD_DOUBLES]);
+	}
+	
+	private static int[] newInts(int length){
+		return(new int[length+PAD_INTS]);
+	}
+}
\ No newline at end of file
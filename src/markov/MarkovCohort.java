@@ -38,6 +38,11 @@ public class MarkovCohort{
 	Variable variables[];
 	double cycleVariables[];
 	MarkovTrace trace;
+	/**
+	 * Sparse transitions and rewards per person [Dimension][State], for time-homogeneous chains
+	 */
+	TransitionMatrix transitions;
+	double stateRewards[][];
 	Variable curT;
 	AmuaModel myModel;
 	int curThread;
@@ -83,7 +88,7 @@ public class MarkovCohort{
 		//Initialize variables
 		myModel.unlockVarsAll(curThread);
 		for(int c=0; c<numVariables; c++){
-			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parsedTokens, curThread, false);
+			variables[c].value[curThread]=Interpreter.evaluateTokens(variables[c].parse(myModel), curThread, false);
 			variables[c].locked[curThread]=true;
 		}
 		
@@ -108,7 +113,7 @@ public class MarkovCohort{
 				indexCompProb=s;
 			}
 			else{ //Evaluate text
-				states[s].curProb[0]=Interpreter.evaluateTokens(states[s].curProbTokens, curThread, false).getDouble();
+				states[s].curProb[0]=Interpreter.evaluateDouble(states[s].curProbTokens, curThread, false);
 				sumProb+=states[s].curProb[0];
 			}
 		}
@@ -132,6 +137,10 @@ public class MarkovCohort{
 			curPrev[s]=myModel.cohortSize*states[s].curProb[0];
 		}
 		
+		//Time-homogeneous chains are simulated with a transition matrix
+		boolean homogeneous=chainRoot.timeHomogeneous;
+		if(homogeneous){compileMatrix();}
+		
 		//Simulate cycles
 		int t=0;
 		
@@ -156,12 +165,17 @@ public class MarkovCohort{
 				}
 			}
 			
-			for(int s=0; s<numStates; s++){ //Update each state
-				for(int d=0; d<numDim; d++){ //Update state rewards
-					double curReward=Interpreter.evaluateTokens(states[s].curRewardTokens[d], curThread, false).getDouble();
-					cycleRewards[d]+=curReward*curPrev[s];
+			if(homogeneous){
+				updateMatrix();
+			}
+			else{
+				for(int s=0; s<numStates; s++){ //Update each state
+					for(int d=0; d<numDim; d++){ //Update state rewards
+						double curReward=Interpreter.evaluateDouble(states[s].curRewardTokens[d], curThread, false);
+						cycleRewards[d]+=curReward*curPrev[s];
+					}
+					traverseNode(states[s],curPrev[s]);
 				}
-				traverseNode(states[s],curPrev[s]);
 			}
 			updateTrace(t);
 			terminate=checkTerminationCondition(); //check condition
@@ -189,7 +203,7 @@ public class MarkovCohort{
 		}
 		if(chainRoot.hasCost) {
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(chainRoot.curCostTokens[d],curThread,false).getDouble();
+				double curCost=Interpreter.evaluateDouble(chainRoot.curCostTokens[d],curThread,false);
 				curCost*=myModel.cohortSize;
 				chainRoot.expectedValues[d]+=curCost;
 				chainRoot.expectedValuesDis[d]+=curCost;
@@ -231,7 +245,7 @@ public class MarkovCohort{
 		//Update costs
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(node.curCostTokens[d],curThread,false).getDouble();
+				double curCost=Interpreter.evaluateDouble(node.curCostTokens[d],curThread,false);
 				cycleRewards[d]+=curCost*nodePrev;
 			}
 		}
@@ -249,6 +263,25 @@ public class MarkovCohort{
 		}
 		
 		//Calculate probabilities for children
+		calcChildProbs(node);
+		
+		if(node.type==4){ //Transition node, end of branch
+			newPrev[node.transFrom]-=nodePrev; //from state
+			newPrev[node.transTo]+=nodePrev; //next state
+		}
+		else{
+			for(int c=0; c<node.numChildren; c++){
+				MarkovNode curChild=node.children[c];
+				traverseNode(curChild,nodePrev);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Evaluates the probabilities of a node's children, checking that they sum to 1
+	 */
+	private void calcChildProbs(MarkovNode node) throws Exception{
 		if(node.numChildren>0){
 			double sumProb=0;
 			int indexCompProb=-1;
@@ -259,7 +292,7 @@ public class MarkovCohort{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[0]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -278,20 +311,60 @@ public class MarkovCohort{
 				}
 			}
 		}
-		
-		
+	}
+	
+	/**
+	 * Gets the transition matrix and rewards per person in each state by traversing the tree once
+	 */
+	private void compileMatrix() throws Exception{
+		transitions=new TransitionMatrix(numStates, 1);
+		stateRewards=new double[numDim][numStates];
+		for(int s=0; s<numStates; s++){
+			transitions.startState(s);
+			for(int d=0; d<numDim; d++){
+				stateRewards[d][s]=Interpreter.evaluateDouble(states[s].curRewardTokens[d], curThread, false);
+			}
+			compileNode(states[s],1.0);
+		}
+		transitions.finish();
+	}
+	
+	private void compileNode(MarkovNode node, double pathProb) throws Exception{
+		double nodeProb=pathProb;
+		if(node.type!=2){ //not state
+			nodeProb=pathProb*node.curProb[0];
+		}
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){
+				double curCost=Interpreter.evaluateDouble(node.curCostTokens[d],curThread,false);
+				stateRewards[d][node.transFrom]+=curCost*nodeProb;
+			}
+		}
+		calcChildProbs(node);
 		if(node.type==4){ //Transition node, end of branch
-			newPrev[node.transFrom]-=nodePrev; //from state
-			newPrev[node.transTo]+=nodePrev; //next state
+			transitions.add(node.transTo, nodeProb);
 		}
 		else{
 			for(int c=0; c<node.numChildren; c++){
-				MarkovNode curChild=node.children[c];
-				traverseNode(curChild,nodePrev);
+				compileNode(node.children[c],nodeProb);
 			}
 		}
 	}
 	
+	/**
+	 * Updates rewards and prevalence for one cycle with the transition matrix
+	 */
+	private void updateMatrix(){
+		for(int d=0; d<numDim; d++){
+			double rewards[]=stateRewards[d];
+			double sum=0;
+			for(int s=0; s<numStates; s++){
+				sum+=rewards[s]*curPrev[s];
+			}
+			cycleRewards[d]+=sum;
+		}
+		transitions.step(curPrev, newPrev); //newPrev equals curPrev at the start of each cycle
+	}
 	
 	private void updateTrace(int t) throws NumericException{
 		trace.cycles.add(t);
@@ -337,8 +410,6 @@ public class MarkovCohort{
 			cycleVariables[c]=variables[c].value[curThread].getDouble();
 			trace.cycleVariables[c].add(cycleVariables[c]);
 		}
-		
-		trace.updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
@@ -0,0 +1,502 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import base.AmuaModel;
+import base.RunReport;
+import main.Parameter;
+import main.Variable;
+import math.LaneEvaluator;
+import math.MathUtils;
+import math.Numeric;
+
+/**
+ * Runs a cohort Markov model for a batch of parameter sets (lanes) at once, e.g. PSA iterations.
+ * Each expression is interpreted once per cycle for all lanes by a LaneEvaluator, and prevalence and rewards are
+ * updated in the same order as MarkovCohort so each lane gives the same results as a single run.
+ * Lanes terminate independently, 't' is held at the last cycle of terminated lanes until all lanes are done.
+ * Models with variable updates are not supported since variable values would depend on the path through the tree.
+ */
+public class MarkovCohortBatch{
+	/**
+	 * Default number of parameter sets per batch
+	 */
+	public static final int DEFAULT_LANES=32;
+	
+	AmuaModel myModel;
+	MarkovTree markovTree;
+	int numLanes;
+	/**
+	 * [Lane][Parameter]
+	 */
+	Numeric paramValues[][];
+	LaneEvaluator evaluator;
+	int numDim;
+	double time[];
+	boolean active[];
+	int numActive;
+	/**
+	 * [Dimension][Lane]
+	 */
+	double cycleRewards[][], cumRewards[][];
+	double cycleRewardsDis[][], cumRewardsDis[][];
+	/**
+	 * [State][Lane]
+	 */
+	double curPrev[][], newPrev[][];
+	/**
+	 * Sparse transitions with probabilities for each lane and rewards per person [Dimension][State][Lane],
+	 * for time-homogeneous chains
+	 */
+	TransitionMatrix transitions;
+	double stateRewards[][][];
+	
+	//Results
+	/**
+	 * [Chain][Lane]
+	 */
+	MarkovTrace traces[][];
+	/**
+	 * [Chain][Lane][Dimension]
+	 */
+	double expectedValues[][][], expectedValuesDis[][][];
+	long runTime;
+	
+	/**
+	 * @param paramValues Parameter values [Lane][Parameter]
+	 */
+	public MarkovCohortBatch(AmuaModel myModel, Numeric paramValues[][]){
+		this.myModel=myModel;
+		this.markovTree=myModel.markov;
+		this.paramValues=paramValues;
+		numLanes=paramValues.length;
+	}
+	
+	/**
+	 * Returns true if the model can be run in batches: a cohort model with no variable updates, where all expressions
+	 * can be evaluated by lanes and nodes before the Markov chains don't refer to variables
+	 */
+	public static boolean canRun(AmuaModel myModel){
+		if(myModel.type!=1 || myModel.simType!=0 || myModel.simParamSets){return(false);}
+		MarkovTree markovTree=myModel.markov;
+		if(myModel.cluster==false && myModel.panelMarkov.curNode!=null && myModel.panelMarkov.curNode.type==1){
+			return(false); //single chain selected
+		}
+		MarkovNode root=markovTree.nodes.get(0);
+		for(int c=0; c<root.numChildren; c++){
+			if(isSupported(root.children[c], root, false, myModel)==false){return(false);}
+		}
+		for(int v=0; v<myModel.variables.size(); v++){
+			Variable curVar=myModel.variables.get(v);
+			try{
+				if(LaneEvaluator.isSupported(curVar.parse(myModel), myModel, true)==false){return(false);}
+			}catch(Exception e){
+				return(false);
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * Checks a node and its children.  Expressions evaluated outside of chains can't refer to variables.
+	 * @param inChain True if the node is within a chain
+	 */
+	private static boolean isSupported(MarkovNode node, MarkovNode parent, boolean inChain, AmuaModel myModel){
+		if(node.hasVarUpdates){return(false);}
+		if(parent.type!=0 && isComplementary(node)==false){
+			if(LaneEvaluator.isSupported(node.curProbTokens, myModel, inChain)==false){return(false);}
+		}
+		if(node.type==1){
+			if(LaneEvaluator.isSupported(node.curTerminationTokens, myModel, true)==false){return(false);}
+		}
+		if(node.hasCost){
+			for(int d=0; d<node.curCostTokens.length; d++){
+				if(LaneEvaluator.isSupported(node.curCostTokens[d], myModel, inChain || node.type==1)==false){return(false);}
+			}
+		}
+		if(node.type==2){
+			for(int d=0; d<node.curRewardTokens.length; d++){
+				if(LaneEvaluator.isSupported(node.curRewardTokens[d], myModel, true)==false){return(false);}
+			}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			if(isSupported(node.children[c], node, inChain || node.type==1, myModel)==false){return(false);}
+		}
+		return(true);
+	}
+	
+	private static boolean isComplementary(MarkovNode node){
+		return(node.prob.matches("C") || node.prob.matches("c"));
+	}
+	
+	/**
+	 * Simulates all chains for each lane
+	 */
+	public void simulate() throws Exception{
+		long startTime=System.currentTimeMillis();
+		evaluator=new LaneEvaluator(myModel, paramValues);
+		time=new double[numLanes];
+		active=new boolean[numLanes];
+		int numChains=markovTree.chains.size();
+		traces=new MarkovTrace[numChains][numLanes];
+		expectedValues=new double[numChains][][];
+		expectedValuesDis=new double[numChains][][];
+		for(int c=0; c<numChains; c++){
+			simulateChain(c);
+		}
+		runTime=System.currentTimeMillis()-startTime;
+	}
+	
+	private void simulateChain(int chainIndex) throws Exception{
+		MarkovNode chainRoot=markovTree.chains.get(chainIndex);
+		MarkovCohort cohort=new MarkovCohort(chainRoot, 0); //get states and transition indices
+		int numStates=cohort.numStates;
+		MarkovNode states[]=cohort.states;
+		numDim=chainRoot.numDimensions;
+		cycleRewards=new double[numDim][numLanes]; cycleRewardsDis=new double[numDim][numLanes];
+		cumRewards=new double[numDim][numLanes]; cumRewardsDis=new double[numDim][numLanes];
+		MarkovTrace trace[]=traces[chainIndex];
+		for(int k=0; k<numLanes; k++){
+			trace[k]=new MarkovTrace(chainRoot);
+			time[k]=0;
+			active[k]=true;
+		}
+		numActive=numLanes;
+		evaluator.setTime(time);
+		
+		//Calculate initial state prevalence
+		double probs[][]=getProbs(states, chainRoot.name);
+		curPrev=new double[numStates][numLanes];
+		newPrev=new double[numStates][numLanes];
+		for(int s=0; s<numStates; s++){
+			for(int k=0; k<numLanes; k++){
+				newPrev[s][k]=myModel.cohortSize*probs[s][k];
+				curPrev[s][k]=myModel.cohortSize*probs[s][k];
+			}
+		}
+		
+		//Time-homogeneous chains are simulated with a transition matrix, as in MarkovCohort
+		boolean homogeneous=chainRoot.timeHomogeneous;
+		if(homogeneous){compileMatrix(states);}
+		
+		//Simulate cycles
+		double values[]=new double[numLanes];
+		int t=0;
+		while(numActive>0 && t<markovTree.maxCycles){
+			if(t>0){evaluator.setTime(time);}
+			if(homogeneous){
+				updateMatrix();
+			}
+			else{
+				for(int s=0; s<numStates; s++){ //Update each state
+					for(int d=0; d<numDim; d++){ //Update state rewards
+						evaluator.evaluate(states[s].curRewardTokens[d], values);
+						double rewards[]=cycleRewards[d], prev[]=curPrev[s];
+						for(int k=0; k<numLanes; k++){
+							rewards[k]+=values[k]*prev[k];
+						}
+					}
+					traverseNode(states[s], curPrev[s]);
+				}
+			}
+			updateTrace(t, trace);
+			
+			//check termination condition
+			evaluator.evaluate(chainRoot.curTerminationTokens, values);
+			for(int k=0; k<numLanes; k++){
+				if(active[k]==false){continue;}
+				if(values[k]!=0){ //terminate lane, 't' stays at this cycle
+					active[k]=false;
+					numActive--;
+					if(markovTree.halfCycleCorrection==true){
+						trace[k].updateHalfCycle();
+						//adjust cum rewards
+						for(int d=0; d<numDim; d++){
+							cumRewards[d][k]=trace[k].cumRewards[d].get(t);
+							if(markovTree.discountRewards){
+								cumRewardsDis[d][k]=trace[k].cumRewardsDis[d].get(t);
+							}
+						}
+					}
+				}
+				else{
+					time[k]=t+1;
+				}
+			}
+			t++; //next cycle
+		}
+		
+		//Get chain EVs, with chain costs evaluated at the cycle after each lane ended
+		for(int k=0; k<numLanes; k++){
+			if(active[k]==false){time[k]++;}
+		}
+		evaluator.setTime(time);
+		double chainEVs[][]=new double[numLanes][numDim];
+		double chainEVsDis[][]=new double[numLanes][numDim];
+		for(int d=0; d<numDim; d++){
+			if(chainRoot.hasCost){evaluator.evaluate(chainRoot.curCostTokens[d], values);}
+			for(int k=0; k<numLanes; k++){
+				chainEVs[k][d]=cumRewards[d][k];
+				chainEVsDis[k][d]=cumRewardsDis[d][k];
+				if(chainRoot.hasCost){
+					double curCost=values[k]*myModel.cohortSize;
+					chainEVs[k][d]+=curCost;
+					chainEVsDis[k][d]+=curCost;
+				}
+			}
+		}
+		expectedValues[chainIndex]=chainEVs;
+		expectedValuesDis[chainIndex]=chainEVsDis;
+	}
+	
+	/**
+	 * Evaluates the probabilities of a set of siblings for all lanes, checking that they sum to 1 for active lanes
+	 * @return Probabilities [Node][Lane]
+	 */
+	private double[][] getProbs(MarkovNode nodes[], String name) throws Exception{
+		int numNodes=nodes.length;
+		double probs[][]=new double[numNodes][];
+		double sumProb[]=new double[numLanes];
+		int indexCompProb=-1;
+		for(int c=0; c<numNodes; c++){
+			if(isComplementary(nodes[c])){
+				indexCompProb=c;
+			}
+			else{ //Evaluate text
+				probs[c]=new double[numLanes];
+				evaluator.evaluate(nodes[c].curProbTokens, probs[c]);
+				for(int k=0; k<numLanes; k++){sumProb[k]+=probs[c][k];}
+			}
+		}
+		if(indexCompProb!=-1){probs[indexCompProb]=new double[numLanes];}
+		for(int k=0; k<numLanes; k++){
+			if(active[k]==false){continue;}
+			if(indexCompProb==-1){
+				if(Math.abs(1.0-sumProb[k])>MathUtils.tolerance){ //throw error
+					throw new Exception("Error: Probabilities sum to "+sumProb[k]+" ("+name+")");
+				}
+			}
+			else{
+				if(sumProb[k]>1.0 || sumProb[k]<0.0){ //throw error
+					throw new Exception("Error: Probabilities sum to "+sumProb[k]+" ("+name+")");
+				}
+				probs[indexCompProb][k]=1.0-sumProb[k];
+			}
+		}
+		return(probs);
+	}
+	
+	/**
+	 * Recursively traverse tree
+	 * @param nodePrev Prevalence at this node [Lane]
+	 */
+	private void traverseNode(MarkovNode node, double nodePrev[]) throws Exception{
+		double values[]=new double[numLanes];
+		//Update costs
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){
+				evaluator.evaluate(node.curCostTokens[d], values);
+				double rewards[]=cycleRewards[d];
+				for(int k=0; k<numLanes; k++){
+					rewards[k]+=values[k]*nodePrev[k];
+				}
+			}
+		}
+		
+		if(node.type==4){ //Transition node, end of branch
+			double from[]=newPrev[node.transFrom], to[]=newPrev[node.transTo];
+			for(int k=0; k<numLanes; k++){
+				from[k]-=nodePrev[k]; //from state
+				to[k]+=nodePrev[k]; //next state
+			}
+		}
+		else if(node.numChildren>0){
+			double probs[][]=getProbs(node.children, node.chain.name+": "+node.name);
+			for(int c=0; c<node.numChildren; c++){
+				double childPrev[]=probs[c];
+				for(int k=0; k<numLanes; k++){
+					childPrev[k]*=nodePrev[k];
+				}
+				traverseNode(node.children[c], childPrev);
+			}
+		}
+	}
+	
+	/**
+	 * Gets the transition matrix and rewards per person in each state for all lanes
+	 */
+	private void compileMatrix(MarkovNode states[]) throws Exception{
+		int numStates=states.length;
+		transitions=new TransitionMatrix(numStates, numLanes);
+		stateRewards=new double[numDim][numStates][];
+		for(int s=0; s<numStates; s++){
+			transitions.startState(s);
+			for(int d=0; d<numDim; d++){
+				stateRewards[d][s]=new double[numLanes];
+				evaluator.evaluate(states[s].curRewardTokens[d], stateRewards[d][s]);
+			}
+			double pathProb[]=new double[numLanes];
+			for(int k=0; k<numLanes; k++){pathProb[k]=1.0;}
+			compileNode(states[s], pathProb);
+		}
+		transitions.finish();
+	}
+	
+	private void compileNode(MarkovNode node, double nodeProb[]) throws Exception{
+		if(node.hasCost){
+			double values[]=new double[numLanes];
+			for(int d=0; d<numDim; d++){
+				evaluator.evaluate(node.curCostTokens[d], values);
+				double rewards[]=stateRewards[d][node.transFrom];
+				for(int k=0; k<numLanes; k++){
+					rewards[k]+=values[k]*nodeProb[k];
+				}
+			}
+		}
+		if(node.type==4){ //Transition node, end of branch
+			transitions.add(node.transTo, nodeProb);
+		}
+		else if(node.numChildren>0){
+			double probs[][]=getProbs(node.children, node.chain.name+": "+node.name);
+			for(int c=0; c<node.numChildren; c++){
+				double childProb[]=probs[c];
+				for(int k=0; k<numLanes; k++){
+					childProb[k]*=nodeProb[k];
+				}
+				compileNode(node.children[c], childProb);
+			}
+		}
+	}
+	
+	/**
+	 * Updates rewards and prevalence for one cycle with the transition matrix
+	 */
+	private void updateMatrix(){
+		int numStates=curPrev.length;
+		for(int d=0; d<numDim; d++){
+			double sum[]=new double[numLanes];
+			for(int s=0; s<numStates; s++){
+				double rewards[]=stateRewards[d][s], prev[]=curPrev[s];
+				for(int k=0; k<numLanes; k++){
+					sum[k]+=rewards[k]*prev[k];
+				}
+			}
+			double cycle[]=cycleRewards[d];
+			for(int k=0; k<numLanes; k++){cycle[k]+=sum[k];}
+		}
+		transitions.step(curPrev, newPrev); //newPrev equals curPrev at the start of each cycle
+	}
+	
+	private void updateTrace(int t, MarkovTrace trace[]) throws Exception{
+		int numStates=curPrev.length;
+		for(int k=0; k<numLanes; k++){
+			if(active[k]){trace[k].cycles.add(t);}
+		}
+		//Update prev
+		for(int s=0; s<numStates; s++){
+			for(int k=0; k<numLanes; k++){
+				if(active[k]){trace[k].prev[s].add(curPrev[s][k]);} //prev at beginning of cycle
+			}
+			System.arraycopy(newPrev[s], 0, curPrev[s], 0, numLanes);
+		}
+		//Discount factor
+		double discountFactor[]=new double[numDim];
+		for(int d=0; d<numDim; d++){
+			discountFactor[d]=1.0;
+			if(markovTree.discountRewards && t>=markovTree.discountStartCycle){
+				double discountRate=markovTree.discountRates[d]/100.0;
+				int disCycle=(t-markovTree.discountStartCycle)+1;
+				double disYear=disCycle/markovTree.cyclesPerYear; //convert to years
+				discountFactor[d]=1.0/Math.pow(1+discountRate, disYear);
+			}
+		}
+		//Update rewards
+		for(int d=0; d<numDim; d++){
+			double cycle[]=cycleRewards[d], cum[]=cumRewards[d];
+			double cycleDis[]=cycleRewardsDis[d], cumDis[]=cumRewardsDis[d];
+			for(int k=0; k<numLanes; k++){
+				if(active[k]){
+					if(t==0 && markovTree.halfCycleCorrection==true){
+						cycle[k]*=0.5; //half-cycle correction
+					}
+					cum[k]+=cycle[k];
+					trace[k].cycleRewards[d].add(cycle[k]);
+					trace[k].cumRewards[d].add(cum[k]);
+					if(markovTree.discountRewards){
+						cycleDis[k]=cycle[k]*discountFactor[d];
+						cumDis[k]+=cycleDis[k];
+						trace[k].cycleRewardsDis[d].add(cycleDis[k]);
+						trace[k].cumRewardsDis[d].add(cumDis[k]);
+					}
+				}
+				//reset
+				cycle[k]=0;
+				cycleDis[k]=0;
+			}
+		}
+		//Update variables
+		double values[]=new double[numLanes];
+		int numVariables=myModel.variables.size();
+		for(int c=0; c<numVariables; c++){
+			evaluator.evaluateVariable(myModel.variables.get(c), values);
+			for(int k=0; k<numLanes; k++){
+				if(active[k]){trace[k].cycleVariables[c].add(values[k]);}
+			}
+		}
+	}
+	
+	public int getNumLanes(){
+		return(numLanes);
+	}
+	
+	/**
+	 * Sets the parameters of a lane, gets expected values for the model, and resets the parameters
+	 * @return Results for the lane, as returned by AmuaModel.runModel
+	 */
+	public RunReport getReport(int lane) throws Exception{
+		RunReport report=new RunReport(myModel);
+		int numParams=myModel.parameters.size();
+		for(int p=0; p<numParams; p++){
+			Parameter curParam=myModel.parameters.get(p);
+			curParam.value=paramValues[lane][p].copy();
+			curParam.locked=true;
+		}
+		//Variables are only used within chains, set for expressions that are evaluated outside them
+		for(int v=0; v<myModel.variables.size(); v++){
+			myModel.variables.get(v).value=new Numeric[1];
+		}
+		Variable curT=myModel.innateVariables.get(myModel.getInnateVariableIndex("t"));
+		curT.value=new Numeric[]{new Numeric(0)};
+		curT.locked=new boolean[]{true};
+		
+		int numChains=markovTree.chains.size();
+		for(int c=0; c<numChains; c++){
+			MarkovNode curChain=markovTree.chains.get(c);
+			curChain.expectedValues=expectedValues[c][lane].clone();
+			curChain.expectedValuesDis=expectedValuesDis[c][lane].clone();
+			report.names.add(curChain.name);
+			report.markovTraces.add(traces[c][lane]);
+		}
+		markovTree.calcEVs();
+		report.getResults(true);
+		myModel.unlockParams();
+		report.runTime=runTime/numLanes;
+		return(report);
+	}
+}
\ No newline at end of file
@@ -18,6 +18,7 @@
 
 package markov;
 
+import java.util.Arrays;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -26,8 +27,10 @@ import javax.swing.ProgressMonitor;
 
 import base.AmuaModel;
 import base.MicroStats;
+import base.Population;
 import base.RunReport;
 import main.MersenneTwisterFast;
+import main.RandomStreams;
 import main.Variable;
 import math.Interpreter;
 import math.MathUtils;
@@ -45,37 +48,54 @@ public class MarkovMonteCarloPOOL{
 	Numeric origVariableVals[];
 	
 	//people
-	int numPeople;
-	MarkovPerson people[];
+	int numPeople; //people in the population (current chunk if simulated in chunks)
+	int totalPeople;
+	Population population;
 	int numSubgroups;
 	int subgroupSize[];
+	/**
+	 * Number of people to generate and simulate at a time, 0 if all people are simulated at once
+	 */
+	int chunkSize;
+	/**
+	 * Current chunk, 0 if all people are simulated at once
+	 */
+	int curChunk;
 	
 	//Markov chain
 	int numChains;
 	int numStates;
 	MarkovNode states[];
-	double initPrev[][]; //[state][curThread]
-	double curPrev[][], newPrev[][], curPrevGroup[][][], newPrevGroup[][][];
-	double cycleRewards[][],cumRewards[];
+	MarkovAccumulator acc[]; //[segment]
+	double cumRewards[];
 	double cycleRewardsDis[],cumRewardsDis[];
-	double cycleRewardsGroup[][][], cumRewardsGroup[][], cycleRewardsDisGroup[][], cumRewardsDisGroup[][];
-	double cycleVariables[][]; int cycleVariablesDenom[][];
-	double cycleVariablesGroup[][][]; int cycleVariablesDenomGroup[][][];
+	double cumRewardsGroup[][], cycleRewardsDisGroup[][], cumRewardsDisGroup[][];
 	
 	MarkovTrace trace, traceGroup[];
 	MicroStats microStats, microStatsGroup[];
 	Variable curT;
 	
 	MersenneTwisterFast generator[];
+	/**
+	 * Random number streams for each segment of people, re-seeded for each segment so results do not depend on the number of threads
+	 */
+	RandomStreams streams;
+	/**
+	 * Stream key for the current chain, the same for all chains if common random numbers are used
+	 */
+	long chainKey;
+	/**
+	 * True if people in the current chain are simulated from one transition to the next instead of cycle by cycle
+	 */
+	boolean events;
 	ProgressMonitor progress;
 	double discountFactor[];
 	
 	
 	int numThreads=1;
-	int blockSize;
 	double maxProg;
 	long startTime, endTime;
-	boolean cancelled;
+	volatile boolean cancelled;
 	Exception threadError; //caught inside multithread and thrown outside
 	int guessMaxCycles=100;
 	int curProg=0;
@@ -131,16 +151,8 @@ public class MarkovMonteCarloPOOL{
 	
 	
 	private void initializePeople(final boolean showProgress) throws Exception{
-		numPeople=myModel.cohortSize;
-		people=new MarkovPerson[numPeople];
-		
-		maxProg=numPeople; //initialize + simulate
-		if(myModel.cluster==false) { //desktop
-			progress=new ProgressMonitor(myModel.mainForm.frmMain, "Initializing simulants", "", 0, (int) maxProg);
-		}
-		else { //cluster
-			System.out.println("Initializing simulants...");
-		}
+		totalPeople=myModel.cohortSize;
+		numPeople=totalPeople;
 		
 		numSubgroups=0;
 		if(myModel.reportSubgroups){
@@ -153,16 +165,50 @@ public class MarkovMonteCarloPOOL{
 		myModel.generatorVar=new MersenneTwisterFast[numThreads];
 		myModel.curGenerator=new MersenneTwisterFast[numThreads];
 		for(int i=0; i<numThreads; i++){
-			generator[i]=new MersenneTwisterFast(System.currentTimeMillis()+i); //offset so that not all get the same time in millis
-			if(myModel.CRN){ //Common random numbers
-				generator[i].setSeed(myModel.crnSeed+i+555); //initialization seed
-			}
+			generator[i]=new MersenneTwisterFast(); //seeded for each segment
 			myModel.generatorVar[i]=generator[i];
 			myModel.curGenerator[i]=myModel.generatorVar[i];
 		}
 		
-		//Initialize people
-		blockSize = numPeople/numThreads;
+		//Check if people can be simulated in chunks
+		chunkSize=0;
+		curChunk=0;
+		if(myModel.chunkSize>0 && myModel.chunkSize<totalPeople && peopleAreIndependent()){
+			chunkSize=myModel.chunkSize;
+			numPeople=chunkSize;
+		}
+		long seed=RandomStreams.newSeed();
+		if(myModel.CRN){seed=myModel.crnSeed;} //Common random numbers
+		streams=new RandomStreams(seed, numPeople);
+		
+		population=new Population(numPeople, numVars, numSubgroups, numThreads);
+		population.initMarkov(numDim);
+		if(chunkSize>0){return;} //people are generated with each chunk
+		
+		maxProg=numPeople; //initialize + simulate
+		if(myModel.cluster==false) { //desktop
+			progress=new ProgressMonitor(myModel.mainForm.frmMain, "Initializing simulants", "", 0, (int) maxProg);
+		}
+		else if(myModel.quiet==false) { //cluster
+			System.out.println("Initializing simulants...");
+		}
+		
+		generatePeople(showProgress);
+		
+		//Get subgroup indices
+		subgroupSize=population.indexSubgroups(numPeople);
+		
+		for(int g=0; g<numSubgroups; g++){
+			runReport.subgroupSizes[g]=subgroupSize[g];
+		}
+	}
+	
+	/**
+	 * Evaluates independent variables and subgroups for each person in the population.  People are generated from
+	 * the chunk's own streams so they are the same for each chain.
+	 */
+	private void generatePeople(final boolean showProgress) throws Exception{
+		final int numSegments=streams.getNumSegments();
 		Thread[] threads = new Thread[numThreads];
 		for(int n=0; n<numThreads; n++){
 			final int finalN = n;
@@ -170,56 +216,47 @@ public class MarkovMonteCarloPOOL{
 				public void run(){
 					try{
 						int threadProg=0;
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							people[p]=new MarkovPerson();
-							people[p].rewards=new double[numDim];
-							people[p].rewardsDis=new double[numDim];
-							people[p].prevRewards=new double[numDim];
-							people[p].prevRewardsDis=new double[numDim];
-							
-							//initialize variables
-							people[p].initVariableVals=new Numeric[numVars];
-							people[p].variableVals=new Numeric[numVars];
-							//eval independent vars
-							myModel.unlockVarsAll(finalN);
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent){
-									variables[v].locked[finalN]=true;
-									variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true);
+						for(int seg=finalN; seg<numSegments && cancelled==false; seg+=numThreads){
+							streams.seed(generator[finalN], RandomStreams.INIT, curChunk, seg);
+							final int beginIndex = streams.getStart(seg);
+							final int endIndex = streams.getStart(seg+1);
+							for(int p=beginIndex; p<endIndex; p++){
+								//eval independent vars
+								myModel.unlockVarsAll(finalN);
+								for(int v=0; v<numVars; v++){
+									if(variables[v].independent){
+										variables[v].locked[finalN]=true;
+										variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parse(myModel), finalN, true);
+									}
 								}
-							}
-							//Update any dependent variables
-							for(int v=0; v<numVars; v++){
-								variables[v].updateDependents(myModel,finalN);
-							}
-							//assign vals to person
-							for(int v=0; v<numVars; v++) {
-								people[p].initVariableVals[v]=variables[v].value[finalN];
-							}
+								//Update any dependent variables
+								for(int v=0; v<numVars; v++){
+									variables[v].updateDependents(myModel,finalN);
+								}
+								//assign vals to person
+								population.storeInitVariables(p, variables, finalN);
 							
 
-							//get subgroup
-							if(myModel.reportSubgroups){
-								people[p].inSubgroup=new boolean[numSubgroups];
-								for(int g=0; g<numSubgroups; g++){
-									Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
-									people[p].inSubgroup[g]=curVal.getBool();
+								//get subgroup
+								if(myModel.reportSubgroups){
+									for(int g=0; g<numSubgroups; g++){
+										Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
+										population.setSubgroup(p, g, curVal.getBool());
+									}
 								}
-							}
 
-							if(finalN==0 && showProgress && myModel.cluster==false){ //update progress from thread 0
-								threadProg++;
-								int prog=threadProg*numThreads;
-								progress.setProgress(prog);
-								//double curProg=(prog/(numPeople*1.0));
-								//updateProgress((int)curProg,"Initializing simulants");
-								if(progress.isCanceled()){
-									cancelled=true;	p=numPeople;
+								if(finalN==0 && showProgress && myModel.cluster==false){ //update progress from thread 0
+									threadProg++;
+									int prog=threadProg*numThreads;
+									progress.setProgress(prog);
+									//double curProg=(prog/(numPeople*1.0));
+									//updateProgress((int)curProg,"Initializing simulants");
+									if(progress.isCanceled()){
+										cancelled=true;	p=numPeople;
+									}
 								}
-							}
 
+							}
 						}
 					} catch(Exception e){
 						threadError=e;
@@ -241,24 +278,15 @@ public class MarkovMonteCarloPOOL{
 		if(threadError!=null){
 			throw threadError;
 		}
-		
-		//Get subgroup indices
-		subgroupSize=new int[numSubgroups];
-		int subgroupCounters[]=new int[numSubgroups];
-		for(int p=0; p<numPeople; p++){
-			people[p].subgroupIndex=new int[numSubgroups];
-			for(int g=0; g<numSubgroups; g++){
-				if(people[p].inSubgroup[g]){
-					subgroupSize[g]++;
-					people[p].subgroupIndex[g]=subgroupCounters[g];
-					subgroupCounters[g]++;
-				}
-			}
-		}
-		
-		for(int g=0; g<numSubgroups; g++){
-			runReport.subgroupSizes[g]=subgroupSize[g];
-		}
+	}
+	
+	/**
+	 * Generates the people in a chunk
+	 */
+	private void generateChunk(int chunk) throws Exception{
+		curChunk=chunk;
+		streams.setNumPeople(numPeople);
+		generatePeople(false);
 	}
 	
 	private void runChains(final boolean showProgress) throws NumericException, Exception{
@@ -275,7 +303,7 @@ public class MarkovMonteCarloPOOL{
 		if(myModel.cluster==false) { //desktop
 			progress=new ProgressMonitor(myModel.mainForm.frmMain, "Monte Carlo simulation", "", 0, (int) maxProg);
 		}
-		else { //cluster
+		else if(myModel.quiet==false) { //cluster
 			System.out.println("Monte Carlo simulation...");
 		}
 		
@@ -284,7 +312,7 @@ public class MarkovMonteCarloPOOL{
 			final MarkovNode curChain=markovTree.chains.get(c);
 			final int finalC=c;
 			
-			if(myModel.cluster==true) {
+			if(myModel.cluster==true && myModel.quiet==false) {
 				System.out.println("Chain: "+curChain.name);
 			}
 			
@@ -294,10 +322,9 @@ public class MarkovMonteCarloPOOL{
 			}
 			
 			//initialize RNG
+			chainKey=c+1;
+			if(myModel.CRN){chainKey=0;} //Common random numbers - same streams for each chain
 			for(int n=0; n<numThreads; n++){
-				if(myModel.CRN){ //Common random numbers
-					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
-				}
 				myModel.curGenerator[n]=myModel.generatorVar[n];
 			
 				evalCosts(curChain,n); //Update expressions for costs/rewards
@@ -313,22 +340,25 @@ public class MarkovMonteCarloPOOL{
 				states[s].curRewards=new double[numDim][numThreads];
 			}
 
-			//Prev/rewards - overall
-			curPrev=new double[numStates][numThreads]; newPrev=new double[numStates][numThreads];
-			cycleRewards=new double[numDim][numThreads]; cycleRewardsDis=new double[numDim];
+			//Prev/rewards - per segment
+			if(chunkSize>0){streams.setNumPeople(chunkSize);} //largest chunk
+			acc=new MarkovAccumulator[streams.getNumSegments()];
+			for(int n=0; n<acc.length; n++){
+				acc[n]=new MarkovAccumulator(numStates, numDim, numVars, numSubgroups);
+			}
+			
+			//overall
+			cycleRewardsDis=new double[numDim];
 			cumRewards=new double[numDim]; cumRewardsDis=new double[numDim];
-			cycleVariables=new double[numVars][numThreads]; cycleVariablesDenom=new int[numVars][numThreads];
 
 			//subgroup
-			curPrevGroup=new double[numSubgroups][numStates][numThreads]; newPrevGroup=new double[numSubgroups][numStates][numThreads];
-			cycleRewardsGroup=new double[numSubgroups][numDim][numThreads]; cycleRewardsDisGroup=new double[numSubgroups][numDim];
+			cycleRewardsDisGroup=new double[numSubgroups][numDim];
 			cumRewardsGroup=new double[numSubgroups][numDim]; cumRewardsDisGroup=new double[numSubgroups][numDim];
-			cycleVariablesGroup=new double[numSubgroups][numVars][numThreads]; cycleVariablesDenomGroup=new int[numSubgroups][numVars][numThreads];
 
 			trace=new MarkovTrace(curChain);
 			myModel.traceMarkov=trace;
 			if(myModel.displayIndResults){
-				microStats=new MicroStats(myModel, numPeople);
+				microStats=newMicroStats(-1);
 			}
 			
 			//Subgroups
@@ -341,7 +371,7 @@ public class MarkovMonteCarloPOOL{
 				if(myModel.displayIndResults){
 					microStatsGroup=new MicroStats[numSubgroups];
 					for(int g=0; g<numSubgroups; g++){
-						microStatsGroup[g]=new MicroStats(myModel,subgroupSize[g]);
+						microStatsGroup[g]=newMicroStats(g);
 					}
 				}
 			}
@@ -351,152 +381,42 @@ public class MarkovMonteCarloPOOL{
 			getTransitionIndex(curChain);
 			//Get evaluation tree - check for variables
 			checkForVariables(curChain);
+			events=useEvents(curChain);
 			
 			//Initialize state prevalence probabilities (assume static probs initially, will be updated for each person if depends on variable)
-			initPrev=new double[numStates][numThreads];
-			for(int n=0; n<numThreads; n++){
-				initPrev[0][n]=states[0].curProb[0];
+			for(int n=0; n<acc.length; n++){
+				acc[n].initPrev[0]=states[0].curProb[0];
 				for(int s=1; s<numStates; s++){
-					initPrev[s][n]=initPrev[s-1][n]+states[s].curProb[0];
+					acc[n].initPrev[s]=acc[n].initPrev[s-1]+states[s].curProb[0];
 				}
 			}
 			
-			initializeChain(curChain,showProgress,finalC);
-			
 			//check termination condition type
-			boolean staticTerimnationCondition=false;
-			String curString=curChain.terminationCondition.replaceAll(" ", ""); //remove spaces
-			if(curString.startsWith("t==")) { //may be static condition
-				if(curString.contains("&") || curString.contains("|")) { //multiple conditions
-					staticTerimnationCondition=false;
-				}
-				else {
-					staticTerimnationCondition=true;
-					String cycles=curString.substring(3); //trim "t=="
-					guessMaxCycles=Integer.parseInt(cycles);
-					maxProg=numChains*guessMaxCycles;
-					curProg=c*guessMaxCycles;
-					if(myModel.cluster==false) {
-						progress.setMaximum((int) maxProg);
-					}
+			int staticCycles=getStaticCycles(curChain);
+			if(staticCycles!=-1){ //static condition
+				guessMaxCycles=staticCycles;
+				maxProg=numChains*guessMaxCycles;
+				curProg=c*guessMaxCycles;
+				if(myModel.cluster==false) {
+					progress.setMaximum((int) maxProg);
 				}
 			}
 			
-			
 			//Simulate chain cycles
-			int t=0;
+			int t;
 			discountFactor=new double[numDim];
-			
-			boolean terminate=false;
-						
-			ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(numThreads);
-						
-			while(terminate==false && t<markovTree.maxCycles){
-				if(showProgress){
-					curProg++;
-					updateProgress(curProg,"Running "+curChain.name);
-				}
-				if(myModel.cluster==true) {
-					System.out.println("t: "+t);
-				}
-				
-				//Update discount factor
-				if(markovTree.discountRewards){
-					for(int d=0; d<numDim; d++) {
-						double discountRate=markovTree.discountRates[d]/100.0;
-						if(t<markovTree.discountStartCycle) { //don't discount yet
-							discountFactor[d]=1.0;
-						}
-						else { //discount
-							int disCycle=(t-markovTree.discountStartCycle)+1;
-							double disYear=disCycle/markovTree.cyclesPerYear; //convert to years
-							discountFactor[d]=1.0/Math.pow(1+discountRate, disYear);
-						}
-					}
-				}
-				
-				//Update expressions for costs/rewards
-				for(int n=0; n<numThreads; n++){
-					evalCosts(curChain,n);
-					for(int s=0; s<numStates; s++){
-						for(int d=0; d<numDim; d++){
-							double curReward=Interpreter.evaluateTokens(states[s].curRewardTokens[d], n, false).getDouble();
-							states[s].curRewards[d][n]=curReward;
-						}
-					}
-				}
-				
-				//Update probs
-				for(int n=0; n<numThreads; n++){
-					evalChildProbs(curChain,true,n);
-				}
-				
-				//Sim cycle
-				
-				//thread pool
-				Future futures[]=new Future[numThreads];
-				for(int n=0; n<numThreads; n++){
-					int beginIndex = n * blockSize;
-					int endIndex = (n==numThreads-1) ? numPeople :(n+1)*blockSize;
-					
-					Runnable worker = new simCycleThread(beginIndex,endIndex,n,t,curChain);
-					futures[n]=executor.submit(worker);
-				}
-				for(int n=0; n<numThreads; n++){ //join
-					futures[n].get();
-				}
-								
-				updateTrace(t);
-				for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t);}
-				
-								
-				terminate=checkTerminationCondition(curChain); //check condition
-				if(terminate && markovTree.halfCycleCorrection==true){ //half-cycle correction - last cycle
-					//overall
-					trace.updateHalfCycle();
-					for(int d=0; d<numDim; d++){ //adjust cum rewards
-						cumRewards[d]=trace.cumRewards[d].get(t);
-						if(markovTree.discountRewards){
-							cumRewardsDis[d]=trace.cumRewardsDis[d].get(t);
-						}
-					}
-					//subgroups
-					for(int g=0; g<numSubgroups; g++){
-						traceGroup[g].updateHalfCycle();
-						for(int d=0; d<numDim; d++){
-							cumRewardsGroup[g][d]=traceGroup[g].cumRewards[d].get(t);
-							if(markovTree.discountRewards){
-								cumRewardsDisGroup[g][d]=traceGroup[g].cumRewardsDis[d].get(t);
-							}
-						}
-					}
-					//individual level
-					for(int p=0; p<numPeople; p++) {
-						MarkovPerson curPerson=people[p];
-						for(int d=0; d<numDim; d++) {
-							double lastCycleRewards=curPerson.rewards[d]-curPerson.prevRewards[d];
-							curPerson.rewards[d]=curPerson.prevRewards[d]+(lastCycleRewards/2.0);
-							lastCycleRewards=curPerson.rewardsDis[d]-curPerson.prevRewardsDis[d];
-							curPerson.rewardsDis[d]=curPerson.prevRewardsDis[d]+(lastCycleRewards/2.0);
-						}
-					}
-				}
-
-				t++; //next cycle
-				for(int n=0; n<numThreads; n++){
-					curT.value[n].setInt(t);
+			if(chunkSize>0){ //people are generated and simulated in chunks
+				t=simulateChunks(curChain,showProgress,finalC,staticCycles);
+			}
+			else{
+				initializeChain(curChain,showProgress,finalC);
+				if(staticCycles!=-1 && hasCohortFeedback(curChain)==false){ //people are independent
+					t=simulatePeople(curChain,showProgress,staticCycles);
 				}
-				
-				if(myModel.cluster==false) {
-					if(progress.isCanceled()){
-						cancelled=true;
-						terminate=true;
-					}
+				else{
+					t=simulateCycles(curChain,showProgress);
 				}
-				
-			} //end cycle loop
-			
-			executor.shutdown();
+			}
 			
 			//Update max cycle guess
 			guessMaxCycles=t;
@@ -510,26 +430,15 @@ public class MarkovMonteCarloPOOL{
 				curT.value[n].setInt(0);
 			}
 			
-			//repoint variable vals
-			for(int v=0; v<numVars; v++){
-				variables[v].value[0]=origVariableVals[v];
-			}
-			
 			//Get chain EVs
 			if(cancelled==false){
-				final double chainCosts[]=new double[numDim]; //up-front costs
-				if(curChain.hasCost) {
-					for(int d=0; d<numDim; d++){
-						double curCost=Interpreter.evaluateTokens(curChain.curCostTokens[d],0,false).getDouble();
-						chainCosts[d]=curCost;
-					}
-				}
+				final double chainCosts[]=getChainCosts(curChain); //up-front costs
 				
 				curChain.expectedValues=new double[numDim];
 				curChain.expectedValuesDis=new double[numDim];
 				for(int d=0; d<numDim; d++){
-					curChain.expectedValues[d]=cumRewards[d]+(chainCosts[d]*numPeople);
-					curChain.expectedValuesDis[d]=cumRewardsDis[d]+(chainCosts[d]*numPeople);
+					curChain.expectedValues[d]=cumRewards[d]+(chainCosts[d]*totalPeople);
+					curChain.expectedValuesDis[d]=cumRewardsDis[d]+(chainCosts[d]*totalPeople);
 				}
 				//subgroups
 				curChain.expectedValuesGroup=new double[numSubgroups][numDim];
@@ -542,61 +451,10 @@ public class MarkovMonteCarloPOOL{
 				}
 			
 				//record individual results
-				if(myModel.displayIndResults){
-					Thread[] threads = new Thread[numThreads];
-					for(int n=0; n<numThreads; n++){
-						final int finalN = n;
-						threads[n] = new Thread() {
-							public void run(){
-								try{
-									final int beginIndex = finalN * blockSize;
-									final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-									//Update each person
-									for(int p=beginIndex; p<endIndex; p++){ 
-										MarkovPerson curPerson=people[p];
-										//overall
-										for(int d=0; d<numDim; d++){
-											if(markovTree.discountRewards){microStats.outcomes[d][p]=curPerson.rewardsDis[d]+chainCosts[d];}
-											else{microStats.outcomes[d][p]=curPerson.rewards[d]+chainCosts[d];}
-										}
-										for(int v=0; v<numVars; v++){
-											microStats.variables[v][p]=curPerson.variableVals[v].getValue();
-										}
-										//subgroups
-										for(int g=0; g<numSubgroups; g++){
-											if(curPerson.inSubgroup[g]){
-												int z=curPerson.subgroupIndex[g];
-												for(int d=0; d<numDim; d++){
-													if(markovTree.discountRewards){microStatsGroup[g].outcomes[d][z]=curPerson.rewardsDis[d]+chainCosts[d];}
-													else{microStatsGroup[g].outcomes[d][z]=curPerson.rewards[d]+chainCosts[d];}
-												}
-												for(int v=0; v<numVars; v++){
-													microStatsGroup[g].variables[v][z]=curPerson.variableVals[v].getValue();
-												}
-											}
-										}
-									}
-								} catch(Exception e){
-									threadError=e;
-								}
-							}
-						};
-						threads[n].start();
-					}
-					//Wait for threads to finish
-					for(int n=0; n<numThreads; n++){
-						try{
-							threads[n].join();
-						} catch (InterruptedException e){
-							System.exit(-1);
-						}
-					}
-
-					//Check for error
-					if(threadError!=null){throw threadError;}
+				if(myModel.displayIndResults && chunkSize==0){
+					recordIndividuals(chainCosts);
 				}
 				
-				//update run report
 				runReport.names.add(curChain.name);
 				runReport.markovTraces.add(trace);
 				for(int g=0; g<runReport.numSubgroups; g++){
@@ -616,65 +474,401 @@ public class MarkovMonteCarloPOOL{
 		} //end chain Loop
 	}
 	
-	private void initializeChain(final MarkovNode curChain, final boolean showProgress, final int finalC) throws Exception{
-		//Initialize state for all people - multithread
+	/**
+	 * Individual results are summarized with quantile sketches if a quantile error is set, or if people are simulated
+	 * in chunks and individual results are not stored on disk
+	 */
+	private boolean useSketches(){
+		return(myModel.quantileError>0 || (chunkSize>0 && myModel.spillIndResults==false));
+	}
+	
+	/**
+	 * @param group -1: Overall, 0-n: Subgroup index
+	 */
+	private MicroStats newMicroStats(int group) throws Exception{
+		if(useSketches()){
+			double rankError=myModel.quantileError>0 ? myModel.quantileError : MicroStats.DEFAULT_RANK_ERROR;
+			return(new MicroStats(myModel, rankError));
+		}
+		if(chunkSize>0){return(new MicroStats(myModel, totalPeople, chunkSize));}
+		if(group==-1){return(new MicroStats(myModel, numPeople));}
+		return(new MicroStats(myModel, subgroupSize[group]));
+	}
+	
+	/**
+	 * Records individual results for the people in the population
+	 */
+	private void recordIndividuals(final double chainCosts[]) throws Exception{
+		final boolean sketches=useSketches();
+		final int numSegments=streams.getNumSegments();
+		final MicroStats segStats[]=new MicroStats[numSegments];
+		final MicroStats segStatsGroup[][]=new MicroStats[numSegments][numSubgroups];
 		Thread[] threads = new Thread[numThreads];
 		for(int n=0; n<numThreads; n++){
 			final int finalN = n;
 			threads[n] = new Thread() {
 				public void run(){
 					try{
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							MarkovPerson curPerson=people[p];
-							for(int v=0; v<numVars; v++){ //get person-specific variables
-								curPerson.variableVals[v]=curPerson.initVariableVals[v].copy();
-								variables[v].value[finalN]=curPerson.variableVals[v];
+						for(int seg=finalN; seg<numSegments; seg+=numThreads){
+							final int beginIndex = streams.getStart(seg);
+							final int endIndex = streams.getStart(seg+1);
+							if(sketches){
+								recordSketches(chainCosts, beginIndex, endIndex, seg, segStats, segStatsGroup[seg]);
+								continue;
 							}
-							for(int d=0; d<numDim; d++){ //reset rewards
-								people[p].rewards[d]=0;	people[p].rewardsDis[d]=0;
-							}
-	
-							//initialize state
-							if(curChain.hasVarUpdates && curChain.curVariableUpdatesT0!=null){
-								//Perform variable updates
-								for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
-									curChain.curVariableUpdatesT0[u].update(true,finalN);
+							//Update each person
+							for(int p=beginIndex; p<endIndex; p++){ 
+								//overall
+								for(int d=0; d<numDim; d++){
+									if(markovTree.discountRewards){microStats.outcomes[d][p]=population.rewardsDis[d][p]+chainCosts[d];}
+									else{microStats.outcomes[d][p]=population.rewards[d][p]+chainCosts[d];}
 								}
-								//Update any dependent variables
-								for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
-									curChain.curVariableUpdatesT0[u].variable.updateDependents(myModel,finalN);
-								}
-								//re-point variables
 								for(int v=0; v<numVars; v++){
-									curPerson.variableVals[v]=variables[v].value[finalN];
+									microStats.variables[v][p]=population.getVariableValue(v, p);
 								}
-								
+								//subgroups
+								for(int g=0; g<numSubgroups; g++){
+									if(population.inSubgroup(p, g)){
+										int z=population.subgroupIndex[g][p];
+										for(int d=0; d<numDim; d++){
+											if(markovTree.discountRewards){microStatsGroup[g].outcomes[d][z]=population.rewardsDis[d][p]+chainCosts[d];}
+											else{microStatsGroup[g].outcomes[d][z]=population.rewards[d][p]+chainCosts[d];}
+										}
+										for(int v=0; v<numVars; v++){
+											microStatsGroup[g].variables[v][z]=population.getVariableValue(v, p);
+										}
+									}
+								}
+							}
+						}
+					} catch(Exception e){
+						threadError=e;
+					}
+				}
+			};
+			threads[n].start();
+		}
+		//Wait for threads to finish
+		for(int n=0; n<numThreads; n++){
+			try{
+				threads[n].join();
+			} catch (InterruptedException e){
+				System.exit(-1);
+			}
+		}
+
+		//Check for error
+		if(threadError!=null){throw threadError;}
+		
+		if(sketches){ //merge in segment order
+			for(int n=0; n<numSegments; n++){
+				microStats.merge(segStats[n]);
+				for(int g=0; g<numSubgroups; g++){
+					microStatsGroup[g].merge(segStatsGroup[n][g]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a segment of people to segment summaries
+	 */
+	private void recordSketches(double chainCosts[], int beginIndex, int endIndex, int seg, MicroStats segStats[], MicroStats groupStats[]){
+		segStats[seg]=microStats.newPartial();
+		for(int g=0; g<numSubgroups; g++){groupStats[g]=microStatsGroup[g].newPartial();}
+		double personOutcomes[]=new double[numDim];
+		double personVars[]=new double[numVars];
+		for(int p=beginIndex; p<endIndex; p++){
+			for(int d=0; d<numDim; d++){
+				if(markovTree.discountRewards){personOutcomes[d]=population.rewardsDis[d][p]+chainCosts[d];}
+				else{personOutcomes[d]=population.rewards[d][p]+chainCosts[d];}
+			}
+			for(int v=0; v<numVars; v++){
+				personVars[v]=population.getVariableValue(v, p);
+			}
+			segStats[seg].add(personOutcomes, personVars);
+			for(int g=0; g<numSubgroups; g++){
+				if(population.inSubgroup(p, g)){groupStats[g].add(personOutcomes, personVars);}
+			}
+		}
+	}
+	
+	/**
+	 * Up-front chain costs, evaluated with the original variable values
+	 */
+	private double[] getChainCosts(MarkovNode curChain) throws Exception{
+		//repoint variable vals
+		for(int v=0; v<numVars; v++){
+			variables[v].value[0]=origVariableVals[v];
+		}
+		double chainCosts[]=new double[numDim];
+		if(curChain.hasCost) {
+			for(int d=0; d<numDim; d++){
+				chainCosts[d]=Interpreter.evaluateDouble(curChain.curCostTokens[d],0,false);
+			}
+		}
+		return(chainCosts);
+	}
+	
+	/**
+	 * Simulates all people one cycle at a time, updating the trace after each cycle
+	 * @return Number of cycles simulated
+	 */
+	private int simulateCycles(final MarkovNode curChain, final boolean showProgress) throws Exception{
+		boolean terminate=false;
+					
+		int t=0;
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) Executors.newFixedThreadPool(numThreads);
+					
+		while(terminate==false && t<markovTree.maxCycles){
+			if(showProgress){
+				curProg++;
+				updateProgress(curProg,"Running "+curChain.name);
+			}
+			if(myModel.cluster==true && myModel.quiet==false) {
+				System.out.println("t: "+t);
+			}
+			
+			//Update discount factor
+			updateDiscountFactor(t,discountFactor);
+			
+			//Update expressions for costs/rewards
+			for(int n=0; n<numThreads; n++){
+				evalCosts(curChain,n);
+				for(int s=0; s<numStates; s++){
+					for(int d=0; d<numDim; d++){
+						double curReward=Interpreter.evaluateDouble(states[s].curRewardTokens[d], n, false);
+						states[s].curRewards[d][n]=curReward;
+					}
+				}
+			}
+			
+			//Update probs
+			for(int n=0; n<numThreads; n++){
+				evalChildProbs(curChain,true,n);
+			}
+			
+			//Sim cycle
+			
+			//thread pool
+			Future futures[]=new Future[numThreads];
+			for(int n=0; n<numThreads; n++){
+				Runnable worker = new simCycleThread(n,t,curChain);
+				futures[n]=executor.submit(worker);
+			}
+			for(int n=0; n<numThreads; n++){ //join
+				futures[n].get();
+			}
+							
+			updateTrace(t,acc,true);
+			for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t,acc);}
+			
+							
+			terminate=checkTerminationCondition(curChain); //check condition
+			if(terminate && markovTree.halfCycleCorrection==true){ //half-cycle correction - last cycle
+				updateHalfCycle(t);
+				//individual level
+				for(int p=0; p<numPeople; p++) {
+					halfCycleLast(p);
+				}
+			}
+
+			t++; //next cycle
+			for(int n=0; n<numThreads; n++){
+				curT.value[n].setInt(t);
+			}
+			
+			if(myModel.cluster==false) {
+				if(progress.isCanceled()){
+					cancelled=true;
+					terminate=true;
+				}
+			}
+			
+		} //end cycle loop
+		
+		executor.shutdown();
+		return(t);
+	}
+	
+	/**
+	 * Simulates each person through all cycles without waiting for other threads between cycles.  Only used if the
+	 * termination condition is static and nothing refers to the trace, so people do not depend on each other.
+	 * Each thread records trace contributions by cycle, which are summed once all people are done.
+	 * @return Number of cycles simulated
+	 */
+	private int simulatePeople(final MarkovNode curChain, final boolean showProgress, int staticCycles) throws Exception{
+		final int numCycles=Math.min(staticCycles+1, markovTree.maxCycles);
+		final boolean terminate=(staticCycles<markovTree.maxCycles); //termination condition reached in last cycle
+		final double discountFactors[][]=prepareCycles(curChain,numCycles);
+		
+		MarkovAccumulator cycleAcc[][]=new MarkovAccumulator[numCycles][streams.getNumSegments()];
+		int startProg=curProg;
+		simulatePeople(curChain,showProgress,numCycles,terminate,discountFactors,cycleAcc,startProg,numCycles);
+		curProg=startProg+numCycles;
+		
+		if(cancelled==false){
+			updateTraceCycles(numCycles,terminate,discountFactors,cycleAcc);
+		}
+		return(numCycles);
+	}
+	
+	/**
+	 * Generates and simulates people one chunk at a time so memory use depends on the chunk size instead of the
+	 * number of people.  Trace accumulators and individual summaries are added to after each chunk.
+	 * Only used if people are independent.
+	 * @return Number of cycles simulated
+	 */
+	private int simulateChunks(final MarkovNode curChain, final boolean showProgress, int finalC, int staticCycles) throws Exception{
+		final int numCycles=Math.min(staticCycles+1, markovTree.maxCycles);
+		final boolean terminate=(staticCycles<markovTree.maxCycles); //termination condition reached in last cycle
+		final double discountFactors[][]=prepareCycles(curChain,numCycles);
+		double chainCosts[]=getChainCosts(curChain);
+		
+		MarkovAccumulator cycleAcc[][]=new MarkovAccumulator[numCycles][streams.getNumSegments()];
+		int startProg=curProg;
+		int numChunks=(int) ((totalPeople+(long)chunkSize-1)/chunkSize);
+		int totalSubgroupSize[]=new int[numSubgroups];
+		for(int c=0; c<numChunks && cancelled==false; c++){
+			numPeople=Math.min(chunkSize, totalPeople-(c*chunkSize));
+			generateChunk(c);
+			int chunkSubgroupSize[]=population.indexSubgroups(numPeople);
+			for(int g=0; g<numSubgroups; g++){totalSubgroupSize[g]+=chunkSubgroupSize[g];}
+			
+			initializeChain(curChain,showProgress,finalC);
+			int progStart=startProg+(int) ((c*(long)numCycles)/numChunks);
+			int progEnd=startProg+(int) (((c+1)*(long)numCycles)/numChunks);
+			simulatePeople(curChain,showProgress,numCycles,terminate,discountFactors,cycleAcc,progStart,progEnd-progStart);
+			
+			if(myModel.displayIndResults && cancelled==false){
+				recordIndividuals(chainCosts);
+				if(useSketches()==false){
+					microStats.addChunk(numPeople);
+					for(int g=0; g<numSubgroups; g++){microStatsGroup[g].addChunk(chunkSubgroupSize[g]);}
+				}
+			}
+		}
+		curProg=startProg+numCycles;
+		
+		subgroupSize=totalSubgroupSize;
+		for(int g=0; g<numSubgroups; g++){
+			runReport.subgroupSizes[g]=subgroupSize[g];
+		}
+		
+		if(cancelled==false){
+			updateTraceCycles(numCycles,terminate,discountFactors,cycleAcc);
+		}
+		return(numCycles);
+	}
+	
+	/**
+	 * Evaluates state rewards and discount factors before people are simulated through all cycles
+	 * @return Discount factors [Cycle][Dimension]
+	 */
+	private double[][] prepareCycles(MarkovNode curChain, int numCycles) throws Exception{
+		checkForTime(curChain); //time-dependent expressions are evaluated for each person
+		for(int n=0; n<numThreads; n++){ //state rewards
+			for(int s=0; s<numStates; s++){
+				for(int d=0; d<numDim; d++){
+					states[s].curRewards[d][n]=Interpreter.evaluateDouble(states[s].curRewardTokens[d], n, false);
+				}
+			}
+		}
+		double discountFactors[][]=new double[numCycles][numDim];
+		for(int t=0; t<numCycles; t++){
+			updateDiscountFactor(t,discountFactors[t]);
+		}
+		return(discountFactors);
+	}
+	
+	/**
+	 * Simulates each person in the population through all cycles, adding to the segment accumulators for each cycle
+	 * @param cycleAcc Segment accumulators [Cycle][Segment], created if null
+	 * @param progStart Progress at start
+	 * @param progSpan Progress once all people are simulated
+	 */
+	private void simulatePeople(final MarkovNode curChain, final boolean showProgress, final int numCycles, final boolean terminate,
+			final double discountFactors[][], final MarkovAccumulator cycleAcc[][], final int progStart, final int progSpan) throws Exception{
+		final int numSegments=streams.getNumSegments();
+		for(int t=0; t<numCycles; t++){
+			for(int seg=0; seg<numSegments; seg++){
+				if(cycleAcc[t][seg]==null){
+					cycleAcc[t][seg]=new MarkovAccumulator(numStates, numDim, numVars, numSubgroups);
+				}
+			}
+		}
+		int numPeople0=0; //number of people for thread 0
+		for(int seg=0; seg<numSegments; seg+=numThreads){
+			numPeople0+=streams.getStart(seg+1)-streams.getStart(seg);
+		}
+		final int threadPeople=numPeople0;
+		Thread[] threads = new Thread[numThreads];
+		for(int n=0; n<numThreads; n++){
+			final int finalN = n;
+			threads[n] = new Thread() {
+				public void run(){
+					try{
+						MarkovAccumulator curAcc[]=new MarkovAccumulator[numCycles];
+						EventPaths paths=null;
+						if(events){paths=new EventPaths(finalN,numCycles,terminate,discountFactors);}
+						int threadProg=0, threadDone=0;
+						for(int seg=finalN; seg<numSegments && cancelled==false; seg+=numThreads){
+							streams.seed(generator[finalN], RandomStreams.SIMULATE, chainKey, curChunk, seg);
+							for(int t=0; t<numCycles; t++){
+								curAcc[t]=cycleAcc[t][seg];
 							}
-							//assign starting state
-							if(curChain.childHasProbVariables){
-								evalChildProbs(curChain,false,finalN);
-								initPrev[0][finalN]=states[0].curProb[finalN];
-								for(int s=1; s<numStates; s++){
-									initPrev[s][finalN]=initPrev[s-1][finalN]+states[s].curProb[finalN];
+							final int beginIndex = streams.getStart(seg);
+							final int endIndex = streams.getStart(seg+1);
+							for(int p=beginIndex; p<endIndex && cancelled==false; p++){
+								//point variables to person
+								population.loadVariables(p, variables, finalN);
+							
+								if(events){ //time-to-event
+									paths.simulate(p,curAcc);
+								}
+								else{
+									for(int t=0; t<numCycles; t++){
+										curT.value[finalN].setInt(t);
+										//prev at beginning of cycle
+										int curState=population.curState[p];
+										curAcc[t].curPrev[curState]++;
+										for(int g=0; g<numSubgroups; g++){
+											if(population.inSubgroup(p, g)){curAcc[t].curPrevGroup[g][curState]++;}
+										}
+									
+										simPerson(p,curChain,t,curAcc[t],discountFactors[t],finalN);
+									
+										if(t==0 && markovTree.halfCycleCorrection==true){ //half-cycle correction - first cycle
+											for(int d=0; d<numDim; d++) {
+												population.rewards[d][p]*=0.5;
+												population.rewardsDis[d][p]*=0.5;
+											}
+										}
+									}
+									if(terminate && markovTree.halfCycleCorrection==true){ //half-cycle correction - last cycle
+										halfCycleLast(p);
+									}
 								}
-							}
-	
-							double rand=generator[finalN].nextDouble();
-							int k=0;
-							while(rand>initPrev[k][finalN]){k++;}
-							people[p].curState=k;
 							
-							curPrev[k][finalN]++; newPrev[k][finalN]++;
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){
-									curPrevGroup[g][k][finalN]++; newPrevGroup[g][k][finalN]++;
+								//store person's variables
+								population.storeVariables(p, variables, finalN);
+							
+								if(finalN==0 && showProgress){ //update progress from thread 0
+									threadDone++;
+									int prog=(int) ((threadDone/(threadPeople*1.0))*progSpan);
+									if(prog>threadProg){
+										threadProg=prog;
+										updateProgress(progStart+prog-1,"Running "+curChain.name);
+									}
+									if(myModel.cluster==false && progress.isCanceled()){
+										cancelled=true;
+									}
 								}
 							}
-						} //end simulate loop
+						}
 					} catch(Exception e){
 						threadError=e;
+						cancelled=true;
 					}
 				}
 			};
@@ -691,92 +885,230 @@ public class MarkovMonteCarloPOOL{
 		
 		//Check for error
 		if(threadError!=null){throw threadError;}
-		
-		
 	}
-
+	
 	/**
-	 * @deprecated
-	 * @param curChain
-	 * @param t
-	 * @throws Exception
+	 * Sums segment accumulators by cycle and updates the trace
+	 */
+	private void updateTraceCycles(int numCycles, boolean terminate, double discountFactors[][], MarkovAccumulator cycleAcc[][]){
+		if(events){ //sum cycle differences
+			for(int t=1; t<numCycles; t++){
+				for(int seg=0; seg<cycleAcc[t].length; seg++){
+					cycleAcc[t][seg].add(cycleAcc[t-1][seg]);
+				}
+			}
+		}
+		for(int t=0; t<numCycles; t++){
+			discountFactor=discountFactors[t];
+			updateTrace(t,cycleAcc[t],false);
+			for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t,cycleAcc[t]);}
+		}
+		if(terminate && markovTree.halfCycleCorrection==true){ //half-cycle correction - last cycle
+			updateHalfCycle(numCycles-1);
+		}
+	}
+	
+	/**
+	 * @return Cycle that the chain terminates at if the termination condition is 't==n', otherwise -1
+	 */
+	private int getStaticCycles(MarkovNode curChain){
+		String curString=curChain.terminationCondition.replaceAll(" ", ""); //remove spaces
+		if(curString.startsWith("t==")==false){return(-1);}
+		if(curString.contains("&") || curString.contains("|")){return(-1);} //multiple conditions
+		try{
+			return(Integer.parseInt(curString.substring(3))); //trim "t=="
+		} catch(NumberFormatException e){ //not a number
+			return(-1);
+		}
+	}
+	
+	/**
+	 * @return True if any expressions in the chain or variables refer to the trace, so people depend on each other
+	 */
+	private boolean hasCohortFeedback(MarkovNode curChain){
+		for(int v=0; v<numVars; v++){
+			if(refersToTrace(variables[v].expression)){return(true);}
+		}
+		return(refersToTrace(curChain));
+	}
+	
+	/**
+	 * @return True if all chains have a static termination condition and nothing refers to the trace,
+	 * so people can be simulated independently
+	 */
+	private boolean peopleAreIndependent(){
+		for(int c=0; c<numChains; c++){
+			MarkovNode curChain=markovTree.chains.get(c);
+			if(getStaticCycles(curChain)==-1 || hasCohortFeedback(curChain)){return(false);}
+		}
+		return(true);
+	}
+	
+	/**
+	 * @return True if time-to-event simulation is selected and transition probabilities, costs, and rewards do not
+	 * change over time for each person, so the number of cycles spent in a state follows a geometric distribution
+	 */
+	private boolean useEvents(MarkovNode curChain){
+		if(markovTree.eventDriven==false){return(false);}
+		if(curChain.hasVarUpdates && curChain.curVariableUpdates!=null){return(false);}
+		if(curT.dependents!=null && curT.dependents.size()>0){return(false);} //variables depend on time
+		for(int s=0; s<numStates; s++){
+			if(hasConstantPaths(states[s])==false){return(false);}
+		}
+		return(true);
+	}
+	
+	private boolean hasConstantPaths(MarkovNode node){
+		if(node.hasVarUpdates){return(false);}
+		if(node.type!=2 && changesOverTime(node.prob)){return(false);} //initial state probs are only used at t=0
+		for(int d=0; node.hasCost && d<numDim; d++){
+			if(changesOverTime(node.cost[d])){return(false);}
+		}
+		for(int d=0; node.type==2 && d<numDim; d++){
+			if(changesOverTime(node.rewards[d])){return(false);}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			if(hasConstantPaths(node.children[c])==false){return(false);}
+		}
+		return(true);
+	}
+	
+	/**
+	 * @return True if the expression refers to time or the trace, or samples a random value
+	 */
+	private boolean changesOverTime(String text){
+		return(text!=null && (myModel.textHasInnateVariable(text) || refersToTrace(text) || text.contains("~")));
+	}
+	
+	private boolean refersToTrace(MarkovNode node){
+		if(refersToTrace(node.prob) || refersToTrace(node.varUpdates) || refersToTrace(node.varUpdatesT0) || refersToTrace(node.terminationCondition)){
+			return(true);
+		}
+		for(int d=0; node.cost!=null && d<node.cost.length; d++){
+			if(refersToTrace(node.cost[d])){return(true);}
+		}
+		for(int d=0; node.rewards!=null && d<node.rewards.length; d++){
+			if(refersToTrace(node.rewards[d])){return(true);}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			if(refersToTrace(node.children[c])){return(true);}
+		}
+		return(false);
+	}
+	
+	private static boolean refersToTrace(String text){
+		return(text!=null && Interpreter.containsWord("trace", text));
+	}
+	
+	private void updateDiscountFactor(int t, double factor[]){
+		if(markovTree.discountRewards){
+			for(int d=0; d<numDim; d++) {
+				double discountRate=markovTree.discountRates[d]/100.0;
+				if(t<markovTree.discountStartCycle) { //don't discount yet
+					factor[d]=1.0;
+				}
+				else { //discount
+					int disCycle=(t-markovTree.discountStartCycle)+1;
+					double disYear=disCycle/markovTree.cyclesPerYear; //convert to years
+					factor[d]=1.0/Math.pow(1+discountRate, disYear);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Half-cycle correction for the last cycle of the trace
+	 */
+	private void updateHalfCycle(int t){
+		//overall
+		trace.updateHalfCycle();
+		for(int d=0; d<numDim; d++){ //adjust cum rewards
+			cumRewards[d]=trace.cumRewards[d].get(t);
+			if(markovTree.discountRewards){
+				cumRewardsDis[d]=trace.cumRewardsDis[d].get(t);
+			}
+		}
+		//subgroups
+		for(int g=0; g<numSubgroups; g++){
+			traceGroup[g].updateHalfCycle();
+			for(int d=0; d<numDim; d++){
+				cumRewardsGroup[g][d]=traceGroup[g].cumRewards[d].get(t);
+				if(markovTree.discountRewards){
+					cumRewardsDisGroup[g][d]=traceGroup[g].cumRewardsDis[d].get(t);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Half-cycle correction for the last cycle of a person's rewards
 	 */
-	private void simCycle(final MarkovNode curChain, final int t) throws Exception{
-		//multi-thread
+	private void halfCycleLast(int p){
+		for(int d=0; d<numDim; d++) {
+			double lastCycleRewards=population.rewards[d][p]-population.prevRewards[d][p];
+			population.rewards[d][p]=population.prevRewards[d][p]+(lastCycleRewards/2.0);
+			lastCycleRewards=population.rewardsDis[d][p]-population.prevRewardsDis[d][p];
+			population.rewardsDis[d][p]=population.prevRewardsDis[d][p]+(lastCycleRewards/2.0);
+		}
+	}
+	
+	private void initializeChain(final MarkovNode curChain, final boolean showProgress, final int finalC) throws Exception{
+		//Initialize state for all people - multithread
+		final int numSegments=streams.getNumSegments();
 		Thread[] threads = new Thread[numThreads];
 		for(int n=0; n<numThreads; n++){
 			final int finalN = n;
 			threads[n] = new Thread() {
 				public void run(){
 					try{
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						//Update each person
-						for(int p=beginIndex; p<endIndex; p++){ 
-							MarkovPerson curPerson=people[p];
-							
-							//re-point variables
-							for(int v=0; v<numVars; v++){
-								variables[v].value[finalN]=curPerson.variableVals[v];
-							}
-							
-							//update time dependent variables
-							if(t>0) {
-								//myModel.unlockVars(finalN);
-								curT.unlockDependents(finalN);
-								curT.updateDependents(myModel, finalN);
-							}
-
-							//chain root variable updates
-							if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
-								//myModel.unlockVars(finalN);
-								//Perform variable updates
-								for(int u=0; u<curChain.curVariableUpdates.length; u++){
-									curChain.curVariableUpdates[u].update(true,finalN);
+						for(int seg=finalN; seg<numSegments; seg+=numThreads){
+							streams.seed(generator[finalN], RandomStreams.START, chainKey, curChunk, seg);
+							MarkovAccumulator curAcc=acc[seg];
+							final int beginIndex = streams.getStart(seg);
+							final int endIndex = streams.getStart(seg+1);
+							for(int p=beginIndex; p<endIndex; p++){
+								//get person-specific variables
+								population.resetVariables(p);
+								population.loadVariables(p, variables, finalN);
+								for(int d=0; d<numDim; d++){ //reset rewards
+									population.rewards[d][p]=0;	population.rewardsDis[d][p]=0;
 								}
-								//Update any dependent variables
-								for(int u=0; u<curChain.curVariableUpdates.length; u++){
-									curChain.curVariableUpdates[u].variable.updateDependents(myModel,finalN);
-								}
-							}
-
-							//rewards
-							int curState=curPerson.curState;
-							for(int d=0; d<numDim; d++){ //Update state rewards
-								if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
-									cycleRewards[d][finalN]+=states[curState].curRewards[d][finalN];
-									for(int g=0; g<numSubgroups; g++){
-										if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=states[curState].curRewards[d][finalN];}
+	
+								//initialize state
+								if(curChain.hasVarUpdates && curChain.curVariableUpdatesT0!=null){
+									//Perform variable updates
+									for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+										curChain.curVariableUpdatesT0[u].update(true,finalN);
 									}
-									curPerson.rewards[d]+=states[curState].curRewards[d][finalN];
-									curPerson.rewardsDis[d]+=states[curState].curRewards[d][finalN]*discountFactor[d];
+									//Update any dependent variables
+									for(int u=0; u<curChain.curVariableUpdatesT0.length; u++){
+										curChain.curVariableUpdatesT0[u].variable.updateDependents(myModel,finalN);
+									}
+									//store person's variables
+									population.storeVariables(p, variables, finalN);
 								}
-								else{ //has variable, re-evaluate reward
-									double curReward=Interpreter.evaluateTokens(states[curState].curRewardTokens[d], finalN, false).getDouble();
-									cycleRewards[d][finalN]+=curReward;
-									for(int g=0; g<numSubgroups; g++){
-										if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=curReward;}
+								//assign starting state
+								if(curChain.childHasProbVariables){
+									evalChildProbs(curChain,false,finalN);
+									curAcc.initPrev[0]=states[0].curProb[finalN];
+									for(int s=1; s<numStates; s++){
+										curAcc.initPrev[s]=curAcc.initPrev[s-1]+states[s].curProb[finalN];
 									}
-									curPerson.rewards[d]+=curReward;
-									curPerson.rewardsDis[d]+=curReward*discountFactor[d];
 								}
-							}
-							
-							//state transition
-							traverseNode(states[curState],curPerson,finalN);
+	
+								double rand=generator[finalN].nextDouble();
+								int k=0;
+								while(rand>curAcc.initPrev[k]){k++;}
+								population.curState[p]=k;
 							
-							//record variable values
-							for(int v=0; v<numVars; v++){
-								double val=variables[v].value[finalN].getDouble();
-								cycleVariables[v][finalN]+=val; cycleVariablesDenom[v][finalN]++;
+								curAcc.curPrev[k]++; curAcc.newPrev[k]++;
 								for(int g=0; g<numSubgroups; g++){
-									if(curPerson.inSubgroup[g]){
-										cycleVariablesGroup[g][v][finalN]+=val; cycleVariablesDenomGroup[g][v][finalN]++;
+									if(population.inSubgroup(p, g)){
+										curAcc.curPrevGroup[g][k]++; curAcc.newPrevGroup[g][k]++;
 									}
 								}
-							}
+							} //end simulate loop
 						}
-
 					} catch(Exception e){
 						threadError=e;
 					}
@@ -794,16 +1126,11 @@ public class MarkovMonteCarloPOOL{
 		}
 		
 		//Check for error
-		if(threadError!=null){
-			throw threadError;
-		}
+		if(threadError!=null){throw threadError;}
 		
-		updateTrace(t);
-		for(int g=0; g<numSubgroups; g++){updateTraceGroup(g,t);}
 		
 	}
-	
-	
+
 	private void updateProgress(int curProg, String note){
 		//Update progress
 		double prog=((curProg+1)/maxProg)*100;
@@ -839,7 +1166,7 @@ public class MarkovMonteCarloPOOL{
 	 * @throws Exception 
 	 */
 	
-	private void traverseNode(MarkovNode node, MarkovPerson curPerson, int curThread) throws Exception{
+	private void traverseNode(MarkovNode node, int p, MarkovAccumulator curAcc, double curDiscount[], int curThread) throws Exception{
 		//Update variables
 		if(node.hasVarUpdates){
 			//myModel.unlockVars(curThread);
@@ -857,35 +1184,35 @@ public class MarkovMonteCarloPOOL{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
 				if(node.costHasVariables[d]==false){ //use pre-calculated cost
-					cycleRewards[d][curThread]+=node.curCosts[d][curThread];
+					curAcc.rewards[d]+=node.curCosts[d][curThread];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][curThread]+=node.curCosts[d][curThread];}
+						if(population.inSubgroup(p, g)){curAcc.rewardsGroup[g][d]+=node.curCosts[d][curThread];}
 					}
-					curPerson.rewards[d]+=node.curCosts[d][curThread];
-					curPerson.rewardsDis[d]+=node.curCosts[d][curThread]*discountFactor[d];
+					population.rewards[d][p]+=node.curCosts[d][curThread];
+					population.rewardsDis[d][p]+=node.curCosts[d][curThread]*curDiscount[d];
 				}
 				else{ //has variable, re-evaluate cost
-					double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
-					cycleRewards[d][curThread]+=curCost;
+					double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
+					curAcc.rewards[d]+=curCost;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][curThread]+=curCost;}
+						if(population.inSubgroup(p, g)){curAcc.rewardsGroup[g][d]+=curCost;}
 					}
-					curPerson.rewards[d]+=curCost;
-					curPerson.rewardsDis[d]+=curCost*discountFactor[d];
+					population.rewards[d][p]+=curCost;
+					population.rewardsDis[d][p]+=curCost*curDiscount[d];
 				}
 			}
 		}
 		
 		if(node.type==4){ //Transition node, end of branch
-			newPrev[node.transFrom][curThread]--; //from state
-			newPrev[node.transTo][curThread]++; //next state
+			curAcc.newPrev[node.transFrom]--; //from state
+			curAcc.newPrev[node.transTo]++; //next state
 			for(int g=0; g<numSubgroups; g++){
-				if(curPerson.inSubgroup[g]){
-					newPrevGroup[g][node.transFrom][curThread]--;
-					newPrevGroup[g][node.transTo][curThread]++;
+				if(population.inSubgroup(p, g)){
+					curAcc.newPrevGroup[g][node.transFrom]--;
+					curAcc.newPrevGroup[g][node.transTo]++;
 				}
 			}
-			curPerson.curState=node.transTo;
+			population.curState[p]=node.transTo;
 		}
 		else{ //sim chance node
 			double rand=generator[curThread].nextDouble();
@@ -895,7 +1222,7 @@ public class MarkovMonteCarloPOOL{
 			}
 			while(rand>node.curChildProbs[k][curThread]){k++;}
 			MarkovNode curChild=node.children[k];
-			traverseNode(curChild,curPerson,curThread);
+			traverseNode(curChild,p,curAcc,curDiscount,curThread);
 		}
 	}
 	
@@ -908,7 +1235,7 @@ public class MarkovMonteCarloPOOL{
 	private void evalCosts(MarkovNode node,int curThread) throws NumericException, Exception{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
-				double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
+				double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
 				node.curCosts[d][curThread]=curCost;
 			}
 		}
@@ -935,7 +1262,7 @@ public class MarkovMonteCarloPOOL{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[curThread]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[curThread]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[curThread];
 				}
 			}
@@ -975,39 +1302,42 @@ public class MarkovMonteCarloPOOL{
 	}
 
 	
-	//Sum across threads and update trace
-	private void updateTrace(int t){
+	/**
+	 * Sum across segments and update trace
+	 * @param curAcc Segment accumulators for cycle t
+	 * @param individual If true applies the first half-cycle correction to individual rewards
+	 */
+	private void updateTrace(int t, MarkovAccumulator curAcc[], boolean individual){
 		trace.cycles.add(t);
 		//Update prev
 		for(int s=0; s<numStates; s++){
 			double totalPrev=0;
-			for(int n=0; n<numThreads; n++){
-				totalPrev+=curPrev[s][n];
-				curPrev[s][n]=newPrev[s][n];
+			for(int n=0; n<curAcc.length; n++){
+				totalPrev+=curAcc[n].curPrev[s];
+				curAcc[n].curPrev[s]=curAcc[n].newPrev[s];
 			}
 			trace.prev[s].add(totalPrev); //prev at beginning of cycle
 		}
 		//Check for half-cycle correction - first cycle
 		if(t==0 && markovTree.halfCycleCorrection==true){
 			for(int d=0; d<numDim; d++){
-				for(int n=0; n<numThreads; n++){
-					cycleRewards[d][n]*=0.5; //half-cycle correction
+				for(int n=0; n<curAcc.length; n++){
+					curAcc[n].rewards[d]*=0.5; //half-cycle correction
 				}
 			}
 			//individual-level
-			for(int p=0; p<numPeople; p++) {
-				MarkovPerson curPerson=people[p];
+			for(int p=0; p<numPeople && individual; p++) {
 				for(int d=0; d<numDim; d++) {
-					curPerson.rewards[d]*=0.5;
-					curPerson.rewardsDis[d]*=0.5;
+					population.rewards[d][p]*=0.5;
+					population.rewardsDis[d][p]*=0.5;
 				}
 			}
 		}
 		//Update rewards
 		for(int d=0; d<numDim; d++){
 			double curCycleRewards=0;
-			for(int n=0; n<numThreads; n++){
-				curCycleRewards+=cycleRewards[d][n];
+			for(int n=0; n<curAcc.length; n++){
+				curCycleRewards+=curAcc[n].rewards[d];
 			}
 			cumRewards[d]+=curCycleRewards;
 			trace.cycleRewards[d].add(curCycleRewards);
@@ -1019,46 +1349,45 @@ public class MarkovMonteCarloPOOL{
 				trace.cumRewardsDis[d].add(cumRewardsDis[d]);
 			}
 			//reset
-			for(int n=0; n<numThreads; n++){cycleRewards[d][n]=0;} 
+			for(int n=0; n<curAcc.length; n++){curAcc[n].rewards[d]=0;} 
 			cycleRewardsDis[d]=0;
 		}
 		//Update variables
 		for(int v=0; v<numVars; v++){
 			double num=0, denom=0;
-			for(int n=0; n<numThreads; n++){
-				num+=cycleVariables[v][n]; cycleVariables[v][n]=0;
-				denom+=cycleVariablesDenom[v][n]; cycleVariablesDenom[v][n]=0;
+			for(int n=0; n<curAcc.length; n++){
+				num+=curAcc[n].variables[v]; curAcc[n].variables[v]=0;
+				denom+=curAcc[n].variablesDenom[v]; curAcc[n].variablesDenom[v]=0;
 			}
 			double mean=num/(denom*1.0);
 			trace.cycleVariables[v].add(mean);
 		}
-		trace.updateTable(t);
 	}
 	
-	private void updateTraceGroup(int g, int t){
+	private void updateTraceGroup(int g, int t, MarkovAccumulator curAcc[]){
 		traceGroup[g].cycles.add(t);
 		//Update prev
 		for(int s=0; s<numStates; s++){
 			double totalPrev=0;
-			for(int n=0; n<numThreads; n++){
-				totalPrev+=curPrevGroup[g][s][n];
-				curPrevGroup[g][s][n]=newPrevGroup[g][s][n];
+			for(int n=0; n<curAcc.length; n++){
+				totalPrev+=curAcc[n].curPrevGroup[g][s];
+				curAcc[n].curPrevGroup[g][s]=curAcc[n].newPrevGroup[g][s];
 			}
 			traceGroup[g].prev[s].add(totalPrev); //prev at beginning of cycle
 		}
 		//Check for half-cycle correction - first and last cycle
 		if(t==0 && markovTree.halfCycleCorrection==true){
 			for(int d=0; d<numDim; d++){
-				for(int n=0; n<numThreads; n++){
-					cycleRewardsGroup[g][d][n]*=0.5; //half-cycle correction
+				for(int n=0; n<curAcc.length; n++){
+					curAcc[n].rewardsGroup[g][d]*=0.5; //half-cycle correction
 				}
 			}
 		}
 		//Update rewards
 		for(int d=0; d<numDim; d++){
 			double curCycleRewards=0;
-			for(int n=0; n<numThreads; n++){
-				curCycleRewards+=cycleRewardsGroup[g][d][n];
+			for(int n=0; n<curAcc.length; n++){
+				curCycleRewards+=curAcc[n].rewardsGroup[g][d];
 			}
 			cumRewardsGroup[g][d]+=curCycleRewards;
 			traceGroup[g].cycleRewards[d].add(curCycleRewards);
@@ -1070,20 +1399,19 @@ public class MarkovMonteCarloPOOL{
 				traceGroup[g].cumRewardsDis[d].add(cumRewardsDisGroup[g][d]);
 			}
 			//reset
-			for(int n=0; n<numThreads; n++){cycleRewardsGroup[g][d][n]=0;} 
+			for(int n=0; n<curAcc.length; n++){curAcc[n].rewardsGroup[g][d]=0;} 
 			cycleRewardsDisGroup[g][d]=0;
 		}
 		//Update variables
 		for(int v=0; v<numVars; v++){
 			double num=0, denom=0;
-			for(int n=0; n<numThreads; n++){
-				num+=cycleVariablesGroup[g][v][n]; cycleVariablesGroup[g][v][n]=0;
-				denom+=cycleVariablesDenomGroup[g][v][n]; cycleVariablesDenomGroup[g][v][n]=0;
+			for(int n=0; n<curAcc.length; n++){
+				num+=curAcc[n].variablesGroup[g][v]; curAcc[n].variablesGroup[g][v]=0;
+				denom+=curAcc[n].variablesDenomGroup[g][v]; curAcc[n].variablesDenomGroup[g][v]=0;
 			}
 			double mean=num/(denom*1.0);
 			traceGroup[g].cycleVariables[v].add(mean);
 		}
-		traceGroup[g].updateTable(t);
 	}
 	
 	private void getTransitionIndex(MarkovNode node){
@@ -1141,16 +1469,338 @@ public class MarkovMonteCarloPOOL{
 		}
 	}
 	
+	/**
+	 * Flags time-dependent expressions to be re-evaluated like expressions with variables, since
+	 * people are not all in the same cycle when simulated person by person
+	 */
+	private void checkForTime(MarkovNode node){
+		if(node.hasCost){ //cost
+			for(int d=0; d<numDim; d++){
+				if(myModel.textHasInnateVariable(node.cost[d])){node.costHasVariables[d]=true;}
+			}
+		}
+		if(node.type==2){ //state, check rewards
+			for(int d=0; d<numDim; d++){
+				if(myModel.textHasInnateVariable(node.rewards[d])){node.rewardHasVariables[d]=true;}
+			}
+		}
+		if(myModel.textHasInnateVariable(node.prob)){node.probHasVariables=true;} //prob
+		
+		//move down tree
+		for(int c=0; c<node.numChildren; c++){
+			MarkovNode curChild=node.children[c];
+			checkForTime(curChild);
+			if(curChild.probHasVariables==true){node.childHasProbVariables=true;}
+		}
+	}
+	
+	
+	/**
+	 * Simulates one cycle for a person
+	 */
+	private void simPerson(int p, MarkovNode curChain, int t, MarkovAccumulator curAcc, double curDiscount[], int curThread) throws Exception{
+		//update time dependent variables
+		if(t>0) {
+			curT.unlockDependents(curThread);
+			curT.updateDependents(myModel, curThread);
+		}
+
+		//chain root variable updates
+		if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
+			//Perform variable updates
+			for(int u=0; u<curChain.curVariableUpdates.length; u++){
+				curChain.curVariableUpdates[u].update(true,curThread);
+			}
+			//Update any dependent variables
+			for(int u=0; u<curChain.curVariableUpdates.length; u++){
+				curChain.curVariableUpdates[u].variable.updateDependents(myModel,curThread);
+			}
+		}
+
+		//rewards
+		int curState=population.curState[p];
+		for(int d=0; d<numDim; d++){ //Update state rewards
+			//record prev cum rewards
+			population.prevRewards[d][p]=population.rewards[d][p];
+			population.prevRewardsDis[d][p]=population.rewardsDis[d][p];
+			//update rewards
+			if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
+				curAcc.rewards[d]+=states[curState].curRewards[d][curThread];
+				for(int g=0; g<numSubgroups; g++){
+					if(population.inSubgroup(p, g)){curAcc.rewardsGroup[g][d]+=states[curState].curRewards[d][curThread];}
+				}
+				population.rewards[d][p]+=states[curState].curRewards[d][curThread];
+				population.rewardsDis[d][p]+=states[curState].curRewards[d][curThread]*curDiscount[d];
+			}
+			else{ //has variable, re-evaluate reward
+				double curReward=Interpreter.evaluateDouble(states[curState].curRewardTokens[d], curThread, false);
+				curAcc.rewards[d]+=curReward;
+				for(int g=0; g<numSubgroups; g++){
+					if(population.inSubgroup(p, g)){curAcc.rewardsGroup[g][d]+=curReward;}
+				}
+				population.rewards[d][p]+=curReward;
+				population.rewardsDis[d][p]+=curReward*curDiscount[d];
+			}
+		}
+
+		//state transition
+		traverseNode(states[curState],p,curAcc,curDiscount,curThread);
+
+		//update variables
+		for(int v=0; v<numVars; v++){
+			double val=variables[v].value[curThread].getDouble();
+			curAcc.variables[v]+=val; curAcc.variablesDenom[v]++;
+			for(int g=0; g<numSubgroups; g++){
+				if(population.inSubgroup(p, g)){
+					curAcc.variablesGroup[g][v]+=val; curAcc.variablesDenomGroup[g][v]++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Simulates people from one transition to the next in chains where transition probabilities, costs, and rewards
+	 * are constant for each person.  The paths from each state are compiled when a person first enters it, the number
+	 * of cycles spent in a state is sampled from a geometric distribution, and rewards over the skipped cycles are
+	 * added in closed form.  Cycle totals are recorded as differences between cycles, which are summed once all people
+	 * are done (see updateTraceCycles).
+	 */
+	private class EventPaths{
+		private int curThread;
+		private int numCycles;
+		/**
+		 * Sum of cycle weights (half-cycle correction) before each cycle [Cycle+1], and discounted [Cycle+1][Dimension]
+		 */
+		private double weightSums[], weightSumsDis[][];
+		/**
+		 * True if paths depend on person-level variables and are compiled for each person
+		 */
+		private boolean personSpecific;
+		private int curPerson;
+		private int compiledFor[]; //[State], -1 if not compiled
+		private double stateRewards[][]; //[State][Dimension]
+		private int numPaths[]; //[State]
+		private int pathTo[][]; //[State][Path]
+		private double pathProb[][]; //[State][Path]
+		private double pathCost[][][]; //[State][Path][Dimension]
+		private double stayProb[]; //[State]
+		/**
+		 * Path that stays in the state [State], -1 if there is none or several with different costs so paths are sampled each cycle
+		 */
+		private int stayPath[];
+		
+		public EventPaths(int curThread, int numCycles, boolean terminate, double discountFactors[][]){
+			this.curThread=curThread;
+			this.numCycles=numCycles;
+			weightSums=new double[numCycles+1];
+			weightSumsDis=new double[numCycles+1][numDim];
+			for(int t=0; t<numCycles; t++){
+				double weight=1.0;
+				if(markovTree.halfCycleCorrection==true){
+					if(t==0){weight*=0.5;} //first cycle
+					if(terminate && t==numCycles-1){weight*=0.5;} //last cycle
+				}
+				weightSums[t+1]=weightSums[t]+weight;
+				for(int d=0; d<numDim; d++){
+					weightSumsDis[t+1][d]=weightSumsDis[t][d]+weight*discountFactors[t][d];
+				}
+			}
+			
+			curPerson=-1;
+			compiledFor=new int[numStates];
+			stateRewards=new double[numStates][numDim];
+			numPaths=new int[numStates];
+			pathTo=new int[numStates][]; pathProb=new double[numStates][]; pathCost=new double[numStates][][];
+			stayProb=new double[numStates];
+			stayPath=new int[numStates];
+			for(int s=0; s<numStates; s++){
+				compiledFor[s]=-1;
+				int maxPaths=countPaths(states[s]);
+				pathTo[s]=new int[maxPaths]; pathProb[s]=new double[maxPaths]; pathCost[s]=new double[maxPaths][numDim];
+				if(hasVariables(states[s])){personSpecific=true;}
+			}
+		}
+		
+		private int countPaths(MarkovNode node){
+			if(node.type==4){return(1);}
+			int count=0;
+			for(int c=0; c<node.numChildren; c++){count+=countPaths(node.children[c]);}
+			return(count);
+		}
+		
+		private boolean hasVariables(MarkovNode node){
+			if(node.childHasProbVariables){return(true);}
+			for(int d=0; node.hasCost && d<numDim; d++){
+				if(node.costHasVariables[d]){return(true);}
+			}
+			for(int d=0; node.type==2 && d<numDim; d++){
+				if(node.rewardHasVariables[d]){return(true);}
+			}
+			for(int c=0; c<node.numChildren; c++){
+				if(hasVariables(node.children[c])){return(true);}
+			}
+			return(false);
+		}
+		
+		/**
+		 * Simulates a person through all cycles
+		 * @param curAcc Segment accumulators [Cycle], differences between cycles are added
+		 */
+		public void simulate(int p, MarkovAccumulator curAcc[]) throws Exception{
+			curPerson++;
+			//variables do not change, so are added to all cycles
+			for(int v=0; v<numVars; v++){
+				double val=variables[v].value[curThread].getDouble();
+				curAcc[0].variables[v]+=val; curAcc[0].variablesDenom[v]++;
+				for(int g=0; g<numSubgroups; g++){
+					if(population.inSubgroup(p, g)){
+						curAcc[0].variablesGroup[g][v]+=val; curAcc[0].variablesDenomGroup[g][v]++;
+					}
+				}
+			}
+			
+			MersenneTwisterFast curGenerator=generator[curThread];
+			int state=population.curState[p];
+			int t=0;
+			while(t<numCycles){
+				if(compiledFor[state]==-1 || (personSpecific && compiledFor[state]!=curPerson)){
+					compile(state);
+				}
+				int path;
+				int stay=stayPath[state];
+				if(stay!=-1){ //sample number of cycles until leaving
+					double q=stayProb[state];
+					int end=numCycles;
+					if(q<1){
+						double cycles=Math.floor(Math.log(1.0-curGenerator.nextDouble())/Math.log(q));
+						if(cycles<numCycles-t){end=t+(int)cycles;}
+					}
+					if(end>t){
+						addCycles(p,state,stay,t,end,curAcc);
+						t=end;
+					}
+					if(t==numCycles){break;}
+					path=samplePath(state,curGenerator.nextDouble()*(1.0-q),stay);
+				}
+				else{
+					path=samplePath(state,curGenerator.nextDouble(),-1);
+				}
+				addCycles(p,state,path,t,t+1,curAcc);
+				state=pathTo[state][path];
+				t++;
+			}
+			population.curState[p]=state;
+		}
+		
+		/**
+		 * @param rand Random number scaled to the total probability of the paths to sample from
+		 * @param skip Path to exclude, -1 if none
+		 */
+		private int samplePath(int state, double rand, int skip){
+			int last=-1;
+			for(int i=0; i<numPaths[state]; i++){
+				if(i==skip){continue;}
+				last=i;
+				rand-=pathProb[state][i];
+				if(rand<=0){return(i);}
+			}
+			return(last); //rounding error
+		}
+		
+		/**
+		 * Adds a person's prevalence, rewards, and path costs for cycles start to end-1
+		 */
+		private void addCycles(int p, int state, int path, int start, int end, MarkovAccumulator curAcc[]){
+			MarkovAccumulator startAcc=curAcc[start], endAcc=null;
+			if(end<numCycles){endAcc=curAcc[end];}
+			startAcc.curPrev[state]++;
+			if(endAcc!=null){endAcc.curPrev[state]--;}
+			for(int d=0; d<numDim; d++){
+				double amount=stateRewards[state][d]+pathCost[state][path][d];
+				startAcc.rewards[d]+=amount;
+				if(endAcc!=null){endAcc.rewards[d]-=amount;}
+				population.rewards[d][p]+=amount*(weightSums[end]-weightSums[start]);
+				population.rewardsDis[d][p]+=amount*(weightSumsDis[end][d]-weightSumsDis[start][d]);
+			}
+			for(int g=0; g<numSubgroups; g++){
+				if(population.inSubgroup(p, g)){
+					startAcc.curPrevGroup[g][state]++;
+					if(endAcc!=null){endAcc.curPrevGroup[g][state]--;}
+					for(int d=0; d<numDim; d++){
+						double amount=stateRewards[state][d]+pathCost[state][path][d];
+						startAcc.rewardsGroup[g][d]+=amount;
+						if(endAcc!=null){endAcc.rewardsGroup[g][d]-=amount;}
+					}
+				}
+			}
+		}
+		
+		/**
+		 * Gets the rewards of a state and the probability, next state, and costs of each path from it.  Paths with the
+		 * same next state and costs are merged.
+		 */
+		private void compile(int s) throws Exception{
+			compiledFor[s]=curPerson;
+			MarkovNode state=states[s];
+			for(int d=0; d<numDim; d++){
+				if(state.rewardHasVariables[d]==false){stateRewards[s][d]=state.curRewards[d][curThread];}
+				else{stateRewards[s][d]=Interpreter.evaluateDouble(state.curRewardTokens[d], curThread, false);}
+			}
+			numPaths[s]=0;
+			addPaths(s,state,1.0,new double[numDim]);
+			stayProb[s]=0;
+			stayPath[s]=-1;
+			int numStay=0;
+			for(int i=0; i<numPaths[s]; i++){
+				if(pathTo[s][i]==s){
+					stayProb[s]+=pathProb[s][i];
+					stayPath[s]=i;
+					numStay++;
+				}
+			}
+			if(numStay>1){stayPath[s]=-1;} //costs differ, sample each cycle
+		}
+		
+		private void addPaths(int s, MarkovNode node, double prob, double cost[]) throws Exception{
+			if(node.hasCost){
+				cost=cost.clone();
+				for(int d=0; d<numDim; d++){
+					if(node.costHasVariables[d]==false){cost[d]+=node.curCosts[d][curThread];}
+					else{cost[d]+=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);}
+				}
+			}
+			if(node.type==4){ //Transition node, end of path
+				if(prob==0){return;}
+				for(int i=0; i<numPaths[s]; i++){
+					if(pathTo[s][i]==node.transTo && Arrays.equals(pathCost[s][i], cost)){
+						pathProb[s][i]+=prob;
+						return;
+					}
+				}
+				int i=numPaths[s];
+				pathTo[s][i]=node.transTo;
+				pathProb[s][i]=prob;
+				System.arraycopy(cost, 0, pathCost[s][i], 0, numDim);
+				numPaths[s]++;
+			}
+			else{
+				if(node.childHasProbVariables==true){ //re-evaluate child probs
+					evalChildProbs(node,false,curThread);
+				}
+				for(int c=0; c<node.numChildren; c++){
+					MarkovNode curChild=node.children[c];
+					addPaths(s,curChild,prob*curChild.curProb[curThread],cost);
+				}
+			}
+		}
+	}
 	
 	private class simCycleThread implements Runnable{
-		private int beginIndex, endIndex;
 		private int finalN; //cur thread
 		private int t;
 		private MarkovNode curChain;
 		
-		public simCycleThread(int beginIndex, int endIndex, int finalN, int t, MarkovNode curChain){
-			this.beginIndex=beginIndex;
-			this.endIndex=endIndex;
+		public simCycleThread(int finalN, int t, MarkovNode curChain){
 			this.finalN=finalN;
 			this.t=t;
 			this.curChain=curChain;
@@ -1159,75 +1809,19 @@ public class MarkovMonteCarloPOOL{
 		@Override
 		public void run(){
 			try{
-				//Update each person
-				for(int p=beginIndex; p<endIndex; p++){ 
-					MarkovPerson curPerson=people[p];
-
-					//re-point variables
-					for(int v=0; v<numVars; v++){
-						variables[v].value[finalN]=curPerson.variableVals[v];
-					}
-					
-					//update time dependent variables
-					if(t>0) {
-						curT.unlockDependents(finalN);
-						curT.updateDependents(myModel, finalN);
-					}
-
-					//chain root variable updates
-					if(t>0 && curChain.hasVarUpdates && curChain.curVariableUpdates!=null){
-						//Perform variable updates
-						for(int u=0; u<curChain.curVariableUpdates.length; u++){
-							curChain.curVariableUpdates[u].update(true,finalN);
-						}
-						//Update any dependent variables
-						for(int u=0; u<curChain.curVariableUpdates.length; u++){
-							curChain.curVariableUpdates[u].variable.updateDependents(myModel,finalN);
-						}
-					}
-
-					//rewards
-					int curState=curPerson.curState;
-					for(int d=0; d<numDim; d++){ //Update state rewards
-						//record prev cum rewards
-						curPerson.prevRewards[d]=curPerson.rewards[d];
-						curPerson.prevRewardsDis[d]=curPerson.rewardsDis[d];
-						//update rewards
-						if(states[curState].rewardHasVariables[d]==false){ //use pre-calculated reward
-							cycleRewards[d][finalN]+=states[curState].curRewards[d][finalN];
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=states[curState].curRewards[d][finalN];}
-							}
-							curPerson.rewards[d]+=states[curState].curRewards[d][finalN];
-							curPerson.rewardsDis[d]+=states[curState].curRewards[d][finalN]*discountFactor[d];
-						}
-						else{ //has variable, re-evaluate reward
-							double curReward=Interpreter.evaluateTokens(states[curState].curRewardTokens[d], finalN, false).getDouble();
-							cycleRewards[d][finalN]+=curReward;
-							for(int g=0; g<numSubgroups; g++){
-								if(curPerson.inSubgroup[g]){cycleRewardsGroup[g][d][finalN]+=curReward;}
-							}
-							curPerson.rewards[d]+=curReward;
-							curPerson.rewardsDis[d]+=curReward*discountFactor[d];
-						}
-					}
-
-					//state transition
-					traverseNode(states[curState],curPerson,finalN);
-
-					//update variables
-					for(int v=0; v<numVars; v++){
-						double val=variables[v].value[finalN].getDouble();
-						cycleVariables[v][finalN]+=val; cycleVariablesDenom[v][finalN]++;
-						for(int g=0; g<numSubgroups; g++){
-							if(curPerson.inSubgroup[g]){
-								cycleVariablesGroup[g][v][finalN]+=val; cycleVariablesDenomGroup[g][v][finalN]++;
-							}
-						}
-					}
-					//re-point variables
-					for(int v=0; v<numVars; v++){
-						curPerson.variableVals[v]=variables[v].value[finalN];
+				for(int seg=finalN; seg<acc.length; seg+=numThreads){
+					streams.seed(generator[finalN], RandomStreams.SIMULATE, chainKey, curChunk, seg, t);
+					MarkovAccumulator curAcc=acc[seg];
+					int beginIndex=streams.getStart(seg), endIndex=streams.getStart(seg+1);
+					//Update each person
+					for(int p=beginIndex; p<endIndex; p++){ 
+						//point variables to person
+						population.loadVariables(p, variables, finalN);
+						
+						simPerson(p,curChain,t,curAcc,discountFactor,finalN);
+						
+						//store person's variables
+						population.storeVariables(p, variables, finalN);
 					}
 				}
 			}catch(Exception e){
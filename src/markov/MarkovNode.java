@@ -45,8 +45,8 @@ import javax.xml.bind.annotation.XmlTransient;
 
 import base.ModelNode;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.MathUtils;
-import math.Token;
 
 @XmlRootElement(name="node")
 public class MarkovNode extends ModelNode{
@@ -60,9 +60,9 @@ public class MarkovNode extends ModelNode{
 	@XmlTransient public int numChildren;
 	@XmlTransient public MarkovNode children[];
 	//Numeric data - parsed/calculated
-	@XmlTransient Token curProbTokens[]; //[token]
-	@XmlTransient Token curCostTokens[][], curRewardTokens[][]; //[dim][token]
-	@XmlTransient Token curTerminationTokens[];
+	@XmlTransient CompiledExpression curProbTokens;
+	@XmlTransient CompiledExpression curCostTokens[], curRewardTokens[]; //[dim]
+	@XmlTransient CompiledExpression curTerminationTokens;
 	@XmlTransient double curProb[]; //Current probability used to run the model - not saved
 	@XmlTransient double curCosts[][]; //thread-specific
 	@XmlTransient double curRewards[][];
@@ -77,6 +77,10 @@ public class MarkovNode extends ModelNode{
 	
 	@XmlTransient boolean probHasTime, childHasProbTime;
 	@XmlTransient boolean costHasTime[], rewardHasTime[];
+	/**
+	 * True if transition probabilities, costs, and rewards in this chain are the same every cycle
+	 */
+	@XmlTransient boolean timeHomogeneous;
 	
 	//Visual Attributes
 	@XmlTransient PanelMarkov panel;
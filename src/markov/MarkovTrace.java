@@ -21,184 +21,134 @@ package markov;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.HashMap;
 
 import javax.swing.table.DefaultTableModel;
 
 import base.AmuaModel;
-import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
 import math.NumericException;
 
+/**
+ * Markov trace stored by column as primitive doubles.  Column order is Cycle, state prevalence, cycle/cumulative rewards
+ * (undiscounted then discounted), and variables.  The rounded table model for display is only built when requested.
+ */
 public class MarkovTrace{
 	public String traceName;
-	public ArrayList<Integer> cycles;
+	public TraceColumn cycles;
 	int numStates;
 	public String stateNames[];
-	public ArrayList<Double> prev[];
+	public TraceColumn prev[];
 	String dimSymbols[];
 	public String dimNames[];
 	public int numDim;
 	public boolean discounted;
-	public ArrayList<Double> cycleRewards[], cycleRewardsDis[];
-	public ArrayList<Double> cumRewards[], cumRewardsDis[];
+	public TraceColumn cycleRewards[], cycleRewardsDis[];
+	public TraceColumn cumRewards[], cumRewardsDis[];
 	public int numVariables;
 	public String varNames[];
-	public ArrayList<Double> cycleVariables[];
-	public DefaultTableModel modelTraceRounded;
-	DefaultTableModel modelTraceRaw;
+	public TraceColumn cycleVariables[];
 	AmuaModel myModel;
 	
+	/**
+	 * All columns in table order, pointing to the columns above [Column]
+	 */
+	TraceColumn columns[];
+	String columnNames[];
+	HashMap<String,Integer> columnIndices;
+	/**
+	 * Rounded table for display, built by {@link #getTableModel()}
+	 */
+	DefaultTableModel modelTraceRounded;
+	
 	//Constructor
 	public MarkovTrace(MarkovNode chainRoot){
 		traceName=chainRoot.name;
 		myModel=chainRoot.myModel;
-		cycles=new ArrayList<Integer>();
 		numStates=chainRoot.stateNames.size();
 		stateNames=new String[numStates];
-		prev=new ArrayList[numStates];
 		MarkovTree tree=chainRoot.tree;
 		for(int s=0; s<numStates; s++){
 			int index=chainRoot.childIndices.get(s);
 			stateNames[s]=tree.nodes.get(index).name;
-			prev[s]=new ArrayList<Double>();
 		}
 		numDim=chainRoot.numDimensions;
 		dimSymbols=chainRoot.myModel.dimInfo.dimSymbols;
 		dimNames=chainRoot.myModel.dimInfo.dimNames;
-		cycleRewards=new ArrayList[numDim]; cycleRewardsDis=new ArrayList[numDim];
-		cumRewards=new ArrayList[numDim]; cumRewardsDis=new ArrayList[numDim];
 		discounted=myModel.markov.discountRewards;
-		for(int d=0; d<numDim; d++){
-			cycleRewards[d]=new ArrayList<Double>(); cycleRewardsDis[d]=new ArrayList<Double>();
-			cumRewards[d]=new ArrayList<Double>(); cumRewardsDis[d]=new ArrayList<Double>();
-		}
 		numVariables=chainRoot.myModel.variables.size();
 		varNames=new String[numVariables];
-		cycleVariables=new ArrayList[numVariables];
 		for(int c=0; c<numVariables; c++){
 			varNames[c]=chainRoot.myModel.variables.get(c).name;
-			cycleVariables[c]=new ArrayList<Double>();
-		}
-		//Build Model headers
-		modelTraceRaw=new DefaultTableModel(); modelTraceRounded=new DefaultTableModel();
-		modelTraceRaw.addColumn("Cycle"); modelTraceRounded.addColumn("Cycle");
-		for(int s=0; s<numStates; s++){
-			modelTraceRaw.addColumn(stateNames[s]);
-			modelTraceRounded.addColumn(stateNames[s]);
 		}
+		
+		//Build columns
+		int numCols=1+numStates+(numDim*2)+numVariables;
+		if(discounted){numCols+=numDim*2;}
+		columns=new TraceColumn[numCols];
+		columnNames=new String[numCols];
+		int curCol=0;
+		cycles=addColumn(curCol++, "Cycle");
+		prev=new TraceColumn[numStates];
+		for(int s=0; s<numStates; s++){prev[s]=addColumn(curCol++, stateNames[s]);}
 		//undiscounted
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cycle_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cycle_"+dimSymbols[d]);
-		}
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.addColumn("Cum_"+dimSymbols[d]);
-			modelTraceRounded.addColumn("Cum_"+dimSymbols[d]);
-		}
+		cycleRewards=new TraceColumn[numDim]; cumRewards=new TraceColumn[numDim];
+		for(int d=0; d<numDim; d++){cycleRewards[d]=addColumn(curCol++, "Cycle_"+dimSymbols[d]);}
+		for(int d=0; d<numDim; d++){cumRewards[d]=addColumn(curCol++, "Cum_"+dimSymbols[d]);}
 		//discounted
+		cycleRewardsDis=new TraceColumn[numDim]; cumRewardsDis=new TraceColumn[numDim];
 		if(discounted==true){
+			for(int d=0; d<numDim; d++){cycleRewardsDis[d]=addColumn(curCol++, "Cycle_Dis_"+dimSymbols[d]);}
+			for(int d=0; d<numDim; d++){cumRewardsDis[d]=addColumn(curCol++, "Cum_Dis_"+dimSymbols[d]);}
+		}
+		else{ //not shown, but still recorded
 			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cycle_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cycle_Dis_"+dimSymbols[d]);
-			}
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.addColumn("Cum_Dis_"+dimSymbols[d]);
-				modelTraceRounded.addColumn("Cum_Dis_"+dimSymbols[d]);
+				cycleRewardsDis[d]=new TraceColumn();
+				cumRewardsDis[d]=new TraceColumn();
 			}
 		}
 		//variables
-		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.addColumn(chainRoot.myModel.variables.get(c).name);
-			modelTraceRounded.addColumn(chainRoot.myModel.variables.get(c).name);
+		cycleVariables=new TraceColumn[numVariables];
+		for(int c=0; c<numVariables; c++){cycleVariables[c]=addColumn(curCol++, varNames[c]);}
+		
+		columnIndices=new HashMap<String,Integer>();
+		for(int c=numCols-1; c>=0; c--){ //first column wins if names are repeated
+			columnIndices.put(columnNames[c], c);
 		}
 	}
 	
-	public void updateTable(int t){
-		modelTraceRaw.addRow(new Object[]{null}); modelTraceRounded.addRow(new Object[]{null});
-		int curCol=0;
-		modelTraceRaw.setValueAt(cycles.get(t), t, curCol); modelTraceRounded.setValueAt(cycles.get(t), t, curCol); //cycle
-		curCol++;
-		//state prevalence
-		for(int s=0; s<numStates; s++){
-			modelTraceRaw.setValueAt(prev[s].get(t), t, curCol);
-			double roundedPrev=MathUtils.round(prev[s].get(t),myModel.markov.stateDecimals);
-			modelTraceRounded.setValueAt(roundedPrev, t, curCol);
-			curCol++;
-		}
-		//undiscounted
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cycleRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cycleRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
-		}
-		for(int d=0; d<numDim; d++){
-			modelTraceRaw.setValueAt(cumRewards[d].get(t),t,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(cumRewards[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-			curCol++;
-		}
-		//discounted
-		if(discounted==true){
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cycleRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cycleRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
-			}
-			for(int d=0; d<numDim; d++){
-				modelTraceRaw.setValueAt(cumRewardsDis[d].get(t),t,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(cumRewardsDis[d].get(t),myModel.dimInfo.decimals[d]),t,curCol);
-				curCol++;
-			}
-		}
-		//variables
-		for(int c=0; c<numVariables; c++){
-			modelTraceRaw.setValueAt(cycleVariables[c].get(t), t, curCol);
-			modelTraceRounded.setValueAt(cycleVariables[c].get(t), t, curCol);
-			curCol++;
-		}
-	}	
+	private TraceColumn addColumn(int col, String name){
+		columns[col]=new TraceColumn();
+		columnNames[col]=name;
+		return(columns[col]);
+	}
+	
+	public int getNumRows(){
+		return(cycles.size());
+	}
+	
+	public int getNumColumns(){
+		return(columns.length);
+	}
 	
 	public void updateHalfCycle(){
-		int row=modelTraceRaw.getRowCount()-1; //get last row
+		int row=cycles.size()-1; //get last row
 		//update cycle rewards and cum rewards
-		int curCol=numStates+1;
-		
 		//undiscounted
 		for(int d=0; d<numDim; d++){
 			double halfReward=cycleRewards[d].get(row)*0.5;
 			cycleRewards[d].set(row, halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
-		}
-		for(int d=0; d<numDim; d++){
-			double rewardPrev=cumRewards[d].get(row-1);
-			double halfReward=cycleRewards[d].get(row);
-			cumRewards[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-			modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-			modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-			curCol++;
+			cumRewards[d].set(row, cumRewards[d].get(row-1)+halfReward);
 		}
 		//discounted
 		if(discounted==true){
 			for(int d=0; d<numDim; d++){
 				double halfReward=cycleRewardsDis[d].get(row)*0.5;
 				cycleRewardsDis[d].set(row, halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
-			}
-			for(int d=0; d<numDim; d++){
-				double rewardPrev=cumRewardsDis[d].get(row-1);
-				double halfReward=cycleRewardsDis[d].get(row);
-				cumRewardsDis[d].set(row, rewardPrev+halfReward); //update with half-cycle reward
-				modelTraceRaw.setValueAt(rewardPrev+halfReward,row,curCol);
-				modelTraceRounded.setValueAt(MathUtils.round(rewardPrev+halfReward,myModel.dimInfo.decimals[d]),row,curCol);
-				curCol++;
+				cumRewardsDis[d].set(row, cumRewardsDis[d].get(row-1)+halfReward);
 			}
 		}
-		
 	}	
 	
 	public void setT0(MarkovNode chainRoot){
@@ -220,90 +170,91 @@ public class MarkovTrace{
 		for(int c=0; c<numVariables; c++){
 			cycleVariables[c].add(0.0);
 		}
-		updateTable(0);
 	}
 	
-	/*public double getValue(int t, String colText){
-		//Get column index
-		int col=getColumnIndex(colText);
-		if(col<1 || col>(modelTraceRaw.getColumnCount()-1)){return(Double.NaN);} //Throw error
-		else{ //Valid column
-			double val=(double) modelTraceRaw.getValueAt(t, col);
-			return(val);
-		}
-	}*/
-	
-	public Numeric getValue(String row, String col) throws NumericException, Exception{
-		double traceVals[][];
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
-		int startRow, endRow;
-		int startCol, endCol;
-		if(row.contains(":")){ //Multiple rows
-			if(row.length()==1){ //":" all rows
-				startRow=0; endRow=numRows-1;
-			}
-			else{ //"x:y" Sequence of rows
-				int index=row.indexOf(":");
-				startRow=Interpreter.evaluate(row.substring(0, index),myModel,false).getInt();
-				endRow=Interpreter.evaluate(row.substring(index+1),myModel,false).getInt();
-			}
-		}
-		else{
-			startRow=Interpreter.evaluate(row,myModel,false).getInt();
-			endRow=startRow;
-		}
-		
-		if(col.contains(":")){ //Multiple cols
-			if(col.length()==1){ //":" all cols
-				startCol=0; endCol=numCols-1;
-			}
-			else{ //"x:y" Sequence of cols
-				int index=col.indexOf(":");
-				startCol=Interpreter.evaluate(col.substring(0, index),myModel,false).getInt();
-				endCol=Interpreter.evaluate(col.substring(index+1),myModel,false).getInt();
-			}
+	/**
+	 * Returns the values in the given rows and columns (inclusive) as a matrix
+	 */
+	public Numeric getValues(int startRow, int endRow, int startCol, int endCol) throws NumericException{
+		int numRows=cycles.size();
+		if(startRow<0 || endRow>=numRows || startRow>endRow){
+			throw new NumericException("Invalid row index: "+startRow+(startRow!=endRow ? ":"+endRow : ""),"trace");
 		}
-		else{
-			startCol=getColumnIndex(col);
-			endCol=startCol;
+		if(startCol<0 || endCol>=columns.length || startCol>endCol){
+			throw new NumericException("Invalid column index: "+startCol+(startCol!=endCol ? ":"+endCol : ""),"trace");
 		}
-		
-		traceVals=new double[endRow-startRow+1][endCol-startCol+1];
-		for(int i=startRow; i<=endRow; i++){
-			for(int j=startCol; j<=endCol; j++){
-				traceVals[i-startRow][j-startCol]=(double) modelTraceRaw.getValueAt(i, j);
+		double traceVals[][]=new double[endRow-startRow+1][endCol-startCol+1];
+		for(int j=startCol; j<=endCol; j++){
+			double colVals[]=columns[j].values;
+			for(int i=startRow; i<=endRow; i++){
+				traceVals[i-startRow][j-startCol]=colVals[i];
 			}
 		}
-		
 		return(new Numeric(traceVals));
 	}
 	
-	private int getColumnIndex(String colText) throws NumericException{
-		int col=-1;
-		if(colText.contains("\"") || colText.contains("\'")){ //String
-			//Trim quotes
-			colText=colText.replace("\"","");
-			colText=colText.replace("\'","");
-			boolean found=false;
-			while(found==false && col<modelTraceRaw.getColumnCount()){
-				col++;
-				if(colText.equals(modelTraceRaw.getColumnName(col))){found=true;}
+	/**
+	 * Evaluates trace(row,col) from the unparsed arguments
+	 */
+	public Numeric getValue(String row, String col) throws NumericException, Exception{
+		return(new TraceReference(row,col,myModel).evaluate(this,0,false));
+	}
+	
+	/**
+	 * @return Column index, or -1 if not found
+	 */
+	public int getColumnIndex(String colName){
+		Integer col=columnIndices.get(colName);
+		if(col==null){return(-1);}
+		return(col);
+	}
+	
+	/**
+	 * Returns the rounded trace as a table model for display.  The table is built the first time it is requested.
+	 */
+	public DefaultTableModel getTableModel(){
+		int numRows=cycles.size();
+		if(modelTraceRounded!=null && modelTraceRounded.getRowCount()==numRows){
+			return(modelTraceRounded);
+		}
+		int numCols=columns.length;
+		Object data[][]=new Object[numRows][numCols];
+		for(int t=0; t<numRows; t++){
+			int curCol=0;
+			data[t][curCol]=(int) cycles.get(t); curCol++; //cycle
+			//state prevalence
+			for(int s=0; s<numStates; s++){
+				data[t][curCol]=MathUtils.round(prev[s].get(t),myModel.markov.stateDecimals);
+				curCol++;
 			}
-			if(found==false){
-				throw new NumericException("Can't find column: "+colText,"trace");
+			//undiscounted
+			for(int d=0; d<numDim; d++){
+				data[t][curCol]=MathUtils.round(cycleRewards[d].get(t),myModel.dimInfo.decimals[d]);
+				curCol++;
 			}
-		}
-		else{ //Try evaluate as integer
-			try{
-				col=Interpreter.evaluate(colText,myModel,false).getInt();
+			for(int d=0; d<numDim; d++){
+				data[t][curCol]=MathUtils.round(cumRewards[d].get(t),myModel.dimInfo.decimals[d]);
+				curCol++;
+			}
+			//discounted
+			if(discounted==true){
+				for(int d=0; d<numDim; d++){
+					data[t][curCol]=MathUtils.round(cycleRewardsDis[d].get(t),myModel.dimInfo.decimals[d]);
+					curCol++;
+				}
+				for(int d=0; d<numDim; d++){
+					data[t][curCol]=MathUtils.round(cumRewardsDis[d].get(t),myModel.dimInfo.decimals[d]);
+					curCol++;
+				}
 			}
-			catch(Exception  e){
-				col=-1;
-				throw new NumericException("Invalid column index: "+colText,"trace");
+			//variables
+			for(int c=0; c<numVariables; c++){
+				data[t][curCol]=cycleVariables[c].get(t);
+				curCol++;
 			}
 		}
-		return(col);
+		modelTraceRounded=new DefaultTableModel(data, columnNames);
+		return(modelTraceRounded);
 	}
 	
 	public void write(String filepath, int index) throws IOException{
@@ -315,25 +266,24 @@ public class MarkovTrace{
 		FileWriter fstream = new FileWriter(curFilepath+".csv"); //Create new file
 		BufferedWriter out = new BufferedWriter(fstream);
 		
-		int numRows=modelTraceRaw.getRowCount();
-		int numCols=modelTraceRaw.getColumnCount();
+		int numRows=cycles.size();
+		int numCols=columns.length;
 		
 		//Headers
-		out.write(modelTraceRaw.getColumnName(0));
+		out.write(columnNames[0]);
 		for(int i=1; i<numCols; i++){
-			out.write(","+modelTraceRaw.getColumnName(i));
+			out.write(","+columnNames[i]);
 		}
 		out.newLine();
 		
 		//Data
 		for(int r=0; r<numRows; r++){
-			out.write(modelTraceRaw.getValueAt(r, 0)+"");
+			out.write((int) cycles.get(r)+"");
 			for(int i=1; i<numCols; i++){
-				out.write(","+modelTraceRaw.getValueAt(r,i));
+				out.write(","+columns[i].get(r));
 			}
 			out.newLine();
 		}
 		out.close();
 	}
-
 }
\ No newline at end of file
@@ -35,11 +35,11 @@ import main.ConsoleTable;
 import main.DimInfo;
 import main.Variable;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.MathUtils;
 import math.Numeric;
 import math.NumericException;
-import math.Token;
 
 
 @XmlRootElement(name="MarkovTree")
@@ -59,6 +59,7 @@ public class MarkovTree{
 	@XmlElement public double cyclesPerYear=1;
 	@XmlElement public boolean showTrace=true;
 	@XmlElement public boolean compileTraces;
+	@XmlElement public boolean eventDriven; //microsimulation: sample the time to each transition if probabilities are constant
 		
 	@XmlTransient public boolean showEV=false;
 	@XmlTransient boolean validProbs;
@@ -168,6 +169,10 @@ public class MarkovTree{
 			for(int i=1; i<nodes.size(); i++){
 				checkTerminationCondition(nodes.get(i));
 			}
+			//check for time-homogeneous chains
+			for(int c=0; c<chains.size(); c++){
+				checkTimeHomogeneous(chains.get(c));
+			}
 		}
 
 		return(errors);
@@ -185,6 +190,7 @@ public class MarkovTree{
 		if(validProbs){
 			checkProbs(chainRoot);
 			checkTerminationCondition(chainRoot);
+			checkTimeHomogeneous(chainRoot);
 		}
 		return(errors);
 	}
@@ -204,7 +210,7 @@ public class MarkovTree{
 			else{ //Evaluate text
 				try{
 					curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
-					curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+					curNode.curProb[0]=Interpreter.evaluateDouble(curNode.curProbTokens, 0, false);
 				}catch(Exception e){
 					validProbs=false;
 					curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -239,11 +245,11 @@ public class MarkovTree{
 		if(curNode.type!=2){ //Not state, validate cost
 			curNode.highlightTextField(1,null); //Cost
 			int numDim=myModel.dimInfo.dimNames.length;
-			curNode.curCostTokens=new Token[numDim][];
+			curNode.curCostTokens=new CompiledExpression[numDim];
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
-					double testVal=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+					double testVal=Interpreter.evaluateDouble(curNode.curCostTokens[c], 0, false);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -258,11 +264,11 @@ public class MarkovTree{
 		else{ //State, validate rewards
 			curNode.highlightTextField(3, null); //rewards
 			int numDim=myModel.dimInfo.dimNames.length;
-			curNode.curRewardTokens=new Token[numDim][];
+			curNode.curRewardTokens=new CompiledExpression[numDim];
 			for(int c=0; c<numDim; c++){
 				try{
 					curNode.curRewardTokens[c]=Interpreter.parse(curNode.rewards[c], myModel);
-					double testVal=Interpreter.evaluateTokens(curNode.curRewardTokens[c], 0, false).getDouble();
+					double testVal=Interpreter.evaluateDouble(curNode.curRewardTokens[c], 0, false);
 					
 					if(Double.isNaN(testVal)){
 						curNode.highlightTextField(3, Color.YELLOW); //rewards
@@ -428,6 +434,41 @@ public class MarkovTree{
 		}
 	}
 	
+	/**
+	 * Flags chains where transition probabilities, costs, and rewards don't depend on 't', variables, or the trace,
+	 * so cohorts can be simulated with a transition matrix
+	 */
+	private void checkTimeHomogeneous(MarkovNode chainRoot){
+		chainRoot.timeHomogeneous=(chainRoot.hasVarUpdates==false);
+		for(int c=0; c<chainRoot.numChildren && chainRoot.timeHomogeneous; c++){
+			chainRoot.timeHomogeneous=isTimeHomogeneous(chainRoot.children[c]);
+		}
+	}
+	
+	private boolean isTimeHomogeneous(MarkovNode node){
+		if(node.hasVarUpdates){return(false);}
+		if(node.type!=2 && isTimeDependent(node.prob)){return(false);} //initial state probs are only used at t=0
+		if(node.type!=2 && node.hasCost){
+			for(int d=0; d<node.cost.length; d++){
+				if(isTimeDependent(node.cost[d])){return(false);}
+			}
+		}
+		if(node.type==2){
+			for(int d=0; d<node.rewards.length; d++){
+				if(isTimeDependent(node.rewards[d])){return(false);}
+			}
+		}
+		for(int c=0; c<node.numChildren; c++){
+			if(isTimeHomogeneous(node.children[c])==false){return(false);}
+		}
+		return(true);
+	}
+	
+	private boolean isTimeDependent(String text){
+		if(text==null){return(false);}
+		return(myModel.textHasVariable(text) || myModel.textHasInnateVariable(text) || Interpreter.containsWord("trace", text));
+	}
+	
 	private void checkTerminationCondition(MarkovNode curNode){
 		if(curNode.type==1){ //Chain, check termination condition
 			try{
@@ -468,7 +509,7 @@ public class MarkovTree{
 		if(node.curCosts==null || node.curCosts.length!=numDim){node.curCosts=new double[numDim][1];}
 		if(node.hasCost){
 			for(int c=0; c<numDim; c++){
-				node.curCosts[c][0]=Interpreter.evaluateTokens(node.curCostTokens[c], 0, false).getDouble();
+				node.curCosts[c][0]=Interpreter.evaluateDouble(node.curCostTokens[c], 0, false);
 				node.curCosts[c][0]*=myModel.cohortSize; //scale costs by cohort size
 			}
 		}
@@ -547,7 +588,7 @@ public class MarkovTree{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, 0, false).getDouble();
+					curChild.curProb[0]=Interpreter.evaluateDouble(curChild.curProbTokens, 0, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -656,6 +697,16 @@ public class MarkovTree{
 		runReport.runTime=endTime-startTime;
 	}
 	
+	/**
+	 * Gets expected values of all strategies from the current chain results, e.g. after a batch run
+	 */
+	public void calcEVs() throws NumericException, Exception{
+		MarkovNode root=nodes.get(0);
+		for(int c=0; c<root.numChildren; c++){
+			getEVs(root.children[c],false);
+		}
+	}
+	
 	private void runCohort(final RunReport runReport, final boolean display) throws Exception{
 		//multithread
 		final int numChains=chains.size();
@@ -0,0 +1,55 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import java.util.Arrays;
+
+/**
+ * Growable column of trace values (one per cycle), stored as primitive doubles
+ */
+public class TraceColumn{
+	double values[];
+	int size;
+	
+	public TraceColumn(){
+		values=new double[16];
+	}
+	
+	public void add(double value){
+		if(size==values.length){
+			values=Arrays.copyOf(values, size*2);
+		}
+		values[size]=value;
+		size++;
+	}
+	
+	public double get(int t){
+		if(t<0 || t>=size){throw new IndexOutOfBoundsException("Cycle: "+t+", Size: "+size);}
+		return(values[t]);
+	}
+	
+	public void set(int t, double value){
+		if(t<0 || t>=size){throw new IndexOutOfBoundsException("Cycle: "+t+", Size: "+size);}
+		values[t]=value;
+	}
+	
+	public int size(){
+		return(size);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,124 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import base.AmuaModel;
+import math.CompiledExpression;
+import math.Interpreter;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Compiled arguments of trace(row,col).  Row and column index expressions are parsed once, and column names are
+ * looked up once per trace and thread instead of each time the value is requested.
+ */
+public class TraceReference{
+	/**
+	 * Row range, null if all rows.  rowEnd is null if a single row.
+	 */
+	CompiledExpression rowStart, rowEnd;
+	boolean allRows;
+	/**
+	 * Column range, null if all columns or a column name.  colEnd is null if a single column.
+	 */
+	CompiledExpression colStart, colEnd;
+	boolean allCols;
+	/**
+	 * Column name, null if the column is an index
+	 */
+	String colName;
+	/**
+	 * Trace that colName was last looked up in [Thread]
+	 */
+	MarkovTrace resolvedTrace[];
+	/**
+	 * Column index of colName in resolvedTrace [Thread]
+	 */
+	int resolvedCol[];
+	
+	public TraceReference(String row, String col, AmuaModel myModel) throws Exception{
+		int numThreads=Math.max(1, myModel.numThreads);
+		resolvedTrace=new MarkovTrace[numThreads];
+		resolvedCol=new int[numThreads];
+		
+		row=row.trim();
+		if(row.equals(":")){allRows=true;}
+		else if(row.contains(":")){ //"x:y" Sequence of rows
+			int index=row.indexOf(":");
+			rowStart=Interpreter.parse(row.substring(0, index),myModel);
+			rowEnd=Interpreter.parse(row.substring(index+1),myModel);
+		}
+		else{
+			rowStart=Interpreter.parse(row,myModel);
+		}
+		
+		col=col.trim();
+		if(col.contains("\"") || col.contains("\'")){ //String
+			colName=col.replace("\"","").replace("\'","");
+		}
+		else if(col.equals(":")){allCols=true;}
+		else if(col.contains(":")){ //"x:y" Sequence of cols
+			int index=col.indexOf(":");
+			colStart=Interpreter.parse(col.substring(0, index),myModel);
+			colEnd=Interpreter.parse(col.substring(index+1),myModel);
+		}
+		else{
+			try{
+				colStart=Interpreter.parse(col,myModel);
+			} catch(Exception e){
+				throw new NumericException("Invalid column index: "+col,"trace");
+			}
+		}
+	}
+	
+	public Numeric evaluate(MarkovTrace trace, int curThread, boolean sample) throws Exception{
+		if(trace==null){throw new NumericException("No Markov trace","trace");}
+		int startRow, endRow;
+		if(allRows){
+			startRow=0; endRow=trace.getNumRows()-1;
+		}
+		else{
+			startRow=rowStart.evaluate(curThread,sample).getInt();
+			endRow=startRow;
+			if(rowEnd!=null){endRow=rowEnd.evaluate(curThread,sample).getInt();}
+		}
+		
+		int startCol, endCol;
+		if(colName!=null){
+			if(resolvedTrace[curThread]!=trace){ //look up column
+				int col=trace.getColumnIndex(colName);
+				if(col==-1){throw new NumericException("Can't find column: "+colName,"trace");}
+				resolvedCol[curThread]=col;
+				resolvedTrace[curThread]=trace;
+			}
+			startCol=resolvedCol[curThread];
+			endCol=startCol;
+		}
+		else if(allCols){
+			startCol=0; endCol=trace.getNumColumns()-1;
+		}
+		else{
+			startCol=colStart.evaluate(curThread,sample).getInt();
+			endCol=startCol;
+			if(colEnd!=null){endCol=colEnd.evaluate(curThread,sample).getInt();}
+		}
+		
+		return(trace.getValues(startRow, endRow, startCol, endCol));
+	}
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package markov;
+
+import java.util.Arrays;
+
+/**
+ * Sparse transitions of a time-homogeneous chain in compressed rows: for each state, the states that people move to
+ * and the probability of each move.  Staying in the same state is implicit, so each cycle only costs the number of
+ * transitions.  Probabilities are stored by lane so a batch of parameter sets can share the same structure.
+ */
+class TransitionMatrix{
+	int numStates, numLanes;
+	/**
+	 * First entry of each state [State], the last element is the number of entries
+	 */
+	int rowStart[];
+	/**
+	 * Next state [Entry]
+	 */
+	int target[];
+	/**
+	 * Probability [Entry*numLanes+Lane]
+	 */
+	double prob[];
+	int numEntries;
+	int curState;
+	
+	TransitionMatrix(int numStates, int numLanes){
+		this.numStates=numStates;
+		this.numLanes=numLanes;
+		rowStart=new int[numStates+1];
+		target=new int[numStates];
+		prob=new double[numStates*numLanes];
+		curState=-1;
+	}
+	
+	/**
+	 * Starts the transitions from a state, states must be added in order
+	 */
+	void startState(int state){
+		while(curState<state){
+			curState++;
+			rowStart[curState]=numEntries;
+		}
+		rowStart[curState+1]=numEntries;
+	}
+	
+	/**
+	 * Adds the probability of moving from the current state to another state, merging repeated transitions
+	 * @param p Probability [Lane]
+	 */
+	void add(int to, double p[]){
+		if(to==curState){return;} //no change in prevalence
+		int e=rowStart[curState];
+		while(e<numEntries && target[e]!=to){e++;}
+		if(e==numEntries){ //new entry
+			if(numEntries==target.length){
+				target=Arrays.copyOf(target, numEntries*2);
+				prob=Arrays.copyOf(prob, numEntries*2*numLanes);
+			}
+			target[e]=to;
+			numEntries++;
+			rowStart[curState+1]=numEntries;
+		}
+		int offset=e*numLanes;
+		for(int k=0; k<numLanes; k++){
+			prob[offset+k]+=p[k];
+		}
+	}
+	
+	void add(int to, double p){
+		add(to, new double[]{p});
+	}
+	
+	/**
+	 * Finishes the matrix after the last state
+	 */
+	void finish(){
+		startState(numStates-1);
+		for(int s=curState+1; s<=numStates; s++){rowStart[s]=numEntries;}
+	}
+	
+	/**
+	 * Moves prevalence for one cycle
+	 * @param curPrev Prevalence at the beginning of the cycle [State]
+	 * @param newPrev Prevalence at the end of the cycle, must equal curPrev on entry [State]
+	 */
+	void step(double curPrev[], double newPrev[]){
+		for(int i=0; i<numStates; i++){
+			double prev=curPrev[i];
+			if(prev==0){continue;}
+			for(int e=rowStart[i]; e<rowStart[i+1]; e++){
+				double amount=prev*prob[e];
+				newPrev[i]-=amount; //from state
+				newPrev[target[e]]+=amount; //next state
+			}
+		}
+	}
+	
+	/**
+	 * Moves prevalence for one cycle for all lanes
+	 * @param curPrev Prevalence at the beginning of the cycle [State][Lane]
+	 * @param newPrev Prevalence at the end of the cycle, must equal curPrev on entry [State][Lane]
+	 */
+	void step(double curPrev[][], double newPrev[][]){
+		for(int i=0; i<numStates; i++){
+			double prev[]=curPrev[i], from[]=newPrev[i];
+			for(int e=rowStart[i]; e<rowStart[i+1]; e++){
+				double to[]=newPrev[target[e]];
+				int offset=e*numLanes;
+				for(int k=0; k<numLanes; k++){
+					double amount=prev[k]*prob[offset+k];
+					from[k]-=amount;
+					to[k]+=amount;
+				}
+			}
+		}
+	}
+}
\ No newline at end of file
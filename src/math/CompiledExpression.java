@@ -0,0 +1,276 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.List;
+
+import base.AmuaModel;
+import main.Variable;
+
+/**
+ * Post-fix expression compiled once by the Interpreter and evaluated many times.
+ * Operators are resolved to opcodes at parse time and each thread evaluates on its own preallocated operand stack.
+ * Scalar operands are held as primitives on the stack so number-only expressions don't create Numeric objects.
+ */
+public final class CompiledExpression{
+	//operand kinds
+	static final byte INTEGER=0, DOUBLE=1, BOOL=2, OBJECT=3;
+
+	final Token tokens[];
+	/**
+	 * Max operand stack depth
+	 */
+	final int maxDepth;
+	/**
+	 * [Thread]
+	 */
+	final OperandStack stacks[];
+
+	CompiledExpression(Token tokens[], AmuaModel myModel){
+		this.tokens=tokens;
+		int numThreads=1;
+		if(myModel!=null){numThreads=Math.max(1, myModel.numThreads);}
+		stacks=new OperandStack[numThreads];
+		//get stack depth
+		int depth=0, max=1;
+		for(int i=0; i<tokens.length; i++){
+			if(tokens[i].type==Type.OPERATOR){depth--;}
+			else{depth++;}
+			max=Math.max(max, depth);
+		}
+		maxDepth=max;
+	}
+
+	public Token[] getTokens(){
+		return(tokens);
+	}
+
+	public int size(){
+		return(tokens.length);
+	}
+
+	/**
+	 * Adds the variables and innate variables this expression refers to, including variables in function arguments,
+	 * matrices, and text arguments (e.g. table and trace references)
+	 */
+	public void getVariables(AmuaModel myModel, List<Variable> vars){
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){continue;}
+			if(curToken.objectType==ObjectType.VARIABLE && !vars.contains(curToken.curVar)){
+				vars.add(curToken.curVar);
+			}
+			if(curToken.args!=null){
+				for(int a=0; a<curToken.args.length; a++){
+					if(curToken.args[a]!=null){curToken.args[a].getVariables(myModel, vars);}
+				}
+			}
+			if(curToken.matrixTokens!=null){
+				for(int r=0; r<curToken.matrixTokens.length; r++){
+					for(int c=0; c<curToken.matrixTokens[r].length; c++){
+						curToken.matrixTokens[r][c].getVariables(myModel, vars);
+					}
+				}
+			}
+			if(curToken.strArgs!=null){ //evaluated from text when called
+				for(int a=0; a<curToken.strArgs.length; a++){
+					getVariables(curToken.strArgs[a], myModel, vars);
+				}
+			}
+		}
+	}
+
+	private static void getVariables(String text, AmuaModel myModel, List<Variable> vars){
+		if(text==null){return;}
+		int len=text.length();
+		while(len>0){ //parse word by word
+			int index=Interpreter.getNextBreakIndex(text);
+			String word=text.substring(0, index);
+			Variable curVar=null;
+			int varIndex=myModel.getVariableIndex(word);
+			if(varIndex!=-1){curVar=myModel.variables.get(varIndex);}
+			else if(myModel.isInnateVariable(word)){curVar=myModel.innateVariables.get(myModel.getInnateVariableIndex(word));}
+			if(curVar!=null && !vars.contains(curVar)){vars.add(curVar);}
+			if(index==len){len=0;} //End of word
+			else{
+				text=text.substring(index+1);
+				len=text.length();
+			}
+		}
+	}
+
+	/**
+	 * Evaluates expression from left to right
+	 * @return Result as Numeric. Scalar results are returned as a new Numeric that the caller owns.
+	 */
+	public Numeric evaluate(int curThread, boolean sample) throws Exception{
+		OperandStack stack=run(curThread,sample);
+		return(stack.box(0));
+	}
+
+	/**
+	 * Evaluates expression from left to right without boxing the result
+	 * @return Real-valued result
+	 * @throws NumericException if result is a matrix or boolean
+	 */
+	public double evaluateDouble(int curThread, boolean sample) throws Exception{
+		OperandStack stack=run(curThread,sample);
+		byte kind=stack.kind[0];
+		if(kind==INTEGER){return(stack.ints[0]);}
+		else if(kind==DOUBLE){return(stack.doubles[0]);}
+		else if(kind==OBJECT){return(stack.objects[0].getDouble());}
+		throw(new NumericException("Matrix type, not real number","Numeric"));
+	}
+
+	private OperandStack run(int curThread, boolean sample) throws Exception{
+		OperandStack stack=stacks[curThread];
+		if(stack==null){
+			stack=new OperandStack(maxDepth);
+			stacks[curThread]=stack;
+		}
+		int sp=0;
+		int numTokens=tokens.length;
+		if(numTokens==0){throw new NumericException("Empty expression","Interpreter");} //e.g. blank field
+		for(int i=0; i<numTokens; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				if(sp<2){throw new NumericException("Missing operand","Interpreter");}
+				sp--;
+				stack.apply(curToken.operator,sp-1,sp);
+			}
+			else{ //operand
+				curToken.updateValue(curThread,sample);
+				stack.push(sp,curToken.numeric[curThread]);
+				sp++;
+			}
+		} //end of tokens loop
+		if(sp!=1){throw new NumericException("Invalid expression","Interpreter");}
+		return(stack);
+	}
+
+	/**
+	 * Thread-specific operand stack.  Each slot holds an int, double, boolean, or Numeric object, tagged by kind.
+	 */
+	static final class OperandStack{
+		byte kind[];
+		int ints[];
+		double doubles[];
+		Numeric objects[];
+
+		OperandStack(int size){
+			kind=new byte[size];
+			ints=new int[size];
+			doubles=new double[size];
+			objects=new Numeric[size];
+		}
+
+		void push(int i, Numeric operand){
+			objects[i]=null;
+			if(operand.format==Format.INTEGER){kind[i]=INTEGER; ints[i]=operand.intNum;}
+			else if(operand.format==Format.DOUBLE){kind[i]=DOUBLE; doubles[i]=operand.doubleNum;}
+			else if(operand.format==Format.BOOL){kind[i]=BOOL; ints[i]=operand.bool ? 1 : 0;}
+			else{kind[i]=OBJECT; objects[i]=operand;}
+		}
+
+		Numeric box(int i){
+			if(kind[i]==INTEGER){return(new Numeric(ints[i]));}
+			else if(kind[i]==DOUBLE){return(new Numeric(doubles[i]));}
+			else if(kind[i]==BOOL){return(new Numeric(ints[i]==1));}
+			return(objects[i]);
+		}
+
+		private double getDouble(int i){
+			if(kind[i]==INTEGER){return(ints[i]);}
+			return(doubles[i]);
+		}
+
+		private void setInt(int i, int val){
+			kind[i]=INTEGER; ints[i]=val; objects[i]=null;
+		}
+
+		private void setDouble(int i, double val){
+			kind[i]=DOUBLE; doubles[i]=val; objects[i]=null;
+		}
+
+		private void setBool(int i, boolean val){
+			kind[i]=BOOL; ints[i]=val ? 1 : 0; objects[i]=null;
+		}
+
+		/**
+		 * Applies operator to slots a and b, storing the result in slot a.
+		 * Mirrors the number-number semantics in Operators (integer preservation, integer-valued quotients),
+		 * and falls back to Operators for matrices and type errors.
+		 */
+		void apply(Operator op, int a, int b) throws NumericException{
+			byte kindA=kind[a], kindB=kind[b];
+			if(kindA<=DOUBLE && kindB<=DOUBLE){ //number and number
+				boolean ints2=(kindA==INTEGER && kindB==INTEGER);
+				switch(op){
+				case ADD:
+					if(ints2){setInt(a,ints[a]+ints[b]);}
+					else{setDouble(a,getDouble(a)+getDouble(b));}
+					return;
+				case SUBTRACT:
+					if(ints2){setInt(a,ints[a]-ints[b]);}
+					else{setDouble(a,getDouble(a)-getDouble(b));}
+					return;
+				case MULTIPLY:
+					if(ints2){setInt(a,ints[a]*ints[b]);}
+					else{setDouble(a,getDouble(a)*getDouble(b));}
+					return;
+				case DIVIDE:{
+					double result=getDouble(a)/getDouble(b);
+					int test=(int) Math.round(result); //check if integer
+					if(Math.abs(test-result)<MathUtils.tolerance){setInt(a,test);}
+					else{setDouble(a,result);}
+					return;
+				}
+				case POWER:
+					if(ints2 && ints[b]>=0){setInt(a,(int)(Math.pow(ints[a],ints[b])));}
+					else{setDouble(a,Math.pow(getDouble(a),getDouble(b)));}
+					return;
+				case MODULUS:
+					if(ints2){setInt(a,ints[a] % ints[b]);}
+					else{setDouble(a,getDouble(a) % getDouble(b));}
+					return;
+				case EQUAL: setBool(a,getDouble(a)==getDouble(b)); return;
+				case NOT_EQUAL: setBool(a,getDouble(a)!=getDouble(b)); return;
+				case LESS: setBool(a,getDouble(a)<getDouble(b)); return;
+				case GREATER: setBool(a,getDouble(a)>getDouble(b)); return;
+				case LESS_EQ: setBool(a,getDouble(a)<=getDouble(b)); return;
+				case GREATER_EQ: setBool(a,getDouble(a)>=getDouble(b)); return;
+				default: break; //logical operators on numbers, fall back to throw error
+				}
+			}
+			else if(kindA==BOOL && kindB==BOOL){
+				boolean bool1=(ints[a]==1), bool2=(ints[b]==1);
+				switch(op){
+				case AND: setBool(a,bool1 && bool2); return;
+				case OR: setBool(a,bool1 || bool2); return;
+				case XOR: setBool(a,bool1 ^ bool2); return;
+				default: break;
+				}
+			}
+			//general case
+			Numeric result=Operators.evaluate(op, box(a), box(b));
+			push(a,result);
+			objects[b]=null;
+		}
+	}
+}
\ No newline at end of file
@@ -51,6 +51,7 @@ import math.distributions.Uniform;
 import math.distributions.Weibull;
 import math.distributions.Zipf;
 
+enum Distribution{BERN,BIN,CAT,DUNIF,GEOM,HGEOM,NBIN,POIS,ZIPF,BETA,CAUCHY,CHI_SQ,EXPO,GAMMA,GUMBEL,HALF_CAUCHY,HALF_NORM,LAPLACE,LOGISTIC,LOG_NORM,NORM,PARETO,PERT,STUDENT_T,TRI,UNIF,WEIBULL,TRUNC_NORM,DIR,MV_NORM,MULTI};
 public final class Distributions{
 	
 	public static boolean isDistribution(String dist){
@@ -95,6 +96,46 @@ public final class Distributions{
 		return(false);
 	}
 	
+	/**
+	 * Resolves a distribution name, called at parse time so evaluation and sampling do not switch on the name
+	 */
+	static Distribution getDistribution(String dist){
+		switch(dist){
+		case "Bern": return(Distribution.BERN);
+		case "Bin": return(Distribution.BIN);
+		case "Cat": return(Distribution.CAT);
+		case "DUnif": return(Distribution.DUNIF);
+		case "Geom": return(Distribution.GEOM);
+		case "HGeom": return(Distribution.HGEOM);
+		case "NBin": return(Distribution.NBIN);
+		case "Pois": return(Distribution.POIS);
+		case "Zipf": return(Distribution.ZIPF);
+		case "Beta": return(Distribution.BETA);
+		case "Cauchy": return(Distribution.CAUCHY);
+		case "ChiSq": return(Distribution.CHI_SQ);
+		case "Expo": return(Distribution.EXPO);
+		case "Gamma": return(Distribution.GAMMA);
+		case "Gumbel": return(Distribution.GUMBEL);
+		case "HalfCauchy": return(Distribution.HALF_CAUCHY);
+		case "HalfNorm": return(Distribution.HALF_NORM);
+		case "Laplace": return(Distribution.LAPLACE);
+		case "Logistic": return(Distribution.LOGISTIC);
+		case "LogNorm": return(Distribution.LOG_NORM);
+		case "Norm": return(Distribution.NORM);
+		case "Pareto": return(Distribution.PARETO);
+		case "PERT": return(Distribution.PERT);
+		case "StudentT": return(Distribution.STUDENT_T);
+		case "Tri": return(Distribution.TRI);
+		case "Unif": return(Distribution.UNIF);
+		case "Weibull": return(Distribution.WEIBULL);
+		case "TruncNorm": return(Distribution.TRUNC_NORM);
+		case "Dir": return(Distribution.DIR);
+		case "MvNorm": return(Distribution.MV_NORM);
+		case "Multi": return(Distribution.MULTI);
+		}
+		return(null); //fell through
+	}
+	
 	/**
 	 * 
 	 * @param dist
@@ -104,9 +145,15 @@ public final class Distributions{
 	 * @throws Exception 
 	 */
 	public static Numeric evaluate(String dist, Numeric params[], int df) throws NumericException{
+		Distribution distribution=getDistribution(dist);
+		if(distribution==null){return(null);} //fell through
+		return(evaluate(distribution,params,df));
+	}
+	
+	static Numeric evaluate(Distribution dist, Numeric params[], int df) throws NumericException{
 		switch(dist){
 		//Discrete
-		case "Bern":{
+		case BERN:{
 			if(params.length==1){ //(p,~)
 				if(df==-1 || df==3){return(Bernoulli.mean(params));} //Sample, Mean
 				else if(df==4){return(Bernoulli.variance(params));} //Variance
@@ -120,7 +167,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Bern");}
 		}
-		case "Bin": {
+		case BIN: {
 			if(params.length==2){ //(n,p,~)
 				if(df==-1 || df==3){return(Binomial.mean(params));} //Sample, Mean
 				else if(df==4){return(Binomial.variance(params));} //Variance
@@ -134,7 +181,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Bin");}
 		}
-		case "Cat":{
+		case CAT:{
 			if(params.length==1){ //(p,~)
 				if(df==-1 || df==3){return(Categorical.mean(params));} //Sample, Mean
 				else if(df==4){return(Categorical.variance(params));} //Variance
@@ -148,7 +195,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Cat");}
 		}
-		case "DUnif": { 
+		case DUNIF: { 
 			if(params.length==2){ //(a,b,~)
 				if(df==-1 || df==3){return(DiscreteUniform.mean(params));} //Sample, Mean
 				else if(df==4){return(DiscreteUniform.variance(params));} //Variance
@@ -162,7 +209,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","DUnif");}
 		}
-		case "Geom": {
+		case GEOM: {
 			if(params.length==1){ //(p,~)
 				if(df==-1 || df==3){return(Geometric.mean(params));} //Sample, Mean
 				else if(df==4){return(Geometric.variance(params));} //Variance
@@ -176,7 +223,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Geom");}
 		}
-		case "HGeom": {
+		case HGEOM: {
 			if(params.length==3){ //(w,b,n,~)
 				if(df==-1 || df==3){return(Hypergeometric.mean(params));} //Sample, Mean
 				else if(df==4){return(Hypergeometric.variance(params));} //Variance
@@ -190,7 +237,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","HGeom");}
 		}
-		case "NBin": {
+		case NBIN: {
 			if(params.length==2){ //(r,p,~)
 				if(df==-1 || df==3){return(NegativeBinomial.mean(params));} //Sample, Mean
 				else if(df==4){return(NegativeBinomial.variance(params));} //Variance
@@ -204,7 +251,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","NBin");}
 		}
-		case "Pois": {
+		case POIS: {
 			if(params.length==1){ //(λ,~)
 				if(df==-1 || df==3){return(Poisson.mean(params));} //Sample, Mean
 				else if(df==4){return(Poisson.variance(params));} //Variance
@@ -218,7 +265,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Pois");}
 		}
-		case "Zipf": {
+		case ZIPF: {
 			if(params.length==2){ //(s,n,~)
 				if(df==-1 || df==3){return(Zipf.mean(params));} //Sample, Mean
 				else if(df==4){return(Zipf.variance(params));} //Variance
@@ -234,7 +281,7 @@ public final class Distributions{
 		}
 
 		//Continuous
-		case "Beta": {
+		case BETA: {
 			if(params.length==2){ //(a,b,~)
 				if(df==-1 || df==3){return(Beta.mean(params));} //Sample, Mean
 				else if(df==4){return(Beta.variance(params));} //Variance
@@ -248,7 +295,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Beta");}
 		}
-		case "Cauchy": {
+		case CAUCHY: {
 			if(params.length==2){ //(loc,scale,~)
 				if(df==-1){ //Sample (return median) 
 					double a=params[0].getDouble(), b=params[1].getDouble();
@@ -267,7 +314,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Cauchy");}
 		}
-		case "ChiSq":{
+		case CHI_SQ:{
 			if(params.length==1){ //(k,~)
 				if(df==-1 || df==3){return(ChiSquare.mean(params));} //Sample, Mean
 				else if(df==4){return(ChiSquare.variance(params));} //Variance
@@ -281,7 +328,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","ChiSq");}
 		}
-		case "Expo": {
+		case EXPO: {
 			if(params.length==1){ //(lambda,~)
 				if(df==-1 || df==3){return(Exponential.mean(params));} //Sample, Mean
 				else if(df==4){return(Exponential.variance(params));} //Variance
@@ -295,7 +342,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Expo");}
 		}
-		case "Gamma":{
+		case GAMMA:{
 			if(params.length==2){ //(k,theta,~)
 				if(df==-1 || df==3){return(Gamma.mean(params));} //Sample, Mean
 				else if(df==4){return(Gamma.variance(params));} //Variance
@@ -309,7 +356,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Gamma");}
 		}
-		case "Gumbel":{
+		case GUMBEL:{
 			if(params.length==2){ //(mu,beta,~)
 				if(df==-1 || df==3){return(Gumbel.mean(params));} //Sample, Mean
 				else if(df==4){return(Gumbel.variance(params));} //Variance
@@ -323,7 +370,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Gumbel");}
 		}
-		case "HalfCauchy":{
+		case HALF_CAUCHY:{
 			if(params.length==1){ //(gamma,~)
 				if(df==-1){ //Sample (return median)
 					double gamma=params[0].getDouble();
@@ -342,7 +389,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","HalfCauchy");}
 		}
-		case "HalfNorm":{
+		case HALF_NORM:{
 			if(params.length==1){ //(sigma,~)
 				if(df==-1 || df==3){return(HalfNormal.mean(params));} //Sample, Mean
 				else if(df==4){return(HalfNormal.variance(params));} //Variance
@@ -356,7 +403,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","HalfNorm");}
 		}
-		case "Laplace": {
+		case LAPLACE: {
 			if(params.length==2){ //(mu,b,~)
 				if(df==-1 || df==3){return(Laplace.mean(params));} //Sample, Mean
 				else if(df==4){return(Laplace.variance(params));} //Variance
@@ -370,7 +417,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Laplace");}
 		}
-		case "Logistic": {
+		case LOGISTIC: {
 			if(params.length==2){ //(mu,s,~)
 				if(df==-1 || df==3){return(Logistic.mean(params));} //Sample, Mean
 				else if(df==4){return(Logistic.variance(params));} //Variance
@@ -384,7 +431,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Logistic");}
 		}
-		case "LogNorm": {
+		case LOG_NORM: {
 			if(params.length==2){ //(mu,sigma,~)
 				if(df==-1 || df==3){return(LogNormal.mean(params));} //Sample, Mean
 				else if(df==4){return(LogNormal.variance(params));} //Variance
@@ -398,7 +445,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","LogNorm");}
 		}
-		case "Norm": {
+		case NORM: {
 			if(params.length==2){ //(mu,sigma,~)
 				if(df==-1 || df==3){return(Normal.mean(params));} //Sample, Mean
 				else if(df==4){return(Normal.variance(params));} //Variance
@@ -412,7 +459,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Norm");}
 		}
-		case "Pareto": {
+		case PARETO: {
 			if(params.length==2){ //(k,alpha,~)
 				if(df==-1 || df==3){return(Pareto.mean(params));} //Sample, Mean
 				else if(df==4){return(Pareto.variance(params));} //Variance
@@ -426,7 +473,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Pareto");}
 		}
-		case "PERT": { 
+		case PERT: { 
 			if(params.length==3){ //(a,b,c,~)
 				if(df==-1 || df==3){return(PERT.mean(params));} //Sample, Mean
 				else if(df==4){return(PERT.variance(params));} //Variance
@@ -440,7 +487,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","PERT");}
 		}
-		case "StudentT":{
+		case STUDENT_T:{
 			if(params.length==1){ //(nu,~)
 				if(df==-1){return(new Numeric(0));} //Sample (median) 
 				else if(df==3){return(StudentT.mean(params));} //Mean
@@ -455,7 +502,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","StudentT");}
 		}
-		case "Tri": {
+		case TRI: {
 			if(params.length==3){ //(a,b,c,~)
 				if(df==-1 || df==3){return(Triangular.mean(params));} //Sample, Mean
 				else if(df==4){return(Triangular.variance(params));} //Variance
@@ -469,7 +516,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Tri");}
 		}
-		case "Unif": {
+		case UNIF: {
 			if(params.length==2){ //(a,b,~)
 				if(df==-1 || df==3){return(Uniform.mean(params));} //Sample, Mean
 				else if(df==4){return(Uniform.variance(params));} //Variance
@@ -483,7 +530,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Unif");}
 		}
-		case "Weibull": {
+		case WEIBULL: {
 			if(params.length==2){ //(a,b,~)
 				if(df==-1 || df==3){return(Weibull.mean(params));} //Sample, Mean
 				else if(df==4){return(Weibull.variance(params));} //Variance
@@ -499,7 +546,7 @@ public final class Distributions{
 		}
 
 		//Truncated
-		case "TruncNorm": {
+		case TRUNC_NORM: {
 			if(params.length==4){ //(mu,sigma,a,b,~) return mean
 				if(df==-1 || df==3){return(TruncatedNormal.mean(params));} //Sample, Mean
 				else if(df==4){return(TruncatedNormal.variance(params));} //Variance
@@ -515,7 +562,7 @@ public final class Distributions{
 		}
 		
 		//Multivariate
-		case "Dir": {
+		case DIR: {
 			if(params.length==1){ //(alpha) return mean
 				if(df==-1 || df==3){return(Dirichlet.mean(params));} //Sample, Mean
 				else if(df==4){return(Dirichlet.variance(params));} //Variance
@@ -529,7 +576,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","Dir");}
 		}
-		case "MvNorm": {
+		case MV_NORM: {
 			if(params.length==2){ //(mu,sigma) return mean
 				if(df==-1 || df==3){return(MultivariateNormal.mean(params));} //Sample, Mean
 				else if(df==4){return(MultivariateNormal.variance(params));} //Variance
@@ -543,7 +590,7 @@ public final class Distributions{
 			}
 			else{throw new NumericException("Incorrect number of parameters","MvNorm");}
 		}
-		case "Multi": {
+		case MULTI: {
 			if(params.length==2){ //(n,p,~) return mean
 				if(df==-1 || df==3){return(Multinomial.mean(params));} //Sample, Mean
 				else if(df==4){return(Multinomial.variance(params));} //Variance
@@ -563,42 +610,58 @@ public final class Distributions{
 	}
 
 	public static Numeric sample(String dist, Numeric params[], MersenneTwisterFast generator) throws NumericException{
+		return(sample(dist, params, generator, false));
+	}
+	
+	/**
+	 * @param direct Use direct (non-inverse CDF) samplers where available, see DirectSampler
+	 */
+	public static Numeric sample(String dist, Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
+		Distribution distribution=getDistribution(dist);
+		if(distribution==null){return(null);} //fell through
+		return(sample(distribution,params,generator,direct));
+	}
+	
+	/**
+	 * @param direct Use direct (non-inverse CDF) samplers where available, see DirectSampler
+	 */
+	static Numeric sample(Distribution dist, Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		switch(dist){
 		//Discrete
-		case "Bern": return(Bernoulli.sample(params, generator));
-		case "Bin": return(Binomial.sample(params, generator));
-		case "Cat": return(Categorical.sample(params, generator));
-		case "DUnif": return(DiscreteUniform.sample(params, generator));
-		case "Geom": return(Geometric.sample(params, generator));
-		case "HGeom": return(Hypergeometric.sample(params, generator));
-		case "NBin": return(NegativeBinomial.sample(params, generator));
-		case "Pois": return(Poisson.sample(params, generator));
-		case "Zipf": return(Zipf.sample(params, generator));
+		case BERN: return(Bernoulli.sample(params, generator));
+		case BIN: return(Binomial.sample(params, generator, direct));
+		case CAT: return(Categorical.sample(params, generator));
+		case DUNIF: return(DiscreteUniform.sample(params, generator));
+		case GEOM: return(Geometric.sample(params, generator));
+		case HGEOM: return(Hypergeometric.sample(params, generator));
+		case NBIN: return(NegativeBinomial.sample(params, generator));
+		case POIS: return(Poisson.sample(params, generator, direct));
+		case ZIPF: return(Zipf.sample(params, generator));
 		//Continuous
-		case "Beta": return(Beta.sample(params, generator));
-		case "Cauchy": return(Cauchy.sample(params, generator));
-		case "ChiSq": return(ChiSquare.sample(params, generator));
-		case "Expo": return(Exponential.sample(params, generator));
-		case "Gamma": return(Gamma.sample(params, generator));
-		case "Gumbel": return(Gumbel.sample(params, generator));
-		case "HalfCauchy": return(HalfCauchy.sample(params, generator));
-		case "HalfNorm": return(HalfNormal.sample(params, generator));
-		case "Laplace": return(Laplace.sample(params, generator));
-		case "Logistic": return(Logistic.sample(params, generator));
-		case "LogNorm": return(LogNormal.sample(params, generator));
-		case "Norm": return(Normal.sample(params, generator));
-		case "Pareto": return(Pareto.sample(params, generator));
-		case "PERT": return(PERT.sample(params, generator));
-		case "StudentT": return(StudentT.sample(params, generator));
-		case "Tri": return(Triangular.sample(params, generator));
-		case "Unif": return(Uniform.sample(params, generator));
-		case "Weibull": return(Weibull.sample(params, generator));
+		case BETA: return(Beta.sample(params, generator, direct));
+		case CAUCHY: return(Cauchy.sample(params, generator));
+		case CHI_SQ: return(ChiSquare.sample(params, generator, direct));
+		case EXPO: return(Exponential.sample(params, generator));
+		case GAMMA: return(Gamma.sample(params, generator, direct));
+		case GUMBEL: return(Gumbel.sample(params, generator));
+		case HALF_CAUCHY: return(HalfCauchy.sample(params, generator));
+		case HALF_NORM: return(HalfNormal.sample(params, generator));
+		case LAPLACE: return(Laplace.sample(params, generator));
+		case LOGISTIC: return(Logistic.sample(params, generator));
+		case LOG_NORM: return(LogNormal.sample(params, generator, direct));
+		case NORM: return(Normal.sample(params, generator, direct));
+		case PARETO: return(Pareto.sample(params, generator));
+		case PERT: return(PERT.sample(params, generator));
+		case STUDENT_T: return(StudentT.sample(params, generator));
+		case TRI: return(Triangular.sample(params, generator));
+		case UNIF: return(Uniform.sample(params, generator));
+		case WEIBULL: return(Weibull.sample(params, generator));
 		//Truncated
-		case "TruncNorm": return(TruncatedNormal.sample(params, generator));
+		case TRUNC_NORM: return(TruncatedNormal.sample(params, generator));
 		//Multivariate
-		case "Dir": return(Dirichlet.sample(params, generator));
-		case "MvNorm": return(MultivariateNormal.sample(params, generator));
-		case "Multi": return(Multinomial.sample(params, generator));
+		case DIR: return(Dirichlet.sample(params, generator, direct));
+		case MV_NORM: return(MultivariateNormal.sample(params, generator, direct));
+		case MULTI: return(Multinomial.sample(params, generator, direct));
 	
 		} //End switch
 		return(null);
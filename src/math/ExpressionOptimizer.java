@@ -0,0 +1,253 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Stack;
+
+import base.AmuaModel;
+import main.Parameter;
+
+/**
+ * Optimization pass over parsed post-fix tokens.
+ * Folds constant subexpressions, replaces parameter-only subexpressions with an INVARIANT token that is only
+ * re-evaluated when the parameter values change, and shares identical invariant subexpressions across the model.
+ */
+public final class ExpressionOptimizer{
+	//subexpression kinds
+	private static final int CONSTANT=0, INVARIANT=1, VARYING=2;
+
+	AmuaModel myModel;
+	/**
+	 * Shared invariant subexpressions, keyed by canonical form
+	 */
+	HashMap<String,Token> invariants;
+	int numFolded, numHoisted, numShared;
+
+	private static final class Node{
+		Token token;
+		Node left, right; //operator arguments
+		int kind;
+		String key;
+	}
+
+	public ExpressionOptimizer(AmuaModel myModel){
+		this.myModel=myModel;
+		invariants=new HashMap<String,Token>();
+	}
+
+	synchronized Token[] optimize(Token postfix[]){
+		//build expression tree
+		Stack<Node> stack=new Stack<Node>();
+		for(int i=0; i<postfix.length; i++){
+			Node node=new Node();
+			node.token=postfix[i];
+			if(node.token.type==Type.OPERATOR){
+				if(stack.size()<2){return(postfix);} //malformed, leave as is
+				node.right=stack.pop();
+				node.left=stack.pop();
+			}
+			stack.push(node);
+		}
+		if(stack.size()!=1){return(postfix);}
+
+		Node root=stack.pop();
+		classify(root);
+		root=hoist(root);
+		ArrayList<Token> output=new ArrayList<Token>();
+		flatten(root,output);
+		return(output.toArray(new Token[output.size()]));
+	}
+
+	/**
+	 * Gets the kind and canonical key of each node, folding constant nodes along the way
+	 */
+	private void classify(Node node){
+		Token token=node.token;
+		if(token.type==Type.OPERATOR){
+			classify(node.left);
+			classify(node.right);
+			node.kind=Math.max(node.left.kind, node.right.kind);
+			if(node.kind==CONSTANT){ //fold
+				try{
+					Numeric result=Operators.evaluate(token.operator, node.left.token.numeric[0], node.right.token.numeric[0]);
+					if(result!=null && result.format!=Format.MATRIX){
+						node.token=Token.constant(result, myModel);
+						node.left=null; node.right=null;
+						numFolded++;
+					}
+					else{node.kind=VARYING;}
+				}catch(Exception e){ //leave error to be thrown when evaluated
+					node.kind=VARYING;
+				}
+			}
+			if(node.kind!=VARYING){
+				node.key=(node.left==null) ? getKey(node.token) : node.left.key+" "+node.right.key+" "+token.word;
+			}
+		}
+		else{
+			node.kind=getKind(token);
+			if(node.kind==CONSTANT && token.objectType!=ObjectType.NUMBER){ //function of constants
+				try{
+					token.updateValue(0, false);
+					Numeric result=token.numeric[0];
+					if(result!=null && result.format!=Format.MATRIX){
+						node.token=Token.constant(result.copy(), myModel);
+						numFolded++;
+					}
+					else{node.kind=VARYING;}
+				}catch(Exception e){
+					node.kind=VARYING;
+				}
+			}
+			if(node.kind!=VARYING){node.key=getKey(node.token);}
+		}
+	}
+
+	private static int getKind(Token token){
+		ObjectType objectType=token.objectType;
+		if(objectType==ObjectType.NUMBER){return(CONSTANT);}
+		else if(objectType==ObjectType.PARAMETER || objectType==ObjectType.INVARIANT){return(INVARIANT);}
+		else if(objectType==ObjectType.FUNCTION || objectType==ObjectType.MATRIX_FUNCTION ||
+				(objectType==ObjectType.DISTRIBUTION && token.distFx!=-1)){ //deterministic, depends on arguments
+			int kind=CONSTANT;
+			for(int i=0; i<token.args.length; i++){
+				Token argTokens[]=token.args[i].tokens;
+				if(argTokens.length!=1){return(VARYING);} //invariant arguments are already reduced to a single token
+				kind=Math.max(kind, getKind(argTokens[0]));
+			}
+			return(kind);
+		}
+		return(VARYING);
+	}
+
+	private static String getKey(Token token){
+		String key="";
+		if(token.negate){key+="-";}
+		ObjectType objectType=token.objectType;
+		if(objectType==ObjectType.NUMBER){return("#"+token.numeric[0].saveAsXMLString());} //sign already applied
+		else if(objectType==ObjectType.PARAMETER){key+="@"+token.curParam.name;}
+		else if(objectType==ObjectType.INVARIANT){key+="{"+token.word+"}";}
+		else{ //function of arguments
+			key+=objectType+":"+token.word+"(";
+			for(int i=0; i<token.args.length; i++){
+				if(i>0){key+=",";}
+				key+=getKey(token.args[i].tokens[0]);
+			}
+			key+=")";
+			if(objectType==ObjectType.DISTRIBUTION){key+=token.distFx;}
+		}
+		return(key);
+	}
+
+	/**
+	 * Replaces maximal parameter-only subexpressions with shared INVARIANT tokens
+	 */
+	private Node hoist(Node node){
+		if(node.kind==INVARIANT){
+			ObjectType objectType=node.token.objectType;
+			if(objectType==ObjectType.PARAMETER || objectType==ObjectType.INVARIANT){return(node);} //nothing to save
+			ArrayList<Token> subTokens=new ArrayList<Token>();
+			flatten(node,subTokens);
+			ArrayList<Parameter> params=new ArrayList<Parameter>();
+			for(int i=0; i<subTokens.size(); i++){getParameters(subTokens.get(i),params);}
+
+			Token invariant=invariants.get(node.key);
+			if(invariant!=null && sameParameters(invariant.invariantParams,params)){
+				numShared++;
+			}
+			else{
+				CompiledExpression subExpr=new CompiledExpression(subTokens.toArray(new Token[subTokens.size()]),myModel);
+				invariant=Token.invariant(node.key, subExpr, params.toArray(new Parameter[params.size()]), myModel);
+				invariants.put(node.key, invariant);
+				numHoisted++;
+			}
+			Node leaf=new Node();
+			leaf.token=invariant;
+			leaf.kind=INVARIANT;
+			leaf.key=node.key;
+			return(leaf);
+		}
+		else if(node.left!=null){
+			node.left=hoist(node.left);
+			node.right=hoist(node.right);
+		}
+		return(node);
+	}
+
+	private static void getParameters(Token token, ArrayList<Parameter> params){
+		if(token.objectType==ObjectType.PARAMETER){
+			if(!params.contains(token.curParam)){params.add(token.curParam);}
+		}
+		else if(token.objectType==ObjectType.INVARIANT){
+			for(int i=0; i<token.invariantParams.length; i++){
+				if(!params.contains(token.invariantParams[i])){params.add(token.invariantParams[i]);}
+			}
+		}
+		else if(token.args!=null){
+			for(int i=0; i<token.args.length; i++){
+				Token argTokens[]=token.args[i].tokens;
+				for(int j=0; j<argTokens.length; j++){getParameters(argTokens[j],params);}
+			}
+		}
+	}
+
+	private static boolean sameParameters(Parameter params[], ArrayList<Parameter> test){
+		if(params.length!=test.size()){return(false);}
+		for(int i=0; i<params.length; i++){
+			if(params[i]!=test.get(i)){return(false);}
+		}
+		return(true);
+	}
+
+	private static void flatten(Node node, ArrayList<Token> output){
+		if(node.left!=null){
+			flatten(node.left,output);
+			flatten(node.right,output);
+		}
+		output.add(node.token);
+	}
+
+	/**
+	 * Number of token evaluations skipped by re-using invariant subexpressions
+	 */
+	public synchronized long getSavedEvaluations(){
+		long saved=0;
+		for(Token invariant : invariants.values()){
+			long size=invariant.args[0].size();
+			for(int t=0; t<invariant.invariantHits.length; t++){
+				saved+=invariant.invariantHits[t]*size;
+			}
+		}
+		return(saved);
+	}
+
+	public String getReport(){
+		String report="Expression optimization:\t";
+		report+=numFolded+" constants folded, ";
+		report+=numHoisted+" parameter subexpressions hoisted ("+numShared+" shared), ";
+		report+=getSavedEvaluations()+" evaluations saved";
+		return(report);
+	}
+
+	public boolean isEmpty(){
+		return(numFolded==0 && numHoisted==0);
+	}
+}
\ No newline at end of file
@@ -25,7 +25,9 @@ import base.AmuaModel;
 import main.Parameter;
 import main.Table;
 import main.Variable;
+import markov.TraceReference;
 import math.Distributions;
+import math.distributions.CachedSampler;
 
 public final class Interpreter{
 
@@ -36,18 +38,22 @@ public final class Interpreter{
 	
 	//Thread-specific
 	public static Numeric evaluate(String expression,AmuaModel myModel,boolean sample,int curThread, int numThreads) throws Exception{
-		Token tokens[]=parse(expression,myModel);
+		CompiledExpression tokens=parse(expression,myModel);
 		Numeric result=evaluateTokens(tokens,curThread,sample);
 		return(result);
 	}
 	
 	/**
-	 * Parse expression into array of Tokens
+	 * Parse expression into a compiled post-fix expression that can be evaluated repeatedly
 	 */
-	public static Token[] parse(String expression,AmuaModel myModel) throws Exception{
+	public static CompiledExpression parse(String expression,AmuaModel myModel) throws Exception{
 		ArrayList<Token> tokens=tokenize(expression,myModel);
 		Token[] output=shuntTokens(tokens);
-		return(output);
+		if(myModel!=null){
+			if(myModel.exprOptimizer==null){myModel.exprOptimizer=new ExpressionOptimizer(myModel);}
+			output=myModel.exprOptimizer.optimize(output);
+		}
+		return(new CompiledExpression(output,myModel));
 	}
 	
 	/**
@@ -55,27 +61,16 @@ public final class Interpreter{
 	 * @return
 	 * @throws NumericException 
 	 */
-	public static Numeric evaluateTokens(Token tokens[], int curThread, boolean sample) throws NumericException, Exception{
-		int numTokens=tokens.length;
-		Stack<Numeric> operands=new Stack<Numeric>();
-		for(int i=0; i<numTokens; i++){
-			Token curToken=tokens[i];
-			if(curToken.type==Type.OPERATOR){
-				String operator=curToken.word;
-				Numeric operand_2=operands.pop();
-				Numeric operand_1=operands.pop();
-				Numeric result=Operators.evaluate(operator,operand_1,operand_2);
-				operands.push(result);
-			}
-			else{ //operand
-				curToken.updateValue(curThread,sample);
-				Numeric operand=curToken.numeric[curThread];
-				operands.push(operand);
-			}
-		} //end of tokens loop
-		Numeric result=operands.pop();
-				
-		return(result);
+	public static Numeric evaluateTokens(CompiledExpression tokens, int curThread, boolean sample) throws NumericException, Exception{
+		return(tokens.evaluate(curThread, sample));
+	}
+	
+	/**
+	 * Evaluates post-fix expression as a real number without creating intermediate Numeric objects
+	 * @throws NumericException if the result is not a real number
+	 */
+	public static double evaluateDouble(CompiledExpression tokens, int curThread, boolean sample) throws NumericException, Exception{
+		return(tokens.evaluateDouble(curThread, sample));
 	}
 	
 	public static String[] splitArgs(String strArgs){
@@ -118,9 +113,9 @@ public final class Interpreter{
 		return(rows);
 	}
 	
-	private static Token[][] parseArgs(String strArgs, AmuaModel myModel) throws Exception{
+	private static CompiledExpression[] parseArgs(String strArgs, AmuaModel myModel) throws Exception{
 		String args[]=splitArgs(strArgs);
-		Token argsToken[][]=new Token[args.length][];
+		CompiledExpression argsToken[]=new CompiledExpression[args.length];
 		for(int i=0; i<args.length; i++){
 			argsToken[i]=parse(args[i],myModel);
 		}
@@ -136,10 +131,10 @@ public final class Interpreter{
 		matrix.objectType=ObjectType.MATRIX_DYNAMIC;
 		matrix.nrow=rows.length;
 		matrix.ncol=rows[0].split(",").length;
-		matrix.matrixTokens=new Token[matrix.nrow][matrix.ncol][];
+		matrix.matrixTokens=new CompiledExpression[matrix.nrow][];
 		for(int i=0; i<matrix.nrow; i++){
 			String curRow=rows[i];
-			Token row[][]=parseArgs(curRow,myModel);
+			CompiledExpression row[]=parseArgs(curRow,myModel);
 			if(row.length!=matrix.ncol){
 				//throw error
 				return(null);
@@ -208,7 +203,8 @@ public final class Interpreter{
 							String args=curExpr.substring(pos+1,close);
 							Token tokenFx=new Token(word,Type.NUMERIC,myModel,false);
 							tokenFx.objectType=ObjectType.FUNCTION;
-							tokenFx.args=parseArgs(args,myModel);
+							tokenFx.function=Functions.getFunction(word);
+							tokenFx.setArgs(parseArgs(args,myModel));
 							tokenFx.negate=negate;
 							tokens.add(tokenFx);
 														
@@ -222,7 +218,8 @@ public final class Interpreter{
 							String args=curExpr.substring(pos+1,close);
 							Token tokenFx=new Token(word,Type.NUMERIC,myModel,false);
 							tokenFx.objectType=ObjectType.MATRIX_FUNCTION;
-							tokenFx.args=parseArgs(args,myModel);
+							tokenFx.matrixFunction=MatrixFunctions.getFunction(word);
+							tokenFx.setArgs(parseArgs(args,myModel));
 							tokenFx.negate=negate;
 							tokens.add(tokenFx);
 							
@@ -247,9 +244,17 @@ public final class Interpreter{
 							Token tokenDist=new Token(word,Type.NUMERIC,myModel,false);
 							tokenDist.objectType=ObjectType.DISTRIBUTION;
 							tokenDist.distFx=df;
+							tokenDist.distribution=Distributions.getDistribution(word);
 							String args=params[0];
 							for(int i=1; i<numParams; i++){args+=","+params[i];}
-							tokenDist.args=parseArgs(args,myModel);
+							tokenDist.setArgs(parseArgs(args,myModel));
+							if(df==-1 && word.equals("Cat") && tokenDist.args.length==1){ //cache cumulative probabilities for sampling
+								tokenDist.catSource=new Object[tokenDist.numThreads];
+								tokenDist.catCDF=new double[tokenDist.numThreads][][];
+							}
+							if(df==-1 && CachedSampler.isCached(word)){ //cache factorizations for sampling
+								tokenDist.sampler=new CachedSampler[tokenDist.numThreads];
+							}
 							tokenDist.negate=negate;
 							tokens.add(tokenDist);
 							
@@ -309,6 +314,16 @@ public final class Interpreter{
 								tokenDist.distFx=df;
 								tokenDist.strArgs=new String[numParams];
 								for(int i=0; i<numParams; i++){tokenDist.strArgs[i]=params[i];}
+								if(df==-1 && numParams==2){ //resolve sampling column if static
+									String colText=params[0];
+									int col=-1;
+									if(colText.contains("\"") || colText.contains("\'")){col=curTable.getColumnIndex(colText);} //header
+									else{
+										try{col=Integer.parseInt(colText.trim());}
+										catch(NumberFormatException e){col=-1;} //evaluate when sampled
+									}
+									if(col>=1 && col<curTable.numCols){tokenDist.tableCol=col;}
+								}
 								tokenDist.negate=negate;
 								tokens.add(tokenDist);
 								
@@ -372,9 +387,23 @@ public final class Interpreter{
 								tokenLookup.objectType=ObjectType.TABLE_LOOKUP;
 								tokenLookup.curTable=curTable;
 								tokenLookup.strArgs=args;
-								//tokenize index
-								tokenLookup.args=new Token[1][];
+								if(args.length!=2){throw new NumericException("Lookup requires 2 arguments (index, column)",word);}
+								//tokenize index and column
+								tokenLookup.args=new CompiledExpression[2];
 								tokenLookup.args[0]=parse(args[0],myModel);
+								String colText=args[1];
+								if(colText.contains("\"") || colText.contains("\'")){ //header
+									int col=curTable.getColumnIndex(colText);
+									if(col<1){throw new NumericException("Column not found: "+colText,word);}
+									tokenLookup.tableCol=col;
+								}
+								else{
+									tokenLookup.args[1]=parse(colText,myModel);
+									Token colTokens[]=tokenLookup.args[1].tokens;
+									if(colTokens.length==1 && colTokens[0].objectType==ObjectType.NUMBER && colTokens[0].numeric[0].format==Format.INTEGER){ //static
+										tokenLookup.tableCol=colTokens[0].numeric[0].intNum;
+									}
+								}
 								tokenLookup.negate=negate;
 								tokens.add(tokenLookup);
 								
@@ -414,6 +443,7 @@ public final class Interpreter{
 							Token tokenTrace=new Token(word,Type.NUMERIC,myModel,false);
 							tokenTrace.objectType=ObjectType.TRACE;
 							tokenTrace.strArgs=args;
+							tokenTrace.traceRef=new TraceReference(args[0],args[1],myModel);
 							tokenTrace.negate=negate;
 							tokens.add(tokenTrace);
 							
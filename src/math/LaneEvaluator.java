@@ -0,0 +1,413 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+
+import base.AmuaModel;
+import main.Parameter;
+import main.Variable;
+
+/**
+ * Evaluates compiled expressions for a batch of parameter sets (lanes) at once.  Each token is read once per evaluation
+ * and operators are applied to all lanes in simple loops, so the cost of interpreting an expression is shared by the
+ * whole batch.  Parameters take their values from the lanes and variables are evaluated from their expressions at the
+ * current time of each lane.  Numbers are held as doubles, integer values are passed to functions as integers.
+ * Distributions are not sampled, as in cohort runs.  Only scalar expressions without matrices, trace references, or
+ * dynamic lookup columns are supported, see isSupported.
+ */
+public final class LaneEvaluator{
+	AmuaModel myModel;
+	int numLanes;
+	/**
+	 * [Parameter][Lane], null for matrix parameters
+	 */
+	double paramLanes[][];
+	boolean paramBool[];
+	IdentityHashMap<Parameter,Integer> paramIndices;
+	Variable curT;
+	/**
+	 * Value of 't' [Lane]
+	 */
+	double time[];
+	/**
+	 * Variable values at the current time
+	 */
+	IdentityHashMap<Variable,Lanes> variables;
+	/**
+	 * Parameter-only subexpressions, fixed for the batch
+	 */
+	IdentityHashMap<Token,Lanes> invariants;
+	ArrayDeque<double[]> pool;
+	
+	/**
+	 * Values of an expression for each lane
+	 */
+	static final class Lanes{
+		double values[];
+		boolean bool;
+		
+		Lanes(double values[]){
+			this.values=values;
+		}
+	}
+	
+	/**
+	 * @param paramValues Parameter values [Lane][Parameter]
+	 * @throws NumericException if a parameter is boolean in some lanes and not in others
+	 */
+	public LaneEvaluator(AmuaModel myModel, Numeric paramValues[][]) throws NumericException{
+		this.myModel=myModel;
+		numLanes=paramValues.length;
+		int numParams=myModel.parameters.size();
+		paramLanes=new double[numParams][];
+		paramBool=new boolean[numParams];
+		paramIndices=new IdentityHashMap<Parameter,Integer>();
+		for(int p=0; p<numParams; p++){
+			Parameter curParam=myModel.parameters.get(p);
+			paramIndices.put(curParam, p);
+			boolean matrix=false, bool=paramValues[0][p].isBoolean();
+			double values[]=new double[numLanes];
+			for(int k=0; k<numLanes; k++){
+				Numeric value=paramValues[k][p];
+				if(value.isMatrix()){matrix=true; break;}
+				if(value.isBoolean()!=bool){
+					throw new NumericException("Parameter "+curParam.name+" is not always boolean","LaneEvaluator");
+				}
+				values[k]=unbox(value);
+			}
+			if(matrix==false){
+				paramLanes[p]=values;
+				paramBool[p]=bool;
+			}
+		}
+		curT=myModel.innateVariables.get(myModel.getInnateVariableIndex("t"));
+		time=new double[numLanes];
+		variables=new IdentityHashMap<Variable,Lanes>();
+		invariants=new IdentityHashMap<Token,Lanes>();
+		pool=new ArrayDeque<double[]>();
+	}
+	
+	public int getNumLanes(){
+		return(numLanes);
+	}
+	
+	/**
+	 * Sets the value of 't' for each lane.  Variables are re-evaluated when next used.
+	 */
+	public void setTime(double t[]){
+		System.arraycopy(t, 0, time, 0, numLanes);
+		for(Lanes value : variables.values()){
+			release(value.values);
+		}
+		variables.clear();
+	}
+	
+	/**
+	 * Evaluates expression from left to right for all lanes
+	 * @param out Result [Lane], booleans are 1 or 0
+	 * @return True if the result is boolean
+	 */
+	public boolean evaluate(CompiledExpression expr, double out[]) throws Exception{
+		Token tokens[]=expr.tokens;
+		double stack[][]=new double[expr.maxDepth][];
+		boolean bool[]=new boolean[expr.maxDepth];
+		int sp=0;
+		for(int i=0; i<tokens.length; i++){
+			Token curToken=tokens[i];
+			if(curToken.type==Type.OPERATOR){
+				sp--;
+				bool[sp-1]=apply(curToken.operator, stack[sp-1], bool[sp-1], stack[sp], bool[sp]);
+				release(stack[sp]);
+			}
+			else{ //operand
+				stack[sp]=take();
+				bool[sp]=load(curToken, stack[sp]);
+				sp++;
+			}
+		}
+		System.arraycopy(stack[0], 0, out, 0, numLanes);
+		release(stack[0]);
+		return(bool[0]);
+	}
+	
+	/**
+	 * Evaluates a variable at the current time for all lanes
+	 * @return True if boolean
+	 */
+	public boolean evaluateVariable(Variable var, double out[]) throws Exception{
+		if(var==curT){
+			System.arraycopy(time, 0, out, 0, numLanes);
+			return(false);
+		}
+		Lanes value=getVariable(var);
+		System.arraycopy(value.values, 0, out, 0, numLanes);
+		return(value.bool);
+	}
+	
+	/**
+	 * Returns true if the expression can be evaluated by lanes with the current parameter types
+	 * @param variables False if the expression can't refer to variables (including 't')
+	 */
+	public static boolean isSupported(CompiledExpression expr, AmuaModel myModel, boolean variables){
+		IdentityHashMap<Variable,Boolean> checked=null;
+		if(variables){checked=new IdentityHashMap<Variable,Boolean>();}
+		return(isSupported(expr, myModel, checked));
+	}
+	
+	/**
+	 * @param checked Variables already checked, null if variables are not allowed
+	 */
+	private static boolean isSupported(CompiledExpression expr, AmuaModel myModel, IdentityHashMap<Variable,Boolean> checked){
+		if(expr==null){return(false);}
+		for(int i=0; i<expr.tokens.length; i++){
+			Token token=expr.tokens[i];
+			if(token.type==Type.OPERATOR){continue;}
+			switch(token.objectType){
+			case NUMBER:
+				if(token.numeric[0]==null || token.numeric[0].isMatrix()){return(false);}
+				break;
+			case PARAMETER:
+				if(token.curParam.value!=null && token.curParam.value.isMatrix()){return(false);}
+				break;
+			case VARIABLE:{
+				if(checked==null){return(false);}
+				if(myModel.innateVariables.contains(token.curVar)){
+					if(token.curVar.name.equals("t")==false){return(false);}
+					break;
+				}
+				Boolean supported=checked.get(token.curVar);
+				if(supported==null){
+					checked.put(token.curVar, false); //not supported if it refers to itself
+					try{
+						supported=isSupported(token.curVar.parse(myModel), myModel, checked);
+					}catch(Exception e){
+						supported=false;
+					}
+					checked.put(token.curVar, supported);
+				}
+				if(supported==false){return(false);}
+				break;
+			}
+			case FUNCTION:
+			case DISTRIBUTION:
+				for(int a=0; a<token.args.length; a++){
+					if(isSupported(token.args[a], myModel, checked)==false){return(false);}
+				}
+				break;
+			case TABLE_DISTRIBUTION:
+				break;
+			case TABLE_LOOKUP:
+				if(token.tableCol==-1 || isSupported(token.args[0], myModel, checked)==false){return(false);}
+				break;
+			case INVARIANT:
+				if(isSupported(token.args[0], myModel, checked)==false){return(false);}
+				break;
+			default: //matrices, trace
+				return(false);
+			}
+		}
+		return(true);
+	}
+	
+	/**
+	 * Loads the value of an operand token for all lanes
+	 * @return True if boolean
+	 */
+	private boolean load(Token token, double lanes[]) throws Exception{
+		boolean bool=false;
+		switch(token.objectType){
+		case NUMBER:{
+			Numeric value=token.numeric[0];
+			bool=value.isBoolean();
+			fill(lanes, unbox(value));
+			return(bool); //already negated
+		}
+		case PARAMETER:{
+			int index=paramIndices.get(token.curParam);
+			if(paramLanes[index]==null){
+				throw new NumericException(token.curParam.name+" is a matrix, not supported in batch","LaneEvaluator");
+			}
+			System.arraycopy(paramLanes[index], 0, lanes, 0, numLanes);
+			bool=paramBool[index];
+			break;
+		}
+		case VARIABLE:
+			if(token.curVar==curT){
+				System.arraycopy(time, 0, lanes, 0, numLanes);
+			}
+			else{
+				Lanes value=getVariable(token.curVar);
+				System.arraycopy(value.values, 0, lanes, 0, numLanes);
+				bool=value.bool;
+			}
+			break;
+		case FUNCTION:
+		case DISTRIBUTION:{
+			int numArgs=token.args.length;
+			double args[][]=new double[numArgs][];
+			boolean argBool[]=new boolean[numArgs];
+			for(int a=0; a<numArgs; a++){
+				args[a]=take();
+				argBool[a]=evaluate(token.args[a], args[a]);
+			}
+			Numeric argsNumeric[]=new Numeric[numArgs]; //boxed in place for each lane
+			for(int a=0; a<numArgs; a++){argsNumeric[a]=new Numeric(0);}
+			for(int k=0; k<numLanes; k++){
+				for(int a=0; a<numArgs; a++){
+					box(argsNumeric[a], args[a][k], argBool[a]);
+				}
+				Numeric result;
+				if(token.objectType==ObjectType.FUNCTION){result=Functions.evaluate(token.function, argsNumeric);}
+				else{result=Distributions.evaluate(token.distribution, argsNumeric, token.distFx);}
+				lanes[k]=unbox(result);
+				bool=result.isBoolean();
+			}
+			for(int a=0; a<numArgs; a++){
+				release(args[a]);
+			}
+			break;
+		}
+		case TABLE_DISTRIBUTION:
+			fill(lanes, token.curTable.evaluateDist(token.strArgs, token.distFx).getDouble());
+			break;
+		case TABLE_LOOKUP:{
+			double index[]=take();
+			evaluate(token.args[0], index);
+			for(int k=0; k<numLanes; k++){
+				lanes[k]=token.curTable.getLookupValue(index[k], token.tableCol);
+			}
+			release(index);
+			break;
+		}
+		case INVARIANT:{
+			Lanes value=invariants.get(token);
+			if(value==null){
+				value=new Lanes(new double[numLanes]);
+				value.bool=evaluate(token.args[0], value.values);
+				invariants.put(token, value);
+			}
+			System.arraycopy(value.values, 0, lanes, 0, numLanes);
+			bool=value.bool;
+			break;
+		}
+		default:
+			throw new NumericException(token.word+" not supported in batch","LaneEvaluator");
+		}
+		if(token.negate){
+			for(int k=0; k<numLanes; k++){lanes[k]=-lanes[k];}
+		}
+		return(bool);
+	}
+	
+	private Lanes getVariable(Variable var) throws Exception{
+		Lanes value=variables.get(var);
+		if(value==null){
+			value=new Lanes(take());
+			value.bool=evaluate(var.parse(myModel), value.values);
+			variables.put(var, value);
+		}
+		return(value);
+	}
+	
+	/**
+	 * Applies operator to lanes a and b, storing the result in a.  Mirrors the number-number semantics in
+	 * CompiledExpression, and falls back to Operators for each lane otherwise.
+	 * @return True if the result is boolean
+	 */
+	private boolean apply(Operator op, double a[], boolean boolA, double b[], boolean boolB) throws NumericException{
+		int n=numLanes;
+		if(boolA==false && boolB==false){ //number and number
+			switch(op){
+			case ADD: for(int k=0; k<n; k++){a[k]+=b[k];} return(false);
+			case SUBTRACT: for(int k=0; k<n; k++){a[k]-=b[k];} return(false);
+			case MULTIPLY: for(int k=0; k<n; k++){a[k]*=b[k];} return(false);
+			case DIVIDE:
+				for(int k=0; k<n; k++){
+					double result=a[k]/b[k];
+					int test=(int) Math.round(result); //check if integer
+					if(Math.abs(test-result)<MathUtils.tolerance){result=test;}
+					a[k]=result;
+				}
+				return(false);
+			case POWER: for(int k=0; k<n; k++){a[k]=Math.pow(a[k], b[k]);} return(false);
+			case MODULUS: for(int k=0; k<n; k++){a[k]%=b[k];} return(false);
+			case EQUAL: for(int k=0; k<n; k++){a[k]=(a[k]==b[k]) ? 1 : 0;} return(true);
+			case NOT_EQUAL: for(int k=0; k<n; k++){a[k]=(a[k]!=b[k]) ? 1 : 0;} return(true);
+			case LESS: for(int k=0; k<n; k++){a[k]=(a[k]<b[k]) ? 1 : 0;} return(true);
+			case GREATER: for(int k=0; k<n; k++){a[k]=(a[k]>b[k]) ? 1 : 0;} return(true);
+			case LESS_EQ: for(int k=0; k<n; k++){a[k]=(a[k]<=b[k]) ? 1 : 0;} return(true);
+			case GREATER_EQ: for(int k=0; k<n; k++){a[k]=(a[k]>=b[k]) ? 1 : 0;} return(true);
+			default: break; //logical operators on numbers, fall back to throw error
+			}
+		}
+		else if(boolA && boolB){
+			switch(op){
+			case AND: for(int k=0; k<n; k++){a[k]=(a[k]!=0 && b[k]!=0) ? 1 : 0;} return(true);
+			case OR: for(int k=0; k<n; k++){a[k]=(a[k]!=0 || b[k]!=0) ? 1 : 0;} return(true);
+			case XOR: for(int k=0; k<n; k++){a[k]=((a[k]!=0) ^ (b[k]!=0)) ? 1 : 0;} return(true);
+			default: break;
+			}
+		}
+		//general case
+		boolean bool=false;
+		for(int k=0; k<n; k++){
+			Numeric result=Operators.evaluate(op, box(a[k], boolA), box(b[k], boolB));
+			a[k]=unbox(result);
+			bool=result.isBoolean();
+		}
+		return(bool);
+	}
+	
+	private static Numeric box(double value, boolean bool){
+		if(bool){return(new Numeric(value!=0));}
+		int test=(int) value;
+		if(test==value){return(new Numeric(test));}
+		return(new Numeric(value));
+	}
+	
+	private static void box(Numeric target, double value, boolean bool){
+		if(bool){target.setBool(value!=0);}
+		else{
+			int test=(int) value;
+			if(test==value){target.setInt(test);}
+			else{target.setDouble(value);}
+		}
+	}
+	
+	private static double unbox(Numeric value) throws NumericException{
+		if(value.isBoolean()){return(value.bool ? 1 : 0);}
+		return(value.getDouble());
+	}
+	
+	private void fill(double lanes[], double value){
+		for(int k=0; k<numLanes; k++){lanes[k]=value;}
+	}
+	
+	private double[] take(){
+		double lanes[]=pool.poll();
+		if(lanes==null){lanes=new double[numLanes];}
+		return(lanes);
+	}
+	
+	private void release(double lanes[]){
+		pool.push(lanes);
+	}
+}
\ No newline at end of file
@@ -24,6 +24,7 @@ import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 
+enum MatrixFunction{CHOL,DET,DIAG,IDEN,INTERPOLATE,INV,NCOL,NORM,NROW,RENORM,REP,SEQ,SOFTMAX,STACK,TP,TR};
 public final class MatrixFunctions{
 
 	public static boolean isFunction(String word){
@@ -48,19 +49,50 @@ public final class MatrixFunctions{
 		return(false); //fell through
 	}
 
+	/**
+	 * Resolves a matrix function name, called at parse time so evaluation does not switch on the name
+	 */
+	static MatrixFunction getFunction(String fx){
+		switch(fx){
+		case "chol": return(MatrixFunction.CHOL);
+		case "det": return(MatrixFunction.DET);
+		case "diag": return(MatrixFunction.DIAG);
+		case "iden": return(MatrixFunction.IDEN);
+		case "interpolate": return(MatrixFunction.INTERPOLATE);
+		case "inv": return(MatrixFunction.INV);
+		case "ncol": return(MatrixFunction.NCOL);
+		case "norm": return(MatrixFunction.NORM);
+		case "nrow": return(MatrixFunction.NROW);
+		case "renorm": return(MatrixFunction.RENORM);
+		case "rep": return(MatrixFunction.REP);
+		case "seq": return(MatrixFunction.SEQ);
+		case "softmax": return(MatrixFunction.SOFTMAX);
+		case "stack": return(MatrixFunction.STACK);
+		case "tp": return(MatrixFunction.TP);
+		case "tr": return(MatrixFunction.TR);
+		}
+		return(null); //fell through
+	}
+	
 	public static Numeric evaluate(String fx, Numeric...args) throws NumericException{
+		MatrixFunction function=getFunction(fx);
+		if(function==null){return(null);} //fell through
+		return(evaluate(function,args));
+	}
+	
+	static Numeric evaluate(MatrixFunction fx, Numeric...args) throws NumericException{
 		switch(fx){
-		case "chol":{ //Cholesky decomposition
+		case CHOL:{ //Cholesky decomposition
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","chol");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","chol");}
 			return(chol(args[0]));
 		}
-		case "det":{ //Determinant
+		case DET:{ //Determinant
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","det");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","det");}
 			return(det(args[0]));
 		}
-		case "diag":{ //get diagonals
+		case DIAG:{ //get diagonals
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","diag");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","diag");}
 			Numeric matrix=args[0];
@@ -75,7 +107,7 @@ public final class MatrixFunctions{
 				throw new NumericException("X should be a square matrix","diag");
 			}
 		}
-		case "iden":{ //identity matrix
+		case IDEN:{ //identity matrix
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","iden");}
 			int n=args[0].getInt();
 			if(n<=0){throw new NumericException("n should be >0","iden");}
@@ -85,7 +117,7 @@ public final class MatrixFunctions{
 			}
 			return(I);
 		}
-		case "interpolate":{ //interpolate
+		case INTERPOLATE:{ //interpolate
 			if(args.length!=3) {throw new NumericException("Function takes 3 arguments","interpolate");}
 			double x=args[0].getDouble();
 			Numeric numXX=args[1];
@@ -121,17 +153,17 @@ public final class MatrixFunctions{
 			return(new Numeric(val));
 			
 		}
-		case "inv":{ //invert
+		case INV:{ //invert
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","inv");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","inv");}
 			return(inv(args[0]));
 		}
-		case "ncol":{ //num columns
+		case NCOL:{ //num columns
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","ncol");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","ncol");}
 			return(new Numeric(args[0].ncol));
 		}
-		case "norm":{
+		case NORM:{
 			if(args.length==1){ //Frobenius norm
 				Numeric mat=args[0];
 				if(mat.format!=Format.MATRIX){throw new NumericException("X is not a matrix","norm");}
@@ -152,12 +184,12 @@ public final class MatrixFunctions{
 				throw new NumericException("Function takes 1 or 2 arguments","norm");
 			}
 		}
-		case "nrow":{ //num rows
+		case NROW:{ //num rows
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","nrow");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","nrow");}
 			return(new Numeric(args[0].nrow));
 		}
-		case "renorm":{
+		case RENORM:{
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","renorm");}
 			Numeric x=args[0];
 			if(x.nrow!=1){throw new NumericException("X should be a row vector","renorm");} //ensure x is row vector
@@ -175,7 +207,7 @@ public final class MatrixFunctions{
 			}
 			return(newX);
 		}
-		case "rep":{
+		case REP:{
 			if(args.length!=2){throw new NumericException("Function takes 2 arguments","rep");}
 			double x=args[0].getDouble();
 			int n=args[1].getInt();
@@ -186,7 +218,7 @@ public final class MatrixFunctions{
 			}
 			return(row);
 		}
-		case "seq":{
+		case SEQ:{
 			if(args.length<2 || args.length>3){throw new NumericException("Function takes 2 or 3 arguments","seq");}
 			double a=args[0].getDouble();
 			double b=args[1].getDouble();
@@ -204,7 +236,7 @@ public final class MatrixFunctions{
 			}
 			return(new Numeric(seq));
 		}
-		case "softmax":{ //softmax
+		case SOFTMAX:{ //softmax
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","softmax");}
 			Numeric x=args[0];
 			if(x.nrow!=1){throw new NumericException("X should be a row vector","softmax");} //ensure x is row vector
@@ -222,7 +254,7 @@ public final class MatrixFunctions{
 			}
 			return(newX);
 		}
-		case "stack":{
+		case STACK:{
 			if(args.length==0){throw new NumericException("Function takes at least 1 argument","stack");}
 			int nrow=args.length;
 			int ncol=args[0].ncol;
@@ -238,12 +270,12 @@ public final class MatrixFunctions{
 			}
 			return(newMatrix);
 		}
-		case "tp":{ //transpose
+		case TP:{ //transpose
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","tp");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","tp");}
 			return(tp(args[0]));
 		}
-		case "tr":{ //trace
+		case TR:{ //trace
 			if(args.length!=1){throw new NumericException("Function takes 1 argument","tr");}
 			if(args[0].format!=Format.MATRIX){throw new NumericException("Argument is not a matrix","tr");}
 			Numeric matrix=args[0];
@@ -279,6 +279,21 @@ public class Numeric{
 		format=Format.DOUBLE;
 		doubleNum=newDouble;
 	}
+
+	public void setBool(boolean newBool){
+		format=Format.BOOL;
+		bool=newBool;
+	}
+	
+	/**
+	 * Copies a scalar (integer, double, or boolean) value into this Numeric in place
+	 */
+	void setScalar(Numeric value){
+		format=value.format;
+		intNum=value.intNum;
+		doubleNum=value.doubleNum;
+		bool=value.bool;
+	}
 	
 	public String saveAsXMLString(){
 		String str="";
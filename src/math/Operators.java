@@ -18,6 +18,7 @@
 
 package math;
 
+enum Operator{ADD,SUBTRACT,MULTIPLY,DIVIDE,POWER,MODULUS,EQUAL,LESS,GREATER,LESS_EQ,GREATER_EQ,AND,OR,NOT_EQUAL,XOR};
 public final class Operators{
 
 	public static boolean isOperator(String text){
@@ -65,24 +66,56 @@ public final class Operators{
 		return(-1); //fell through
 	}
 
+	/**
+	 * Resolves operator text to its opcode so it can be dispatched without string comparisons
+	 * @return Operator, or null if not an operator
+	 */
+	public static Operator getOperator(String operator){
+		switch(operator){
+		case "+": return(Operator.ADD);
+		case "-": return(Operator.SUBTRACT);
+		case "*": return(Operator.MULTIPLY);
+		case "/": return(Operator.DIVIDE);
+		case "^": return(Operator.POWER);
+		case "%": return(Operator.MODULUS);
+		//Logical
+		case "==": return(Operator.EQUAL);
+		case "<": return(Operator.LESS);
+		case ">": return(Operator.GREATER);
+		case "<=": return(Operator.LESS_EQ);
+		case ">=": return(Operator.GREATER_EQ);
+		case "&": return(Operator.AND);
+		case "|": return(Operator.OR);
+		case "!=": return(Operator.NOT_EQUAL);
+		case "^|": return(Operator.XOR);
+		}
+		return(null); //fell through
+	}
+	
 	public static Numeric evaluate(String operator,Numeric arg1, Numeric arg2) throws NumericException{
+		Operator op=getOperator(operator);
+		if(op==null){return(null);}
+		return(evaluate(op,arg1,arg2));
+	}
+	
+	static Numeric evaluate(Operator operator,Numeric arg1, Numeric arg2) throws NumericException{
 		switch(operator){
-		case "+": return(add(arg1,arg2));
-		case "-": return(subtract(arg1,arg2));
-		case "*": return(multiply(arg1,arg2));
-		case "/": return(divide(arg1,arg2));
-		case "^": return(power(arg1,arg2));
-		case "%": return(modulus(arg1,arg2));
+		case ADD: return(add(arg1,arg2));
+		case SUBTRACT: return(subtract(arg1,arg2));
+		case MULTIPLY: return(multiply(arg1,arg2));
+		case DIVIDE: return(divide(arg1,arg2));
+		case POWER: return(power(arg1,arg2));
+		case MODULUS: return(modulus(arg1,arg2));
 		//Logical
-		case "==": return(equal(arg1,arg2)); //after addition
-		case "<": return(less(arg1,arg2)); //after addition
-		case ">": return(greater(arg1,arg2));
-		case "<=": return(lessEq(arg1,arg2));
-		case ">=": return(greaterEq(arg1,arg2));
-		case "&": return(and(arg1,arg2));
-		case "|": return(or(arg1,arg2));
-		case "!=": return(notEqual(arg1,arg2));
-		case "^|": return(xor(arg1,arg2));
+		case EQUAL: return(equal(arg1,arg2));
+		case LESS: return(less(arg1,arg2));
+		case GREATER: return(greater(arg1,arg2));
+		case LESS_EQ: return(lessEq(arg1,arg2));
+		case GREATER_EQ: return(greaterEq(arg1,arg2));
+		case AND: return(and(arg1,arg2));
+		case OR: return(or(arg1,arg2));
+		case NOT_EQUAL: return(notEqual(arg1,arg2));
+		case XOR: return(xor(arg1,arg2));
 		}
 		return(null); //fell through
 	}
@@ -0,0 +1,180 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package math;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable streaming quantile sketch (KLL).  Values are kept in levels, where each value at level h stands for 2^h values.
+ * When the sketch is full the lowest full level is sorted and every other value is promoted to the next level.
+ * Quantiles are exact until the first compaction, afterwards the rank error is approximately the given bound.
+ * Compactions alternate between odd and even values so results are reproducible.
+ */
+public class QuantileSketch{
+	int k;
+	/**
+	 * Values [Level][Index]
+	 */
+	double levels[][];
+	int sizes[];
+	int numLevels;
+	boolean offsets[];
+	long count;
+	/**
+	 * Number of values retained over all levels
+	 */
+	int size;
+	/**
+	 * Cached capacities [Level], updated when a level is added
+	 */
+	int capacities[];
+	int totalCapacity;
+
+	/**
+	 * @param rankError Approximate bound on the rank error of quantiles, as a fraction of the number of values
+	 */
+	public QuantileSketch(double rankError){
+		k=Math.max(8, (int) Math.ceil(1.65/rankError));
+		levels=new double[1][k];
+		sizes=new int[1];
+		offsets=new boolean[1];
+		numLevels=1;
+		updateCapacities();
+	}
+
+	public long getCount(){
+		return(count);
+	}
+
+	public void add(double value){
+		append(0, value);
+		count++;
+		if(size>=totalCapacity){compress();}
+	}
+
+	/**
+	 * Adds all values of another sketch to this sketch.  The other sketch is unchanged.
+	 */
+	public void merge(QuantileSketch other){
+		while(numLevels<other.numLevels){addLevel();}
+		for(int h=0; h<other.numLevels; h++){
+			for(int i=0; i<other.sizes[h]; i++){
+				append(h, other.levels[h][i]);
+			}
+		}
+		count+=other.count;
+		compress();
+	}
+
+	/**
+	 * Returns the value at the given index if all values were sorted (0 to count-1)
+	 */
+	public double getValue(long index){
+		if(count==0){return(Double.NaN);}
+		double values[]=new double[size];
+		long weights[]=new long[size];
+		int pos=0;
+		for(int h=0; h<numLevels; h++){ //sort levels and merge
+			Arrays.sort(levels[h], 0, sizes[h]);
+			int a=0, b=0;
+			double merged[]=new double[pos+sizes[h]];
+			long mergedWeights[]=new long[pos+sizes[h]];
+			for(int i=0; i<merged.length; i++){
+				if(b>=sizes[h] || (a<pos && Double.compare(values[a], levels[h][b])<=0)){
+					merged[i]=values[a]; mergedWeights[i]=weights[a]; a++;
+				}
+				else{
+					merged[i]=levels[h][b]; mergedWeights[i]=1L<<h; b++;
+				}
+			}
+			System.arraycopy(merged, 0, values, 0, merged.length);
+			System.arraycopy(mergedWeights, 0, weights, 0, merged.length);
+			pos=merged.length;
+		}
+		long rank=0;
+		for(int i=0; i<size; i++){
+			rank+=weights[i];
+			if(rank>index){return(values[i]);}
+		}
+		return(values[size-1]);
+	}
+
+	private void append(int h, double value){
+		if(h==numLevels){addLevel();}
+		if(sizes[h]==levels[h].length){
+			levels[h]=Arrays.copyOf(levels[h], levels[h].length*2);
+		}
+		levels[h][sizes[h]]=value;
+		sizes[h]++;
+		size++;
+	}
+
+	private void addLevel(){
+		levels=Arrays.copyOf(levels, numLevels+1);
+		sizes=Arrays.copyOf(sizes, numLevels+1);
+		offsets=Arrays.copyOf(offsets, numLevels+1);
+		levels[numLevels]=new double[8];
+		numLevels++;
+		updateCapacities();
+	}
+
+	/**
+	 * Capacity of each level depends on its depth below the top level, smaller for lower levels
+	 */
+	private void updateCapacities(){
+		capacities=new int[numLevels];
+		totalCapacity=0;
+		for(int h=0; h<numLevels; h++){
+			int depth=numLevels-1-h;
+			capacities[h]=Math.max(2, (int) Math.ceil(k*Math.pow(2.0/3.0, depth)));
+			totalCapacity+=capacities[h];
+		}
+	}
+
+	/**
+	 * Compacts the lowest full level until the sketch is below its total capacity
+	 */
+	private void compress(){
+		while(size>=totalCapacity){
+			int h=0;
+			while(sizes[h]<capacities[h]){h++;}
+			compact(h);
+		}
+	}
+
+	/**
+	 * Sorts a level and promotes every other value to the next level.  If the level has an odd number of values the largest stays.
+	 */
+	private void compact(int h){
+		if(h+1==numLevels){addLevel();}
+		double values[]=levels[h];
+		int levelSize=sizes[h];
+		Arrays.sort(values, 0, levelSize);
+		int num=levelSize-(levelSize%2);
+		int start=offsets[h] ? 1 : 0;
+		offsets[h]=!offsets[h];
+		for(int i=start; i<num; i+=2){
+			append(h+1, values[i]);
+		}
+		if(num<levelSize){values[0]=values[levelSize-1];} //keep largest
+		sizes[h]=levelSize-num;
+		size-=num;
+	}
+}
\ No newline at end of file
@@ -23,11 +23,14 @@ import base.AmuaModel;
 import main.Parameter;
 import main.Table;
 import main.Variable;
+import markov.TraceReference;
+import math.distributions.CachedSampler;
+import math.distributions.Categorical;
 
 enum Type{NUMERIC,OPERATOR,PAREN_LEFT,PAREN_RIGHT;}
 enum ObjectType{NUMBER,PARAMETER,VARIABLE,MATRIX_STATIC,FUNCTION,MATRIX_FUNCTION,DISTRIBUTION,
 	TABLE_DISTRIBUTION,TABLE_LOOKUP,MATRIX_ELEMENT,TRACE,PARAM_MATRIX,VAR_MATRIX,
-	MATRIX_DYNAMIC};
+	MATRIX_DYNAMIC,INVARIANT};
 public class Token{
 	Type type;
 	ObjectType objectType;
@@ -38,11 +41,21 @@ public class Token{
 		
 	int precedence=-1; //operator precedence
 	boolean leftAssociative; //operator association
+	Operator operator; //resolved operator
 	
 	/**
-	 * [Argument index][Tokens within argument]
+	 * [Argument index]
 	 */
-	Token args[][];
+	CompiledExpression args[];
+	/**
+	 * Argument values passed to functions and distributions [Thread][Argument index]
+	 */
+	Numeric argBuffer[][];
+	
+	//resolved at parse time
+	Function function;
+	MatrixFunction matrixFunction;
+	Distribution distribution;
 	
 	
 	String strArgs[];
@@ -61,13 +74,28 @@ public class Token{
 	Parameter curParam;
 	Variable curVar;
 	Table curTable;
+	int tableCol=-1; //lookup/sampling column resolved at parse time, -1 if evaluated when called
+	TraceReference traceRef; //trace(row,col) arguments compiled at parse time
 	
 	//dynamic matrix
 	int nrow, ncol;
 	/**
-	 * [Row][Col][Tokens]
+	 * [Row][Col]
 	 */
-	Token matrixTokens[][][];
+	CompiledExpression matrixTokens[][];
+	
+	//Cat(p,~) sampling, cumulative probabilities are cached while p is unchanged
+	Object catSource[]; //[thread] p used for catCDF
+	double catCDF[][][]; //[thread][row][category]
+	
+	//Dir/MvNorm/Multi sampling, factorizations and workspace are cached while the arguments are unchanged
+	CachedSampler sampler[]; //[thread]
+	
+	//invariant (parameter-only) subexpression, evaluated from args[0]
+	Parameter invariantParams[];
+	Numeric invariantValue[]; //[thread]
+	Numeric invariantSnapshot[][]; //[thread][param] parameter values used for invariantValue
+	long invariantHits[]; //[thread]
 	
 	
 	public Token(String word, Type type, AmuaModel myModel, boolean parseWord) throws Exception{
@@ -83,6 +111,41 @@ public class Token{
 		}
 	}
 	
+	private Token(Type type, ObjectType objectType, AmuaModel myModel){
+		this.type=type;
+		this.objectType=objectType;
+		this.myModel=myModel;
+		if(myModel==null){this.numThreads=1;}
+		else{this.numThreads=myModel.numThreads;}
+		numeric=new Numeric[numThreads];
+	}
+	
+	/**
+	 * Creates a static number token, used for folded constants
+	 */
+	static Token constant(Numeric value, AmuaModel myModel){
+		Token token=new Token(Type.NUMERIC,ObjectType.NUMBER,myModel);
+		token.word=value.toString();
+		for(int t=0; t<token.numThreads; t++){
+			token.numeric[t]=value.copy();
+		}
+		return(token);
+	}
+	
+	/**
+	 * Creates a token for a parameter-only subexpression that is only re-evaluated when the parameter values change
+	 */
+	static Token invariant(String key, CompiledExpression subExpr, Parameter params[], AmuaModel myModel){
+		Token token=new Token(Type.NUMERIC,ObjectType.INVARIANT,myModel);
+		token.word=key;
+		token.args=new CompiledExpression[]{subExpr};
+		token.invariantParams=params;
+		token.invariantValue=new Numeric[token.numThreads];
+		token.invariantSnapshot=new Numeric[token.numThreads][];
+		token.invariantHits=new long[token.numThreads];
+		return(token);
+	}
+	
 	public Numeric[] getNumeric(){
 		return(numeric);
 	}
@@ -90,6 +153,7 @@ public class Token{
 	private void parseWord() throws Exception{ //numeric or operator
 		if(this.type==Type.OPERATOR){
 			precedence=Operators.getPrecedence(word);
+			operator=Operators.getOperator(word);
 			leftAssociative=true;
 			if(word.equals("^")){
 				leftAssociative=false;
@@ -161,48 +225,56 @@ public class Token{
 		if(objectType!=ObjectType.NUMBER && objectType!=ObjectType.MATRIX_STATIC){ //Not static number or matrix
 			if(objectType==ObjectType.PARAMETER){ //Parameter
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.value=Interpreter.evaluateTokens(curParam.parse(myModel),curThread,sample);
 					if(sample){curParam.locked=true;}
 				}
-				numeric[curThread]=curParam.value.copy();
+				storeCopy(curThread,curParam.value);
 			}
 			else if(objectType==ObjectType.VARIABLE){ //Variable
 				if(curVar.value[curThread]==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parse(myModel),curThread,sample);
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parse(myModel),curThread,sample);
 					curVar.locked[curThread]=true;
 				}
-				numeric[curThread]=curVar.value[curThread].copy();
+				storeCopy(curThread,curVar.value[curThread]);
 			}
 			else if(objectType==ObjectType.FUNCTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
-				numeric[curThread]=Functions.evaluate(word, argsNumeric);
+				numeric[curThread]=Functions.evaluate(function, argsNumeric);
 			}
 			else if(objectType==ObjectType.MATRIX_FUNCTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
-				numeric[curThread]=MatrixFunctions.evaluate(word, argsNumeric);
+				numeric[curThread]=MatrixFunctions.evaluate(matrixFunction, argsNumeric);
+			}
+			else if(objectType==ObjectType.DISTRIBUTION && catSource!=null && sample && myModel.curGenerator[curThread]!=null){ //Cat(p,~)
+				numeric[curThread]=sampleCategorical(curThread,sample);
 			}
 			else if(objectType==ObjectType.DISTRIBUTION){
 				Numeric argsNumeric[]=evalArgs(curThread,sample);
 				if(sample==false){
-					numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+					numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 				}
 				else{ //sample is true
 					if(distFx!=-1){ //not a random variable
-						numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+						numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 					}
 					else{ //see if can sample
 						if(myModel.curGenerator[curThread]!=null){ //RNG available
 							//double rand=myModel.curGenerator[curThread].nextDouble();
 							//numeric[curThread]=Distributions.sample(word,argsNumeric,rand,myModel.curGenerator[curThread]);
-							numeric[curThread]=Distributions.sample(word,argsNumeric,myModel.curGenerator[curThread]);
+							boolean direct=(myModel.fastSampling && myModel.CRN==false); //inverse CDF keeps CRN draws monotone
+							if(sampler!=null){
+								if(sampler[curThread]==null){sampler[curThread]=CachedSampler.create(word);}
+								numeric[curThread]=sampler[curThread].sample(argsNumeric,myModel.curGenerator[curThread],direct);
+							}
+							else{
+								numeric[curThread]=Distributions.sample(distribution,argsNumeric,myModel.curGenerator[curThread],direct);
+							}
 						}
 						else{ //no RNG, shouldn't sample
-							numeric[curThread]=Distributions.evaluate(word,argsNumeric,distFx);
+							numeric[curThread]=Distributions.evaluate(distribution,argsNumeric,distFx);
 						}
 					}
 				}
@@ -218,8 +290,10 @@ public class Token{
 					else{ //see if can sample
 						if(myModel.curGenerator[curThread]!=null){ //RNG available
 							double rand=myModel.curGenerator[curThread].nextDouble();
-							double val=curTable.sample(strArgs,rand);
-							numeric[curThread]=new Numeric(val);
+							double val;
+							if(tableCol!=-1){val=curTable.sample(tableCol,rand);}
+							else{val=curTable.sample(strArgs,rand);}
+							storeDouble(curThread,val);
 						}
 						else{ //no RNG, shouldn't sample
 							numeric[curThread]=curTable.evaluateDist(strArgs,distFx);
@@ -228,39 +302,55 @@ public class Token{
 				}
 			}
 			else if(objectType==ObjectType.TABLE_LOOKUP){
-				Numeric index=Interpreter.evaluateTokens(args[0],curThread,sample);
-				numeric[curThread]=new Numeric(curTable.getLookupValue(index.getDouble(), strArgs[1]));
+				double index=args[0].evaluateDouble(curThread,sample);
+				int col=tableCol;
+				if(col==-1){ //dynamic column
+					try{
+						col=args[1].evaluate(curThread,false).getInt();
+					}catch(Exception e){
+						col=-1;
+					}
+				}
+				storeDouble(curThread,curTable.getLookupValue(index, col));
 			}
 			else if(objectType==ObjectType.MATRIX_ELEMENT){
 				numeric[curThread]=matrix.getMatrixValue(strArgs, myModel);
 			}
 			else if(objectType==ObjectType.TRACE){
-				numeric[curThread]=myModel.traceMarkov.getValue(strArgs[0],strArgs[1]);
+				numeric[curThread]=traceRef.evaluate(myModel.traceMarkov,curThread,sample);
 			}
 			else if(objectType==ObjectType.PARAM_MATRIX){
 				if(curParam.locked==false){
-					curParam.parsedTokens=Interpreter.parse(curParam.expression, myModel);
-					curParam.value=Interpreter.evaluateTokens(curParam.parsedTokens,curThread,sample);
+					curParam.value=Interpreter.evaluateTokens(curParam.parse(myModel),curThread,sample);
 					if(sample){curParam.locked=true;}
 				}
 				numeric[curThread]=curParam.value.getMatrixValue(strArgs,myModel);
 			}
 			else if(objectType==ObjectType.VAR_MATRIX){
 				if(curVar.value==null){ //not initialized
-					curVar.parsedTokens=Interpreter.parse(curVar.expression, myModel);
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parse(myModel),curThread,sample);
 				}
 				else if(curVar.locked[curThread]==false && curVar.independent==false) {
-					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parsedTokens,curThread,sample);
+					curVar.value[curThread]=Interpreter.evaluateTokens(curVar.parse(myModel),curThread,sample);
 					curVar.locked[curThread]=true;
 				}
 				numeric[curThread]=curVar.value[curThread].getMatrixValue(strArgs,myModel);
 			}
+			else if(objectType==ObjectType.INVARIANT){
+				if(isInvariantCached(curThread)){
+					invariantHits[curThread]++;
+				}
+				else{
+					invariantValue[curThread]=args[0].evaluate(curThread,sample);
+					snapshotInvariant(curThread);
+				}
+				storeCopy(curThread,invariantValue[curThread]);
+			}
 			else if(objectType==ObjectType.MATRIX_DYNAMIC){
 				double matrix[][]=new double[nrow][ncol];
 				for(int i=0; i<nrow; i++){
 					for(int j=0; j<ncol; j++){
-						matrix[i][j]=Interpreter.evaluateTokens(matrixTokens[i][j],curThread,sample).getDouble();
+						matrix[i][j]=matrixTokens[i][j].evaluateDouble(curThread,sample);
 					}
 				}
 				numeric[curThread]=new Numeric(matrix);
@@ -272,10 +362,116 @@ public class Token{
 		}
 	}
 	
+	/**
+	 * Stores a copy of value in the thread-specific slot.  Scalars are copied into the existing slot in place
+	 * so reading a parameter or variable doesn't allocate a new Numeric.
+	 */
+	private void storeCopy(int curThread, Numeric value){
+		Numeric slot=numeric[curThread];
+		if(slot!=null && slot.format!=Format.MATRIX && value.format!=Format.MATRIX){
+			slot.setScalar(value);
+		}
+		else{
+			numeric[curThread]=value.copy();
+		}
+	}
+	
+	private void storeDouble(int curThread, double value){
+		Numeric slot=numeric[curThread];
+		if(slot!=null && slot.format!=Format.MATRIX){
+			slot.setDouble(value);
+		}
+		else{
+			numeric[curThread]=new Numeric(value);
+		}
+	}
+	
+	/**
+	 * Checks that all parameters are locked and have the same values used to calculate the cached value
+	 */
+	private boolean isInvariantCached(int curThread){
+		Numeric snapshot[]=invariantSnapshot[curThread];
+		if(snapshot==null){return(false);}
+		for(int i=0; i<invariantParams.length; i++){
+			Parameter curParam=invariantParams[i];
+			Numeric value=curParam.value;
+			if(curParam.locked==false || value==null || value.format==Format.MATRIX){return(false);}
+			Numeric prev=snapshot[i];
+			if(value.format!=prev.format || value.intNum!=prev.intNum || value.bool!=prev.bool ||
+					Double.doubleToLongBits(value.doubleNum)!=Double.doubleToLongBits(prev.doubleNum)){
+				return(false);
+			}
+		}
+		return(true);
+	}
+	
+	private void snapshotInvariant(int curThread){
+		int numParams=invariantParams.length;
+		Numeric snapshot[]=invariantSnapshot[curThread];
+		if(snapshot==null){
+			snapshot=new Numeric[numParams];
+			for(int i=0; i<numParams; i++){snapshot[i]=new Numeric(0);}
+		}
+		for(int i=0; i<numParams; i++){
+			Parameter curParam=invariantParams[i];
+			Numeric value=curParam.value;
+			if(curParam.locked==false || value==null || value.format==Format.MATRIX){ //can't cache
+				invariantSnapshot[curThread]=null;
+				return;
+			}
+			snapshot[i].setScalar(value);
+		}
+		invariantSnapshot[curThread]=snapshot;
+	}
+	
+	private Numeric sampleCategorical(int curThread, boolean sample) throws Exception{
+		Object source=getCategoricalSource();
+		if(source==null || source!=catSource[curThread]){ //p may have changed
+			Numeric argsNumeric[]=evalArgs(curThread,sample);
+			catCDF[curThread]=Categorical.cumulative(argsNumeric[0]);
+			catSource[curThread]=getCategoricalSource(); //parameter is locked once evaluated
+		}
+		return(Categorical.sample(catCDF[curThread],myModel.curGenerator[curThread]));
+	}
+	
+	/**
+	 * Returns an object that identifies the current value of p in Cat(p,~), or null if p can change between evaluations
+	 */
+	private Object getCategoricalSource(){
+		Token argTokens[]=args[0].tokens;
+		if(argTokens.length!=1){return(null);}
+		Token arg=argTokens[0];
+		if(arg.objectType==ObjectType.PARAMETER){
+			if(arg.curParam.locked){return(arg.curParam.value);}
+		}
+		else if(arg.objectType==ObjectType.MATRIX_STATIC){return(arg);}
+		else if(arg.objectType==ObjectType.MATRIX_DYNAMIC){
+			for(int i=0; i<arg.nrow; i++){
+				for(int j=0; j<arg.ncol; j++){
+					Token elementTokens[]=arg.matrixTokens[i][j].tokens;
+					if(elementTokens.length!=1 || elementTokens[0].objectType!=ObjectType.NUMBER){return(null);}
+				}
+			}
+			return(arg); //matrix of numbers
+		}
+		return(null);
+	}
+	
+	/**
+	 * Sets the arguments and allocates the per-thread argument buffers
+	 */
+	void setArgs(CompiledExpression args[]){
+		this.args=args;
+		argBuffer=new Numeric[numThreads][args.length];
+	}
+	
+	/**
+	 * Evaluates the arguments into this thread's argument buffer, which is reused by the next evaluation
+	 */
 	private Numeric[] evalArgs(int curThread, boolean sample) throws Exception{
-		Numeric argsNumeric[]=new Numeric[args.length];
+		Numeric argsNumeric[]=argBuffer[curThread];
 		for(int i=0; i<args.length; i++){
-			argsNumeric[i]=Interpreter.evaluateTokens(args[i],curThread,sample);
+			argsNumeric[i]=args[i].evaluate(curThread,sample);
 		}
 		return(argsNumeric);
 	}
@@ -178,7 +178,7 @@ public final class Beta{
 		}
 	}
 	
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=2){
 			throw new NumericException("Incorrect number of parameters","Beta");
 		}
@@ -186,6 +186,7 @@ public final class Beta{
 			double a=params[0].getDouble(), b=params[1].getDouble();
 			if(a<=0){throw new NumericException("a should be >0","Beta");}
 			if(b<=0){throw new NumericException("b should be >0","Beta");}
+			if(direct){return(new Numeric(DirectSampler.beta(a, b, generator)));}
 			BetaDistribution beta=new BetaDistribution(null,a,b);
 			double rand=generator.nextDouble();
 			return(new Numeric(beta.inverseCumulativeProbability(rand)));
@@ -201,9 +202,12 @@ public final class Beta{
 					double a=params[0].matrix[i][j], b=params[1].matrix[i][j];
 					if(a<=0){throw new NumericException("a should be >0","Beta");}
 					if(b<=0){throw new NumericException("b should be >0","Beta");}
-					BetaDistribution beta=new BetaDistribution(null,a,b);
-					double rand=generator.nextDouble();
-					vals.matrix[i][j]=beta.inverseCumulativeProbability(rand);
+					if(direct){vals.matrix[i][j]=DirectSampler.beta(a, b, generator);}
+					else{
+						BetaDistribution beta=new BetaDistribution(null,a,b);
+						double rand=generator.nextDouble();
+						vals.matrix[i][j]=beta.inverseCumulativeProbability(rand);
+					}
 				}
 			}
 			return(vals);
@@ -182,12 +182,13 @@ public final class Binomial{
 		}
 	}
 	
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=2){throw new NumericException("Incorrect number of parameters","Bin");}
 		if(params[0].isMatrix()==false && params[1].isMatrix()==false) { //real number
 			int n=params[0].getInt(), k=-1;
 			double p=params[1].getProb(), CDF=0;
 			if(n<=0){throw new NumericException("n should be >0","Bin");}
+			if(direct){return(new Numeric(DirectSampler.binomial(n, p, generator)));}
 			double rand=generator.nextDouble();
 			while(rand>CDF){
 				CDF+=MathUtils.bin(k+1,n,p);
@@ -206,6 +207,10 @@ public final class Binomial{
 					int n=(int) params[0].matrix[i][j], k=-1;
 					double p=params[1].getMatrixProb(i, j);
 					if(n<=0){throw new NumericException("n should be >0","Bin");}
+					if(direct){
+						vals.matrix[i][j]=DirectSampler.binomial(n, p, generator);
+						continue;
+					}
 					double CDF=0, rand=generator.nextDouble();
 					while(rand>CDF){
 						CDF+=MathUtils.bin(k+1,n,p);
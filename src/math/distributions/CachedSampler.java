@@ -0,0 +1,92 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math.distributions;
+
+import main.MersenneTwisterFast;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Sampling state for a multivariate distribution token (one per thread).  Work that only depends on the arguments
+ * (e.g. Cholesky factor, cumulative probabilities) is kept until the argument values change.
+ */
+public abstract class CachedSampler{
+	/**
+	 * Copies of the arguments used for the cached state, null if not prepared
+	 */
+	Numeric argValues[];
+	
+	/**
+	 * Returns a new sampler for the distribution, or null if it does not cache any state
+	 */
+	public static CachedSampler create(String dist){
+		switch(dist){
+		case "Dir": return(new Dirichlet.Sampler());
+		case "MvNorm": return(new MultivariateNormal.Sampler());
+		case "Multi": return(new Multinomial.Sampler());
+		}
+		return(null);
+	}
+	
+	public static boolean isCached(String dist){
+		return(dist.equals("Dir") || dist.equals("MvNorm") || dist.equals("Multi"));
+	}
+	
+	public Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
+		if(changed(params)){
+			argValues=null;
+			prepare(params);
+			argValues=new Numeric[params.length];
+			for(int a=0; a<params.length; a++){argValues[a]=params[a].copy();}
+		}
+		return(draw(generator, direct));
+	}
+	
+	/**
+	 * Validates the arguments and computes the cached state
+	 */
+	abstract void prepare(Numeric params[]) throws NumericException;
+	
+	abstract Numeric draw(MersenneTwisterFast generator, boolean direct) throws NumericException;
+	
+	private boolean changed(Numeric params[]) throws NumericException{
+		if(argValues==null || argValues.length!=params.length){return(true);}
+		for(int a=0; a<params.length; a++){
+			if(same(argValues[a], params[a])==false){return(true);}
+		}
+		return(false);
+	}
+	
+	/**
+	 * Exact comparison (Numeric.isEqual allows a tolerance)
+	 */
+	private static boolean same(Numeric cached, Numeric param) throws NumericException{
+		if(cached.isMatrix()!=param.isMatrix() || cached.isInteger()!=param.isInteger() || cached.isBoolean()!=param.isBoolean()){return(false);}
+		if(param.isBoolean()){return(cached.getBool()==param.getBool());}
+		if(param.isMatrix()==false){return(cached.getDouble()==param.getDouble());}
+		if(cached.nrow!=param.nrow || cached.ncol!=param.ncol){return(false);}
+		for(int i=0; i<param.nrow; i++){
+			double cachedRow[]=cached.matrix[i], row[]=param.matrix[i];
+			for(int j=0; j<param.ncol; j++){
+				if(cachedRow[j]!=row[j]){return(false);}
+			}
+		}
+		return(true);
+	}
+}
\ No newline at end of file
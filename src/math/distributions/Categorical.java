@@ -274,51 +274,66 @@ public final class Categorical{
 	}
 	
 	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
-		Numeric p=params[0];
+		double cdf[][]=cumulative(params[0]);
+		return(sample(cdf,generator));
+	}
+	
+	/**
+	 * Gets the validated cumulative probabilities for each row of p, used to sample by binary search
+	 * @param p Row vector or matrix of event probabilities
+	 * @return [Row][Category]
+	 */
+	public static double[][] cumulative(Numeric p) throws NumericException{
 		if(p.isMatrix()==false) {
 			throw new NumericException("p should be a row vector or matrix","Cat");
 		}
-		if(p.nrow==1) { //row vector
-			int n=p.ncol;
-			double cdf[]=new double[n];
-			cdf[0]=p.getMatrixProb(0, 0);
+		int nrow=p.nrow, n=p.ncol;
+		double cdf[][]=new double[nrow][n];
+		for(int r=0; r<nrow; r++) {
+			cdf[r][0]=p.getMatrixProb(r,0);
 			for(int i=1; i<n; i++){
-				double curP=p.getMatrixProb(0, i);
-				cdf[i]=cdf[i-1]+curP;
+				double curP=p.getMatrixProb(r, i);
+				cdf[r][i]=cdf[r][i-1]+curP;
 			}
-			if(Math.abs(1.0-cdf[n-1])>MathUtils.tolerance){
-				throw new NumericException("p sums to "+cdf[n-1],"Cat");
+			if(Math.abs(1.0-cdf[r][n-1])>MathUtils.tolerance){
+				throw new NumericException("p sums to "+cdf[r][n-1],"Cat");
 			}
-			//Sample
-			double rand=generator.nextDouble();
-			int k=0;
-			while(cdf[k]<rand){k++;}
-			return(new Numeric(k));
+		}
+		return(cdf);
+	}
+	
+	/**
+	 * Samples from pre-computed cumulative probabilities
+	 * @param cdf [Row][Category] from {@link #cumulative(Numeric)}
+	 * @return Integer if there is 1 row, otherwise a column vector with 1 sample per row
+	 */
+	public static Numeric sample(double cdf[][], MersenneTwisterFast generator){
+		if(cdf.length==1) { //row vector
+			return(new Numeric(sampleRow(cdf[0],generator.nextDouble())));
 		}
 		else { //matrix
-			int nrow=params[0].nrow; int ncol=1;
+			int nrow=cdf.length; int ncol=1;
 			Numeric vals=new Numeric(nrow,ncol); //create result matrix
-			int n=p.ncol;
 			for(int r=0; r<nrow; r++) {
-				double cdf[]=new double[n];
-				cdf[0]=p.getMatrixProb(r,0);
-				for(int i=1; i<n; i++){
-					double curP=p.getMatrixProb(r, i);
-					cdf[i]=cdf[i-1]+curP;
-				}
-				if(Math.abs(1.0-cdf[n-1])>MathUtils.tolerance){
-					throw new NumericException("p sums to "+cdf[n-1],"Cat");
-				}
-				//Sample
-				double rand=generator.nextDouble();
-				int k=0;
-				while(cdf[k]<rand){k++;}
-				vals.matrix[r][0]=k;
+				vals.matrix[r][0]=sampleRow(cdf[r],generator.nextDouble());
 			}
 			return(vals);
 		}
 	}
 	
+	/**
+	 * Returns the first category with cumulative probability >= rand
+	 */
+	private static int sampleRow(double cdf[], double rand){
+		int low=0, high=cdf.length-1; //probabilities may sum to slightly less than 1
+		while(low<high){
+			int mid=(low+high)>>>1;
+			if(cdf[mid]<rand){low=mid+1;}
+			else{high=mid;}
+		}
+		return(low);
+	}
+	
 	public static String description(){
 		String des="<html><b>Categorical Distribution</b><br>";
 		des+="A discrete probability distribution of a random variable that can take on one of "+MathUtils.consoleFont("n")+" possible values<br><br>";
@@ -143,13 +143,14 @@ public final class ChiSquare{
 		}
 	}
 
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=1){
 			throw new NumericException("Incorrect number of parameters","ChiSq");
 		}
 		if(params[0].isMatrix()==false) { //real number
 			double k=params[0].getInt();
 			if(k<1){throw new NumericException("k should be >0","ChiSq");}
+			if(direct){return(new Numeric(2*DirectSampler.gamma(k/2.0, generator)));}
 			ChiSquaredDistribution chiSq=new ChiSquaredDistribution(null,k);
 			double rand=generator.nextDouble();
 			return(new Numeric(chiSq.inverseCumulativeProbability(rand)));
@@ -161,9 +162,12 @@ public final class ChiSquare{
 				for(int j=0; j<ncol; j++) {
 					double k=params[0].matrix[i][j];
 					if(k<1){throw new NumericException("k should be >0","ChiSq");}
-					ChiSquaredDistribution chiSq=new ChiSquaredDistribution(null,k);
-					double rand=generator.nextDouble();
-					vals.matrix[i][j]=chiSq.inverseCumulativeProbability(rand);
+					if(direct){vals.matrix[i][j]=2*DirectSampler.gamma(k/2.0, generator);}
+					else{
+						ChiSquaredDistribution chiSq=new ChiSquaredDistribution(null,k);
+						double rand=generator.nextDouble();
+						vals.matrix[i][j]=chiSq.inverseCumulativeProbability(rand);
+					}
 				}
 			}
 			return(vals);
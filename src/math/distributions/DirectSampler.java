@@ -0,0 +1,194 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package math.distributions;
+
+import org.apache.commons.math3.special.Gamma;
+
+import main.MersenneTwisterFast;
+
+/**
+ * Direct (non-inverse CDF) samplers used when fast sampling is enabled.  Draws consume a variable number of random numbers
+ * and are not monotone in the uniform, so they are not used with common random numbers.
+ * Normal: Ziggurat (Marsaglia and Tsang 2000, Doornik 2005), Gamma: Marsaglia and Tsang 2000, Beta: ratio of Gammas,
+ * Poisson: PTRS (Hörmann 1993), Binomial: BTRS (Hörmann 1993).  Small means use sequential inversion.
+ */
+public final class DirectSampler{
+	private static final int ZIG_LAYERS=128;
+	private static final double ZIG_R=3.442619855899; //start of the tail
+	private static final double ZIG_V=9.91256303526217e-3; //area of each layer
+	private static final double zigX[]=new double[ZIG_LAYERS+1];
+	private static final double zigRatio[]=new double[ZIG_LAYERS];
+	
+	static{
+		double f=Math.exp(-0.5*ZIG_R*ZIG_R);
+		zigX[0]=ZIG_V/f;
+		zigX[1]=ZIG_R;
+		zigX[ZIG_LAYERS]=0;
+		for(int i=2; i<ZIG_LAYERS; i++){
+			zigX[i]=Math.sqrt(-2*Math.log(ZIG_V/zigX[i-1]+f));
+			f=Math.exp(-0.5*zigX[i]*zigX[i]);
+		}
+		for(int i=0; i<ZIG_LAYERS; i++){
+			zigRatio[i]=zigX[i+1]/zigX[i];
+		}
+	}
+	
+	/**
+	 * Uniform on (0,1], safe for logs
+	 */
+	private static double nextOpen(MersenneTwisterFast generator){
+		return(1.0-generator.nextDouble());
+	}
+	
+	/**
+	 * Standard normal
+	 */
+	public static double normal(MersenneTwisterFast generator){
+		while(true){
+			double u=2*generator.nextDouble()-1;
+			int i=generator.nextInt()&(ZIG_LAYERS-1);
+			if(Math.abs(u)<zigRatio[i]){return(u*zigX[i]);} //inside rectangle
+			if(i==0){ //tail
+				double x, y;
+				do{
+					x=Math.log(nextOpen(generator))/ZIG_R;
+					y=Math.log(nextOpen(generator));
+				}while(-2*y<x*x);
+				return(u<0 ? x-ZIG_R : ZIG_R-x);
+			}
+			double x=u*zigX[i];
+			double f0=Math.exp(-0.5*(zigX[i]*zigX[i]-x*x));
+			double f1=Math.exp(-0.5*(zigX[i+1]*zigX[i+1]-x*x));
+			if(f1+generator.nextDouble()*(f0-f1)<1.0){return(x);} //under the density
+		}
+	}
+	
+	/**
+	 * Gamma with shape k and scale 1
+	 */
+	public static double gamma(double k, MersenneTwisterFast generator){
+		if(k<1){ //boost shape and scale by U^(1/k)
+			return(gamma(k+1, generator)*Math.pow(nextOpen(generator), 1.0/k));
+		}
+		double d=k-1.0/3.0;
+		double c=1.0/Math.sqrt(9*d);
+		while(true){
+			double x, v;
+			do{
+				x=normal(generator);
+				v=1+c*x;
+			}while(v<=0);
+			v=v*v*v;
+			double u=nextOpen(generator);
+			double x2=x*x;
+			if(u<1-0.0331*x2*x2){return(d*v);} //squeeze
+			if(Math.log(u)<0.5*x2+d*(1-v+Math.log(v))){return(d*v);}
+		}
+	}
+	
+	/**
+	 * Log of a Gamma(k,1) draw, avoids underflow for small shapes
+	 */
+	private static double logGamma(double k, MersenneTwisterFast generator){
+		if(k<1){
+			return(Math.log(gamma(k+1, generator))+Math.log(nextOpen(generator))/k);
+		}
+		return(Math.log(gamma(k, generator)));
+	}
+	
+	public static double beta(double a, double b, MersenneTwisterFast generator){
+		if(a<1 || b<1){ //work on log scale
+			double logX=logGamma(a, generator);
+			double logY=logGamma(b, generator);
+			return(1.0/(1.0+Math.exp(logY-logX)));
+		}
+		double x=gamma(a, generator);
+		double y=gamma(b, generator);
+		return(x/(x+y));
+	}
+	
+	public static int poisson(double lambda, MersenneTwisterFast generator){
+		if(lambda<10){ //sequential inversion
+			double mass=Math.exp(-lambda);
+			double rand=generator.nextDouble();
+			int k=0;
+			while(rand>mass && mass>0){
+				rand-=mass;
+				k++;
+				mass*=lambda/k;
+			}
+			return(k);
+		}
+		//PTRS
+		double slam=Math.sqrt(lambda);
+		double logLam=Math.log(lambda);
+		double b=0.931+2.53*slam;
+		double a=-0.059+0.02483*b;
+		double logInvAlpha=Math.log(1.1239+1.1328/(b-3.4));
+		double vr=0.9277-3.6224/(b-2);
+		while(true){
+			double u=generator.nextDouble()-0.5;
+			double v=nextOpen(generator);
+			double us=0.5-Math.abs(u);
+			long k=(long) Math.floor((2*a/us+b)*u+lambda+0.43);
+			if(us>=0.07 && v<=vr){return((int) k);}
+			if(k<0 || (us<0.013 && v>us)){continue;}
+			if(Math.log(v)+logInvAlpha-Math.log(a/(us*us)+b)<=-lambda+k*logLam-Gamma.logGamma(k+1)){return((int) k);}
+		}
+	}
+	
+	public static int binomial(int n, double p, MersenneTwisterFast generator){
+		if(p<=0){return(0);}
+		if(p>=1){return(n);}
+		if(p>0.5){return(n-binomial(n, 1-p, generator));}
+		double q=1-p;
+		double np=n*p;
+		if(np<10){ //sequential inversion
+			double mass=Math.exp(n*Math.log(q));
+			double rand=generator.nextDouble();
+			int k=0;
+			while(rand>mass && k<n && mass>0){
+				rand-=mass;
+				k++;
+				mass*=((n-k+1)*p)/(k*q);
+			}
+			return(k);
+		}
+		//BTRS
+		double spq=Math.sqrt(np*q);
+		double b=1.15+2.53*spq;
+		double a=-0.0873+0.0248*b+0.01*p;
+		double c=np+0.5;
+		double vr=0.92-4.2/b;
+		double logAlpha=Math.log((2.83+5.1/b)*spq);
+		double lpq=Math.log(p/q);
+		int m=(int) Math.floor((n+1)*p);
+		double h=Gamma.logGamma(m+1)+Gamma.logGamma(n-m+1);
+		while(true){
+			double u=generator.nextDouble()-0.5;
+			double v=nextOpen(generator);
+			double us=0.5-Math.abs(u);
+			long k=(long) Math.floor((2*a/us+b)*u+c);
+			if(k<0 || k>n){continue;}
+			if(us>=0.07 && v<=vr){return((int) k);}
+			double logV=Math.log(v)+logAlpha-Math.log(a/(us*us)+b);
+			if(logV<=h-Gamma.logGamma(k+1)-Gamma.logGamma(n-k+1)+(k-m)*lpq){return((int) k);}
+		}
+	}
+}
\ No newline at end of file
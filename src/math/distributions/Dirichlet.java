@@ -116,27 +116,48 @@ public final class Dirichlet{
 		return(new Numeric(cov));
 	}
 	
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
-		//Validate parameters
-		Numeric alpha=params[0];
-		int len=alpha.ncol;
-		if(alpha.nrow!=1){throw new NumericException("α should be a row vector","Dir");}
-		double y[]=new double[len];
-		double sumY=0;
-		for(int i=0; i<len; i++){
-			double curAlpha=alpha.matrix[0][i];
-			if(curAlpha<=0){throw new NumericException("Invalid concentration parameter in α ("+curAlpha+")","Dir");}
-			//Sample using independent Gammas
-			GammaDistribution gamma=new GammaDistribution(null,curAlpha,1.0);
-			double rand=generator.nextDouble();
-			y[i]=gamma.inverseCumulativeProbability(rand);
-			sumY+=y[i];
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
+		return(new Sampler().sample(params, generator, direct));
+	}
+	
+	/**
+	 * Keeps the Gamma distribution for each concentration parameter between draws
+	 */
+	static final class Sampler extends CachedSampler{
+		double alpha[];
+		GammaDistribution gammas[];
+		double y[];
+		
+		void prepare(Numeric params[]) throws NumericException{
+			//Validate parameters
+			Numeric alpha=params[0];
+			int len=alpha.ncol;
+			if(alpha.nrow!=1){throw new NumericException("α should be a row vector","Dir");}
+			this.alpha=new double[len];
+			gammas=new GammaDistribution[len];
+			for(int i=0; i<len; i++){
+				double curAlpha=alpha.matrix[0][i];
+				if(curAlpha<=0){throw new NumericException("Invalid concentration parameter in α ("+curAlpha+")","Dir");}
+				this.alpha[i]=curAlpha;
+				gammas[i]=new GammaDistribution(null,curAlpha,1.0);
+			}
+			y=new double[len];
 		}
-		double x[][]=new double[1][len];
-		for(int i=0; i<len; i++){
-			x[0][i]=y[i]/sumY;
+		
+		Numeric draw(MersenneTwisterFast generator, boolean direct){
+			int len=alpha.length;
+			double sumY=0;
+			for(int i=0; i<len; i++){ //Sample using independent Gammas
+				if(direct){y[i]=DirectSampler.gamma(alpha[i], generator);}
+				else{y[i]=gammas[i].inverseCumulativeProbability(generator.nextDouble());}
+				sumY+=y[i];
+			}
+			double x[][]=new double[1][len];
+			for(int i=0; i<len; i++){
+				x[0][i]=y[i]/sumY;
+			}
+			return(new Numeric(x));
 		}
-		return(new Numeric(x));
 	}
 	
 	public static String description(){
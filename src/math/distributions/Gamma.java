@@ -167,7 +167,7 @@ public final class Gamma{
 		}
 	}
 
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=2){
 			throw new NumericException("Incorrect number of parameters","Gamma");
 		}
@@ -175,6 +175,7 @@ public final class Gamma{
 			double k=params[0].getDouble(), theta=params[1].getDouble();
 			if(k<=0){throw new NumericException("k should be >0","Gamma");}
 			if(theta<=0){throw new NumericException("θ should be >0","Gamma");}
+			if(direct){return(new Numeric(theta*DirectSampler.gamma(k, generator)));}
 			GammaDistribution gamma=new GammaDistribution(null,k,theta);
 			double rand=generator.nextDouble();
 			return(new Numeric(gamma.inverseCumulativeProbability(rand)));
@@ -190,9 +191,12 @@ public final class Gamma{
 					double k=params[0].matrix[i][j], theta=params[1].matrix[i][j];
 					if(k<=0){throw new NumericException("k should be >0","Gamma");}
 					if(theta<=0){throw new NumericException("θ should be >0","Gamma");}
-					GammaDistribution gamma=new GammaDistribution(null,k,theta);
-					double rand=generator.nextDouble();
-					vals.matrix[i][j]=gamma.inverseCumulativeProbability(rand);
+					if(direct){vals.matrix[i][j]=theta*DirectSampler.gamma(k, generator);}
+					else{
+						GammaDistribution gamma=new GammaDistribution(null,k,theta);
+						double rand=generator.nextDouble();
+						vals.matrix[i][j]=gamma.inverseCumulativeProbability(rand);
+					}
 				}
 			}
 			return(vals);
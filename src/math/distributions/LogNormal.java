@@ -150,13 +150,14 @@ public final class LogNormal{
 		}
 	}
 
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=2){
 			throw new NumericException("Incorrect number of parameters","LogNorm");	
 		}
 		if(params[0].isMatrix()==false && params[1].isMatrix()==false) { //real number
 			double mu=params[0].getDouble(), sigma=params[1].getDouble();
 			if(sigma<=0){throw new NumericException("σ should be >0","LogNorm");}
+			if(direct){return(new Numeric(Math.exp(mu+sigma*DirectSampler.normal(generator))));}
 			LogNormalDistribution lnorm=new LogNormalDistribution(null,mu,sigma);
 			double rand=generator.nextDouble();
 			return(new Numeric(lnorm.inverseCumulativeProbability(rand)));
@@ -169,9 +170,12 @@ public final class LogNormal{
 				for(int j=0; j<ncol; j++) {
 					double mu=params[0].matrix[i][j], sigma=params[1].matrix[i][j];
 					if(sigma<=0){throw new NumericException("σ should be >0","LogNorm");}
-					LogNormalDistribution lnorm=new LogNormalDistribution(null,mu,sigma);
-					double rand=generator.nextDouble();
-					vals.matrix[i][j]=lnorm.inverseCumulativeProbability(rand);
+					if(direct){vals.matrix[i][j]=Math.exp(mu+sigma*DirectSampler.normal(generator));}
+					else{
+						LogNormalDistribution lnorm=new LogNormalDistribution(null,mu,sigma);
+						double rand=generator.nextDouble();
+						vals.matrix[i][j]=lnorm.inverseCumulativeProbability(rand);
+					}
 				}
 			}
 			return(vals);
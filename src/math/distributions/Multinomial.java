@@ -116,29 +116,44 @@ public final class Multinomial{
 		return(new Numeric(cov));
 	}
 	
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
-		//Validate parameters
-		int n=params[0].getInt();
-		Numeric p=params[1];
-		int len=p.ncol;
-		if(p.nrow!=1){throw new NumericException("p should be a row vector","Multi");}
-		double cdf[]=new double[len];
-		for(int i=0; i<len; i++){
-			double curP=p.matrix[0][i];
-			if(curP<0 || curP>1){throw new NumericException("Invalid probability in p ("+curP+")","Multi");}
-			if(i>0){cdf[i]=cdf[i-1];}
-			cdf[i]+=curP;
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
+		return(new Sampler().sample(params, generator, direct));
+	}
+	
+	/**
+	 * Keeps the cumulative probabilities between draws
+	 */
+	static final class Sampler extends CachedSampler{
+		int n;
+		double cdf[];
+		
+		void prepare(Numeric params[]) throws NumericException{
+			//Validate parameters
+			n=params[0].getInt();
+			Numeric p=params[1];
+			int len=p.ncol;
+			if(p.nrow!=1){throw new NumericException("p should be a row vector","Multi");}
+			cdf=new double[len];
+			for(int i=0; i<len; i++){
+				double curP=p.matrix[0][i];
+				if(curP<0 || curP>1){throw new NumericException("Invalid probability in p ("+curP+")","Multi");}
+				if(i>0){cdf[i]=cdf[i-1];}
+				cdf[i]+=curP;
+			}
+			if(cdf[len-1]!=1){throw new NumericException("p sums to "+cdf[len-1],"Multi");}
 		}
-		if(cdf[len-1]!=1){throw new NumericException("p sums to "+cdf,"Multi");}
-		//sample
-		double curSample[][]=new double[1][len];
-		for(int i=0; i<n; i++){
-			double rand=generator.nextDouble();
-			int k=0;
-			while(cdf[k]<rand){k++;}
-			curSample[0][k]++;
+		
+		Numeric draw(MersenneTwisterFast generator, boolean direct){
+			int len=cdf.length;
+			double curSample[][]=new double[1][len];
+			for(int i=0; i<n; i++){
+				double rand=generator.nextDouble();
+				int k=0;
+				while(cdf[k]<rand){k++;}
+				curSample[0][k]++;
+			}
+			return(new Numeric(curSample));
 		}
-		return(new Numeric(curSample));
 	}
 	
 	public static String description(){
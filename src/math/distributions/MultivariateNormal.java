@@ -90,8 +90,24 @@ public final class MultivariateNormal{
 		return(new Numeric(params[1].matrix));
 	}
 
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
-		if(params.length==2){
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
+		return(new Sampler().sample(params, generator, direct));
+	}
+	
+	/**
+	 * Keeps the Cholesky decomposition of Σ and the vector of standard normals between draws
+	 */
+	static final class Sampler extends CachedSampler{
+		double mu[];
+		/**
+		 * Lower triangle of the Cholesky decomposition [Row][Col]
+		 */
+		double lower[][];
+		double z[];
+		NormalDistribution stdNorm=new NormalDistribution(null,0,1);
+		
+		void prepare(Numeric params[]) throws NumericException{
+			if(params.length!=2){throw new NumericException("Incorrect number of parameters","MvNorm");}
 			Numeric mu=params[0], sigma=params[1];
 			if(mu.ncol!=1){ //ensure mu is column vector
 				throw new NumericException("μ should be a column vector","MvNorm");
@@ -103,19 +119,27 @@ public final class MultivariateNormal{
 				throw new NumericException("μ and Σ should have the same number of rows","MvNorm");
 			}
 			int n=sigma.nrow;
-			Numeric A=MatrixFunctions.chol(sigma); //get cholesky decomposition
-			double randVector[][]=new double[n][1]; //random column vector of standard normals
-			NormalDistribution stdNorm=new NormalDistribution(null,0,1);
-			for(int i=0; i<n; i++){
-				double rand=generator.nextDouble(); //Get next rand
-				randVector[i][0]=stdNorm.inverseCumulativeProbability(rand);
+			lower=MatrixFunctions.chol(sigma).matrix; //get cholesky decomposition
+			this.mu=new double[n];
+			for(int i=0; i<n; i++){this.mu[i]=mu.matrix[i][0];}
+			z=new double[n];
+		}
+		
+		Numeric draw(MersenneTwisterFast generator, boolean direct){
+			int n=mu.length;
+			for(int i=0; i<n; i++){ //random vector of standard normals
+				if(direct){z[i]=DirectSampler.normal(generator);}
+				else{z[i]=stdNorm.inverseCumulativeProbability(generator.nextDouble());}
+			}
+			Numeric x=new Numeric(n,1); //Σ is a matrix so n>1
+			for(int i=0; i<n; i++){ //mu + Az, A is lower triangular
+				double row[]=lower[i];
+				double sum=0;
+				for(int j=0; j<=i; j++){sum+=row[j]*z[j];}
+				x.matrix[i][0]=mu[i]+sum;
 			}
-			Numeric z=new Numeric(randVector);
-			Numeric Az=MatrixFunctions.multiply(A, z);
-			Numeric x=MatrixFunctions.add(mu,Az);
 			return(x);
 		}
-		else{throw new NumericException("Incorrect number of parameters","MvNorm");}
 	}
 	
 	public static String description(){
@@ -150,13 +150,14 @@ public final class Normal{
 		}
 	}
 
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=2){
 			throw new NumericException("Incorrect number of parameters","Norm");
 		}
 		if(params[0].isMatrix()==false && params[1].isMatrix()==false) { //real number
 			double mu=params[0].getDouble(), sigma=params[1].getDouble();
 			if(sigma<=0){throw new NumericException("σ should be >0","Norm");}
+			if(direct){return(new Numeric(mu+sigma*DirectSampler.normal(generator)));}
 			NormalDistribution norm=new NormalDistribution(null,mu,sigma);
 			double rand=generator.nextDouble();
 			return(new Numeric(norm.inverseCumulativeProbability(rand)));
@@ -170,9 +171,12 @@ public final class Normal{
 					double mu=params[0].matrix[i][j];
 					double sigma=params[1].matrix[i][j];
 					if(sigma<=0){throw new NumericException("σ should be >0","Norm");}
-					NormalDistribution norm=new NormalDistribution(null,mu,sigma);
-					double rand=generator.nextDouble();
-					vals.matrix[i][j]=norm.inverseCumulativeProbability(rand);
+					if(direct){vals.matrix[i][j]=mu+sigma*DirectSampler.normal(generator);}
+					else{
+						NormalDistribution norm=new NormalDistribution(null,mu,sigma);
+						double rand=generator.nextDouble();
+						vals.matrix[i][j]=norm.inverseCumulativeProbability(rand);
+					}
 				}
 			}
 			return(vals);
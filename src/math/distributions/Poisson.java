@@ -170,13 +170,14 @@ public final class Poisson{
 		}
 	}
 	
-	public static Numeric sample(Numeric params[], MersenneTwisterFast generator) throws NumericException{
+	public static Numeric sample(Numeric params[], MersenneTwisterFast generator, boolean direct) throws NumericException{
 		if(params.length!=1){
 			throw new NumericException("Incorrect number of parameters","Pois");
 		}
 		if(params[0].isMatrix()==false) { //real number
 			double lambda=params[0].getDouble();
 			if(lambda<=0){throw new NumericException("λ should be >0","Pois");}
+			if(direct){return(new Numeric(DirectSampler.poisson(lambda, generator)));}
 			int k=-1;
 			double CDF=0;
 			double rand=generator.nextDouble();
@@ -194,6 +195,10 @@ public final class Poisson{
 				for(int j=0; j<ncol; j++) {
 					double lambda=params[0].matrix[i][j];
 					if(lambda<=0){throw new NumericException("λ should be >0","Pois");}
+					if(direct){
+						vals.matrix[i][j]=DirectSampler.poisson(lambda, generator);
+						continue;
+					}
 					int k=-1;
 					double CDF=0;
 					double rand=generator.nextDouble();
@@ -34,9 +34,9 @@ import main.Console;
 import main.ConsoleTable;
 import main.DimInfo;
 import main.VariableUpdate;
+import math.CompiledExpression;
 import math.Interpreter;
 import math.MathUtils;
-import math.Token;
 
 @XmlRootElement(name="DecisionTree")
 /**
@@ -113,8 +113,8 @@ public class DecisionTree{
 		//Initialize root
 		TreeNode root=nodes.get(0);
 		int numDim=myModel.dimInfo.dimSymbols.length;
-		root.curCosts=new double[numDim]; root.curCostTokens=new Token[numDim][];
-		root.curPayoffs=new double[numDim]; root.curPayoffTokens=new Token[numDim][];
+		root.curCosts=new double[numDim]; root.curCostTokens=new CompiledExpression[numDim];
+		root.curPayoffs=new double[numDim]; root.curPayoffTokens=new CompiledExpression[numDim];
 		root.numChildren=root.childIndices.size();
 		root.children=new TreeNode[root.numChildren];
 		for(int j=0; j<root.numChildren; j++){
@@ -133,8 +133,8 @@ public class DecisionTree{
 		for(int i=1; i<size; i++){ //Exclude root node
 			TreeNode curNode=nodes.get(i);
 			curNode.curProb=null; //reset parsed values
-			curNode.curCosts=new double[numDim]; curNode.curCostTokens=new Token[numDim][];
-			curNode.curPayoffs=new double[numDim]; curNode.curPayoffTokens=new Token[numDim][];
+			curNode.curCosts=new double[numDim]; curNode.curCostTokens=new CompiledExpression[numDim];
+			curNode.curPayoffs=new double[numDim]; curNode.curPayoffTokens=new CompiledExpression[numDim];
 			curNode.curVariableUpdates=null;
 
 			if(curNode.type==0 && myModel.simType==1){
@@ -148,7 +148,7 @@ public class DecisionTree{
 				else{ //Evaluate text
 					try{
 						curNode.curProbTokens=Interpreter.parse(curNode.prob, myModel);
-						curNode.curProb[0]=Interpreter.evaluateTokens(curNode.curProbTokens, 0, false).getDouble();
+						curNode.curProb[0]=Interpreter.evaluateDouble(curNode.curProbTokens, 0, false);
 					}catch(Exception e){
 						validProbs=false;
 						curNode.highlightTextField(0, Color.YELLOW); //Prob
@@ -170,7 +170,7 @@ public class DecisionTree{
 				for(int c=0; c<numDim; c++){
 					try{
 						curNode.curCostTokens[c]=Interpreter.parse(curNode.cost[c], myModel);
-						curNode.curCosts[c]=Interpreter.evaluateTokens(curNode.curCostTokens[c], 0, false).getDouble();
+						curNode.curCosts[c]=Interpreter.evaluateDouble(curNode.curCostTokens[c], 0, false);
 						
 						if(Double.isNaN(curNode.curCosts[c])){
 							curNode.highlightTextField(1, Color.YELLOW); //Cost
@@ -188,7 +188,7 @@ public class DecisionTree{
 				for(int c=0; c<numDim; c++){
 					try{
 						curNode.curPayoffTokens[c]=Interpreter.parse(curNode.payoff[c],myModel);
-						curNode.curPayoffs[c]=Interpreter.evaluateTokens(curNode.curPayoffTokens[c], 0, false).getDouble();
+						curNode.curPayoffs[c]=Interpreter.evaluateDouble(curNode.curPayoffTokens[c], 0, false);
 						if(Double.isNaN(curNode.curPayoffs[c])){
 							curNode.highlightTextField(2, Color.YELLOW); //Payoff
 							errors.add("Node "+curNode.name+": Payoff Error ("+curNode.payoff[c]+")");
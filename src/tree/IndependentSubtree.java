@@ -0,0 +1,275 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package tree;
+
+import java.util.ArrayList;
+
+import base.Population;
+import main.MersenneTwisterFast;
+import math.distributions.DirectSampler;
+
+/**
+ * Subtree of a decision tree that does not depend on the person: no variable updates, and no probabilities, costs, or payoffs with variables.
+ * Everyone who enters the subtree has the same path probabilities, so people are collected for each segment and split across the branches
+ * by sampling counts (binomial) at each chance node.  If individual outcomes are needed each person is assigned a path with a single draw instead.
+ */
+class IndependentSubtree{
+	/**
+	 * Max number of subgroups to split counts by subgroup membership (2^n combinations), otherwise paths are drawn for each person
+	 */
+	static final int MAX_SPLIT_SUBGROUPS=8;
+	
+	TreeNode root;
+	/**
+	 * Nodes in pre-order
+	 */
+	TreeNode nodes[];
+	/**
+	 * Number of nodes in the subtree of each node, and range of leaves below each node [first, end)
+	 */
+	int size[], leafFirst[], leafEnd[];
+	int numLeaves;
+	/**
+	 * Cumulative path probability [leaf]
+	 */
+	double cumProbs[];
+	/**
+	 * Costs and payoffs from the root to each leaf [leaf][dim]
+	 */
+	double pathCosts[][], pathPayoffs[][];
+	int numDim, numSubgroups;
+	/**
+	 * True to split counts at the end of each segment, false to draw a path for each person
+	 */
+	boolean split;
+	
+	//[thread]
+	/**
+	 * Number of people waiting to be split [thread][subgroup membership]
+	 */
+	int pending[][];
+	/**
+	 * Number of people at each leaf [thread][leaf] and by subgroup [thread][subgroup][leaf]
+	 */
+	int leafCounts[][], leafCountsGroup[][][];
+	int splitCounts[][];
+	
+	IndependentSubtree(TreeNode root, boolean split, int numDim, int numSubgroups, int numThreads){
+		this.root=root;
+		this.split=split;
+		this.numDim=numDim;
+		this.numSubgroups=numSubgroups;
+		
+		ArrayList<TreeNode> listNodes=new ArrayList<TreeNode>(), listLeaves=new ArrayList<TreeNode>();
+		ArrayList<double[]> listCosts=new ArrayList<double[]>();
+		ArrayList<Double> listProbs=new ArrayList<Double>();
+		addNode(root, 1.0, new double[numDim], listNodes, listLeaves, listProbs, listCosts);
+		int numNodes=listNodes.size();
+		nodes=new TreeNode[numNodes];
+		size=new int[numNodes]; leafFirst=new int[numNodes]; leafEnd=new int[numNodes];
+		numLeaves=listProbs.size();
+		cumProbs=new double[numLeaves];
+		pathCosts=new double[numLeaves][]; pathPayoffs=new double[numLeaves][];
+		for(int i=0; i<numNodes; i++){nodes[i]=listNodes.get(i);}
+		index(0, 0);
+		double cumProb=0;
+		for(int l=0; l<numLeaves; l++){
+			cumProb+=listProbs.get(l);
+			cumProbs[l]=cumProb;
+			pathCosts[l]=listCosts.get(l);
+			pathPayoffs[l]=listLeaves.get(l).curPayoffs;
+		}
+		
+		pending=new int[numThreads][];
+		if(split){
+			for(int n=0; n<numThreads; n++){pending[n]=new int[1<<numSubgroups];}
+		}
+		leafCounts=new int[numThreads][numLeaves];
+		leafCountsGroup=new int[numThreads][numSubgroups][numLeaves];
+		splitCounts=new int[numThreads][numLeaves];
+	}
+	
+	/**
+	 * Adds nodes in pre-order, with the probability and costs of each path to a leaf
+	 */
+	private void addNode(TreeNode node, double prob, double costs[], ArrayList<TreeNode> listNodes, ArrayList<TreeNode> listLeaves, ArrayList<Double> listProbs, ArrayList<double[]> listCosts){
+		listNodes.add(node);
+		double curCosts[]=costs.clone();
+		if(node.hasCost){
+			for(int d=0; d<numDim; d++){curCosts[d]+=node.curCosts[d];}
+		}
+		if(node.type==2){ //terminal
+			listLeaves.add(node);
+			listProbs.add(prob);
+			listCosts.add(curCosts);
+		}
+		else{
+			for(int c=0; c<node.numChildren; c++){
+				TreeNode child=node.children[c];
+				addNode(child, prob*child.curProb[0], curCosts, listNodes, listLeaves, listProbs, listCosts);
+			}
+		}
+	}
+	
+	/**
+	 * Gets subtree sizes and leaf ranges
+	 * @return Index of the next node
+	 */
+	private int index(int i, int leaf){
+		TreeNode node=nodes[i];
+		leafFirst[i]=leaf;
+		int next=i+1;
+		if(node.type==2){leaf++;}
+		else{
+			for(int c=0; c<node.numChildren; c++){
+				int child=next;
+				next=index(child, leaf);
+				leaf=leafEnd[child];
+			}
+		}
+		leafEnd[i]=leaf;
+		size[i]=next-i;
+		return(next);
+	}
+	
+	/**
+	 * Person enters the subtree.  Counts are split at the end of the segment, or a path is drawn and its outcomes are added to the person.
+	 */
+	void enter(Population population, int p, double costs[], double payoffs[], int curThread, MersenneTwisterFast generator){
+		if(split){
+			int group=0;
+			for(int g=0; g<numSubgroups; g++){
+				if(population.inSubgroup(p, g)){group|=(1<<g);}
+			}
+			pending[curThread][group]++;
+		}
+		else{
+			double rand=generator.nextDouble();
+			int l=0, h=numLeaves-1; //binary search
+			while(l<h){
+				int m=(l+h)>>>1;
+				if(rand>cumProbs[m]){l=m+1;}
+				else{h=m;}
+			}
+			for(int d=0; d<numDim; d++){
+				costs[d]+=pathCosts[l][d];
+				payoffs[d]+=pathPayoffs[l][d];
+			}
+			leafCounts[curThread][l]++;
+			for(int g=0; g<numSubgroups; g++){
+				if(population.inSubgroup(p, g)){leafCountsGroup[curThread][g][l]++;}
+			}
+		}
+	}
+	
+	/**
+	 * A segment of people enters the subtree, counts are split at the end of the segment
+	 * @param end Index of the last person + 1
+	 */
+	void enterGroup(Population population, int begin, int end, int curThread){
+		if(numSubgroups==0){
+			pending[curThread][0]+=end-begin;
+		}
+		else{
+			for(int p=begin; p<end; p++){
+				int group=0;
+				for(int g=0; g<numSubgroups; g++){
+					if(population.inSubgroup(p, g)){group|=(1<<g);}
+				}
+				pending[curThread][group]++;
+			}
+		}
+	}
+	
+	/**
+	 * Splits any pending counts and adds the people at each leaf to the node totals for this segment
+	 */
+	void endSegment(int seg, int curThread, MersenneTwisterFast generator){
+		if(split){
+			int curPending[]=pending[curThread];
+			int counts[]=splitCounts[curThread];
+			for(int group=0; group<curPending.length; group++){
+				if(curPending[group]>0){
+					splitNode(0, curPending[group], counts, generator);
+					curPending[group]=0;
+					for(int l=0; l<numLeaves; l++){
+						leafCounts[curThread][l]+=counts[l];
+						for(int g=0; g<numSubgroups; g++){
+							if((group & (1<<g))!=0){leafCountsGroup[curThread][g][l]+=counts[l];}
+						}
+						counts[l]=0;
+					}
+				}
+			}
+		}
+		
+		int curCounts[]=leafCounts[curThread];
+		for(int i=0; i<nodes.length; i++){
+			TreeNode node=nodes[i];
+			int n=0;
+			for(int l=leafFirst[i]; l<leafEnd[i]; l++){n+=curCounts[l];}
+			if(n>0){
+				node.nTotalDenom[seg]+=n;
+				for(int d=0; d<numDim; d++){
+					if(node.hasCost){node.nTotalCosts[seg][d]+=n*node.curCosts[d];}
+					if(node.type==2){node.nTotalPayoffs[seg][d]+=n*node.curPayoffs[d];}
+				}
+			}
+			for(int g=0; g<numSubgroups; g++){
+				n=0;
+				for(int l=leafFirst[i]; l<leafEnd[i]; l++){n+=leafCountsGroup[curThread][g][l];}
+				if(n>0){
+					node.nTotalDenomGroup[seg][g]+=n;
+					for(int d=0; d<numDim; d++){
+						if(node.hasCost){node.nTotalCostsGroup[seg][g][d]+=n*node.curCosts[d];}
+						if(node.type==2){node.nTotalPayoffsGroup[seg][g][d]+=n*node.curPayoffs[d];}
+					}
+				}
+			}
+		}
+		for(int l=0; l<numLeaves; l++){
+			curCounts[l]=0;
+			for(int g=0; g<numSubgroups; g++){leafCountsGroup[curThread][g][l]=0;}
+		}
+	}
+	
+	/**
+	 * Splits a count across the children of a node with sequential (conditional) binomials
+	 */
+	private void splitNode(int i, int n, int counts[], MersenneTwisterFast generator){
+		TreeNode node=nodes[i];
+		if(node.type==2){
+			counts[leafFirst[i]]+=n;
+			return;
+		}
+		double remProb=1.0;
+		int c=i+1;
+		for(int k=0; k<node.numChildren && n>0; k++){
+			double prob=node.children[k].curProb[0];
+			int curN=n;
+			if(k<node.numChildren-1 && prob<remProb){
+				curN=DirectSampler.binomial(n, prob/remProb, generator);
+			}
+			if(curN>0){splitNode(c, curN, counts, generator);}
+			n-=curN;
+			remProb-=prob;
+			c+=size[c];
+		}
+	}
+}
\ No newline at end of file
@@ -50,7 +50,7 @@ public class TreeCohort{
 		myModel.unlockVarsAll(0);
 		for(int c=0; c<numVars; c++){
 			variables[c].locked[0]=true;
-			variables[c].value[0]=Interpreter.evaluateTokens(variables[c].parsedTokens, 0, false);
+			variables[c].value[0]=Interpreter.evaluateTokens(variables[c].parse(myModel), 0, false);
 		}
 
 		root.totalDenom=myModel.cohortSize;
@@ -65,7 +65,7 @@ public class TreeCohort{
 		//Update costs
 		if(node.hasCost){
 			for(int c=0; c<numDim; c++){
-				node.curCosts[c]=Interpreter.evaluateTokens(node.curCostTokens[c], 0, false).getDouble();
+				node.curCosts[c]=Interpreter.evaluateDouble(node.curCostTokens[c], 0, false);
 			}
 		}
 
@@ -85,7 +85,7 @@ public class TreeCohort{
 		//Update payoffs
 		if(node.type==2){ //terminal node
 			for(int c=0; c<numDim; c++){
-				node.curPayoffs[c]=Interpreter.evaluateTokens(node.curPayoffTokens[c], 0, false).getDouble();
+				node.curPayoffs[c]=Interpreter.evaluateDouble(node.curPayoffTokens[c], 0, false);
 			}
 		}
 
@@ -102,7 +102,7 @@ public class TreeCohort{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[0]=Interpreter.evaluateTokens(curChild.curProbTokens, 0, false).getDouble();
+					curChild.curProb[0]=Interpreter.evaluateDouble(curChild.curProbTokens, 0, false);
 					sumProb+=curChild.curProb[0];
 				}
 			}
@@ -18,10 +18,14 @@
 
 package tree;
 
+import java.util.ArrayList;
+
 import javax.swing.ProgressMonitor;
 import base.AmuaModel;
 import base.MicroStats;
+import base.Population;
 import main.MersenneTwisterFast;
+import main.RandomStreams;
 import main.Variable;
 import math.Interpreter;
 import math.MathUtils;
@@ -32,7 +36,7 @@ public class TreeMonteCarlo{
 	TreeNode root;
 	DecisionTree tree;
 	int numPeople, numStrat;
-	TreePerson people[];
+	Population population;
 	int numDim;
 	int numVars;
 	Variable variables[];
@@ -50,7 +54,8 @@ public class TreeMonteCarlo{
 	int subgroupSize[];
 	boolean cancelled;
 	Exception threadError; //caught inside multithread and thrown outside
-	
+	IndependentSubtree subtrees[]; //simulated for groups of people
+
 	//Constructor
 	public TreeMonteCarlo(TreeNode root){
 		this.root=root;
@@ -64,7 +69,7 @@ public class TreeMonteCarlo{
 		if(myModel.cluster==false) { //desktop
 			progress=new ProgressMonitor(myModel.mainForm.frmMain, "Monte Carlo simulation", "", 0, 100);
 		}
-		else {
+		else if(myModel.quiet==false) {
 			System.out.println("Monte Carlo simulation...");
 		}
 		
@@ -79,7 +84,7 @@ public class TreeMonteCarlo{
 		//Get evaluation tree - check for variables
 		checkForVariables(root);
 	}
-	
+
 	public void simulate(final boolean display) throws NumericException, Exception{
 		numStrat=root.numChildren;
 		strategyNames=new String[numStrat];
@@ -101,21 +106,24 @@ public class TreeMonteCarlo{
 		}
 		startTime=System.currentTimeMillis();
 		
+		//Random number streams for each segment of people, so results do not depend on the number of threads
+		long seed=RandomStreams.newSeed();
+		if(myModel.CRN){seed=myModel.crnSeed;} //Common random numbers
+		final RandomStreams streams=new RandomStreams(seed, numPeople);
+		final int numSegments=streams.getNumSegments();
+		
 		//multi-thread
 		final int numThreads=myModel.numThreads;
 		for(int s=0; s<tree.nodes.size(); s++){
 			TreeNode curNode=tree.nodes.get(s);
-			curNode.setThreads(numThreads,numDim,numSubgroups);
+			curNode.setThreads(numThreads,numSegments,numDim,numSubgroups);
 		}
 		
 		//Initialize random number generator
 		myModel.generatorVar=new MersenneTwisterFast[numThreads];
 		myModel.curGenerator=new MersenneTwisterFast[numThreads];
 		for(int n=0; n<numThreads; n++){
-			myModel.generatorVar[n]=new MersenneTwisterFast(System.currentTimeMillis()+n); //offset so that not all get the same time in millis
-			if(myModel.CRN){ //seend RNG
-				myModel.generatorVar[n].setSeed(myModel.crnSeed+555+n); //initialization seed
-			}
+			myModel.generatorVar[n]=new MersenneTwisterFast(); //seeded for each segment
 			myModel.curGenerator[n]=myModel.generatorVar[n];
 		}
 
@@ -124,6 +132,13 @@ public class TreeMonteCarlo{
 			evalChildProbs(root,true,n);
 		}
 		
+		//Find subtrees that do not depend on the person - split counts unless individual results are needed
+		boolean split=(myModel.displayIndResults==false && numSubgroups<=IndependentSubtree.MAX_SPLIT_SUBGROUPS);
+		ArrayList<IndependentSubtree> listSubtrees=new ArrayList<IndependentSubtree>();
+		findSubtrees(root,listSubtrees,split,numThreads);
+		subtrees=new IndependentSubtree[listSubtrees.size()];
+		for(int i=0; i<subtrees.length; i++){subtrees[i]=listSubtrees.get(i);}
+		
 		for(int v=0; v<numVars; v++){
 			variables[v].value=new Numeric[numThreads];
 			variables[v].locked=new boolean[numThreads];
@@ -134,9 +149,8 @@ public class TreeMonteCarlo{
 		}
 		
 		//initialize people
-		people=new TreePerson[numPeople];
+		population=new Population(numPeople, numVars, numSubgroups, numThreads);
 		
-		final int blockSize= numPeople/numThreads;
 		Thread[] threads = new Thread[numThreads];
 		for(int n=0; n<numThreads; n++){
 			final int finalN = n;
@@ -144,46 +158,42 @@ public class TreeMonteCarlo{
 				public void run(){
 					try{
 						int threadProg=0;
-						final int beginIndex = finalN * blockSize;
-						final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
-						for(int p=beginIndex; p<endIndex; p++){
-							people[p]=new TreePerson();
-							people[p].initVariableVals=new Numeric[numVars];
-							people[p].variableVals=new Numeric[numVars];
-							people[p].costs=new double[numDim];
-							people[p].payoffs=new double[numDim];
-							//initialize independent variables
-							myModel.unlockVarsAll(finalN);
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent){
-									variables[v].locked[finalN]=true;
-									people[p].initVariableVals[v]=Interpreter.evaluateTokens(variables[v].parsedTokens, finalN, true);
-									variables[v].value[finalN]=people[p].initVariableVals[v];
+						for(int seg=finalN; seg<numSegments && cancelled==false; seg+=numThreads){
+							streams.seed(myModel.generatorVar[finalN], RandomStreams.INIT, seg);
+							final int beginIndex = streams.getStart(seg);
+							final int endIndex = streams.getStart(seg+1);
+							for(int p=beginIndex; p<endIndex; p++){
+								//initialize independent variables
+								myModel.unlockVarsAll(finalN);
+								for(int v=0; v<numVars; v++){
+									if(variables[v].independent){
+										variables[v].locked[finalN]=true;
+										variables[v].value[finalN]=Interpreter.evaluateTokens(variables[v].parse(myModel), finalN, true);
+									}
 								}
-							}
-							//Update any dependent variables
-							for(int v=0; v<numVars; v++){
-								if(variables[v].independent==true){
-									variables[v].updateDependents(myModel,finalN);
-									people[p].initVariableVals[v]=variables[v].value[finalN];
+								//Update any dependent variables
+								for(int v=0; v<numVars; v++){
+									if(variables[v].independent==true){
+										variables[v].updateDependents(myModel,finalN);
+									}
 								}
-							}
+								population.storeInitVariables(p, variables, finalN);
 
-							//get subgroup
-							if(myModel.reportSubgroups){
-								people[p].inSubgroup=new boolean[numSubgroups];
-								for(int g=0; g<numSubgroups; g++){
-									Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
-									people[p].inSubgroup[g]=curVal.getBool();
+								//get subgroup
+								if(myModel.reportSubgroups){
+									for(int g=0; g<numSubgroups; g++){
+										Numeric curVal=Interpreter.evaluateTokens(myModel.subgroupTokens[g], finalN, false);
+										population.setSubgroup(p, g, curVal.getBool());
+									}
 								}
-							}
 							
-							if(finalN==0 && display){ //update progress from thread 0
-								threadProg++;
-								updateProgress(threadProg*numThreads);
-								if(myModel.cluster==false) {
-									if(progress.isCanceled()){
-										cancelled=true;	p=numPeople;
+								if(finalN==0 && display){ //update progress from thread 0
+									threadProg++;
+									updateProgress(threadProg*numThreads);
+									if(myModel.cluster==false) {
+										if(progress.isCanceled()){
+											cancelled=true;	p=numPeople;
+										}
 									}
 								}
 							}
@@ -211,36 +221,36 @@ public class TreeMonteCarlo{
 		}
 		
 		//Get subgroup indices
-		subgroupSize=new int[numSubgroups];
-		int subgroupCounters[]=new int[numSubgroups];
-		for(int p=0; p<numPeople; p++){
-			people[p].subgroupIndex=new int[numSubgroups];
-			for(int g=0; g<numSubgroups; g++){
-				if(people[p].inSubgroup[g]){
-					subgroupSize[g]++;
-					people[p].subgroupIndex[g]=subgroupCounters[g];
-					subgroupCounters[g]++;
-				}
-			}
-		}
+		subgroupSize=population.indexSubgroups(numPeople);
 		
 		//Simulate each strategy
 		for(int s=0; s<numStrat; s++){
+			final long stratKey=myModel.CRN ? 0 : s+1; //Common random numbers - same streams for each strategy
 			for(int n=0; n<numThreads; n++){
-				if(myModel.CRN){ //Common random numbers
-					myModel.generatorVar[n].setSeed(myModel.crnSeed+n);
-				}
 				myModel.curGenerator[n]=myModel.generatorVar[n];
 			}
 			
 			strategyNames[s]=root.children[s].name;
 			
 			//Initialize individual summaries
+			final boolean sketches=(myModel.quantileError>0); //summarize per segment and merge
+			final MicroStats segStats[]=new MicroStats[numSegments];
+			final MicroStats segStatsGroup[][]=new MicroStats[numSegments][numSubgroups];
 			if(myModel.displayIndResults){
-				microStats[s]=new MicroStats(myModel, numPeople);
+				if(sketches){microStats[s]=new MicroStats(myModel, myModel.quantileError);}
+				else{microStats[s]=new MicroStats(myModel, numPeople);}
 				if(myModel.reportSubgroups){
 					for(int g=0; g<numSubgroups; g++){
-						microStatsGroup[g][s]=new MicroStats(myModel,subgroupSize[g]);
+						if(sketches){microStatsGroup[g][s]=new MicroStats(myModel, myModel.quantileError);}
+						else{microStatsGroup[g][s]=new MicroStats(myModel,subgroupSize[g]);}
+					}
+				}
+				if(sketches){
+					for(int n=0; n<numSegments; n++){
+						segStats[n]=microStats[s].newPartial();
+						if(myModel.reportSubgroups){
+							for(int g=0; g<numSubgroups; g++){segStatsGroup[n][g]=microStatsGroup[g][s].newPartial();}
+						}
 					}
 				}
 			}
@@ -248,55 +258,84 @@ public class TreeMonteCarlo{
 			//Simulate people - multithread
 			final int finalS=s;
 			final TreeNode strategy=root.children[s];
+			final boolean splitAll=(strategy.subtree!=-1 && subtrees[strategy.subtree].split); //whole strategy is split for groups
 			for(int n=0; n<numThreads; n++){
 				final int finalN = n;
 				threads[n] = new Thread() {
 					public void run(){
 						try{
-							final int beginIndex = finalN * blockSize;
-							final int endIndex = (finalN==numThreads-1) ? numPeople :(finalN+1)*blockSize;
 							int threadProg=0;
-							for(int p=beginIndex; p<endIndex; p++){
-								TreePerson curPerson=people[p];
-								for(int v=0; v<numVars; v++){ //get person-specific variables
-									curPerson.variableVals[v]=curPerson.initVariableVals[v].copy();
-									variables[v].value[finalN]=curPerson.variableVals[v];
-								}
-								for(int d=0; d<numDim; d++){ //reset outcomes
-									curPerson.costs[d]=0; 
-									curPerson.payoffs[d]=0;
+							double costs[]=new double[numDim], payoffs[]=new double[numDim];
+							Numeric personVals[]=new Numeric[numVars];
+							double personOutcomes[]=new double[numDim], personVars[]=new double[numVars];
+							for(int seg=finalN; seg<numSegments && cancelled==false; seg+=numThreads){
+								streams.seed(myModel.generatorVar[finalN], RandomStreams.SIMULATE, stratKey, seg);
+								final int beginIndex = streams.getStart(seg);
+								final int endIndex = streams.getStart(seg+1);
+								if(splitAll){ //no need to traverse each person
+									subtrees[strategy.subtree].enterGroup(population, beginIndex, endIndex, finalN);
+									if(finalN==0 && display){
+										threadProg+=endIndex-beginIndex;
+										updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
+										if(myModel.cluster==false) {
+											if(progress.isCanceled()){cancelled=true;}
+										}
+									}
 								}
+								else{
+									for(int p=beginIndex; p<endIndex; p++){
+										population.loadInitVariables(p, variables, finalN); //get person-specific variables
+										for(int v=0; v<numVars; v++){personVals[v]=variables[v].value[finalN];}
+										for(int d=0; d<numDim; d++){ //reset outcomes
+											costs[d]=0; 
+											payoffs[d]=0;
+										}
 
-								//traverse tree
-								traverseNode(strategy,curPerson,finalN);
+										//traverse tree
+										traverseNode(strategy,p,costs,payoffs,finalN,seg);
 
-								//record overall individual results
-								if(myModel.displayIndResults){
-									for(int d=0; d<numDim; d++){microStats[finalS].outcomes[d][p]=curPerson.costs[d]+curPerson.payoffs[d];}
-									for(int v=0; v<numVars; v++){microStats[finalS].variables[v][p]=curPerson.variableVals[v].getValue();}
+										//record overall individual results
+										if(myModel.displayIndResults && sketches){
+											for(int d=0; d<numDim; d++){personOutcomes[d]=costs[d]+payoffs[d];}
+											for(int v=0; v<numVars; v++){personVars[v]=personVals[v].getValue();}
+											segStats[seg].add(personOutcomes, personVars);
+											if(myModel.reportSubgroups){
+												for(int g=0; g<numSubgroups; g++){
+													if(population.inSubgroup(p, g)){segStatsGroup[seg][g].add(personOutcomes, personVars);}
+												}
+											}
+										}
+										else if(myModel.displayIndResults){
+											for(int d=0; d<numDim; d++){microStats[finalS].outcomes[d][p]=costs[d]+payoffs[d];}
+											for(int v=0; v<numVars; v++){microStats[finalS].variables[v][p]=personVals[v].getValue();}
 
-									//record subgroup results
-									if(myModel.reportSubgroups){
-										for(int g=0; g<numSubgroups; g++){
-											if(curPerson.inSubgroup[g]){
-												int z=curPerson.subgroupIndex[g]; //cur index in subgroup
-												for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].outcomes[d][z]=microStats[finalS].outcomes[d][p];}
-												for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].variables[v][z]=microStats[finalS].variables[v][p];}
+											//record subgroup results
+											if(myModel.reportSubgroups){
+												for(int g=0; g<numSubgroups; g++){
+													if(population.inSubgroup(p, g)){
+														int z=population.subgroupIndex[g][p]; //cur index in subgroup
+														for(int d=0; d<numDim; d++){microStatsGroup[g][finalS].outcomes[d][z]=microStats[finalS].outcomes[d][p];}
+														for(int v=0; v<numVars; v++){microStatsGroup[g][finalS].variables[v][z]=microStats[finalS].variables[v][p];}
+													}
+												}
 											}
 										}
-									}
-								}
 
-								if(finalN==0 && display){ //update progress from thread 0
-									threadProg++;
-									updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
-									if(myModel.cluster==false) {
-										if(progress.isCanceled()){
-											cancelled=true;	p=numPeople;
+										if(finalN==0 && display){ //update progress from thread 0
+											threadProg++;
+											updateProgress(numPeople+(finalS*numPeople)+(threadProg*numThreads));
+											if(myModel.cluster==false) {
+												if(progress.isCanceled()){
+													cancelled=true;	p=numPeople;
+												}
+											}
 										}
-									}
+									} //end simulate loop
 								}
-							} //end simulate loop
+								for(int i=0; i<subtrees.length; i++){
+									subtrees[i].endSegment(seg, finalN, myModel.generatorVar[finalN]);
+								}
+							}
 						} catch(Exception e){
 							threadError=e;
 						}
@@ -318,6 +357,15 @@ public class TreeMonteCarlo{
 				throw threadError;
 			}
 			
+			if(myModel.displayIndResults && sketches){ //merge in segment order
+				for(int n=0; n<numSegments; n++){
+					microStats[s].merge(segStats[n]);
+					if(myModel.reportSubgroups){
+						for(int g=0; g<numSubgroups; g++){microStatsGroup[g][s].merge(segStatsGroup[n][g]);}
+					}
+				}
+			}
+			
 			if(cancelled){s=numStrat;}
 
 		} //end strategy loop
@@ -326,10 +374,10 @@ public class TreeMonteCarlo{
 			progress.close();
 		}
 		
-		//sum across threads
+		//sum across segments
 		for(int s=0; s<tree.nodes.size(); s++){
 			TreeNode curNode=tree.nodes.get(s);
-			curNode.sumThreads();
+			curNode.sumSegments();
 		}
 		
 		//get EVs
@@ -368,8 +416,8 @@ public class TreeMonteCarlo{
 			}
 		}
 	}
-	
-	
+
+
 	private void updateProgress(int curProg){
 		//progress.setProgress(curProg);
 		//Update progress
@@ -394,16 +442,22 @@ public class TreeMonteCarlo{
 		}
 	}
 
-	
+
 	/**
 	 * Traverse tree
+	 * @param seg Segment of people, for totals
 	 * @throws Exception 
 	 */
-	
-	private void traverseNode(TreeNode node, TreePerson curPerson, int curThread) throws Exception{
-		node.nTotalDenom[curThread]++;
+
+	private void traverseNode(TreeNode node, int p, double costs[], double payoffs[], int curThread, int seg) throws Exception{
+		if(node.subtree!=-1){ //person-independent, simulated for the group at the end of the segment
+			subtrees[node.subtree].enter(population, p, costs, payoffs, curThread, myModel.generatorVar[curThread]);
+			return;
+		}
+		
+		node.nTotalDenom[seg]++;
 		for(int g=0; g<numSubgroups; g++){
-			if(curPerson.inSubgroup[g]){node.nTotalDenomGroup[curThread][g]++;}
+			if(population.inSubgroup(p, g)){node.nTotalDenomGroup[seg][g]++;}
 		}
 				
 		//Update variables
@@ -423,18 +477,18 @@ public class TreeMonteCarlo{
 		if(node.hasCost){
 			for(int d=0; d<numDim; d++){
 				if(node.costHasVar[d]==false){ //use pre-calculated cost
-					node.nTotalCosts[curThread][d]+=node.curCosts[d];
-					curPerson.costs[d]+=node.curCosts[d];
+					node.nTotalCosts[seg][d]+=node.curCosts[d];
+					costs[d]+=node.curCosts[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=node.curCosts[d];}
+						if(population.inSubgroup(p, g)){node.nTotalCostsGroup[seg][g][d]+=node.curCosts[d];}
 					}
 				}
 				else{ //has variable, re-evaluate cost
-					double curCost=Interpreter.evaluateTokens(node.curCostTokens[d], curThread, false).getDouble();
-					node.nTotalCosts[curThread][d]+=curCost;
-					curPerson.costs[d]+=curCost;
+					double curCost=Interpreter.evaluateDouble(node.curCostTokens[d], curThread, false);
+					node.nTotalCosts[seg][d]+=curCost;
+					costs[d]+=curCost;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalCostsGroup[curThread][g][d]+=curCost;}
+						if(population.inSubgroup(p, g)){node.nTotalCostsGroup[seg][g][d]+=curCost;}
 					}
 				}
 			}
@@ -444,18 +498,18 @@ public class TreeMonteCarlo{
 		if(node.type==2){ //terminal node
 			for(int d=0; d<numDim; d++){
 				if(node.payoffHasVar[d]==false){ //use pre-calculated payoff
-					node.nTotalPayoffs[curThread][d]+=node.curPayoffs[d];
-					curPerson.payoffs[d]+=node.curPayoffs[d];
+					node.nTotalPayoffs[seg][d]+=node.curPayoffs[d];
+					payoffs[d]+=node.curPayoffs[d];
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=node.curPayoffs[d];}
+						if(population.inSubgroup(p, g)){node.nTotalPayoffsGroup[seg][g][d]+=node.curPayoffs[d];}
 					}
 				}
 				else{ //has variable, re-evaluate payoff
-					double curPayoff=Interpreter.evaluateTokens(node.curPayoffTokens[d], curThread, false).getDouble();
-					node.nTotalPayoffs[curThread][d]+=curPayoff;
-					curPerson.payoffs[d]+=curPayoff;
+					double curPayoff=Interpreter.evaluateDouble(node.curPayoffTokens[d], curThread, false);
+					node.nTotalPayoffs[seg][d]+=curPayoff;
+					payoffs[d]+=curPayoff;
 					for(int g=0; g<numSubgroups; g++){
-						if(curPerson.inSubgroup[g]){node.nTotalPayoffsGroup[curThread][g][d]+=curPayoff;}
+						if(population.inSubgroup(p, g)){node.nTotalPayoffsGroup[seg][g][d]+=curPayoff;}
 					}
 				}
 			}
@@ -468,11 +522,11 @@ public class TreeMonteCarlo{
 			}
 			while(rand>node.curChildProbs[curThread][k]){k++;}
 			TreeNode curChild=node.children[k];
-			traverseNode(curChild,curPerson,curThread);
+			traverseNode(curChild,p,costs,payoffs,curThread,seg);
 		}
 		
 	}
-	
+
 	/**
 	 * Calculate expected values
 	 */
@@ -508,8 +562,8 @@ public class TreeMonteCarlo{
 			}
 		}
 	}
-	
-	
+
+
 	/**
 	 * Re-evaluates child probs
 	 * @param node
@@ -528,7 +582,7 @@ public class TreeMonteCarlo{
 					indexCompProb=c;
 				}
 				else{ //Evaluate text
-					curChild.curProb[curThread]=Interpreter.evaluateTokens(curChild.curProbTokens, curThread, false).getDouble();
+					curChild.curProb[curThread]=Interpreter.evaluateDouble(curChild.curProbTokens, curThread, false);
 					sumProb+=curChild.curProb[curThread];
 				}
 			}
@@ -563,7 +617,35 @@ public class TreeMonteCarlo{
 			}
 		}
 	}
-	
+
+	/**
+	 * Finds chance nodes whose subtree has no variable updates, and no probabilities, costs, or payoffs with variables
+	 * @return True if the subtree of this node does not depend on the person
+	 */
+	private boolean findSubtrees(TreeNode node, ArrayList<IndependentSubtree> listSubtrees, boolean split, int numThreads){
+		boolean childIndependent[]=new boolean[node.numChildren];
+		boolean independent=(node.type==2 || (node.type==1 && node.numChildren>0));
+		for(int c=0; c<node.numChildren; c++){
+			childIndependent[c]=findSubtrees(node.children[c],listSubtrees,split,numThreads);
+			if(childIndependent[c]==false){independent=false;}
+		}
+		if(node.hasVarUpdates || node.childHasProbVar){independent=false;}
+		for(int d=0; d<numDim; d++){
+			if(node.hasCost && node.costHasVar[d]){independent=false;}
+			if(node.type==2 && node.payoffHasVar[d]){independent=false;}
+		}
+		if(independent==false){ //simulate largest independent subtrees for groups
+			for(int c=0; c<node.numChildren; c++){
+				TreeNode child=node.children[c];
+				if(childIndependent[c] && child.type==1){
+					child.subtree=listSubtrees.size();
+					listSubtrees.add(new IndependentSubtree(child,split,numDim,numSubgroups,numThreads));
+				}
+			}
+		}
+		return(independent);
+	}
+
 	private void checkForVariables(TreeNode node){
 		if(node.hasCost){ //cost
 			node.costHasVar=new boolean[numDim];
@@ -40,8 +40,8 @@ import javax.xml.bind.annotation.XmlTransient;
 import base.ModelNode;
 import main.VariableUpdate;
 import markov.MarkovNode;
+import math.CompiledExpression;
 import math.MathUtils;
-import math.Token;
 
 @XmlRootElement(name="node")
 public class TreeNode extends ModelNode{
@@ -51,8 +51,8 @@ public class TreeNode extends ModelNode{
 	//Numeric data - parsed/calculated
 	@XmlTransient int numChildren;
 	@XmlTransient TreeNode children[];
-	@XmlTransient Token curProbTokens[]; //[token]
-	@XmlTransient Token curCostTokens[][], curPayoffTokens[][]; //[dim][token]
+	@XmlTransient CompiledExpression curProbTokens;
+	@XmlTransient CompiledExpression curCostTokens[], curPayoffTokens[]; //[dim]
 	@XmlTransient double curProb[]; //[thread] //Current probability used to run the model - not saved
 	@XmlTransient double curCosts[], curPayoffs[];
 	@XmlTransient public double expectedValues[], expectedValuesGroup[][];
@@ -62,11 +62,12 @@ public class TreeNode extends ModelNode{
 	@XmlTransient boolean costHasVar[];
 	@XmlTransient boolean payoffHasVar[];
 	@XmlTransient public double curChildProbs[][]; //[thread][child]
+	@XmlTransient int subtree; //index of person-independent subtree rooted at this node, -1 if none
 	@XmlTransient double totalDenom, totalCosts[], totalPayoffs[], totalNet[];
 	@XmlTransient double totalDenomGroup[],	totalCostsGroup[][], totalPayoffsGroup[][], totalNetGroup[][]; //subgroups
 	//multi-threaded
-	@XmlTransient int numThreads, numDim, numSubgroups;
-	@XmlTransient double nTotalDenom[], nTotalCosts[][], nTotalPayoffs[][];
+	@XmlTransient int numThreads, numSegments, numDim, numSubgroups;
+	@XmlTransient double nTotalDenom[], nTotalCosts[][], nTotalPayoffs[][]; //[segment]
 	@XmlTransient double nTotalDenomGroup[][], nTotalCostsGroup[][][], nTotalPayoffsGroup[][][];
 	
 	//Visual Attributes
@@ -704,28 +705,36 @@ public class TreeNode extends ModelNode{
 		}
 	}
 	
-	public void setThreads(int numThreads, int numDim, int numSubgroups){
+	/**
+	 * Probabilities are evaluated by thread, totals are kept by segment of people
+	 */
+	public void setThreads(int numThreads, int numSegments, int numDim, int numSubgroups){
 		this.numThreads=numThreads;
+		this.numSegments=numSegments;
 		this.numDim=numDim;
 		this.numSubgroups=numSubgroups;
 		curProb=new double[numThreads];
+		subtree=-1;
 		if(type==1){curChildProbs=new double[numThreads][numChildren];}
-		nTotalDenom=new double[numThreads];
-		nTotalDenomGroup=new double[numThreads][numSubgroups];
-		nTotalCosts=new double[numThreads][numDim];
-		nTotalCostsGroup=new double[numThreads][numSubgroups][numDim];
-		nTotalPayoffs=new double[numThreads][numDim];
-		nTotalPayoffsGroup=new double[numThreads][numSubgroups][numDim];
+		nTotalDenom=new double[numSegments];
+		nTotalDenomGroup=new double[numSegments][numSubgroups];
+		nTotalCosts=new double[numSegments][numDim];
+		nTotalCostsGroup=new double[numSegments][numSubgroups][numDim];
+		nTotalPayoffs=new double[numSegments][numDim];
+		nTotalPayoffsGroup=new double[numSegments][numSubgroups][numDim];
 	}
 	
-	public void sumThreads(){
+	/**
+	 * Sums totals in segment order so results do not depend on the number of threads
+	 */
+	public void sumSegments(){
 		totalDenom=0;
 		totalDenomGroup=new double[numSubgroups];
 		totalCosts=new double[numDim];
 		totalCostsGroup=new double[numSubgroups][numDim];
 		totalPayoffs=new double[numDim];
 		totalPayoffsGroup=new double[numSubgroups][numDim];
-		for(int n=0; n<numThreads; n++){
+		for(int n=0; n<numSegments; n++){
 			totalDenom+=nTotalDenom[n];
 			for(int d=0; d<numDim; d++){
 				totalCosts[d]+=nTotalCosts[n][d];
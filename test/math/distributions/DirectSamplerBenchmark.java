@@ -0,0 +1,89 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package math.distributions;
+
+import main.MersenneTwisterFast;
+import math.Distributions;
+import math.Numeric;
+import math.NumericException;
+
+/**
+ * Throughput of the direct samplers against inverse CDF sampling, through Distributions.sample as used by model evaluation.
+ * Each repetition draws batches until a minimum time has passed, reports the best repetition after warm-up in nanoseconds per draw.
+ * Run from the project root with the Amua classes and libraries on the classpath: java math.distributions.DirectSamplerBenchmark [draws per batch]
+ */
+public class DirectSamplerBenchmark{
+	static final int NUM_REPS=3;
+	static final long MIN_NANOS=200000000L; //per repetition
+	static double sink; //keeps draws live
+	
+	public static void main(String args[]) throws NumericException{
+		int n=args.length>0 ? Integer.parseInt(args[0]) : 10000;
+		System.out.println(String.format("%-18s %12s %12s %8s", "Distribution", "Inverse", "Direct", "Speedup"));
+		run("Norm(0,1)", "Norm", params(0,1), n);
+		run("Gamma(0.5,1)", "Gamma", params(0.5,1), n);
+		run("Gamma(2.5,1)", "Gamma", params(2.5,1), n);
+		run("Beta(0.5,0.5)", "Beta", params(0.5,0.5), n);
+		run("Beta(2,3)", "Beta", params(2,3), n);
+		run("Beta(40,60)", "Beta", params(40,60), n);
+		run("Pois(4)", "Pois", params(4), n);
+		run("Pois(100)", "Pois", params(100), n);
+		run("Bin(20,0.3)", "Bin", new Numeric[]{new Numeric(20), new Numeric(0.3)}, n);
+		run("Bin(1000,0.4)", "Bin", new Numeric[]{new Numeric(1000), new Numeric(0.4)}, n);
+	}
+	
+	private static void run(String name, String dist, Numeric params[], int n) throws NumericException{
+		double inverse=Double.POSITIVE_INFINITY, direct=Double.POSITIVE_INFINITY;
+		time(dist, params, n, false); //warm-up
+		time(dist, params, n, true);
+		for(int r=0; r<NUM_REPS; r++){
+			inverse=Math.min(inverse, time(dist, params, n, false));
+			direct=Math.min(direct, time(dist, params, n, true));
+		}
+		System.out.println(String.format("%-18s %9.1f ns %9.1f ns %7.1fx", name, inverse, direct, inverse/direct));
+	}
+	
+	/**
+	 * @return Nanoseconds per draw
+	 */
+	private static double time(String dist, Numeric params[], int n, boolean direct) throws NumericException{
+		MersenneTwisterFast generator=new MersenneTwisterFast(12345);
+		double sum=0;
+		long numDraws=0;
+		long start=System.nanoTime(), elapsed;
+		do{
+			for(int i=0; i<n; i++){
+				sum+=Distributions.sample(dist, params, generator, direct).getDouble();
+			}
+			numDraws+=n;
+			elapsed=System.nanoTime()-start;
+		}while(elapsed<MIN_NANOS);
+		sink+=sum;
+		return(elapsed/(double)numDraws);
+	}
+	
+	private static Numeric[] params(double... values){
+		Numeric params[]=new Numeric[values.length];
+		for(int i=0; i<values.length; i++){
+			params[i]=new Numeric(values[i]);
+		}
+		return(params);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,171 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package math.distributions;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.distribution.BetaDistribution;
+import org.apache.commons.math3.distribution.BinomialDistribution;
+import org.apache.commons.math3.distribution.ChiSquaredDistribution;
+import org.apache.commons.math3.distribution.GammaDistribution;
+import org.apache.commons.math3.distribution.IntegerDistribution;
+import org.apache.commons.math3.distribution.NormalDistribution;
+import org.apache.commons.math3.distribution.PoissonDistribution;
+import org.apache.commons.math3.distribution.RealDistribution;
+
+import main.MersenneTwisterFast;
+
+/**
+ * Goodness-of-fit checks for DirectSampler against the commons-math distributions.
+ * Continuous samplers get a Kolmogorov-Smirnov test and a chi-square test on equiprobable bins, discrete samplers a chi-square test on pooled cells.
+ * Each branch of the samplers is covered (Gamma k<1 and k>=1, Beta a,b<1 and >=1, Poisson inversion and PTRS, Binomial inversion and BTRS).
+ * Seeds are fixed so results are reproducible.  A check fails if its p-value is below 0.001.
+ * Run from the project root with the Amua classes and libraries on the classpath: java math.distributions.DirectSamplerCheck
+ */
+public class DirectSamplerCheck{
+	static final int N=200000;
+	static final int NUM_BINS=100;
+	static final double ALPHA=0.001;
+	static int numFailed=0;
+	
+	public static void main(String args[]){
+		MersenneTwisterFast generator=new MersenneTwisterFast(12345);
+		
+		//Normal
+		double x[]=new double[N];
+		for(int i=0; i<N; i++){x[i]=DirectSampler.normal(generator);}
+		checkContinuous("Normal(0,1)", x, new NormalDistribution(0,1));
+		
+		//Gamma, k<1 boosts the shape
+		double shapes[]=new double[]{0.1, 0.5, 0.9, 1, 2.5, 30};
+		for(int s=0; s<shapes.length; s++){
+			double k=shapes[s];
+			for(int i=0; i<N; i++){x[i]=DirectSampler.gamma(k, generator);}
+			checkContinuous("Gamma("+k+",1)", x, new GammaDistribution(k,1));
+		}
+		
+		//Beta, a<1 or b<1 works on the log scale
+		double ab[][]=new double[][]{{0.2,0.3},{0.5,0.5},{0.5,5},{1,1},{2,3},{40,60}};
+		for(int s=0; s<ab.length; s++){
+			double a=ab[s][0], b=ab[s][1];
+			for(int i=0; i<N; i++){x[i]=DirectSampler.beta(a, b, generator);}
+			checkContinuous("Beta("+a+","+b+")", x, new BetaDistribution(a,b));
+		}
+		
+		//Poisson, inversion below 10 and PTRS above
+		int k[]=new int[N];
+		double lambdas[]=new double[]{0.3, 4, 9.9, 10, 35, 500};
+		for(int s=0; s<lambdas.length; s++){
+			double lambda=lambdas[s];
+			for(int i=0; i<N; i++){k[i]=DirectSampler.poisson(lambda, generator);}
+			checkDiscrete("Poisson("+lambda+")", k, new PoissonDistribution(lambda));
+		}
+		
+		//Binomial, inversion for np<10 and BTRS otherwise, p>0.5 is reflected
+		double np[][]=new double[][]{{10,0.3},{5000,0.001},{40,0.2},{100,0.3},{1000,0.7},{200,0.95}};
+		for(int s=0; s<np.length; s++){
+			int n=(int) np[s][0];
+			double p=np[s][1];
+			for(int i=0; i<N; i++){k[i]=DirectSampler.binomial(n, p, generator);}
+			checkDiscrete("Binomial("+n+","+p+")", k, new BinomialDistribution(n,p));
+		}
+		
+		if(numFailed>0){
+			System.out.println(numFailed+" check(s) failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+	
+	private static void checkContinuous(String name, double x[], RealDistribution dist){
+		int n=x.length;
+		double sorted[]=Arrays.copyOf(x, n);
+		Arrays.sort(sorted);
+		double d=0;
+		long counts[]=new long[NUM_BINS];
+		for(int i=0; i<n; i++){
+			double cdf=dist.cumulativeProbability(sorted[i]);
+			d=Math.max(d, Math.max(cdf-i/(double)n, (i+1)/(double)n-cdf));
+			int bin=Math.min(NUM_BINS-1, (int) (cdf*NUM_BINS)); //equiprobable bins
+			counts[bin]++;
+		}
+		double pKS=ksPValue(Math.sqrt(n)*d);
+		double expected=n/(double)NUM_BINS;
+		double chi2=0;
+		for(int b=0; b<NUM_BINS; b++){
+			double dev=counts[b]-expected;
+			chi2+=dev*dev/expected;
+		}
+		double pChi=1-new ChiSquaredDistribution(NUM_BINS-1).cumulativeProbability(chi2);
+		report(name, "KS p="+format(pKS)+", chi-square p="+format(pChi), Math.min(pKS, pChi));
+	}
+	
+	private static void checkDiscrete(String name, int x[], IntegerDistribution dist){
+		int n=x.length;
+		int max=0;
+		for(int i=0; i<n; i++){max=Math.max(max, x[i]);}
+		long counts[]=new long[max+1];
+		for(int i=0; i<n; i++){counts[x[i]]++;}
+		//pool adjacent cells until the expected count is at least 20, the last cell includes the upper tail
+		double chi2=0;
+		int numCells=0;
+		double observed=0, expected=0;
+		for(int v=0; v<=max; v++){
+			observed+=counts[v];
+			expected+=n*dist.probability(v);
+			if(expected>=20){
+				chi2+=(observed-expected)*(observed-expected)/expected;
+				numCells++;
+				observed=0; expected=0;
+			}
+		}
+		expected+=n*(1-dist.cumulativeProbability(max));
+		if(expected>0){
+			chi2+=(observed-expected)*(observed-expected)/expected;
+			numCells++;
+		}
+		double pChi=1-new ChiSquaredDistribution(Math.max(1, numCells-1)).cumulativeProbability(chi2);
+		report(name, "chi-square p="+format(pChi)+" ("+numCells+" cells)", pChi);
+	}
+	
+	/**
+	 * Asymptotic Kolmogorov distribution, P(K>t)
+	 */
+	private static double ksPValue(double t){
+		if(t<0.2){return(1);}
+		double sum=0;
+		for(int j=1; j<=100; j++){
+			double term=2*Math.exp(-2*j*j*t*t);
+			sum+=(j%2==1) ? term : -term;
+			if(term<1e-12){break;}
+		}
+		return(Math.max(0, Math.min(1, sum)));
+	}
+	
+	private static String format(double p){
+		return(String.format("%.4f", p));
+	}
+	
+	private static void report(String name, String stats, double p){
+		boolean passed=(p>=ALPHA);
+		System.out.println((passed ? "PASS " : "FAIL ")+name+": "+stats);
+		if(passed==false){numFailed++;}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,96 @@
+/**
+ * Amua - An open source modeling framework.
+ * Copyright (C) 2017-2019 Zachary J. Ward
+ *
+ * This file is part of Amua. Amua is free software: you can redistribute
+ * it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Amua is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Amua.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package tree;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Unmarshaller;
+
+import base.AmuaModel;
+import main.Parameter;
+
+/**
+ * Checks that blank expressions are reported by model validation instead of evaluating to 0.
+ * Run from the project root with the Amua classes and libraries on the classpath: java tree.BlankFieldCheck [test/tree/twoArm.amua]
+ */
+public class BlankFieldCheck{
+	static String blanks[]=new String[]{""," ","()"};
+	static int numFailed=0;
+	
+	public static void main(String args[]) throws Exception{
+		File file=new File(args.length>0 ? args[0] : "test/tree/twoArm.amua");
+		Unmarshaller un=JAXBContext.newInstance(AmuaModel.class).createUnmarshaller();
+		
+		AmuaModel model=open(un,file);
+		check("unmodified model",model.parseModel().isEmpty());
+		
+		for(int b=0; b<blanks.length; b++){
+			String blank=blanks[b];
+			
+			model=open(un,file);
+			TreeNode node=model.tree.nodes.get(2);
+			node.prob=blank;
+			check("blank prob '"+blank+"'",contains(model.parseModel(),"Probability Error"));
+			
+			model=open(un,file);
+			node=model.tree.nodes.get(1); //costs are only validated on chance nodes
+			node.hasCost=true;
+			node.cost[0]=blank;
+			check("blank cost '"+blank+"'",contains(model.parseModel(),"Cost Error"));
+			
+			model=open(un,file);
+			node=model.tree.nodes.get(2);
+			node.payoff[0]=blank;
+			check("blank payoff '"+blank+"'",contains(model.parseModel(),"Payoff Error"));
+			
+			model=open(un,file);
+			Parameter param=model.parameters.get(1); //pB
+			param.expression=blank;
+			ArrayList<String> errors=model.parseModel();
+			check("blank parameter '"+blank+"'",param.valid==false && contains(errors,"Probability Error (pB)"));
+		}
+		
+		if(numFailed>0){
+			System.out.println(numFailed+" check(s) failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+	
+	private static AmuaModel open(Unmarshaller un, File file) throws Exception{
+		AmuaModel model=(AmuaModel) un.unmarshal(file);
+		model.openModelHeadless();
+		return(model);
+	}
+	
+	private static boolean contains(ArrayList<String> errors, String text){
+		for(int i=0; i<errors.size(); i++){
+			if(errors.get(i).contains(text)){return(true);}
+		}
+		return(false);
+	}
+	
+	private static void check(String name, boolean passed){
+		System.out.println((passed ? "PASS " : "FAIL ")+name);
+		if(passed==false){numFailed++;}
+	}
+}
\ No newline at end of file